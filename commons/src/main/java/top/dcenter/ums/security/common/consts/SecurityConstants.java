@@ -76,6 +76,10 @@ public class SecurityConstants {
      * 把 session enhance check value 存储在 session 时所用的 key
      */
     public static final String SESSION_ENHANCE_CHECK_KEY = "SESSION_ENHANCE_CHECK_KEY";
+    /**
+     * 把最近一次刷新用户 session 索引的时间(毫秒)存储在 session 时所用的 key
+     */
+    public static final String SESSION_INDEX_TOUCH_TIME_KEY = "SESSION_INDEX_TOUCH_TIME_KEY";
 
     /**
      * Set(UriHttpMethodTuple): 把权限类型为 PERMIT_ALL 的 Set 存储在 servletContext 时所用的 key. <br>
@@ -81,6 +81,7 @@ public enum ErrorCodeEnum {
 
     SMS_CODE_PARAMETER_ERROR(610, "短信验证码参数错误"),
     SMS_CODE_ERROR(611, "短信验证码错误"),
+    SMS_CODE_SEND_TOO_FREQUENTLY(612, "短信验证码发送过于频繁, 请稍后再试"),
 
     MOBILE_NOT_EMPTY(620, "手机号不能为空"),
     MOBILE_PARAMETER_ERROR(621, "手机号参数错误"),
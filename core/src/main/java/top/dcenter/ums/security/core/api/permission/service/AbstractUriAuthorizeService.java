@@ -24,15 +24,16 @@
 package top.dcenter.ums.security.core.api.permission.service;
 
 import lombok.Getter;
-import org.springframework.http.HttpMethod;
 import org.springframework.lang.NonNull;
-import org.springframework.lang.Nullable;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.authority.AuthorityUtils;
 import org.springframework.util.AntPathMatcher;
-import org.springframework.util.CollectionUtils;
-import top.dcenter.ums.security.core.permission.enums.PermissionType;
 import top.dcenter.ums.security.core.permission.evaluator.UriAuthoritiesPermissionEvaluator;
+import top.dcenter.ums.security.core.permission.listener.UpdateRolesAuthoritiesListener;
+import top.dcenter.ums.security.core.permission.matcher.UriAuthorityMatcher;
+import top.dcenter.ums.security.core.permission.matcher.UriAuthorityViewCache;
+import top.dcenter.ums.security.core.permission.matcher.UriAuthorityViewCache.UriAuthorityView;
+import top.dcenter.ums.security.core.permission.service.CopyOnWriteRolesAuthorities;
 import top.dcenter.ums.security.core.permission.service.DefaultUriAuthorizeService;
 import top.dcenter.ums.security.core.util.MvcUtil;
 
@@ -41,6 +42,9 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 
 /**
@@ -63,6 +67,13 @@ import java.util.function.Consumer;
  * {@link UriAuthoritiesPermissionEvaluator} 实现, 使用此接口的前提条件是: 应用使用的是 restful 风格的 API; <br>
  * 如果不是 restful 风格的 API, 请使用 {@link #hasPermission(Authentication, String, String)} 接口的访问权限控制, 此接口使用注解的方式 {@code @PerAuthorize("hasPermission('/users', 'list')")} 来实现,
  * 使用注解需开启 {@code @EnableGlobalMethodSecurity(prePostEnabled = true)} 注解.<br>
+ * 4. 权限判断通过 {@link UriAuthorityMatcher} 实现, 每次请求都会调用 {@link #getRolesAuthorities()} 等方法获取权限,
+ * 只有权限版本号与返回的 Map 引用都不变时才复用已编译的匹配器: 返回新的 Map 时重新编译; 权限版本号在
+ * {@link #clearAuthoritiesCache()} 时递增. 因此在原 Map 上直接修改权限后必须调用 {@link #clearAuthoritiesCache()};
+ * 每次都返回新 Map 的实现每次请求都会重新编译, 推荐返回不可变的快照, 如 {@link CopyOnWriteRolesAuthorities}
+ * (推荐与 {@link UpdateAndCacheAuthoritiesService} 一起实现, {@link UpdateRolesAuthoritiesListener} 更新后自动调用).<br>
+ * 5. 用户的 uri(资源) 权限视图以规范化的(角色/多租户/SCOPE)权限组合为 key 缓存在 {@link UriAuthorityViewCache} 中(LRU),
+ * {@link UpdateRolesAuthoritiesListener} 更新角色权限后会调用 {@link #clearAuthoritiesCache()} 原子替换此缓存.<br>
  *
  *
  * @author YongWu zheng
@@ -89,9 +100,42 @@ public abstract class AbstractUriAuthorizeService implements UriAuthorizeService
      */
     public static final String PERMISSION_DELIMITER = ",";
 
+    /**
+     * 基于 角色 的 {@link UriAuthorityMatcher} 缓存的 key
+     */
+    private static final String ROLE_MATCHER_KEY = "";
+    /**
+     * {@link UriAuthorityMatcher} 缓存的最大数量, 超过时清空缓存
+     */
+    private static final int MAX_MATCHER_CACHE_SIZE = 512;
+    /**
+     * 用户权限视图缓存的默认最大数量
+     */
+    public static final int DEFAULT_VIEW_CACHE_SIZE = 1024;
+
     @Getter
     protected AntPathMatcher antPathMatcher = new AntPathMatcher();
 
+    /**
+     * 已编译的 uri(资源) 权限匹配器缓存 Map(ROLE_MATCHER_KEY/tenantAuthority/scopes, UriAuthorityMatcher)
+     */
+    private final Map<String, UriAuthorityMatcher> uriAuthorityMatcherCache = new ConcurrentHashMap<>(16);
+
+    /**
+     * 权限版本号, 清除缓存时递增, 以旧版本编译的 {@link UriAuthorityMatcher} 失效
+     */
+    private final AtomicLong authoritiesVersion = new AtomicLong(0L);
+
+    /**
+     * 用户权限视图缓存的最大数量
+     */
+    private volatile int viewCacheSize = DEFAULT_VIEW_CACHE_SIZE;
+
+    /**
+     * 用户权限视图缓存, 角色权限更新时整体替换
+     */
+    private volatile UriAuthorityViewCache uriAuthorityViewCache = new UriAuthorityViewCache(DEFAULT_VIEW_CACHE_SIZE);
+
 
     /**
      * 根据 authentication 来判断是否有 uri(资源) Authority 访问权限, <br>
@@ -105,17 +149,10 @@ public abstract class AbstractUriAuthorizeService implements UriAuthorizeService
     public boolean hasPermission(Authentication authentication, HttpServletRequest request) {
 
         String requestUri = MvcUtil.getUrlPathHelper().getPathWithinApplication(request);
-        // Map<uri, Set<permission>>
-        final Map<String, Set<String>> uriAuthorityOfUserRoleMap = getUriAuthorityMapOfUser(authentication);
+        final UriAuthorityView uriAuthorityView = getUriAuthorityView(authentication);
 
-        final String method = request.getMethod();
-
-        return uriAuthorityOfUserRoleMap.entrySet()
-                                        .stream()
-                                        // 通过 antPathMatcher 检查用户权限集合中 uri 是否匹配 requestUri
-                                        .filter(entry -> antPathMatcher.match(entry.getKey(), requestUri))
-                                        // 用户的 authority 的 permission 是否 method 对应的 permission 后缀匹配
-                                        .anyMatch(entry -> isMatchByMethod(method, entry.getValue()));
+        // 通过预编译的 uri 前缀树匹配 requestUri, 并检查用户角色是否拥有 method 对应的 permission
+        return uriAuthorityView.hasPermissionOfMethod(requestUri, request.getMethod());
 
     }
 
@@ -129,18 +166,42 @@ public abstract class AbstractUriAuthorizeService implements UriAuthorizeService
     @Override
     public boolean hasPermission(Authentication authentication, final String requestUri, final String uriAuthority) {
 
-        // Map<uri, Set<permission>>
-        Map<String, Set<String>> uriAuthorityOfUserRoleMap = getUriAuthorityMapOfUser(authentication);
+        final UriAuthorityView uriAuthorityView = getUriAuthorityView(authentication);
 
-        return uriAuthorityOfUserRoleMap.entrySet()
-                                        .stream()
-                                        // requestUri 是否匹配(antPathMatcher)用户所拥有权限的 uri
-                                        .filter(entry -> antPathMatcher.match(entry.getKey(), requestUri))
-                                        // uri 相对应的 authorities set 是否包含 userAuthority
-                                        .anyMatch(entry -> entry.getValue().contains(uriAuthority));
+        // requestUri 是否匹配用户所拥有权限的 uri, 且 uri 相对应的 authorities 包含 uriAuthority
+        return uriAuthorityView.hasPermission(requestUri, uriAuthority);
 
     }
 
+    /**
+     * 清除已缓存的用户权限视图与已编译的 uri(资源) 权限匹配器, 用户权限视图缓存通过整体替换实现.
+     */
+    @Override
+    public void clearAuthoritiesCache() {
+        // 先递增版本号, 并发请求中以旧版本编译的匹配器不会再被使用
+        this.authoritiesVersion.incrementAndGet();
+        this.uriAuthorityViewCache = new UriAuthorityViewCache(this.viewCacheSize);
+        this.uriAuthorityMatcherCache.clear();
+    }
+
+    /**
+     * 获取用户权限视图缓存, 可用于获取缓存的命中/未命中统计
+     * @return UriAuthorityViewCache
+     */
+    @NonNull
+    public UriAuthorityViewCache getUriAuthorityViewCache() {
+        return this.uriAuthorityViewCache;
+    }
+
+    /**
+     * 设置用户权限视图缓存的最大数量, 默认为 {@link #DEFAULT_VIEW_CACHE_SIZE}, 设置后替换原有缓存.
+     * @param viewCacheSize 用户权限视图缓存的最大数量
+     */
+    public void setViewCacheSize(int viewCacheSize) {
+        this.viewCacheSize = viewCacheSize;
+        this.uriAuthorityViewCache = new UriAuthorityViewCache(viewCacheSize);
+    }
+
     /**
      * 获取用户角色的 uri 权限 Map
      * @param rolesAuthoritiesMap   所有角色 uri(资源) 权限 Map(role, map(uri, Set(permission)))
@@ -165,7 +226,88 @@ public abstract class AbstractUriAuthorizeService implements UriAuthorizeService
     }
 
     /**
-     * 根据 authentication 获取用户所拥有的所有角色的 uri(资源) 权限. 这里包含了多租户 与 SCOPE 逻辑. <br>
+     * 根据 authentication 获取用户的 uri(资源) 权限视图. 先从用户权限视图缓存中获取, 当权限版本或权限 Map 的引用变化时重新生成.
+     * @param authentication    {@link Authentication}
+     * @return  UriAuthorityView
+     */
+    @NonNull
+    private UriAuthorityView getUriAuthorityView(@NonNull Authentication authentication) {
+
+        // 在获取权限之前读取版本号, 保证匹配器的版本号不会新于其编译的权限
+        final long version = this.authoritiesVersion.get();
+        final UserAuthorities userAuthorities = getUserAuthorities(authentication);
+        final Map<String, Map<String, Set<String>>> rolesAuthorities = getRolesAuthorities(userAuthorities);
+        final String authorityKey = userAuthorities.getAuthorityKey();
+        final UriAuthorityViewCache viewCache = this.uriAuthorityViewCache;
+
+        UriAuthorityView view = viewCache.get(authorityKey);
+        if (view != null && view.getMatcher().isCompiledFrom(rolesAuthorities, version)) {
+            return view;
+        }
+
+        view = new UriAuthorityView(getUriAuthorityMatcher(userAuthorities, rolesAuthorities, version),
+                                    userAuthorities.roleSet);
+        viewCache.put(authorityKey, view);
+        return view;
+    }
+
+    /**
+     * 根据 userAuthorities 获取用户所对应的(角色/多租户/SCOPE)的所有角色的 uri(资源) 权限.
+     * @param userAuthorities   用户的 角色/多租户/SCOPE 权限
+     * @return  所有角色的 uri(资源) 权限 Map(role, Map(uri, Set(permission)))
+     */
+    @NonNull
+    private Map<String, Map<String, Set<String>>> getRolesAuthorities(@NonNull UserAuthorities userAuthorities) {
+        if (null != userAuthorities.tenantAuthority) {
+            // 获取此租户 ID 的所有角色的资源权限的 Map
+            return getRolesAuthoritiesOfTenant(userAuthorities.tenantAuthority);
+        }
+        else if (userAuthorities.scopeSet.size() > 0) {
+            // 获取此 scopeSet 的所有角色的资源权限的 Map
+            return getRolesAuthoritiesOfScope(userAuthorities.scopeSet);
+        }
+        // 获取所有角色的资源权限的 Map
+        return getRolesAuthorities();
+    }
+
+    /**
+     * 获取用户所对应的(角色/多租户/SCOPE)已编译的 uri(资源) 权限匹配器. 当权限版本或权限 Map 的引用变化时重新编译.
+     * @param userAuthorities   用户的 角色/多租户/SCOPE 权限
+     * @param rolesAuthorities  用户所对应的(角色/多租户/SCOPE)的所有角色的 uri(资源) 权限
+     * @param version           权限版本号
+     * @return  UriAuthorityMatcher
+     */
+    @NonNull
+    private UriAuthorityMatcher getUriAuthorityMatcher(@NonNull UserAuthorities userAuthorities,
+                                                       @NonNull Map<String, Map<String, Set<String>>> rolesAuthorities,
+                                                       long version) {
+
+        final String matcherKey;
+        if (null != userAuthorities.tenantAuthority) {
+            matcherKey = userAuthorities.tenantAuthority;
+        }
+        else if (userAuthorities.scopeSet.size() > 0) {
+            matcherKey = String.join(PERMISSION_DELIMITER, new TreeSet<>(userAuthorities.scopeSet));
+        }
+        else {
+            matcherKey = ROLE_MATCHER_KEY;
+        }
+
+        UriAuthorityMatcher matcher = this.uriAuthorityMatcherCache.get(matcherKey);
+        if (matcher != null && matcher.isCompiledFrom(rolesAuthorities, version)) {
+            return matcher;
+        }
+
+        matcher = UriAuthorityMatcher.compile(rolesAuthorities, version, this.antPathMatcher);
+        if (this.uriAuthorityMatcherCache.size() >= MAX_MATCHER_CACHE_SIZE) {
+            this.uriAuthorityMatcherCache.clear();
+        }
+        this.uriAuthorityMatcherCache.put(matcherKey, matcher);
+        return matcher;
+    }
+
+    /**
+     * 根据 authentication 获取用户的 角色/多租户/SCOPE 权限. <br>
      * <pre>
      * Collection<? extends GrantedAuthority> authorities = authentication.getAuthorities();
      * // 此 authorities 可以包含:  [ROLE_A, ROLE_B, TENANT_110110, SCOPE_read, SCOPE_write]
@@ -175,53 +317,30 @@ public abstract class AbstractUriAuthorizeService implements UriAuthorizeService
      * //    3. 多租户数量  = 1
      * </pre>
      * @param authentication    {@link Authentication}
-     * @return  用户所拥有的所有角色的 uri(资源) 权限 Map(uri, Set(permission))
+     * @return  用户的 角色/多租户/SCOPE 权限
      */
     @NonNull
-    private Map<String, Set<String>> getUriAuthorityMapOfUser(@NonNull Authentication authentication) {
+    private UserAuthorities getUserAuthorities(@NonNull Authentication authentication) {
 
         // 获取角色权限集合
         Set<String> authoritySet = AuthorityUtils.authorityListToSet(authentication.getAuthorities());
 
         int size = authoritySet.size();
-        // 存储用户角色的集合
-        final Set<String> roleSet = new HashSet<>(size);
-        // 存储多组户 ID
-        final String[] tenantAuthority = new String[]{null};
-        // 存储 SCOPE 的集合
-        final Set<String> scopeSet = new HashSet<>(size);
+        final UserAuthorities userAuthorities = new UserAuthorities(size);
 
         authoritySet.forEach(authority -> {
             if (authority.startsWith(DEFAULT_ROLE_PREFIX)) {
-                roleSet.add(authority);
+                userAuthorities.roleSet.add(authority);
             }
             else if (authority.startsWith(DEFAULT_TENANT_PREFIX)) {
-                tenantAuthority[0] = authority;
+                userAuthorities.tenantAuthority = authority;
             }
             else if (authority.startsWith(DEFAULT_SCOPE_PREFIX)) {
-                scopeSet.add(authority);
+                userAuthorities.scopeSet.add(authority);
             }
         });
 
-        // 用户所拥有的所有角色的 uri(资源) 权限 Map(uri, Set(permission))
-        final Map<String, Map<String, Set<String>>> rolesAuthorities;
-
-        if (null != tenantAuthority[0]) {
-            // 获取此租户 ID 的所有角色的资源权限的 Map
-            rolesAuthorities = getRolesAuthoritiesOfTenant(tenantAuthority[0]);
-        }
-        else if (scopeSet.size() > 0) {
-            // 获取此 scopeSet 的所有角色的资源权限的 Map
-            rolesAuthorities = getRolesAuthoritiesOfScope(scopeSet);
-        }
-        else {
-            // 获取所有角色的资源权限的 Map
-            rolesAuthorities = getRolesAuthorities();
-        }
-
-        // 基于用户 roleSet 的 Map<uri, Set<permission>>
-        return getUriAuthoritiesOfUserRole(rolesAuthorities, roleSet);
-
+        return userAuthorities;
     }
 
     @NonNull
@@ -239,24 +358,40 @@ public abstract class AbstractUriAuthorizeService implements UriAuthorizeService
     }
 
     /**
-     * 检查 userAuthoritySet 中的权限后缀是否与 requestMethod 相匹配.
-     * @param requestMethod     requestMethod
-     * @param userAuthoritySet  userAuthoritySet
-     * @return  是否匹配
+     * 用户的 角色/多租户/SCOPE 权限
      */
-    private boolean isMatchByMethod(@NonNull String requestMethod, @Nullable Set<String> userAuthoritySet) {
-        if (CollectionUtils.isEmpty(userAuthoritySet))
-        {
-            return false;
+    private static class UserAuthorities {
+        /**
+         * 存储用户角色的集合
+         */
+        private final Set<String> roleSet;
+        /**
+         * 存储 SCOPE 的集合
+         */
+        private final Set<String> scopeSet;
+        /**
+         * 存储多组户 ID
+         */
+        private String tenantAuthority;
+
+        private UserAuthorities(int size) {
+            this.roleSet = new HashSet<>(size);
+            this.scopeSet = new HashSet<>(size);
         }
 
-        String permission = PermissionType.getPermission(HttpMethod.valueOf(requestMethod));
-        if (permission == null)
-        {
-            return false;
+        /**
+         * 规范化的 角色/多租户/SCOPE 权限, 如: ROLE_A,ROLE_B,TENANT_110110,SCOPE_read
+         * @return 排序后以逗号分隔的权限字符串
+         */
+        @NonNull
+        private String getAuthorityKey() {
+            final Set<String> authorities = new TreeSet<>(this.roleSet);
+            if (this.tenantAuthority != null) {
+                authorities.add(this.tenantAuthority);
+            }
+            authorities.addAll(this.scopeSet);
+            return String.join(PERMISSION_DELIMITER, authorities);
         }
-
-        return userAuthoritySet.stream().anyMatch(authority -> authority.equals(permission));
     }
 
 }
\ No newline at end of file
@@ -22,6 +22,10 @@
  */
 package top.dcenter.ums.security.core.api.permission.service;
 
+import top.dcenter.ums.security.core.permission.service.CopyOnWriteRolesAuthorities;
+
+import java.util.Map;
+
 /**
  * 用于更新或缓存基于(角色/多租户/SCOPE)的角色权限服务接口, 每次更新角色的 uri(资源)权限时,需要调用此接口,
  * 推荐实现此 {@link RolePermissionsService} 接口, 会自动通过 AOP 方式实现发布 UpdateRolesAuthoritiesEvent 事件,
@@ -30,6 +34,7 @@ package top.dcenter.ums.security.core.api.permission.service;
  * 1. 基于 角色 的权限控制: 实现所有角色 uri(资源) 的权限 Map(role, map(uri, Set(permission))) 的更新与缓存本机内存.
  * 2. 基于 SCOPE 的权限控制: 情况复杂一点, 但 SCOPE 类型比较少, 也还可以像 1 的方式实现缓存本机内存与更新.
  * 3. 基于 多租户 的权限控制: 情况比较复杂, 租户很少的情况下, 也还可以全部缓存在本机内存, 通常情况下全部缓存内存不现实, 只能借助于类似 redis 等的内存缓存.
+ * 4. 角色较多时建议实现 {@link #updateAuthoritiesOfRoles(Map)}, 只更新变更角色的权限, 可以通过 {@link CopyOnWriteRolesAuthorities} 缓存.
  * @author YongWu zheng
  * @version V2.0  Created by 2020/11/8 21:15
  */
@@ -57,4 +62,31 @@ public interface UpdateAndCacheAuthoritiesService {
         throw new RuntimeException("未实现基于 SCOPE 的权限控制的更新或缓存所有角色的权限服务");
     }
 
+    /**
+     * 用于基于 角色 的权限控制的增量更新, 只更新 roleResourceIdsMap 中角色的权限, 默认调用 {@link #updateAuthoritiesOfAllRoles()}.<br>
+     * 短时间内的多次角色权限更新会合并为一次调用, 同一角色只保留最后一次更新的 resourceIds.
+     * @param roleResourceIdsMap    Map(roleId, 角色更新后所拥有的所有资源 Ids), resourceIds 可能为 null
+     */
+    default void updateAuthoritiesOfRoles(Map<Long, Long[]> roleResourceIdsMap) {
+        updateAuthoritiesOfAllRoles();
+    }
+
+    /**
+     * 用于基于 多租户 的权限控制的更新或缓存指定租户的所有角色的权限服务, 默认调用 {@link #updateAuthoritiesOfAllTenant()},
+     * 租户较多时建议实现此方法, 只更新此租户的权限.
+     * @param tenantAuthority   多租户权限, 如: TENANT_110110, 110110 为租户 ID
+     */
+    default void updateAuthoritiesOfTenant(String tenantAuthority) {
+        updateAuthoritiesOfAllTenant();
+    }
+
+    /**
+     * 用于基于 SCOPE 的权限控制的更新或缓存指定 scope 的所有角色的权限服务, 默认调用 {@link #updateAuthoritiesOfAllScopes()},
+     * 需要时实现此方法, 只更新此 scope 的权限.
+     * @param scopeAuthority    scope 权限, 如: SCOPE_read
+     */
+    default void updateAuthoritiesOfScope(String scopeAuthority) {
+        updateAuthoritiesOfAllScopes();
+    }
+
 }
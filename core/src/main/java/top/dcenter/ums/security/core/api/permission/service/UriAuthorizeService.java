@@ -169,4 +169,11 @@ public interface UriAuthorizeService {
      */
     AntPathMatcher getAntPathMatcher();
 
+    /**
+     * 清除缓存的用户 uri(资源) 权限, 角色/多租户/SCOPE 的权限更新后调用.
+     */
+    default void clearAuthoritiesCache() {
+        // 默认没有缓存, do nothing
+    }
+
 }
\ No newline at end of file
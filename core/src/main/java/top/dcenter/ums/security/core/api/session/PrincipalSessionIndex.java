@@ -0,0 +1,70 @@
+/*
+ * MIT License
+ * Copyright (c) 2020-2029 YongWu zheng (dcenter.top and gitee.com/pcore and github.com/ZeroOrInfinity)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package top.dcenter.ums.security.core.api.session;
+
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import top.dcenter.ums.security.core.api.session.strategy.EnhanceConcurrentControlAuthenticationStrategy;
+
+import java.util.List;
+
+/**
+ * 用户 session 索引: 每个用户的 session 按最近访问时间排序, 用于并发 session 数量控制, 此接口应用在
+ * {@link EnhanceConcurrentControlAuthenticationStrategy} 中.<br>
+ * 登录时只需对索引做一次原子的准入与淘汰, 不再加载用户的所有 session.<br><br>
+ *     实现此接口并注入 IOC 容器即可替换默认的 redis 实现.
+ * @author YongWu zheng
+ * @version V2.0  Created by 2020/12/6 10:30
+ */
+public interface PrincipalSessionIndex {
+
+    /**
+     * 原子地把 session 加入用户 session 索引, 超过最大 session 数量时淘汰最久未访问的 session 或拒绝登录.
+     * sessionId 已在索引中时只刷新最近访问时间.
+     * @param principal             用户名
+     * @param sessionId             sessionId
+     * @param maximumSessions       用户最大 session 数量
+     * @param preventsLogin         超过最大 session 数量时是否拒绝登录
+     * @param maxInactiveInterval   session 的最大不活动时间(秒), 小于等于 0 时表示 session 永不过期
+     * @return  被淘汰的 sessionId 列表; 返回 null 表示超过最大 session 数量且拒绝登录
+     */
+    @Nullable
+    List<String> admit(@NonNull String principal, @NonNull String sessionId, int maximumSessions,
+                       boolean preventsLogin, int maxInactiveInterval);
+
+    /**
+     * 刷新 session 在用户 session 索引中的最近访问时间, sessionId 不在索引中(如已被淘汰)时不做任何操作
+     * @param principal             用户名
+     * @param sessionId             sessionId
+     * @param maxInactiveInterval   session 的最大不活动时间(秒), 小于等于 0 时表示 session 永不过期
+     */
+    void touch(@NonNull String principal, @NonNull String sessionId, int maxInactiveInterval);
+
+    /**
+     * 从用户 session 索引中删除 session
+     * @param principal     用户名
+     * @param sessionId     sessionId
+     */
+    void remove(@NonNull String principal, @NonNull String sessionId);
+}
@@ -28,6 +28,7 @@ import org.springframework.context.ApplicationEvent;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.ApplicationEventPublisherAware;
 import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.session.SessionInformation;
 import org.springframework.security.core.session.SessionRegistry;
@@ -37,6 +38,7 @@ import org.springframework.security.web.authentication.session.SessionAuthentica
 import org.springframework.security.web.authentication.session.SessionFixationProtectionEvent;
 import org.springframework.util.Assert;
 import org.springframework.web.util.WebUtils;
+import top.dcenter.ums.security.core.api.session.PrincipalSessionIndex;
 import top.dcenter.ums.security.core.api.session.SessionEnhanceCheckService;
 import top.dcenter.ums.security.core.auth.properties.ClientProperties;
 
@@ -46,9 +48,13 @@ import javax.servlet.http.HttpSession;
 import java.util.Comparator;
 import java.util.List;
 
+import static top.dcenter.ums.security.common.consts.SecurityConstants.SESSION_INDEX_TOUCH_TIME_KEY;
+
 /**
  * 组合了 {@link ConcurrentSessionControlAuthenticationStrategy} 与 {@link ChangeSessionIdAuthenticationStrategy}.<br><br>
  * 增加 client 特征的校验, 增强 csrf 防范. <br><br>
+ * 设置了 {@link PrincipalSessionIndex} 时, 并发 session 数量控制通过用户 session 索引原子地完成准入与淘汰,
+ * 不再每次登录都加载用户的所有 session. <br><br>
  *     继承此类后注入 IOC 容器可替换此类
  * @see ConcurrentSessionControlAuthenticationStrategy
  * @see ChangeSessionIdAuthenticationStrategy
@@ -77,6 +83,11 @@ public class EnhanceConcurrentControlAuthenticationStrategy extends ConcurrentSe
      */
     private boolean alwaysCreateSession;
 
+    /**
+     * 用户 session 索引, 为 null 时通过 {@link SessionRegistry#getAllSessions(Object, boolean)} 控制并发 session 数量
+     */
+    private PrincipalSessionIndex principalSessionIndex;
+
     /**
      * @param sessionEnhanceCheckService    用于而外的 session 检验服务, 如客户端特征码等
      * @param sessionRegistry the session registry which should be updated when the
@@ -102,6 +113,12 @@ public class EnhanceConcurrentControlAuthenticationStrategy extends ConcurrentSe
         // concurrent control
         if (clientProperties.getSession().getSessionNumberControl())
         {
+            if (this.principalSessionIndex != null)
+            {
+                admitByPrincipalSessionIndex(authentication, request);
+                return;
+            }
+
             final List<SessionInformation> sessions = sessionRegistry.getAllSessions(
                     authentication.getPrincipal(), false);
 
@@ -179,6 +196,43 @@ public class EnhanceConcurrentControlAuthenticationStrategy extends ConcurrentSe
 
     }
 
+    /**
+     * 通过用户 session 索引原子地完成并发 session 数量的检查与最久未访问 session 的淘汰, 只需一次 redis 往返.
+     * @param authentication    authentication
+     * @param request           request
+     * @throws SessionAuthenticationException 超过最大 session 数量且拒绝登录时
+     */
+    protected void admitByPrincipalSessionIndex(@NonNull Authentication authentication,
+                                                @NonNull HttpServletRequest request) throws SessionAuthenticationException {
+        int allowedSessions = getMaximumSessionsForThisUser(authentication);
+        if (allowedSessions == -1) {
+            // We permit unlimited logins
+            return;
+        }
+
+        HttpSession session = request.getSession();
+        final List<String> evictedSessionIds = this.principalSessionIndex.admit(authentication.getName(), session.getId(),
+                                                                                allowedSessions, exceptionIfMaximumExceeded,
+                                                                                session.getMaxInactiveInterval());
+        if (evictedSessionIds == null) {
+            throw new SessionAuthenticationException(messages.getMessage(
+                    "ConcurrentSessionControlAuthenticationStrategy.exceededAllowed",
+                    new Object[] {allowedSessions},
+                    "Maximum sessions of {0} for this principal exceeded"));
+        }
+        session.setAttribute(SESSION_INDEX_TOUCH_TIME_KEY, System.currentTimeMillis());
+        // 启用用户 session 索引时不再配置 RegisterSessionAuthenticationStrategy, 在这里注册新的 session
+        sessionRegistry.registerNewSession(session.getId(), authentication.getPrincipal());
+
+        // 只加载被淘汰的 session
+        for (String sessionId : evictedSessionIds) {
+            SessionInformation sessionInformation = sessionRegistry.getSessionInformation(sessionId);
+            if (sessionInformation != null) {
+                sessionInformation.expireNow();
+            }
+        }
+    }
+
     /**
      * Allows subclasses to customise behaviour when too many sessions are detected.
      *
@@ -295,6 +349,14 @@ public class EnhanceConcurrentControlAuthenticationStrategy extends ConcurrentSe
         this.alwaysCreateSession = alwaysCreateSession;
     }
 
+    /**
+     * 设置用户 session 索引, 为 null 时通过 {@link SessionRegistry#getAllSessions(Object, boolean)} 控制并发 session 数量
+     * @param principalSessionIndex 用户 session 索引
+     */
+    public void setPrincipalSessionIndex(@Nullable PrincipalSessionIndex principalSessionIndex) {
+        this.principalSessionIndex = principalSessionIndex;
+    }
+
     protected static final class NullEventPublisher implements ApplicationEventPublisher {
         @Override
         public void publishEvent(@NonNull ApplicationEvent event) {
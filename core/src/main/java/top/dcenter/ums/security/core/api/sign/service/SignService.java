@@ -25,6 +25,7 @@ package top.dcenter.ums.security.core.api.sign.service;
 
 import org.springframework.lang.NonNull;
 import top.dcenter.ums.security.core.sign.UserSignServiceImpl;
+import top.dcenter.ums.security.core.util.SignUtil;
 
 import java.io.UnsupportedEncodingException;
 import java.time.LocalDate;
@@ -45,6 +46,14 @@ import java.util.Map;
  * 8. 获取用户最近几天的签到情况<br>
  * 9. 删除指定用户与指定日期的数据<br>
  * 10. 删除指定月份的用户签到统计数据<br>
+ * 11. 批量检查多个用户是否签到<br>
+ * 12. 批量获取多个用户当月签到次数<br>
+ * 13. 批量获取多个用户当月最近连续签到次数<br>
+ * 14. 批量获取多个用户当月的签到位图<br>
+ * 15. 批量获取多个用户最近几天的签到位图<br>
+ * 批量接口的返回值与 uids 的顺序一一对应, 默认实现逐个调用单个用户的接口, 实现类应覆盖为一次批量查询.
+ * 签到位图的解析见 {@link SignUtil#isSigned(long, int)} 与 {@link SignUtil#isSignedDaysAgo(long, int)}.<br>
+ * 每天所有用户签到的全局统计查询见 {@link SignStatisticsService}.<br>
  * @author YongWu zheng
  * @version V1.0
  * Created by 2020/9/13 21:21
@@ -178,4 +187,114 @@ public interface SignService {
      */
     Map<String, Boolean> getSignInfoForTheLastFewDays(String uid, LocalDate date, int lastFewDays) throws UnsupportedEncodingException;
 
-}
\ No newline at end of file
+    /**
+     * 批量检查多个用户是否签到
+     *
+     * @param uids  用户ID列表
+     * @param date  日期
+     * @return 与 uids 顺序对应的签到状态
+     * @throws UnsupportedEncodingException UnsupportedEncodingException
+     */
+    default boolean[] checkSigns(@NonNull List<String> uids, @NonNull LocalDate date) throws UnsupportedEncodingException {
+        final boolean[] result = new boolean[uids.size()];
+        for (int i = 0; i < result.length; i++)
+        {
+            result[i] = checkSign(uids.get(i), date);
+        }
+        return result;
+    }
+
+    /**
+     * 批量获取多个用户当月签到次数
+     *
+     * @param uids  用户ID列表
+     * @param date  日期
+     * @return 与 uids 顺序对应的当月签到次数
+     * @throws UnsupportedEncodingException UnsupportedEncodingException
+     */
+    default int[] getSignCounts(@NonNull List<String> uids, @NonNull LocalDate date) throws UnsupportedEncodingException {
+        final int[] result = new int[uids.size()];
+        for (int i = 0; i < result.length; i++)
+        {
+            result[i] = (int) getSignCount(uids.get(i), date);
+        }
+        return result;
+    }
+
+    /**
+     * 批量获取多个用户当月连续签到次数
+     *
+     * @param uids  用户ID列表
+     * @param date  日期
+     * @return 与 uids 顺序对应的当月连续签到次数
+     * @throws UnsupportedEncodingException UnsupportedEncodingException
+     */
+    default int[] getContinuousSignCounts(@NonNull List<String> uids, @NonNull LocalDate date) throws UnsupportedEncodingException {
+        final int[] result = new int[uids.size()];
+        for (int i = 0; i < result.length; i++)
+        {
+            result[i] = (int) getContinuousSignCount(uids.get(i), date);
+        }
+        return result;
+    }
+
+    /**
+     * 批量获取多个用户当月的签到位图
+     *
+     * @param uids  用户ID列表
+     * @param date  日期
+     * @return 与 uids 顺序对应的当月签到位图, 第 n 位(从 0 开始)表示当月第 n + 1 天, 为 1 表示已签到
+     * @throws UnsupportedEncodingException UnsupportedEncodingException
+     */
+    default long[] getSignBitmaps(@NonNull List<String> uids, @NonNull LocalDate date) throws UnsupportedEncodingException {
+        final long[] result = new long[uids.size()];
+        final int lengthOfMonth = date.lengthOfMonth();
+        for (int i = 0; i < result.length; i++)
+        {
+            final Map<String, Boolean> signInfo = getSignInfo(uids.get(i), date);
+            long bitmap = 0L;
+            for (int day = 1; day <= lengthOfMonth; day++)
+            {
+                if (Boolean.TRUE.equals(signInfo.get(SignUtil.formatDate(date.withDayOfMonth(day), "yyyy-MM-dd"))))
+                {
+                    bitmap |= 1L << (day - 1);
+                }
+            }
+            result[i] = bitmap;
+        }
+        return result;
+    }
+
+    /**
+     * 批量获取多个用户最近几天的签到位图, 多少天由 lastFewDays 决定
+     *
+     * @param uids          用户ID列表
+     * @param date          日期
+     * @param lastFewDays   最近几天, 1 - 64(位图的位数), 超出范围时抛出 {@link IllegalArgumentException}
+     * @return 与 uids 顺序对应的最近几天的签到位图, 第 n 位(从 0 开始)表示 date 的 n 天前, 为 1 表示已签到
+     * @throws UnsupportedEncodingException UnsupportedEncodingException
+     */
+    default long[] getSignBitmapsForTheLastFewDays(@NonNull List<String> uids, @NonNull LocalDate date,
+                                                   int lastFewDays) throws UnsupportedEncodingException {
+        if (lastFewDays < 1 || lastFewDays > Long.SIZE)
+        {
+            throw new IllegalArgumentException("lastFewDays must be between 1 and 64: " + lastFewDays);
+        }
+        final long[] result = new long[uids.size()];
+        for (int i = 0; i < result.length; i++)
+        {
+            final Map<String, Boolean> signInfo = getSignInfoForTheLastFewDays(uids.get(i), date, lastFewDays);
+            long bitmap = 0L;
+            for (int daysAgo = 0; daysAgo < lastFewDays; daysAgo++)
+            {
+                if (Boolean.TRUE.equals(signInfo.get(SignUtil.formatDate(date.minusDays(daysAgo), "yyyy-MM-dd"))))
+                {
+                    bitmap |= 1L << daysAgo;
+                }
+            }
+            result[i] = bitmap;
+        }
+        return result;
+    }
+
+}
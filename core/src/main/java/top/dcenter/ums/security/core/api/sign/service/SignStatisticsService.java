@@ -0,0 +1,104 @@
+/*
+ * MIT License
+ * Copyright (c) 2020-2029 YongWu zheng (dcenter.top and gitee.com/pcore and github.com/ZeroOrInfinity)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package top.dcenter.ums.security.core.api.sign.service;
+
+import org.springframework.lang.NonNull;
+import top.dcenter.ums.security.core.sign.UserSignStatisticsServiceImpl;
+
+import java.io.UnsupportedEncodingException;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 每天所有用户签到的全局统计接口<br><br>
+ * 需要开启每天所有用户签到的全局统计(SignProperties#getDailySignStatisticsType() 不为 NONE), 未开启时不会注入 IOC;
+ * 要自定义全局统计功能, 实现此接口, 注入 IOC 即可替换 {@link UserSignStatisticsServiceImpl}<br><br>
+ * 实现功能：<br>
+ * 1. 获取某天签到的用户数<br>
+ * 2. 获取多天中任意一天签到的用户数(并集)<br>
+ * 3. 获取多天中每天都签到的用户数(交集)<br>
+ * 4. 获取留存率(D1/D7 等与日期范围)<br>
+ * @author YongWu zheng
+ * @version V2.0  Created by 2020/12/6 10:36
+ */
+public interface SignStatisticsService {
+
+    /**
+     * 获取某天签到的用户数
+     *
+     * @param date  日期
+     * @return 当天签到的用户数
+     * @throws UnsupportedEncodingException UnsupportedEncodingException
+     */
+    long getDailySignUserCount(@NonNull LocalDate date) throws UnsupportedEncodingException;
+
+    /**
+     * 获取多天中任意一天签到的用户数(并集)
+     *
+     * @param dates 日期列表
+     * @return 任意一天签到的用户数
+     * @throws UnsupportedEncodingException UnsupportedEncodingException
+     */
+    long getSignUserCountOfAnyDays(@NonNull List<LocalDate> dates) throws UnsupportedEncodingException;
+
+    /**
+     * 获取多天中每天都签到的用户数(交集)
+     *
+     * @param dates 日期列表
+     * @return 每天都签到的用户数
+     * @throws UnsupportedEncodingException UnsupportedEncodingException
+     */
+    long getSignUserCountOfAllDays(@NonNull List<LocalDate> dates) throws UnsupportedEncodingException;
+
+    /**
+     * 获取 cohortDate 签到的用户在之后第 N 天的留存率, 例如: dayOffsets 为 {1, 7} 时返回 D1 与 D7 留存率
+     *
+     * @param cohortDate    同期群的签到日期
+     * @param dayOffsets    之后的第几天
+     * @return 与 dayOffsets 顺序对应的留存率(0.0 - 1.0), cohortDate 没有用户签到时为 0.0
+     * @throws UnsupportedEncodingException UnsupportedEncodingException
+     */
+    default double[] getRetentionRates(@NonNull LocalDate cohortDate, @NonNull int[] dayOffsets) throws UnsupportedEncodingException {
+        final double[] result = new double[dayOffsets.length];
+        for (int i = 0; i < result.length; i++)
+        {
+            result[i] = getRetentionRate(Collections.singletonList(cohortDate),
+                                         Collections.singletonList(cohortDate.plusDays(dayOffsets[i])));
+        }
+        return result;
+    }
+
+    /**
+     * 获取日期范围的留存率: 在 cohortDates 任意一天签到的用户中, 在 returnDates 任意一天也签到的用户比例
+     *
+     * @param cohortDates   同期群的签到日期列表
+     * @param returnDates   回访的签到日期列表
+     * @return 留存率(0.0 - 1.0), cohortDates 没有用户签到时为 0.0
+     * @throws UnsupportedEncodingException UnsupportedEncodingException
+     */
+    double getRetentionRate(@NonNull List<LocalDate> cohortDates,
+                            @NonNull List<LocalDate> returnDates) throws UnsupportedEncodingException;
+
+}
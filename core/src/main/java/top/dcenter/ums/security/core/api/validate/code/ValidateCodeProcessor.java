@@ -24,7 +24,6 @@
 package top.dcenter.ums.security.core.api.validate.code;
 
 import org.springframework.data.redis.core.StringRedisTemplate;
-import org.springframework.util.StringUtils;
 import org.springframework.web.context.request.ServletWebRequest;
 import top.dcenter.ums.security.core.api.validate.code.enums.ValidateCodeCacheType;
 import top.dcenter.ums.security.core.api.validate.code.enums.ValidateCodeType;
@@ -105,49 +104,31 @@ public interface ValidateCodeProcessor {
                                  Class<? extends ValidateCode> validateCodeClass,
                                  ValidateCodeCacheType validateCodeCacheType,
                                  StringRedisTemplate stringRedisTemplate) throws ValidateCodeException {
-        // 获取 session 中的验证码
         HttpServletRequest req = request.getRequest();
         ValidateCodeType validateCodeType = getValidateCodeType();
 
-        ValidateCode codeInSession = validateCodeCacheType.getCodeInCache(request, validateCodeType,
-                                                                          validateCodeClass, stringRedisTemplate);
         // 获取 request 中的验证码
         String codeInRequest = request.getParameter(requestParamValidateCodeName);
 
-        // 检查 session 是否有值
-        if (codeInSession == null)
-        {
-            throw new ValidateCodeException(VALIDATE_CODE_EXPIRED, IpUtil.getRealIp(req), codeInRequest);
-        }
-
-        // 校验参数是否有效
-        if (!StringUtils.hasText(codeInRequest))
-        {
-            // 按照逻辑是前端过滤无效参数, 如果进入此逻辑, 按非正常访问处理
-            validateCodeCacheType.removeCache(request, validateCodeType, stringRedisTemplate);
-            throw new ValidateCodeException(VALIDATE_CODE_NOT_EMPTY, IpUtil.getRealIp(req), validateCodeType.name());
-        }
+        // 校验并消费缓存中的验证码, redis 缓存时一次往返完成校验与删除
+        ValidateCodeCacheType.ConsumeResult result =
+                validateCodeCacheType.validateAndConsume(request, validateCodeType, validateCodeClass,
+                                                         codeInRequest, stringRedisTemplate);
 
-        codeInRequest = codeInRequest.trim();
-
-        // 校验是否过期
-        if (codeInSession.isExpired())
+        switch (result)
         {
-            validateCodeCacheType.removeCache(request, validateCodeType, stringRedisTemplate);
-            throw new ValidateCodeException(VALIDATE_CODE_EXPIRED, IpUtil.getRealIp(req), codeInRequest);
+            case NOT_FOUND:
+                throw new ValidateCodeException(VALIDATE_CODE_EXPIRED, IpUtil.getRealIp(req), codeInRequest);
+            case EMPTY:
+                // 按照逻辑是前端过滤无效参数, 如果进入此逻辑, 按非正常访问处理
+                throw new ValidateCodeException(VALIDATE_CODE_NOT_EMPTY, IpUtil.getRealIp(req), validateCodeType.name());
+            case EXPIRED:
+                throw new ValidateCodeException(VALIDATE_CODE_EXPIRED, IpUtil.getRealIp(req), codeInRequest.trim());
+            case MISMATCH:
+                throw new ValidateCodeException(VALIDATE_CODE_ERROR, IpUtil.getRealIp(req), codeInRequest.trim());
+            default:
+                break;
         }
 
-        // 验证码校验
-        if (!codeInRequest.equalsIgnoreCase(codeInSession.getCode()))
-        {
-            if (!codeInSession.getReuse())
-            {
-                validateCodeCacheType.removeCache(request, validateCodeType, stringRedisTemplate);
-            }
-            throw new ValidateCodeException(VALIDATE_CODE_ERROR, IpUtil.getRealIp(req), codeInRequest);
-        }
-
-        validateCodeCacheType.removeCache(request, validateCodeType, stringRedisTemplate);
-
     }
 }
\ No newline at end of file
@@ -23,20 +23,23 @@
 package top.dcenter.ums.security.core.api.validate.code.enums;
 
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.annotation.Transient;
+import org.springframework.dao.DataAccessException;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.lang.NonNull;
 import org.springframework.lang.Nullable;
 import org.springframework.util.StringUtils;
 import org.springframework.web.context.request.ServletWebRequest;
 import top.dcenter.ums.security.core.api.validate.code.ValidateCode;
+import top.dcenter.ums.security.core.auth.validate.codes.ValidateCodeRedisCodec;
 import top.dcenter.ums.security.core.util.IpUtil;
 import top.dcenter.ums.security.core.util.MvcUtil;
 
 import javax.servlet.http.HttpServletRequest;
-import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.TimeUnit;
 
 /**
  * 验证码缓存类型
@@ -96,10 +99,18 @@ public enum ValidateCodeCacheType {
             Objects.requireNonNull(stringRedisTemplate, "stringRedisTemplate cannot be null");
             try {
                 removeUnnecessaryFieldValue(validateCode);
-                stringRedisTemplate.opsForValue().set(validateCodeType.getKeyPrefix() + request.getSessionId(),
-                                                      MvcUtil.toJsonString(validateCode),
-                                                      validateCodeType.getExpireIn(),
-                                                      TimeUnit.SECONDS);
+                final Map<String, String> hash = ValidateCodeRedisCodec.encode(validateCode);
+                // ARGV: expireIn, field1, value1, field2, value2 ...
+                final Object[] args = new Object[hash.size() * 2 + 1];
+                args[0] = String.valueOf(validateCodeType.getExpireIn());
+                int i = 1;
+                for (Map.Entry<String, String> entry : hash.entrySet()) {
+                    args[i++] = entry.getKey();
+                    args[i++] = entry.getValue();
+                }
+                stringRedisTemplate.execute(SAVE_SCRIPT,
+                                            Collections.singletonList(validateCodeType.getKeyPrefix() + request.getSessionId()),
+                                            args);
             }
             catch (Exception e) {
                 String msg = String.format("验证码保存到 redis 失败: error=%s, ip=%s, code=%s",
@@ -116,13 +127,47 @@ public enum ValidateCodeCacheType {
         public ValidateCode getCodeInCache(@NonNull ServletWebRequest request, @NonNull ValidateCodeType validateCodeType,
                                            @NonNull Class<? extends ValidateCode> clz,
                                            StringRedisTemplate stringRedisTemplate) {
-            final String json = stringRedisTemplate.opsForValue().get(validateCodeType.getKeyPrefix() + request.getSessionId());
+            final String key = validateCodeType.getKeyPrefix() + request.getSessionId();
+            final Map<Object, Object> hash;
+            try {
+                hash = stringRedisTemplate.opsForHash().entries(key);
+            }
+            catch (DataAccessException e) {
+                // 升级前以 json 字符串格式保存的验证码
+                final String json = stringRedisTemplate.opsForValue().get(key);
+                if (!StringUtils.hasText(json)) {
+                    return null;
+                }
+                return MvcUtil.json2Object(json, clz);
+            }
 
-            if (!StringUtils.hasText(json)) {
+            try {
+                return ValidateCodeRedisCodec.decode(hash, clz);
+            }
+            catch (ReflectiveOperationException e) {
+                log.error(String.format("从 redis 中获取验证码失败: key=%s, error=%s", key, e.getMessage()), e);
                 return null;
             }
+        }
+
+        @NonNull
+        @Override
+        public ConsumeResult validateAndConsume(@NonNull ServletWebRequest request,
+                                                @NonNull ValidateCodeType validateCodeType,
+                                                @NonNull Class<? extends ValidateCode> clz,
+                                                @Nullable String codeInRequest,
+                                                StringRedisTemplate stringRedisTemplate) {
 
-            return MvcUtil.json2Object(json, clz);
+            Objects.requireNonNull(stringRedisTemplate, "stringRedisTemplate cannot be null");
+            final Long result = stringRedisTemplate.execute(CONSUME_SCRIPT,
+                                                            Collections.singletonList(validateCodeType.getKeyPrefix() + request.getSessionId()),
+                                                            StringUtils.hasText(codeInRequest) ? codeInRequest.trim() : "",
+                                                            String.valueOf(System.currentTimeMillis()));
+            if (result == null || result < 0) {
+                // 升级前以 json 字符串格式保存的验证码
+                return super.validateAndConsume(request, validateCodeType, clz, codeInRequest, stringRedisTemplate);
+            }
+            return ConsumeResult.values()[result.intValue()];
         }
 
         @Override
@@ -134,6 +179,39 @@ public enum ValidateCodeCacheType {
         }
     };
 
+    /**
+     * 保存验证码: 删除旧值, 以 hash 保存并设置过期时间.<br>
+     * KEYS[1]: key, ARGV[1]: 过期秒数, ARGV[2..n]: field1, value1, field2, value2 ...
+     */
+    private static final RedisScript<Long> SAVE_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('DEL', KEYS[1]) " +
+            "if #ARGV > 1 then " +
+            "  redis.call('HMSET', KEYS[1], unpack(ARGV, 2)) " +
+            "  redis.call('EXPIRE', KEYS[1], ARGV[1]) " +
+            "end " +
+            "return 1",
+            Long.class);
+
+    /**
+     * 校验并消费验证码, 一次往返完成校验与删除, 返回值为 {@link ConsumeResult#ordinal()}, 旧的 json 字符串格式返回 -1.<br>
+     * KEYS[1]: key, ARGV[1]: 请求中的验证码(已 trim, 空字符串表示没有值), ARGV[2]: 当前 epoch 毫秒
+     */
+    private static final RedisScript<Long> CONSUME_SCRIPT = new DefaultRedisScript<>(
+            "local t = redis.call('TYPE', KEYS[1]).ok " +
+            "if t == 'none' then return 0 end " +
+            "if t ~= 'hash' then return -1 end " +
+            "local v = redis.call('HMGET', KEYS[1], '" + ValidateCodeRedisCodec.CODE_FIELD + "', '"
+                    + ValidateCodeRedisCodec.EXPIRE_FIELD + "', '" + ValidateCodeRedisCodec.REUSE_FIELD + "') " +
+            "if ARGV[1] == '' then redis.call('DEL', KEYS[1]) return 1 end " +
+            "if (not v[2]) or tonumber(ARGV[2]) > tonumber(v[2]) then redis.call('DEL', KEYS[1]) return 2 end " +
+            "if (not v[1]) or string.lower(v[1]) ~= string.lower(ARGV[1]) then " +
+            "  if v[3] ~= '1' then redis.call('DEL', KEYS[1]) end " +
+            "  return 3 " +
+            "end " +
+            "redis.call('DEL', KEYS[1]) " +
+            "return 4",
+            Long.class);
+
     /**
      * 保存验证码到缓存
      * @param request               {@link ServletWebRequest}
@@ -167,23 +245,76 @@ public enum ValidateCodeCacheType {
     public abstract void removeCache(@NonNull ServletWebRequest request, @NonNull ValidateCodeType validateCodeType,
                                      @Nullable StringRedisTemplate stringRedisTemplate);
 
+    /**
+     * 校验并消费缓存中的验证码: 校验通过, 验证码过期, 请求中验证码为空或校验失败且不复用时, 从缓存中移除验证码.
+     * @param request               {@link ServletWebRequest}
+     * @param validateCodeType      验证码类型
+     * @param clz                   验证码的 class
+     * @param codeInRequest         请求中的验证码
+     * @param stringRedisTemplate   stringRedisTemplate, 缓存类型不为 redis 时可以为 null
+     * @return  校验结果
+     */
+    @NonNull
+    public ConsumeResult validateAndConsume(@NonNull ServletWebRequest request,
+                                            @NonNull ValidateCodeType validateCodeType,
+                                            @NonNull Class<? extends ValidateCode> clz,
+                                            @Nullable String codeInRequest,
+                                            @Nullable StringRedisTemplate stringRedisTemplate) {
+
+        final ValidateCode codeInCache = getCodeInCache(request, validateCodeType, clz, stringRedisTemplate);
+        if (codeInCache == null) {
+            return ConsumeResult.NOT_FOUND;
+        }
+        if (!StringUtils.hasText(codeInRequest)) {
+            removeCache(request, validateCodeType, stringRedisTemplate);
+            return ConsumeResult.EMPTY;
+        }
+        if (codeInCache.isExpired()) {
+            removeCache(request, validateCodeType, stringRedisTemplate);
+            return ConsumeResult.EXPIRED;
+        }
+        if (!codeInRequest.trim().equalsIgnoreCase(codeInCache.getCode())) {
+            if (!codeInCache.getReuse()) {
+                removeCache(request, validateCodeType, stringRedisTemplate);
+            }
+            return ConsumeResult.MISMATCH;
+        }
+        removeCache(request, validateCodeType, stringRedisTemplate);
+        return ConsumeResult.SUCCESS;
+    }
+
     /**
      * 移除不必要的属性值
      * @param validateCode  验证码
      * @throws IllegalAccessException   IllegalAccessException
      */
     private static void removeUnnecessaryFieldValue(ValidateCode validateCode) throws IllegalAccessException {
+        ValidateCodeRedisCodec.removeUnnecessaryFieldValue(validateCode);
+    }
 
-        Field[] fields = validateCode.getClass().getDeclaredFields();
-
-        for (Field field : fields)
-        {
-            field.setAccessible(true);
-            Transient aTransient = field.getDeclaredAnnotation(Transient.class);
-            if (aTransient != null)
-            {
-                field.set(validateCode, null);
-            }
-        }
+    /**
+     * 校验并消费验证码的结果, 顺序与 redis lua 脚本的返回值对应, 不要修改顺序
+     */
+    public enum ConsumeResult {
+        /**
+         * 缓存中没有验证码
+         */
+        NOT_FOUND,
+        /**
+         * 请求中的验证码为空
+         */
+        EMPTY,
+        /**
+         * 验证码已过期
+         */
+        EXPIRED,
+        /**
+         * 验证码不匹配
+         */
+        MISMATCH,
+        /**
+         * 校验通过
+         */
+        SUCCESS
     }
 }
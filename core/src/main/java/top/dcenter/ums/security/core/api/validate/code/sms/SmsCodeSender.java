@@ -44,6 +44,28 @@ public interface SmsCodeSender {
      */
     boolean sendSms(String mobile, String validateCode);
 
+    /**
+     * 批量发送短信验证码, 异步发送短信验证码时使用. 短信网关支持批量提交时覆盖此方法与 {@link #getMaxBatchSize()}.
+     * @param mobiles       手机号码数组
+     * @param validateCodes 验证码数组, 与 mobiles 一一对应
+     * @return  每条短信发送是否成功的状态, 与 mobiles 一一对应
+     */
+    default boolean[] sendSms(String[] mobiles, String[] validateCodes) {
+        final boolean[] results = new boolean[mobiles.length];
+        for (int i = 0; i < mobiles.length; i++) {
+            results[i] = sendSms(mobiles[i], validateCodes[i]);
+        }
+        return results;
+    }
+
+    /**
+     * 批量发送短信验证码时每批次的最大短信数, 默认: 1, 即不支持批量发送
+     * @return  每批次的最大短信数
+     */
+    default int getMaxBatchSize() {
+        return 1;
+    }
+
     /**
      * 生成验证码
      * @return {@link ValidateCode}
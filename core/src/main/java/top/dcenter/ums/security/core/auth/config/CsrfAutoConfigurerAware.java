@@ -32,11 +32,20 @@ import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.builders.WebSecurity;
 import org.springframework.security.config.annotation.web.configurers.CsrfConfigurer;
 import org.springframework.security.web.csrf.CsrfFilter;
+import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
+import org.springframework.security.web.util.matcher.OrRequestMatcher;
+import org.springframework.security.web.util.matcher.RequestMatcher;
+import org.springframework.util.StringUtils;
 import top.dcenter.ums.security.common.api.config.HttpSecurityAware;
 import top.dcenter.ums.security.common.bean.UriHttpMethodTuple;
 import top.dcenter.ums.security.core.auth.filter.AjaxOrFormRequestFilter;
 import top.dcenter.ums.security.core.auth.properties.ClientProperties;
+import top.dcenter.ums.security.core.auth.properties.SmsCodeLoginAuthenticationProperties;
+import top.dcenter.ums.security.core.auth.properties.ValidateCodeProperties;
 
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -50,10 +59,17 @@ import java.util.Set;
 public class CsrfAutoConfigurerAware implements HttpSecurityAware {
 
     private final ClientProperties clientProperties;
+    private final ValidateCodeProperties validateCodeProperties;
+    private final SmsCodeLoginAuthenticationProperties smsCodeLoginAuthenticationProperties;
     private final ObjectMapper objectMapper;
 
-    public CsrfAutoConfigurerAware(ClientProperties clientProperties, ObjectMapper objectMapper) {
+    public CsrfAutoConfigurerAware(ClientProperties clientProperties,
+                                   ValidateCodeProperties validateCodeProperties,
+                                   SmsCodeLoginAuthenticationProperties smsCodeLoginAuthenticationProperties,
+                                   ObjectMapper objectMapper) {
         this.clientProperties = clientProperties;
+        this.validateCodeProperties = validateCodeProperties;
+        this.smsCodeLoginAuthenticationProperties = smsCodeLoginAuthenticationProperties;
         this.objectMapper = objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
     }
 
@@ -71,8 +87,38 @@ public class CsrfAutoConfigurerAware implements HttpSecurityAware {
     @SuppressWarnings("RedundantThrows")
     @Override
     public void preConfigure(HttpSecurity http) throws Exception {
-        // 添加 AjaxOrFormRequestFilter 增加对 Ajax 格式与 form 格式的解析,
-        http.addFilterBefore(new AjaxOrFormRequestFilter(objectMapper), CsrfFilter.class);
+        // 添加 AjaxOrFormRequestFilter 增加对 Ajax 格式与 form 格式的解析, 只缓存登录与验证码校验等 url 的请求体
+        RequestMatcher bufferingRequestMatcher = clientProperties.getBodyBufferingOfAllUrls() ? null : getBodyBufferingRequestMatcher();
+        http.addFilterBefore(new AjaxOrFormRequestFilter(objectMapper, bufferingRequestMatcher,
+                                                         clientProperties.getBodyBufferingMaxSize()),
+                             CsrfFilter.class);
+    }
+
+    /**
+     * 需要缓存请求体的 url: 登录(表单与短信), 验证码校验与 {@link ClientProperties#getBodyBufferingUrls()}
+     * @return  需要缓存请求体的请求的 RequestMatcher
+     */
+    private RequestMatcher getBodyBufferingRequestMatcher() {
+        Set<String> urls = new LinkedHashSet<>(clientProperties.getBodyBufferingUrls());
+        urls.add(clientProperties.getLoginProcessingUrl());
+        urls.add(smsCodeLoginAuthenticationProperties.getLoginProcessingUrlMobile());
+        urls.addAll(validateCodeProperties.getSms().getAuthUrls());
+        urls.addAll(validateCodeProperties.getImage().getAuthUrls());
+        urls.addAll(validateCodeProperties.getSlider().getAuthUrls());
+        urls.add(validateCodeProperties.getSlider().getSliderCheckUrl());
+        urls.addAll(validateCodeProperties.getTrack().getAuthUrls());
+        urls.addAll(validateCodeProperties.getSelection().getAuthUrls());
+        urls.addAll(validateCodeProperties.getCustomize().getAuthUrls());
+
+        List<RequestMatcher> matchers = new ArrayList<>(urls.size());
+        for (String url : urls)
+        {
+            if (StringUtils.hasText(url))
+            {
+                matchers.add(new AntPathRequestMatcher(url));
+            }
+        }
+        return matchers.isEmpty() ? request -> false : new OrRequestMatcher(matchers);
     }
 
     @Override
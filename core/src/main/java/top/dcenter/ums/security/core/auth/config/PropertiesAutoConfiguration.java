@@ -29,6 +29,7 @@ import org.springframework.core.annotation.Order;
 import top.dcenter.ums.security.core.auth.properties.ClientProperties;
 import top.dcenter.ums.security.core.auth.properties.SmsCodeLoginAuthenticationProperties;
 import top.dcenter.ums.security.core.auth.properties.ValidateCodeProperties;
+import top.dcenter.ums.security.core.permission.properties.PermissionProperties;
 import top.dcenter.ums.security.core.sign.properties.SignProperties;
 
 /**
@@ -39,6 +40,6 @@ import top.dcenter.ums.security.core.sign.properties.SignProperties;
 @Configuration()
 @Order(98)
 @EnableConfigurationProperties({ClientProperties.class, ValidateCodeProperties.class,
-        SmsCodeLoginAuthenticationProperties.class, SignProperties.class})
+        SmsCodeLoginAuthenticationProperties.class, SignProperties.class, PermissionProperties.class})
 public class PropertiesAutoConfiguration {
 }
\ No newline at end of file
@@ -24,24 +24,29 @@
 package top.dcenter.ums.security.core.auth.config;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.AutoConfigureAfter;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.security.core.session.SessionRegistry;
 import org.springframework.security.core.session.SessionRegistryImpl;
 import org.springframework.session.FindByIndexNameSessionRepository;
 import org.springframework.session.security.SpringSessionBackedSessionRegistry;
 import top.dcenter.ums.security.core.api.authentication.handler.BaseAuthenticationFailureHandler;
+import top.dcenter.ums.security.core.api.session.PrincipalSessionIndex;
 import top.dcenter.ums.security.core.api.session.SessionEnhanceCheckService;
 import top.dcenter.ums.security.core.api.session.strategy.DefaultRedirectInvalidSessionStrategy;
 import top.dcenter.ums.security.core.api.session.strategy.EnhanceConcurrentControlAuthenticationStrategy;
 import top.dcenter.ums.security.core.auth.controller.InvalidSessionController;
 import top.dcenter.ums.security.core.auth.properties.ClientProperties;
 import top.dcenter.ums.security.core.auth.session.filter.SessionEnhanceCheckFilter;
+import top.dcenter.ums.security.core.auth.session.index.RedisPrincipalSessionIndex;
 
 import static top.dcenter.ums.security.core.util.MvcUtil.registerDelegateApplicationListener;
 
@@ -91,13 +96,27 @@ public class SecuritySessionAutoConfiguration {
 
     @Bean
     @ConditionalOnMissingBean(type = "top.dcenter.ums.security.core.api.session.strategy.EnhanceConcurrentControlAuthenticationStrategy")
-    public EnhanceConcurrentControlAuthenticationStrategy enhanceConcurrentControlAuthenticationStrategy(SessionRegistry sessionRegistry) throws Exception {
+    public EnhanceConcurrentControlAuthenticationStrategy enhanceConcurrentControlAuthenticationStrategy(SessionRegistry sessionRegistry,
+                                                                                                         ObjectProvider<PrincipalSessionIndex> principalSessionIndexProvider) throws Exception {
         if (applicationContext == null) {
             log.error("启动失败: {}", EnhanceConcurrentControlAuthenticationStrategy.class.getName());
             throw new Exception("启动失败: " + EnhanceConcurrentControlAuthenticationStrategy.class.getName());
         }
 
-        return new EnhanceConcurrentControlAuthenticationStrategy(sessionEnhanceCheckService, sessionRegistry, clientProperties);
+        final EnhanceConcurrentControlAuthenticationStrategy strategy =
+                new EnhanceConcurrentControlAuthenticationStrategy(sessionEnhanceCheckService, sessionRegistry, clientProperties);
+        final ClientProperties.SessionProperties session = clientProperties.getSession();
+        strategy.setMaximumSessions(session.getMaximumSessions());
+        strategy.setExceptionIfMaximumExceeded(session.getMaxSessionsPreventsLogin());
+        strategy.setPrincipalSessionIndex(principalSessionIndexProvider.getIfAvailable());
+        return strategy;
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "ums.client.session", name = "enable-session-index", havingValue = "true")
+    @ConditionalOnMissingBean(type = "top.dcenter.ums.security.core.api.session.PrincipalSessionIndex")
+    public PrincipalSessionIndex principalSessionIndex(RedisConnectionFactory redisConnectionFactory) {
+        return new RedisPrincipalSessionIndex(redisConnectionFactory, clientProperties);
     }
 
     /**
@@ -23,19 +23,25 @@
 
 package top.dcenter.ums.security.core.auth.config;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.AutoConfigureAfter;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.builders.WebSecurity;
+import org.springframework.security.core.session.SessionRegistry;
+import org.springframework.security.web.session.ConcurrentSessionFilter;
 import org.springframework.security.web.session.SessionManagementFilter;
 import top.dcenter.ums.security.common.api.config.HttpSecurityAware;
 import top.dcenter.ums.security.common.bean.UriHttpMethodTuple;
 import top.dcenter.ums.security.core.api.authentication.handler.BaseAuthenticationFailureHandler;
+import top.dcenter.ums.security.core.api.session.PrincipalSessionIndex;
 import top.dcenter.ums.security.core.api.session.strategy.DefaultRedirectInvalidSessionStrategy;
 import top.dcenter.ums.security.core.api.session.strategy.EnhanceConcurrentControlAuthenticationStrategy;
 import top.dcenter.ums.security.core.auth.properties.ClientProperties;
+import top.dcenter.ums.security.core.auth.session.filter.PrincipalSessionIndexFilter;
 import top.dcenter.ums.security.core.auth.session.filter.SessionEnhanceCheckFilter;
+import top.dcenter.ums.security.core.auth.session.index.PrincipalSessionIndexLogoutHandler;
 import top.dcenter.ums.security.core.auth.session.strategy.ClientExpiredSessionStrategy;
 
 import java.util.HashMap;
@@ -60,6 +66,12 @@ public class SessionAutoConfigurerAware implements HttpSecurityAware {
     private final DefaultRedirectInvalidSessionStrategy defaultRedirectInvalidSessionStrategy;
 
     private final EnhanceConcurrentControlAuthenticationStrategy enhanceConcurrentControlAuthenticationStrategy;
+    @SuppressWarnings("SpringJavaAutowiredFieldsWarningInspection")
+    @Autowired(required = false)
+    private PrincipalSessionIndex principalSessionIndex;
+    @SuppressWarnings("SpringJavaAutowiredFieldsWarningInspection")
+    @Autowired
+    private SessionRegistry sessionRegistry;
 
     public SessionAutoConfigurerAware(ClientProperties clientProperties,
                                       BaseAuthenticationFailureHandler baseAuthenticationFailureHandler,
@@ -95,6 +107,16 @@ public class SessionAutoConfigurerAware implements HttpSecurityAware {
 
         // 添加增强的 session 安全检测, SessionEnhanceCheckFilter 依赖 EnhanceChangeSessionIdAuthenticationStrategy
         http.addFilterAfter(sessionEnhanceCheckFilter, SessionManagementFilter.class);
+        final boolean sessionIndexEnabled = principalSessionIndex != null
+                && clientProperties.getSession().getSessionNumberControl();
+        if (sessionIndexEnabled)
+        {
+            // 刷新用户 session 索引中 session 的最近访问时间, 不注入 IOC 容器, 避免注册为 servlet filter 时 SecurityContext 尚未初始化
+            http.addFilterAfter(new PrincipalSessionIndexFilter(principalSessionIndex, clientProperties),
+                                SessionManagementFilter.class);
+            // 退出登录时从用户 session 索引中删除当前 session
+            http.logout().addLogoutHandler(new PrincipalSessionIndexLogoutHandler(principalSessionIndex));
+        }
 
         // 基本 session 配置
         http.sessionManagement()
@@ -107,7 +129,13 @@ public class SessionAutoConfigurerAware implements HttpSecurityAware {
 
 
         // 配置限制用户登录的 session 数量, 以及是否自动踢掉上一个登录成功的 session
-        if (clientProperties.getSession().getSessionNumberControl())
+        if (sessionIndexEnabled)
+        {
+            // 并发 session 数量由 EnhanceConcurrentControlAuthenticationStrategy 通过用户 session 索引控制, 不配置 maximumSessions,
+            // 避免 ConcurrentSessionControlAuthenticationStrategy 每次登录都加载用户的所有 session; 只添加使被淘汰 session 失效的过滤器.
+            http.addFilter(new ConcurrentSessionFilter(sessionRegistry, new ClientExpiredSessionStrategy(clientProperties)));
+        }
+        else if (clientProperties.getSession().getSessionNumberControl())
         {
             http.sessionManagement()
                 // 当设置为 1 时，同个用户登录会自动踢掉上一次的登录状态。
@@ -49,11 +49,15 @@ import top.dcenter.ums.security.core.auth.validate.codes.image.DefaultImageCodeF
 import top.dcenter.ums.security.core.auth.validate.codes.image.ImageCodeGenerator;
 import top.dcenter.ums.security.core.auth.validate.codes.image.ImageValidateCodeProcessor;
 import top.dcenter.ums.security.core.auth.validate.codes.job.DefaultRefreshValidateCodeJobImpl;
+import top.dcenter.ums.security.core.auth.validate.codes.job.ValidateCodeRenderExecutor;
 import top.dcenter.ums.security.core.auth.validate.codes.slider.SimpleSliderCodeFactory;
 import top.dcenter.ums.security.core.auth.validate.codes.slider.SliderCoderProcessor;
+import top.dcenter.ums.security.core.auth.validate.codes.slider.SliderImagePool;
 import top.dcenter.ums.security.core.auth.validate.codes.slider.SliderValidateCodeGenerator;
 import top.dcenter.ums.security.core.auth.validate.codes.sms.DefaultSmsCodeSender;
 import top.dcenter.ums.security.core.auth.validate.codes.sms.SmsCodeGenerator;
+import top.dcenter.ums.security.core.auth.validate.codes.sms.SmsDispatcher;
+import top.dcenter.ums.security.core.auth.validate.codes.sms.SmsSendThrottle;
 import top.dcenter.ums.security.core.auth.validate.codes.sms.SmsValidateCodeProcessor;
 
 import java.util.concurrent.ScheduledExecutorService;
@@ -92,10 +96,16 @@ public class ValidateCodeBeanAutoConfiguration {
         return new DefaultSmsCodeSender(validateCodeProperties);
     }
 
+    @Bean
+    public ValidateCodeRenderExecutor validateCodeRenderExecutor(ValidateCodeProperties validateCodeProperties) {
+        return new ValidateCodeRenderExecutor(validateCodeProperties);
+    }
+
     @Bean
     @ConditionalOnMissingBean(type = "top.dcenter.ums.security.core.api.validate.code.image.ImageCodeFactory")
-    public ImageCodeFactory imageCodeFactory(ValidateCodeProperties validateCodeProperties) {
-        return new DefaultImageCodeFactory(validateCodeProperties);
+    public ImageCodeFactory imageCodeFactory(ValidateCodeProperties validateCodeProperties,
+                                             ValidateCodeRenderExecutor validateCodeRenderExecutor) {
+        return new DefaultImageCodeFactory(validateCodeProperties, validateCodeRenderExecutor);
     }
     @Bean
     @ConditionalOnMissingBean(type = "top.dcenter.ums.security.core.auth.validate.codes.image.ImageValidateCodeProcessor")
@@ -107,6 +117,19 @@ public class ValidateCodeBeanAutoConfiguration {
                                               stringRedisTemplate);
     }
 
+    @Bean
+    @ConditionalOnProperty(prefix = "ums.codes.sms", name = "enable-async-send", havingValue = "true")
+    public SmsDispatcher smsDispatcher(ValidateCodeProperties validateCodeProperties, SmsCodeSender smsCodeSender) {
+        return new SmsDispatcher(validateCodeProperties, smsCodeSender);
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "ums.codes.sms", name = "enable-throttle", havingValue = "true")
+    public SmsSendThrottle smsSendThrottle(ValidateCodeProperties validateCodeProperties,
+                                           @Nullable @Autowired(required = false) StringRedisTemplate stringRedisTemplate) {
+        return new SmsSendThrottle(validateCodeProperties, stringRedisTemplate);
+    }
+
     @Bean
     @ConditionalOnMissingBean(type = "top.dcenter.ums.security.core.auth.validate.codes.sms.SmsValidateCodeProcessor")
     public SmsValidateCodeProcessor smsValidateCodeProcessor(@NonNull ValidateCodeGeneratorHolder validateCodeGeneratorHolder,
@@ -117,10 +140,18 @@ public class ValidateCodeBeanAutoConfiguration {
                                             stringRedisTemplate);
     }
 
+    @Bean
+    @ConditionalOnProperty(prefix = "ums.codes.slider", name = "enable-binary-image", havingValue = "true")
+    public SliderImagePool sliderImagePool(ValidateCodeProperties validateCodeProperties) {
+        return new SliderImagePool(validateCodeProperties.getTotalImages());
+    }
+
     @Bean
     @ConditionalOnMissingBean(type = "top.dcenter.ums.security.core.api.validate.code.slider.SliderCodeFactory")
-    public SimpleSliderCodeFactory simpleSliderCodeFactory(ValidateCodeProperties validateCodeProperties) {
-        return new SimpleSliderCodeFactory(validateCodeProperties);
+    public SimpleSliderCodeFactory simpleSliderCodeFactory(ValidateCodeProperties validateCodeProperties,
+                                                           ValidateCodeRenderExecutor validateCodeRenderExecutor,
+                                                           @Nullable SliderImagePool sliderImagePool) {
+        return new SimpleSliderCodeFactory(validateCodeProperties, validateCodeRenderExecutor, sliderImagePool);
     }
 
     @Bean
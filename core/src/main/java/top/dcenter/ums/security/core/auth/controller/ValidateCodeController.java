@@ -27,6 +27,9 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
@@ -36,6 +39,7 @@ import top.dcenter.ums.security.core.api.validate.code.ValidateCodeProcessor;
 import top.dcenter.ums.security.core.api.validate.code.ValidateCodeProcessorHolder;
 import top.dcenter.ums.security.core.api.validate.code.enums.ValidateCodeType;
 import top.dcenter.ums.security.core.auth.validate.codes.slider.SliderCode;
+import top.dcenter.ums.security.core.auth.validate.codes.slider.SliderImagePool;
 import top.dcenter.ums.security.core.exception.ValidateCodeException;
 import top.dcenter.ums.security.core.exception.ValidateCodeProcessException;
 import top.dcenter.ums.security.core.auth.properties.ValidateCodeProperties;
@@ -43,11 +47,14 @@ import top.dcenter.ums.security.core.util.IpUtil;
 import top.dcenter.ums.security.core.util.MvcUtil;
 import top.dcenter.ums.security.core.vo.ResponseResult;
 
+import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
 
 import static top.dcenter.ums.security.common.consts.SecurityConstants.URL_SEPARATOR;
 import static top.dcenter.ums.security.common.enums.ErrorCodeEnum.GET_VALIDATE_CODE_FAILURE;
+import static top.dcenter.ums.security.core.auth.validate.codes.slider.SimpleSliderCodeFactory.SLIDER_IMAGE_PATH;
 import static top.dcenter.ums.security.common.enums.ErrorCodeEnum.ILLEGAL_VALIDATE_CODE_TYPE;
 
 
@@ -69,6 +76,9 @@ public class ValidateCodeController implements InitializingBean {
     @Autowired
     private GenericApplicationContext applicationContext;
 
+    @Autowired(required = false)
+    private SliderImagePool sliderImagePool;
+
     /**
      * 获取图片验证码, 根据验证码类型不同，调用不同的 {@link ValidateCodeProcessor} 接口实现
      * @param request request 中的 width 的值如果小于 height * 45 / 10, 则 width = height * 45 / 10
@@ -120,6 +130,41 @@ public class ValidateCodeController implements InitializingBean {
 
 
 
+    /**
+     * 以二进制图片的方式获取滑块验证码图片, 只有 ums.codes.slider.enable-binary-image=true 时有效.
+     * 同一 token 的图片内容不变, 支持 ETag 与 If-None-Match 协商缓存.
+     * @param token     滑块验证码 token
+     * @param type      图片类型: src(抠图后的源图片) 或 mark(抠图图片)
+     * @param request   {@link HttpServletRequest}
+     * @param response  {@link HttpServletResponse}
+     * @throws IOException  写入图片错误
+     */
+    @RequestMapping(value = "/code/slider/image/{token}/{type}", method = RequestMethod.GET)
+    public void sliderImage(@PathVariable("token") String token, @PathVariable("type") String type,
+                            HttpServletRequest request, HttpServletResponse response) throws IOException {
+
+        final SliderImagePool.SliderImage sliderImage = this.sliderImagePool == null ? null : this.sliderImagePool.get(token);
+        final byte[] image = sliderImage == null ? null : sliderImage.getImage(type);
+        if (image == null) {
+            response.setStatus(HttpStatus.NOT_FOUND.value());
+            return;
+        }
+
+        final String eTag = sliderImage.getETag(type);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "private, max-age=" + validateCodeProperties.getSlider().getExpire());
+        response.setHeader(HttpHeaders.ETAG, eTag);
+        if (eTag.equals(request.getHeader(HttpHeaders.IF_NONE_MATCH))) {
+            response.setStatus(HttpStatus.NOT_MODIFIED.value());
+            return;
+        }
+
+        response.setContentType(MediaType.IMAGE_PNG_VALUE);
+        response.setContentLength(image.length);
+        final ServletOutputStream outputStream = response.getOutputStream();
+        outputStream.write(image);
+        outputStream.flush();
+    }
+
     @Override
     public void afterPropertiesSet() throws Exception {
 
@@ -140,7 +185,15 @@ public class ValidateCodeController implements InitializingBean {
                                      this.getClass(),
                                      String.class, HttpServletRequest.class, HttpServletResponse.class);
 
-        // 4. 在 mvc 中做 Uri 映射等动作
+        // 4. 动态注入 sliderImage() RequestMapping 的映射 uri
+        methodName = "sliderImage";
+        MvcUtil.setRequestMappingUri(methodName,
+                                     validateCodeProperties.getValidateCodeUrlPrefix() + SLIDER_IMAGE_PATH
+                                             + URL_SEPARATOR + "{token}" + URL_SEPARATOR + "{type}",
+                                     this.getClass(),
+                                     String.class, String.class, HttpServletRequest.class, HttpServletResponse.class);
+
+        // 5. 在 mvc 中做 Uri 映射等动作
         MvcUtil.registerController("validateCodeController", applicationContext, null);
 
 
@@ -25,10 +25,11 @@ package top.dcenter.ums.security.core.auth.filter;
 
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.MediaType;
 import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import org.springframework.security.web.util.matcher.RequestMatcher;
 import org.springframework.web.filter.OncePerRequestFilter;
 import top.dcenter.ums.security.common.consts.SecurityConstants;
 import top.dcenter.ums.security.core.util.ConvertUtil;
@@ -43,12 +44,14 @@ import javax.servlet.http.HttpServletResponse;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.SequenceInputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import static java.util.Optional.ofNullable;
-import static top.dcenter.ums.security.core.util.RequestUtil.readAllBytes;
+import static top.dcenter.ums.security.core.util.RequestUtil.readNBytes;
 
 /**
  * 增加对 Ajax 格式与 form 格式的解析, 解析数据时默认使用 UTF-8 格式, 覆写了
@@ -60,7 +63,10 @@ import static top.dcenter.ums.security.core.util.RequestUtil.readAllBytes;
  *     AjaxOrFormRequest#getFormMap();
  *     AjaxOrFormRequest#getBody();
  * </pre><br><br>
- * 解决  Ajax 格式与 form 格式的请求被读取一次后, 不能在次读取的问题.
+ * 解决  Ajax 格式与 form 格式的请求被读取一次后, 不能在次读取的问题.<br>
+ * 只包装匹配 bufferingRequestMatcher 的 POST/PUT 的 json 或 form 请求, 请求体在第一次读取参数或输入流时才缓存与解析,
+ * 超过 maxBodySize 的请求体不缓存也不解析, 按原样传递; 未知长度的请求体在读取时才发现超过 maxBodySize 时, 已读取的部分请求体
+ * 无法交还给容器解析, 此时 {@link AjaxOrFormRequest#getParameter(String)} 只返回 query string 中的参数.
  * @author YongWu zheng
  * @version V1.0  Created by 2020/6/9 14:01
  */
@@ -74,90 +80,199 @@ public class AjaxOrFormRequestFilter extends OncePerRequestFilter {
     private final ObjectMapper objectMapper;
 
     /**
-     * Creates a new instance.
+     * 需要缓存请求体的请求, 为 null 时匹配所有请求
+     */
+    private final RequestMatcher bufferingRequestMatcher;
+
+    /**
+     * 缓存请求体的最大字节数
+     */
+    private final int maxBodySize;
+
+    /**
+     * Creates a new instance, 对所有 POST/PUT 的 json 或 form 请求缓存请求体.
      *
      * @param objectMapper  objectMapper
      */
     public AjaxOrFormRequestFilter(ObjectMapper objectMapper) {
+        this(objectMapper, null, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param objectMapper              objectMapper
+     * @param bufferingRequestMatcher   需要缓存请求体的请求, 为 null 时匹配所有请求
+     * @param maxBodySize               缓存请求体的最大字节数
+     */
+    public AjaxOrFormRequestFilter(ObjectMapper objectMapper, @Nullable RequestMatcher bufferingRequestMatcher,
+                                   int maxBodySize) {
         this.objectMapper = objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        this.bufferingRequestMatcher = bufferingRequestMatcher;
+        this.maxBodySize = maxBodySize;
     }
 
     @Override
     protected void doFilterInternal(@NonNull HttpServletRequest request,
                                     @NonNull HttpServletResponse response, FilterChain filterChain)
             throws ServletException, IOException {
-        filterChain.doFilter(new AjaxOrFormRequest(request, objectMapper), response);
+        String contentType = request.getContentType();
+        String method = request.getMethod();
+        boolean isPostOrPutRequest = SecurityConstants.POST_METHOD.equalsIgnoreCase(method) || SecurityConstants.PUT_METHOD.equalsIgnoreCase(method);
+        boolean isJsonOrFormContentType =
+                contentType != null && (contentType.contains(MediaType.APPLICATION_FORM_URLENCODED_VALUE) || contentType.contains(MediaType.APPLICATION_JSON_VALUE));
+        if (isPostOrPutRequest && isJsonOrFormContentType
+                && (this.bufferingRequestMatcher == null || this.bufferingRequestMatcher.matches(request)))
+        {
+            filterChain.doFilter(new AjaxOrFormRequest(request, objectMapper, maxBodySize), response);
+            return;
+        }
+        filterChain.doFilter(request, response);
     }
 
     @Slf4j
     public static class AjaxOrFormRequest extends HttpServletRequestWrapper {
 
-        @Getter
-        private final byte[] body;
+        private final ObjectMapper objectMapper;
+        private final int maxBodySize;
 
-        @Getter
-        private final Map<String, Object> formMap;
+        /**
+         * 请求体是否已读取
+         */
+        private boolean loaded = false;
 
-        AjaxOrFormRequest(HttpServletRequest request, ObjectMapper objectMapper) {
+        /**
+         * 缓存的请求体, 请求体超过 maxBodySize 时为 null
+         */
+        private byte[] body;
+
+        /**
+         * 请求体超过 maxBodySize 时, 已读取的部分请求体
+         */
+        private byte[] oversizedPrefix;
+
+        /**
+         * 未知长度的请求体超过 maxBodySize 时, 只从 query string 解析的请求参数. 此时部分请求体已被读取,
+         * 容器只能解析剩余的请求体, 不能回退到容器的参数解析
+         */
+        private Map<String, Object> queryMap;
+
+        private Map<String, Object> formMap;
+
+        AjaxOrFormRequest(HttpServletRequest request, ObjectMapper objectMapper, int maxBodySize) {
             super(request);
-            String contentType = request.getContentType();
-            String method = request.getMethod();
-            boolean isPostOrPutRequest = SecurityConstants.POST_METHOD.equalsIgnoreCase(method) || SecurityConstants.PUT_METHOD.equalsIgnoreCase(method);
-            boolean isJsonOrFormContentType =
-                    contentType != null && (contentType.contains(MediaType.APPLICATION_FORM_URLENCODED_VALUE) || contentType.contains(MediaType.APPLICATION_JSON_VALUE));
-            if (isPostOrPutRequest && isJsonOrFormContentType)
-            {
-                Map<String, Object> map = null;
-                byte[] bytes = null;
-                try
-                {
-                    // 获取 表单 字节数据
-                    bytes = readAllBytes(request.getInputStream());
-                    if (bytes.length != 0)
-                    {
-                        String jsonData = new String(bytes, StandardCharsets.UTF_8).trim();
-                        // 转换为 map 类型, 并放入 request 域方便下次调用
-                        if (jsonData.startsWith(VALIDATE_JSON_PREFIX))
-                        {
-                            //noinspection unchecked
-                            map = objectMapper.readValue(jsonData, Map.class);
-                        } else
-                        {
-                            map = ConvertUtil.string2JsonMap(jsonData, SecurityConstants.URL_PARAMETER_SEPARATOR,
-                                                             SecurityConstants.KEY_VALUE_SEPARATOR);
-                        }
-                    }
-                }
-                catch (Exception e) {
-                    log.error(String.format("读取请求数据失败: %s",e.getMessage()), e);
-                }
-                formMap = ofNullable(map).orElse(new HashMap<>(0));
-                body = bytes;
-            } else
-            {
-                body = null;
-                formMap = null;
-            }
+            this.objectMapper = objectMapper;
+            this.maxBodySize = maxBodySize;
+        }
+
+        /**
+         * 获取缓存的请求体
+         * @return 请求体, 请求体超过最大字节数时返回 null
+         */
+        @Nullable
+        public byte[] getBody() {
+            load();
+            return body;
+        }
+
+        /**
+         * 获取解析后的请求参数
+         * @return 请求参数, 请求体超过最大字节数时返回 null
+         */
+        @Nullable
+        public Map<String, Object> getFormMap() {
+            load();
+            return formMap;
         }
 
         @Override
         public ServletInputStream getInputStream() throws IOException {
-            if (body == null)
+            load();
+            if (body != null)
             {
-                return super.getInputStream();
+                return new BodyInputStream(new ByteArrayInputStream(body));
             }
-            return new BodyInputStream(body);
+            if (oversizedPrefix != null)
+            {
+                // 已读取的部分请求体与剩余的请求体
+                final byte[] prefix = oversizedPrefix;
+                oversizedPrefix = null;
+                return new BodyInputStream(new SequenceInputStream(new ByteArrayInputStream(prefix),
+                                                                   super.getInputStream()));
+            }
+            return super.getInputStream();
         }
 
         @Override
         public String getParameter(String name) {
-            if (formMap == null)
+            load();
+            final Map<String, Object> map = formMap != null ? formMap : queryMap;
+            if (map == null)
             {
                 return super.getParameter(name);
             }
-            return (String) formMap.get(name);
+            final Object value = map.get(name);
+            if (value instanceof List)
+            {
+                // 同名参数有多个值时, 与 ServletRequest#getParameter(String) 一样返回第一个值
+                final List<?> values = (List<?>) value;
+                return values.isEmpty() ? null : ofNullable(values.get(0)).map(String::valueOf).orElse(null);
+            }
+            return value == null ? null : String.valueOf(value);
         }
 
+        /**
+         * 第一次调用时读取并解析请求体
+         */
+        private void load() {
+            if (loaded)
+            {
+                return;
+            }
+            loaded = true;
+
+            final long contentLength = getContentLengthLong();
+            if (contentLength > maxBodySize)
+            {
+                log.debug("请求体超过最大缓存字节数, 不做解析: uri={}, contentLength={}", getRequestURI(), contentLength);
+                return;
+            }
+
+            Map<String, Object> map = null;
+            try
+            {
+                // 获取 表单 字节数据, 多读取一个字节用于判断未知长度的请求体是否超过最大缓存字节数
+                final int limit = maxBodySize == Integer.MAX_VALUE ? maxBodySize : maxBodySize + 1;
+                byte[] bytes = readNBytes(limit, super.getInputStream());
+                if (bytes.length > maxBodySize)
+                {
+                    log.warn("请求体超过最大缓存字节数, 不解析请求体中的参数: uri={}", getRequestURI());
+                    oversizedPrefix = bytes;
+                    queryMap = ConvertUtil.string2JsonMap(getQueryString(), SecurityConstants.URL_PARAMETER_SEPARATOR,
+                                                          SecurityConstants.KEY_VALUE_SEPARATOR);
+                    return;
+                }
+                body = bytes;
+                if (bytes.length != 0)
+                {
+                    String jsonData = new String(bytes, StandardCharsets.UTF_8).trim();
+                    // 转换为 map 类型, 并放入 request 域方便下次调用
+                    if (jsonData.startsWith(VALIDATE_JSON_PREFIX))
+                    {
+                        //noinspection unchecked
+                        map = objectMapper.readValue(jsonData, Map.class);
+                    } else
+                    {
+                        map = ConvertUtil.string2JsonMap(jsonData, SecurityConstants.URL_PARAMETER_SEPARATOR,
+                                                         SecurityConstants.KEY_VALUE_SEPARATOR);
+                    }
+                }
+            }
+            catch (Exception e) {
+                log.error(String.format("读取请求数据失败: %s",e.getMessage()), e);
+            }
+            formMap = ofNullable(map).orElse(new HashMap<>(0));
+        }
 
     }
 
@@ -165,8 +280,8 @@ public class AjaxOrFormRequestFilter extends OncePerRequestFilter {
 
         private final InputStream delegate;
 
-        public BodyInputStream(byte[] body) {
-            this.delegate = new ByteArrayInputStream(body);
+        public BodyInputStream(InputStream delegate) {
+            this.delegate = delegate;
         }
 
         @Override
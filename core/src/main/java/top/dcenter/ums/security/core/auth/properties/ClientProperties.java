@@ -166,6 +166,26 @@ public class ClientProperties {
     @Setter
     private Set<String>  permitUrls = new HashSet<>();
 
+    /**
+     * 除了登录(表单与短信)与验证码校验的 url 外, 还需要缓存请求体以便 {@link top.dcenter.ums.security.core.auth.filter.AjaxOrFormRequestFilter}
+     * 解析 Ajax(json) 与 form 格式数据的 url, 支持通配符, 默认为 空 Set.<br>
+     * 只有匹配的 POST/PUT 请求才会在第一次读取参数时缓存请求体, 其他请求不做任何处理.
+     */
+    @Setter
+    private Set<String> bodyBufferingUrls = new HashSet<>();
+
+    /**
+     * 是否对所有 url 的 POST/PUT 请求缓存请求体(兼容旧版本的行为), 默认为 false
+     */
+    @Setter
+    private Boolean bodyBufferingOfAllUrls = false;
+
+    /**
+     * 缓存请求体的最大字节数, 超过时不缓存也不解析, 请求体按原样传递, 默认为 64KB
+     */
+    @Setter
+    private Integer bodyBufferingMaxSize = 65536;
+
 
     /**
      * 权限表达式, 当 {@code enableRestfulApi=false} 或者有 @EnableGlobalMethodSecurity 注释时生效, 默认为 isAuthenticated(). <br>
@@ -292,6 +312,25 @@ public class ClientProperties {
          */
         private Boolean maxSessionsPreventsLogin = false;
 
+        /**
+         * 是否开启用户 session 索引(redis sorted set, member 为 sessionId, score 为最近访问时间), 默认为 false.<br>
+         * 开启后 sessionNumberControl 为 true 时, 登录时通过 lua 脚本在一次 redis 往返中原子地完成 session 数量的检查与最久未访问
+         * session 的淘汰, 复杂度为 O(log n), 不再每次登录都加载用户的所有 session.
+         */
+        private Boolean enableSessionIndex = false;
+
+        /**
+         * 用户 session 索引 redis key 前缀, 完整 key 为: 前缀 + 用户名, 默认为: ums:session:index:
+         */
+        private String sessionIndexKeyPrefix = "ums:session:index:";
+
+        /**
+         * 刷新用户 session 索引中 session 最近访问时间的最小间隔, 用于限制每个请求访问 redis 的次数, 默认 60 秒.
+         * If a duration suffix is not specified, seconds will be used.
+         */
+        @DurationUnit(ChronoUnit.SECONDS)
+        private Duration sessionIndexTouchInterval = Duration.ofSeconds(60L);
+
 
         /**
          * If set to true,
@@ -29,6 +29,7 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.web.context.request.ServletWebRequest;
 import top.dcenter.ums.security.core.api.validate.code.enums.ValidateCodeCacheType;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -95,6 +96,25 @@ public class ValidateCodeProperties {
     @Setter
     private Integer totalImages = 100;
 
+    /**
+     * 定时刷新 validateCodeJob 任务时, 生成验证码图片的专用线程池的线程数. 默认: 本机核心数的一半, 最少 1 个;<br>
+     * 注意: 不使用公共的 ForkJoinPool, 避免大量生成验证码图片时影响应用的其他任务
+     */
+    @Setter
+    private Integer renderThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+    /**
+     * 定时刷新 validateCodeJob 任务时, 已提交但未完成的验证码图片生成任务的最大数量, 达到此数量时提交任务的线程阻塞等待. 默认: 64
+     */
+    @Setter
+    private Integer renderMaxPending = 64;
+
+    /**
+     * 定时刷新 validateCodeJob 任务时, 被替换的旧验证码图片延迟删除的时间, 避免删除正在读取的旧图片. 默认: 2 秒
+     */
+    @Setter
+    private Duration renderCleanupGrace = Duration.ofSeconds(2);
+
 
     /**
      * 图片验证码属性
@@ -132,6 +152,45 @@ public class ValidateCodeProperties {
          */
         private List<String> authUrls;
 
+        /**
+         * 是否异步发送短信验证码, 默认: false. <br>
+         *     为 true 时, 验证码进入有界队列后立即返回, 由专用线程池调用 {@code SmsCodeSender} 发送,
+         *     {@code SmsCodeSender} 支持批量发送时, 按批次提交给短信网关.
+         */
+        private Boolean enableAsyncSend = false;
+        /**
+         * 异步发送短信验证码的队列容量, 队列已满时获取短信验证码失败, 默认: 1000
+         */
+        private Integer sendQueueCapacity = 1000;
+        /**
+         * 异步发送短信验证码的线程数, 默认: 2
+         */
+        private Integer sendThreads = 2;
+        /**
+         * 异步发送短信验证码时每批次的最大短信数, 实际批次大小不超过 {@code SmsCodeSender#getMaxBatchSize()}, 默认: 50
+         */
+        private Integer sendBatchSize = 50;
+
+        /**
+         * 是否对发送短信验证码限流(滑动窗口), 默认: false. 有 StringRedisTemplate 时限流数据保存在 redis, 否则保存在内存.
+         */
+        private Boolean enableThrottle = false;
+        /**
+         * 限流的滑动窗口大小, 默认: 1 小时
+         */
+        private Duration throttleWindow = Duration.ofHours(1);
+        /**
+         * 每个手机号在滑动窗口内的最大发送次数, 默认: 10
+         */
+        private Integer mobileMaxSendsPerWindow = 10;
+        /**
+         * 每个 IP 在滑动窗口内的最大发送次数, 默认: 50
+         */
+        private Integer ipMaxSendsPerWindow = 50;
+        /**
+         * 同一手机号两次发送的最小时间间隔, 默认: 60 秒
+         */
+        private Duration mobileMinInterval = Duration.ofSeconds(60);
 
     }
 
@@ -178,6 +237,19 @@ public class ValidateCodeProperties {
          */
         private String imageCacheDirectory = "classpath:static/image/code";
 
+        /**
+         * 是否使用内存池模式, 默认: false.<br>
+         *     为 true 时, totalImages 个图片验证码预先编码为 png 后保存在内存(direct ByteBuffer)中, 不再读写 imageCacheDirectory 目录下的文件;
+         *     占用的堆外内存约为 totalImages * 单个 png 图片大小(默认尺寸约 5 KB).
+         */
+        private Boolean enableMemoryPool = false;
+
+        /**
+         * 内存池模式时, 定时刷新验证码任务每次替换内存池中图片验证码的比例, 取值范围: (0, 1], 默认: 0.2.<br>
+         *     每次按顺序轮换替换一部分图片验证码, 而不是一次性重新生成整个内存池.
+         */
+        private Float memoryPoolRefreshRatio = 0.2F;
+
         /**
          * 设置需要图片验证码认证的 uri(必须是非 GET 请求)，多个 uri 用 “-” 或 ","号分开支持通配符，如：/hello,/user/*；默认为 /authentication/form
          */
@@ -261,6 +333,15 @@ public class ValidateCodeProperties {
          */
         private String codeImageDirectory = "classpath:static/image/slider/code";
 
+        /**
+         * 是否以二进制图片的方式发送滑块验证码, 默认: false.<br>
+         *     为 true 时, 滑块验证码图片保存在内存池中, 返回的 json 只包含 token, 坐标与两个图片 url
+         *     ({validateCodeUrlPrefix}/slider/image/{token}/src 与 {validateCodeUrlPrefix}/slider/image/{token}/mark),
+         *     浏览器通过 url 并行获取 png 图片, 不再返回 Base64 编码的图片, 也不再读写 codeImageDirectory 目录下的文件.<br>
+         *     注意: 图片只保存在生成验证码的服务器的内存中, 集群部署时需要会话粘滞(sticky session).
+         */
+        private Boolean enableBinaryImage = false;
+
     }
 
     /**
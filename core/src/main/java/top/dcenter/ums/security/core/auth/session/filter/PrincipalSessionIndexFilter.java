@@ -0,0 +1,93 @@
+/*
+ * MIT License
+ * Copyright (c) 2020-2029 YongWu zheng (dcenter.top and gitee.com/pcore and github.com/ZeroOrInfinity)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package top.dcenter.ums.security.core.auth.session.filter;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.lang.NonNull;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+import top.dcenter.ums.security.core.api.session.PrincipalSessionIndex;
+import top.dcenter.ums.security.core.auth.properties.ClientProperties;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import java.io.IOException;
+
+import static top.dcenter.ums.security.common.consts.SecurityConstants.SESSION_INDEX_TOUCH_TIME_KEY;
+
+/**
+ * 刷新已登录用户的 session 在 {@link PrincipalSessionIndex} 中的最近访问时间, 使淘汰顺序为最久未访问优先.<br>
+ * 每个 session 在 {@link ClientProperties.SessionProperties#getSessionIndexTouchInterval()} 内最多刷新一次,
+ * 刷新时间存储在 session 中, 避免每个请求都访问 redis.
+ * @author YongWu zheng
+ * @version V2.0  Created by 2020/12/6 11:20
+ */
+@Slf4j
+public class PrincipalSessionIndexFilter extends OncePerRequestFilter {
+
+    private final PrincipalSessionIndex principalSessionIndex;
+    private final long touchIntervalMillis;
+
+    public PrincipalSessionIndexFilter(PrincipalSessionIndex principalSessionIndex, ClientProperties clientProperties) {
+        this.principalSessionIndex = principalSessionIndex;
+        this.touchIntervalMillis = clientProperties.getSession().getSessionIndexTouchInterval().toMillis();
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, @NonNull HttpServletResponse response,
+                                    @NonNull FilterChain filterChain) throws ServletException, IOException {
+
+        HttpSession session = request.getSession(false);
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (session != null && authentication != null && authentication.isAuthenticated()
+                && !(authentication instanceof AnonymousAuthenticationToken))
+        {
+            final long now = System.currentTimeMillis();
+            final Object touchTime = session.getAttribute(SESSION_INDEX_TOUCH_TIME_KEY);
+            if (!(touchTime instanceof Long) || now - (Long) touchTime >= this.touchIntervalMillis)
+            {
+                try
+                {
+                    this.principalSessionIndex.touch(authentication.getName(), session.getId(),
+                                                     session.getMaxInactiveInterval());
+                    session.setAttribute(SESSION_INDEX_TOUCH_TIME_KEY, now);
+                }
+                catch (Exception e)
+                {
+                    // 刷新失败只影响淘汰顺序, 不影响请求
+                    log.warn(String.format("刷新用户 session 索引失败: principal=%s, sid=%s",
+                                           authentication.getName(), session.getId()), e);
+                }
+            }
+        }
+
+        filterChain.doFilter(request, response);
+    }
+
+}
@@ -0,0 +1,68 @@
+/*
+ * MIT License
+ * Copyright (c) 2020-2029 YongWu zheng (dcenter.top and gitee.com/pcore and github.com/ZeroOrInfinity)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package top.dcenter.ums.security.core.auth.session.index;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.web.authentication.logout.LogoutHandler;
+import top.dcenter.ums.security.core.api.session.PrincipalSessionIndex;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+/**
+ * 退出登录时从 {@link PrincipalSessionIndex} 中删除当前 session, 在 session 失效之前执行.<br>
+ * 删除失败时不影响退出登录, 索引中的过期 session 会在准入时清理.
+ * @author YongWu zheng
+ * @version V2.0  Created by 2020/12/6 11:40
+ */
+@Slf4j
+public class PrincipalSessionIndexLogoutHandler implements LogoutHandler {
+
+    private final PrincipalSessionIndex principalSessionIndex;
+
+    public PrincipalSessionIndexLogoutHandler(PrincipalSessionIndex principalSessionIndex) {
+        this.principalSessionIndex = principalSessionIndex;
+    }
+
+    @Override
+    public void logout(HttpServletRequest request, HttpServletResponse response, Authentication authentication) {
+        HttpSession session = request.getSession(false);
+        if (session == null || authentication == null)
+        {
+            return;
+        }
+        try
+        {
+            this.principalSessionIndex.remove(authentication.getName(), session.getId());
+        }
+        catch (Exception e)
+        {
+            log.warn(String.format("退出登录时从用户 session 索引中删除 session 失败: principal=%s, sid=%s",
+                                   authentication.getName(), session.getId()), e);
+        }
+    }
+
+}
@@ -0,0 +1,222 @@
+/*
+ * MIT License
+ * Copyright (c) 2020-2029 YongWu zheng (dcenter.top and gitee.com/pcore and github.com/ZeroOrInfinity)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package top.dcenter.ums.security.core.auth.session.index;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.event.SmartApplicationListener;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.session.SessionDestroyedEvent;
+import org.springframework.security.web.context.HttpSessionSecurityContextRepository;
+import org.springframework.session.Session;
+import org.springframework.session.events.AbstractSessionEvent;
+import org.springframework.session.events.SessionDeletedEvent;
+import org.springframework.session.events.SessionExpiredEvent;
+import top.dcenter.ums.security.core.api.session.PrincipalSessionIndex;
+import top.dcenter.ums.security.core.auth.properties.ClientProperties;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 基于 redis sorted set 的用户 session 索引: key 为 前缀 + 用户名, member 为 sessionId, score 为最近访问时间(毫秒).<br>
+ * 1. 准入与淘汰通过 lua 脚本在一次 redis 往返中原子地完成, 复杂度为 O(log n + 淘汰数量).<br>
+ * 2. 最近访问时间早于 当前时间 - (session 最大不活动时间 + 刷新间隔) 的 session 已过期, 在准入时清理.<br>
+ * 3. 监听 {@link SessionDestroyedEvent} 与 spring session 的 {@link SessionDeletedEvent}/{@link SessionExpiredEvent},
+ * session 失效或过期时从索引中删除; 退出登录时由 {@link PrincipalSessionIndexLogoutHandler} 删除.<br>
+ * @author YongWu zheng
+ * @version V2.0  Created by 2020/12/6 10:45
+ */
+@Slf4j
+public class RedisPrincipalSessionIndex implements PrincipalSessionIndex, SmartApplicationListener {
+
+    /**
+     * KEYS[1] = 用户 session 索引 key, ARGV[1] = sessionId, ARGV[2] = 当前时间(毫秒), ARGV[3] = 最大 session 数量,
+     * ARGV[4] = 是否拒绝登录(1/0), ARGV[5] = 过期 session 的最近访问时间上限(毫秒, 小于 0 时不清理), ARGV[6] = key 的 TTL(秒, 小于等于 0 时不过期).<br>
+     * 返回 {准入标记, 被淘汰的 sessionId...}, 准入标记为 1 表示准入, 为 0 表示拒绝登录
+     */
+    private static final byte[] ADMIT_SCRIPT =
+            ("if tonumber(ARGV[5]) >= 0 then redis.call('ZREMRANGEBYSCORE', KEYS[1], '-inf', '(' .. ARGV[5]) end " +
+             "local result = {'1'} " +
+             "if not redis.call('ZSCORE', KEYS[1], ARGV[1]) then " +
+             "  local max = tonumber(ARGV[3]) " +
+             "  local count = redis.call('ZCARD', KEYS[1]) " +
+             "  if max > 0 and count >= max then " +
+             "    if ARGV[4] == '1' then return {'0'} end " +
+             "    for _, id in ipairs(redis.call('ZRANGE', KEYS[1], 0, count - max)) do result[#result + 1] = id end " +
+             "    redis.call('ZREMRANGEBYRANK', KEYS[1], 0, count - max) " +
+             "  end " +
+             "end " +
+             "redis.call('ZADD', KEYS[1], ARGV[2], ARGV[1]) " +
+             "if tonumber(ARGV[6]) > 0 then redis.call('EXPIRE', KEYS[1], ARGV[6]) else redis.call('PERSIST', KEYS[1]) end " +
+             "return result").getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * KEYS[1] = 用户 session 索引 key, ARGV[1] = sessionId, ARGV[2] = 当前时间(毫秒), ARGV[3] = key 的 TTL(秒, 小于等于 0 时不过期).<br>
+     * sessionId 不在索引中时不做任何操作
+     */
+    private static final byte[] TOUCH_SCRIPT =
+            ("if not redis.call('ZSCORE', KEYS[1], ARGV[1]) then return 0 end " +
+             "redis.call('ZADD', KEYS[1], ARGV[2], ARGV[1]) " +
+             "if tonumber(ARGV[3]) > 0 then redis.call('EXPIRE', KEYS[1], ARGV[3]) end " +
+             "return 1").getBytes(StandardCharsets.UTF_8);
+
+    private final RedisConnectionFactory redisConnectionFactory;
+    private final ClientProperties.SessionProperties sessionProperties;
+
+    public RedisPrincipalSessionIndex(RedisConnectionFactory redisConnectionFactory, ClientProperties clientProperties) {
+        this.redisConnectionFactory = redisConnectionFactory;
+        this.sessionProperties = clientProperties.getSession();
+    }
+
+    @Nullable
+    @Override
+    public List<String> admit(@NonNull String principal, @NonNull String sessionId, int maximumSessions,
+                              boolean preventsLogin, int maxInactiveInterval) {
+        final long now = System.currentTimeMillis();
+        final long lifetimeSeconds = lifetimeSeconds(maxInactiveInterval);
+        final long staleBefore = lifetimeSeconds > 0 ? now - lifetimeSeconds * 1000L : -1L;
+        final List<Object> admitted;
+        try (RedisConnection connection = redisConnectionFactory.getConnection())
+        {
+            admitted = connection.eval(ADMIT_SCRIPT, ReturnType.MULTI, 1,
+                                      buildKey(principal), bytes(sessionId), bytes(Long.toString(now)),
+                                      bytes(Integer.toString(maximumSessions)), bytes(preventsLogin ? "1" : "0"),
+                                      bytes(Long.toString(staleBefore)), bytes(Long.toString(lifetimeSeconds)));
+        }
+        if (admitted == null || admitted.isEmpty() || !"1".equals(string(admitted.get(0))))
+        {
+            return null;
+        }
+        final List<String> evicted = new ArrayList<>(admitted.size() - 1);
+        for (int i = 1; i < admitted.size(); i++)
+        {
+            evicted.add(string(admitted.get(i)));
+        }
+        return evicted;
+    }
+
+    @Override
+    public void touch(@NonNull String principal, @NonNull String sessionId, int maxInactiveInterval) {
+        try (RedisConnection connection = redisConnectionFactory.getConnection())
+        {
+            connection.eval(TOUCH_SCRIPT, ReturnType.INTEGER, 1,
+                            buildKey(principal), bytes(sessionId),
+                            bytes(Long.toString(System.currentTimeMillis())),
+                            bytes(Long.toString(lifetimeSeconds(maxInactiveInterval))));
+        }
+    }
+
+    @Override
+    public void remove(@NonNull String principal, @NonNull String sessionId) {
+        try (RedisConnection connection = redisConnectionFactory.getConnection())
+        {
+            connection.zRem(buildKey(principal), bytes(sessionId));
+        }
+    }
+
+    @Override
+    public boolean supportsEventType(@NonNull Class<? extends ApplicationEvent> eventType) {
+        return SessionDestroyedEvent.class.isAssignableFrom(eventType)
+                || SessionDeletedEvent.class.isAssignableFrom(eventType)
+                || SessionExpiredEvent.class.isAssignableFrom(eventType);
+    }
+
+    @Override
+    public void onApplicationEvent(@NonNull ApplicationEvent event) {
+        if (event instanceof SessionDestroyedEvent)
+        {
+            final SessionDestroyedEvent destroyedEvent = (SessionDestroyedEvent) event;
+            for (SecurityContext context : destroyedEvent.getSecurityContexts())
+            {
+                removeQuietly(context, destroyedEvent.getId());
+            }
+        }
+        else if (event instanceof SessionDeletedEvent || event instanceof SessionExpiredEvent)
+        {
+            // spring session 的 session 删除或过期事件, 不经过 HttpSessionEventPublisher
+            final AbstractSessionEvent sessionEvent = (AbstractSessionEvent) event;
+            final Session session = sessionEvent.getSession();
+            if (session != null)
+            {
+                final Object context =
+                        session.getAttribute(HttpSessionSecurityContextRepository.SPRING_SECURITY_CONTEXT_KEY);
+                if (context instanceof SecurityContext)
+                {
+                    removeQuietly((SecurityContext) context, sessionEvent.getSessionId());
+                }
+            }
+        }
+    }
+
+    private void removeQuietly(@NonNull SecurityContext context, @NonNull String sessionId) {
+        final Authentication authentication = context.getAuthentication();
+        if (authentication == null)
+        {
+            return;
+        }
+        try
+        {
+            remove(authentication.getName(), sessionId);
+        }
+        catch (Exception e)
+        {
+            // 索引中的过期 session 会在准入时清理, 这里不影响 session 的销毁
+            log.warn(String.format("从用户 session 索引中删除 session 失败: principal=%s, sid=%s",
+                                   authentication.getName(), sessionId), e);
+        }
+    }
+
+    /**
+     * session 在索引中的最长存活时间: session 最大不活动时间 + 刷新间隔
+     * @param maxInactiveInterval   session 的最大不活动时间(秒)
+     * @return  最长存活时间(秒), session 永不过期时返回 -1
+     */
+    private long lifetimeSeconds(int maxInactiveInterval) {
+        if (maxInactiveInterval <= 0)
+        {
+            return -1L;
+        }
+        return maxInactiveInterval + sessionProperties.getSessionIndexTouchInterval().getSeconds();
+    }
+
+    private byte[] buildKey(@NonNull String principal) {
+        return bytes(sessionProperties.getSessionIndexKeyPrefix() + principal);
+    }
+
+    private static String string(@Nullable Object value) {
+        return value instanceof byte[] ? new String((byte[]) value, StandardCharsets.UTF_8) : String.valueOf(value);
+    }
+
+    private static byte[] bytes(@NonNull String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
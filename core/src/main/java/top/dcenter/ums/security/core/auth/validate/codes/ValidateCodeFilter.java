@@ -23,7 +23,6 @@
 
 package top.dcenter.ums.security.core.auth.validate.codes;
 
-import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.lang.NonNull;
@@ -47,7 +46,10 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import static top.dcenter.ums.security.common.consts.SecurityConstants.GET_METHOD;
@@ -74,10 +76,20 @@ public class ValidateCodeFilter extends OncePerRequestFilter implements Initiali
     private final ValidateCodeProcessorHolder validateCodeProcessorHolder;
 
     /**
-     *  验证码认证 map&#60;uri, validateCodeType&#62;
+     * 多个 url 匹配同一请求时验证码类型的优先级, 索引越小优先级越高: 当短信验证码与图片验证码 url 相同时, 优先使用短信验证码逻辑.
      */
-    @Getter
-    private final Map<String, ValidateCodeType> authUrlMap = new HashMap<>();
+    private static final List<ValidateCodeType> PRIORITIES =
+            Collections.unmodifiableList(Arrays.asList(ValidateCodeType.SMS,
+                                                       ValidateCodeType.CUSTOMIZE,
+                                                       ValidateCodeType.SELECTION,
+                                                       ValidateCodeType.TRACK,
+                                                       ValidateCodeType.SLIDER,
+                                                       ValidateCodeType.IMAGE));
+
+    /**
+     * 预编译的验证码认证 url 路由表
+     */
+    private volatile ValidateCodeUrlMatcher urlMatcher;
 
     public ValidateCodeFilter(ValidateCodeProcessorHolder validateCodeProcessorHolder,
                               BaseAuthenticationFailureHandler baseAuthenticationFailureHandler,
@@ -91,6 +103,24 @@ public class ValidateCodeFilter extends OncePerRequestFilter implements Initiali
     @Override
     public void afterPropertiesSet() throws ServletException {
         super.afterPropertiesSet();
+        refreshAuthUrls();
+    }
+
+    /**
+     * 验证码认证 map&#60;uri, validateCodeType&#62;, 不可修改
+     * @return  map&#60;uri, validateCodeType&#62;
+     */
+    public Map<String, ValidateCodeType> getAuthUrlMap() {
+        final ValidateCodeUrlMatcher matcher = this.urlMatcher;
+        return matcher == null ? Collections.emptyMap() : matcher.getAuthUrlMap();
+    }
+
+    /**
+     * 根据 {@link ValidateCodeProperties} 重新编译验证码认证 url 路由表, 运行时修改了 {@link ValidateCodeProperties} 中的
+     * authUrls 后调用此方法即可生效. 编译完成后整体替换, 不影响正在进行的请求.
+     */
+    public void refreshAuthUrls() {
+        final Map<String, ValidateCodeType> authUrlMap = new HashMap<>(16);
         // 添加图片验证码 urls
         ConvertUtil.list2Map(validateCodeProperties.getImage().getAuthUrls(), ValidateCodeType.IMAGE, authUrlMap);
         // 添加滑块验证码 urls
@@ -105,6 +135,7 @@ public class ValidateCodeFilter extends OncePerRequestFilter implements Initiali
         // 添加短信验证码 urls
         ConvertUtil.list2Map(validateCodeProperties.getSms().getAuthUrls(), ValidateCodeType.SMS, authUrlMap);
 
+        this.urlMatcher = ValidateCodeUrlMatcher.compile(authUrlMap, PRIORITIES, this.pathMatcher);
     }
 
     @Override
@@ -167,24 +198,11 @@ public class ValidateCodeFilter extends OncePerRequestFilter implements Initiali
      * @return  ValidateCodeType
      */
     private ValidateCodeType getValidateCodeType(HttpServletRequest request) {
-        ValidateCodeType result;
         String method = request.getMethod();
         if (!GET_METHOD.equalsIgnoreCase(method)) {
             // 去除 ServletContextPath 的 uri
             String requestUri = MvcUtil.getUrlPathHelper().getPathWithinApplication(request);
-            result = authUrlMap.getOrDefault(requestUri, null);
-            if (result != null)
-            {
-                return result;
-            }
-
-            for (Map.Entry<String, ValidateCodeType> entry : authUrlMap.entrySet())
-            {
-                if (pathMatcher.match(entry.getKey(), requestUri))
-                {
-                    return entry.getValue();
-                }
-            }
+            return this.urlMatcher.match(requestUri);
         }
         return null;
     }
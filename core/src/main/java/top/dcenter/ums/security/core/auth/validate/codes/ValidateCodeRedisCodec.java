@@ -0,0 +1,311 @@
+/*
+ * MIT License
+ * Copyright (c) 2020-2029 YongWu zheng (dcenter.top and gitee.com/pcore and github.com/ZeroOrInfinity)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package top.dcenter.ums.security.core.auth.validate.codes;
+
+import org.springframework.data.annotation.Transient;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import top.dcenter.ums.security.core.api.validate.code.ValidateCode;
+import top.dcenter.ums.security.core.util.MvcUtil;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 验证码的 redis hash 编解码器: 验证码以 redis hash 的方式存储, 基本属性使用短字段名:<br>
+ * <pre>
+ * c: code
+ * e: expireTime, epoch 毫秒
+ * r: reuse, 1 或 0
+ * </pre>
+ * 子类的简单类型(String/基本类型及包装类/枚举)属性以属性名称为字段名, 值为 null 的属性不存储;
+ * 子类含有其他类型属性时, 子类属性以 json 格式存储在字段 j 中.<br>
+ * 每个验证码 class 的反射元数据(需要清除值的 @Transient 属性, 需要存储的属性, 无参构造器)只解析一次并缓存.
+ * @author YongWu zheng
+ * @version V2.0  Created by 2020/12/2 10:15
+ */
+public final class ValidateCodeRedisCodec {
+
+    private ValidateCodeRedisCodec() {}
+
+    /**
+     * 验证码字段名
+     */
+    public static final String CODE_FIELD = "c";
+    /**
+     * 过期时间字段名, 值为 epoch 毫秒
+     */
+    public static final String EXPIRE_FIELD = "e";
+    /**
+     * 是否复用字段名, 值为 1 或 0
+     */
+    public static final String REUSE_FIELD = "r";
+    /**
+     * 子类含有非简单类型属性时, json 格式的验证码的字段名
+     */
+    public static final String JSON_FIELD = "j";
+
+    private static final String TRUE = "1";
+    private static final String FALSE = "0";
+
+    private static final Set<String> RESERVED_FIELDS =
+            new HashSet<>(Arrays.asList(CODE_FIELD, EXPIRE_FIELD, REUSE_FIELD, JSON_FIELD));
+
+    /**
+     * Map(验证码 class, 反射元数据)
+     */
+    private static final Map<Class<?>, CodeMetadata> METADATA_CACHE = new ConcurrentHashMap<>();
+
+    /**
+     * 移除验证码中标记 @Transient 的属性值(图片等)
+     * @param validateCode  验证码
+     * @throws IllegalAccessException   IllegalAccessException
+     */
+    public static void removeUnnecessaryFieldValue(@NonNull ValidateCode validateCode) throws IllegalAccessException {
+        for (Field field : getMetadata(validateCode.getClass()).transientFields) {
+            field.set(validateCode, null);
+        }
+    }
+
+    /**
+     * 把验证码编码为 redis hash 的 Map(字段名, 值)
+     * @param validateCode  验证码
+     * @return  Map(字段名, 值)
+     * @throws IllegalAccessException   IllegalAccessException
+     */
+    @NonNull
+    public static Map<String, String> encode(@NonNull ValidateCode validateCode) throws IllegalAccessException {
+        final CodeMetadata metadata = getMetadata(validateCode.getClass());
+        final Map<String, String> hash = new LinkedHashMap<>(metadata.fields.length + 4);
+        if (validateCode.getCode() != null) {
+            hash.put(CODE_FIELD, validateCode.getCode());
+        }
+        final LocalDateTime expireTime = validateCode.getExpireTime();
+        if (expireTime != null) {
+            hash.put(EXPIRE_FIELD, String.valueOf(expireTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()));
+        }
+        if (validateCode.getReuse() != null) {
+            hash.put(REUSE_FIELD, validateCode.getReuse() ? TRUE : FALSE);
+        }
+
+        if (!metadata.compact) {
+            hash.put(JSON_FIELD, MvcUtil.toJsonString(validateCode));
+            return hash;
+        }
+
+        for (Field field : metadata.fields) {
+            final Object value = field.get(validateCode);
+            if (value == null) {
+                continue;
+            }
+            if (value instanceof Boolean) {
+                hash.put(field.getName(), (Boolean) value ? TRUE : FALSE);
+            }
+            else if (value instanceof Enum) {
+                hash.put(field.getName(), ((Enum<?>) value).name());
+            }
+            else {
+                hash.put(field.getName(), value.toString());
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * 把 redis hash 的 Map(字段名, 值) 解码为验证码
+     * @param hash  Map(字段名, 值)
+     * @param clz   验证码 class
+     * @param <T>   验证码类型
+     * @return  验证码, hash 为空时返回 null
+     * @throws ReflectiveOperationException    ReflectiveOperationException
+     */
+    @Nullable
+    public static <T extends ValidateCode> T decode(@NonNull Map<?, ?> hash, @NonNull Class<T> clz)
+            throws ReflectiveOperationException {
+
+        if (hash.isEmpty()) {
+            return null;
+        }
+
+        final Object json = hash.get(JSON_FIELD);
+        if (json != null) {
+            return MvcUtil.json2Object(json.toString(), clz);
+        }
+
+        final CodeMetadata metadata = getMetadata(clz);
+        if (metadata.constructor == null) {
+            throw new NoSuchMethodException(clz.getName() + ".<init>()");
+        }
+        final T validateCode = clz.cast(metadata.constructor.newInstance());
+
+        validateCode.setCode(toString(hash.get(CODE_FIELD)));
+        final String expireTime = toString(hash.get(EXPIRE_FIELD));
+        validateCode.setExpireTime(expireTime == null ? null :
+                LocalDateTime.ofInstant(Instant.ofEpochMilli(Long.parseLong(expireTime)), ZoneId.systemDefault()));
+        final String reuse = toString(hash.get(REUSE_FIELD));
+        validateCode.setReuse(reuse == null ? null : TRUE.equals(reuse));
+
+        for (Field field : metadata.fields) {
+            final String value = toString(hash.get(field.getName()));
+            if (value == null) {
+                if (!field.getType().isPrimitive()) {
+                    field.set(validateCode, null);
+                }
+                continue;
+            }
+            field.set(validateCode, parse(field.getType(), value));
+        }
+        return validateCode;
+    }
+
+    @Nullable
+    private static String toString(@Nullable Object value) {
+        return value == null ? null : value.toString();
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    @NonNull
+    private static Object parse(@NonNull Class<?> type, @NonNull String value) {
+        if (type == String.class) {
+            return value;
+        }
+        if (type == Integer.class || type == int.class) {
+            return Integer.valueOf(value);
+        }
+        if (type == Long.class || type == long.class) {
+            return Long.valueOf(value);
+        }
+        if (type == Boolean.class || type == boolean.class) {
+            return TRUE.equals(value);
+        }
+        if (type == Double.class || type == double.class) {
+            return Double.valueOf(value);
+        }
+        if (type == Float.class || type == float.class) {
+            return Float.valueOf(value);
+        }
+        if (type == Short.class || type == short.class) {
+            return Short.valueOf(value);
+        }
+        if (type == Byte.class || type == byte.class) {
+            return Byte.valueOf(value);
+        }
+        if (type == Character.class || type == char.class) {
+            return value.charAt(0);
+        }
+        return Enum.valueOf((Class<? extends Enum>) type, value);
+    }
+
+    private static boolean isSimpleType(@NonNull Class<?> type) {
+        return type.isPrimitive() || type.isEnum() || type == String.class
+                || type == Integer.class || type == Long.class || type == Boolean.class
+                || type == Double.class || type == Float.class || type == Short.class
+                || type == Byte.class || type == Character.class;
+    }
+
+    @NonNull
+    private static CodeMetadata getMetadata(@NonNull Class<?> clz) {
+        CodeMetadata metadata = METADATA_CACHE.get(clz);
+        if (metadata == null) {
+            metadata = METADATA_CACHE.computeIfAbsent(clz, CodeMetadata::new);
+        }
+        return metadata;
+    }
+
+    /**
+     * 验证码 class 的反射元数据
+     */
+    private static final class CodeMetadata {
+
+        /**
+         * 标记 @Transient 的属性, 保存验证码前清除值
+         */
+        private final Field[] transientFields;
+        /**
+         * 子类中需要存储的属性
+         */
+        private final Field[] fields;
+        /**
+         * 无参构造器, 没有时为 null
+         */
+        private final Constructor<?> constructor;
+        /**
+         * 是否所有需要存储的子类属性都是简单类型
+         */
+        private final boolean compact;
+
+        private CodeMetadata(Class<?> clz) {
+            final List<Field> transientList = new ArrayList<>();
+            final List<Field> fieldList = new ArrayList<>();
+            boolean allSimple = true;
+            for (Class<?> c = clz; c != null && c != ValidateCode.class && c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    final int modifiers = field.getModifiers();
+                    if (Modifier.isStatic(modifiers)) {
+                        continue;
+                    }
+                    if (field.getDeclaredAnnotation(Transient.class) != null) {
+                        field.setAccessible(true);
+                        transientList.add(field);
+                        continue;
+                    }
+                    if (Modifier.isTransient(modifiers)) {
+                        continue;
+                    }
+                    field.setAccessible(true);
+                    fieldList.add(field);
+                    if (!isSimpleType(field.getType()) || RESERVED_FIELDS.contains(field.getName())) {
+                        allSimple = false;
+                    }
+                }
+            }
+
+            Constructor<?> noArgConstructor;
+            try {
+                noArgConstructor = clz.getDeclaredConstructor();
+                noArgConstructor.setAccessible(true);
+            }
+            catch (NoSuchMethodException e) {
+                noArgConstructor = null;
+            }
+
+            this.transientFields = transientList.toArray(new Field[0]);
+            this.fields = fieldList.toArray(new Field[0]);
+            this.constructor = noArgConstructor;
+            this.compact = allSimple && noArgConstructor != null;
+        }
+    }
+}
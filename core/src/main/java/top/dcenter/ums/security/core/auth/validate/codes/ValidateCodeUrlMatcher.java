@@ -0,0 +1,140 @@
+/*
+ * MIT License
+ * Copyright (c) 2020-2029 YongWu zheng (dcenter.top and gitee.com/pcore and github.com/ZeroOrInfinity)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package top.dcenter.ums.security.core.auth.validate.codes;
+
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import org.springframework.util.AntPathMatcher;
+import top.dcenter.ums.security.core.api.validate.code.enums.ValidateCodeType;
+import top.dcenter.ums.security.core.util.matcher.SegmentTrieMatcher;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 预编译的验证码认证 url 路由表. <br>
+ * 1. 所有 url 放入精确匹配的 HashMap, 精确匹配命中时直接返回.<br>
+ * 2. 所有 url 编译为 {@link SegmentTrieMatcher} 前缀树, 查询耗时与 requestUri 的长度成正比, 与 url 的数量无关.<br>
+ * 3. 多个 url 匹配同一请求时, 按验证码类型的优先级返回, 与 url 的配置顺序无关; 精确匹配优先于通配符匹配.<br><br>
+ * 注意:<br>
+ * 1. 匹配语义与 {@link AntPathMatcher#match(String, String)} 保持一致, 非默认配置的 {@link AntPathMatcher} 见 {@link SegmentTrieMatcher}.<br>
+ * 2. 实例不可变, 线程安全; 配置更新时需重新编译.<br>
+ * 3. 少数无法按段拆分的 url(如正则中包含路径分隔符) 会退回到 {@link AntPathMatcher} 逐个匹配.
+ * @author YongWu zheng
+ * @version V2.0  Created by 2020/12/2 15:40
+ */
+public final class ValidateCodeUrlMatcher {
+
+    /**
+     * 精确匹配 Map(url, validateCodeType)
+     */
+    private final Map<String, ValidateCodeType> exactMap;
+    private final SegmentTrieMatcher<UrlEntry> trieMatcher;
+
+    private ValidateCodeUrlMatcher(@NonNull Map<String, ValidateCodeType> authUrlMap,
+                                   @NonNull List<ValidateCodeType> priorities,
+                                   @NonNull AntPathMatcher antPathMatcher) {
+        this.trieMatcher = new SegmentTrieMatcher<>(antPathMatcher);
+        this.exactMap = Collections.unmodifiableMap(new HashMap<>(authUrlMap));
+        authUrlMap.forEach((url, type) -> {
+            if (url == null || type == null) {
+                return;
+            }
+            int priority = priorities.indexOf(type);
+            if (priority < 0) {
+                priority = priorities.size();
+            }
+            this.trieMatcher.add(url, new UrlEntry(type, priority));
+        });
+    }
+
+    /**
+     * 编译验证码认证 url
+     * @param authUrlMap        验证码认证 Map(url, validateCodeType)
+     * @param priorities        验证码类型的优先级, 索引越小优先级越高, 不在列表中的类型优先级最低
+     * @param antPathMatcher    用于匹配单个路径段中的通配符
+     * @return  ValidateCodeUrlMatcher
+     */
+    @NonNull
+    public static ValidateCodeUrlMatcher compile(@NonNull Map<String, ValidateCodeType> authUrlMap,
+                                                 @NonNull List<ValidateCodeType> priorities,
+                                                 @NonNull AntPathMatcher antPathMatcher) {
+        return new ValidateCodeUrlMatcher(authUrlMap, priorities, antPathMatcher);
+    }
+
+    /**
+     * 获取编译时的验证码认证 Map(url, validateCodeType), 不可修改
+     * @return  Map(url, validateCodeType)
+     */
+    @NonNull
+    public Map<String, ValidateCodeType> getAuthUrlMap() {
+        return this.exactMap;
+    }
+
+    /**
+     * 获取 requestUri 对应的验证码类型
+     * @param requestUri    不包含 ServletContextPath 的 requestUri
+     * @return  优先级最高的验证码类型, 不需要校验验证码时返回 null
+     */
+    @Nullable
+    public ValidateCodeType match(@NonNull String requestUri) {
+        final ValidateCodeType exact = this.exactMap.get(requestUri);
+        if (exact != null) {
+            return exact;
+        }
+
+        final UrlEntry[] best = new UrlEntry[1];
+        // 遍历所有匹配的 url, 只比较优先级更高的 url
+        this.trieMatcher.anyMatch(requestUri, entry -> {
+            if (isHigherPriority(entry, best[0])) {
+                best[0] = entry;
+            }
+            return false;
+        });
+        return best[0] == null ? null : best[0].type;
+    }
+
+    private static boolean isHigherPriority(@NonNull UrlEntry entry, @Nullable UrlEntry best) {
+        return best == null || entry.priority < best.priority;
+    }
+
+    /**
+     * url 的验证码类型与优先级
+     */
+    private static final class UrlEntry {
+        private final ValidateCodeType type;
+        /**
+         * 优先级, 越小优先级越高
+         */
+        private final int priority;
+
+        private UrlEntry(@NonNull ValidateCodeType type, int priority) {
+            this.type = type;
+            this.priority = priority;
+        }
+    }
+
+}
\ No newline at end of file
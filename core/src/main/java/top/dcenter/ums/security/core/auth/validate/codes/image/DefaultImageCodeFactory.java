@@ -24,9 +24,13 @@
 package top.dcenter.ums.security.core.auth.validate.codes.image;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
 import org.springframework.util.StringUtils;
 import top.dcenter.ums.security.core.api.validate.code.image.ImageCodeFactory;
 import top.dcenter.ums.security.core.auth.properties.ValidateCodeProperties;
+import top.dcenter.ums.security.core.auth.validate.codes.job.RenderStatistics;
+import top.dcenter.ums.security.core.auth.validate.codes.job.ValidateCodeRenderExecutor;
 
 import javax.annotation.PostConstruct;
 import javax.servlet.ServletRequest;
@@ -37,13 +41,11 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.time.Instant;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.stream.Collectors;
 
 import static top.dcenter.ums.security.core.auth.validate.codes.image.ImageUtil.IMAGE_TYPE;
@@ -74,21 +76,42 @@ public class DefaultImageCodeFactory implements ImageCodeFactory {
      */
     private static final float PERCENTAGE = 0.9F;
 
+    /**
+     * 生成验证码图片任务统计数据的名称
+     */
+    private static final String RENDER_NAME = "image";
+
     private final ValidateCodeProperties validateCodeProperties;
 
+    /**
+     * 生成验证码图片的专用线程池
+     */
+    private final ValidateCodeRenderExecutor renderExecutor;
+
     /**
      * 当支持缓存验证码时, 缓存的验证码图片的决定路径地址数组, 数组的大小为 totalImages;<br>
      *     缓存的验证码图片文件名称格式: validateCode_uuid.png
      */
     private volatile String[] imageCodePaths = null;
 
+    /**
+     * 内存池模式时的图片验证码内存池
+     */
+    private volatile ImageCodePool imageCodePool = null;
+
     /**
      * 缓存的验证码图片数
      */
     private final Integer totalImages;
 
     public DefaultImageCodeFactory(ValidateCodeProperties validateCodeProperties) {
+        this(validateCodeProperties, new ValidateCodeRenderExecutor(validateCodeProperties));
+    }
+
+    public DefaultImageCodeFactory(ValidateCodeProperties validateCodeProperties,
+                                   ValidateCodeRenderExecutor renderExecutor) {
         this.validateCodeProperties = validateCodeProperties;
+        this.renderExecutor = renderExecutor;
         this.totalImages = validateCodeProperties.getTotalImages();
     }
 
@@ -96,6 +119,11 @@ public class DefaultImageCodeFactory implements ImageCodeFactory {
     public void init() {
         // 判断是否配置了图片验证码
         if (this.validateCodeProperties.getImage().getAuthUrls().size() > 0) {
+            if (this.validateCodeProperties.getImage().getEnableMemoryPool()) {
+                // 创建图片验证码内存池
+                refreshValidateCodeJob();
+                return;
+            }
             // 从缓存中读取滑块验证码或者重新创建滑块验证码缓存
             readOrCreateCacheImageCodes();
         }
@@ -108,6 +136,15 @@ public class DefaultImageCodeFactory implements ImageCodeFactory {
         int expireIn = imageProp.getExpire();
         final Integer codeLength = imageProp.getLength();
 
+        // 从内存池中获取验证码
+        final ImageCodePool pool = this.imageCodePool;
+        if (pool != null) {
+            final ImageCodePool.PooledImageCode pooledImageCode = pool.randomImageCode();
+            if (pooledImageCode != null) {
+                return new ImageCode(pooledImageCode.getImage(), pooledImageCode.getCode(), expireIn);
+            }
+        }
+
         // 从缓存中获取验证码
         if (imageCodePaths != null) {
 
@@ -126,6 +163,18 @@ public class DefaultImageCodeFactory implements ImageCodeFactory {
         int width = imageProp.getWidth();
         int height = imageProp.getHeight();
         String code = generateVerifyCode(codeLength);
+
+        // 内存池模式: 在内存中生成验证码图片, 不写文件
+        if (imageProp.getEnableMemoryPool()) {
+            try {
+                return new ImageCode(ImageCodePool.encode(width, height, code), code, expireIn);
+            }
+            catch (Exception e) {
+                log.warn(String.format("生成验证码图片失败: %s", e.getMessage()), e);
+                return null;
+            }
+        }
+
         String imageFileName = code + IMAGE_NAME_DELIMITER + getUuid() + "." + IMAGE_TYPE;
         final String imageAbsPath = getAbsPath(imageProp.getImageCacheDirectory()) + PATH_SEPARATOR + imageFileName;
 
@@ -183,7 +232,6 @@ public class DefaultImageCodeFactory implements ImageCodeFactory {
 
     }
 
-    @SuppressWarnings("ConstantConditions")
     @Override
     public void refreshValidateCodeJob() {
 
@@ -192,88 +240,156 @@ public class DefaultImageCodeFactory implements ImageCodeFactory {
             return;
         }
 
-        final Instant now = Instant.now();
-        String[] oldImageCodePaths = this.imageCodePaths;
-        final String[] newImageCodePaths = new String[totalImages];
+        // 内存池模式: 按比例轮换替换内存池中的图片验证码
+        if (this.validateCodeProperties.getImage().getEnableMemoryPool()) {
+            refreshImageCodePool();
+            return;
+        }
 
         final ValidateCodeProperties.ImageCodeProperties image = validateCodeProperties.getImage();
         final Integer imageCodeLength = image.getLength();
         final Integer height = image.getHeight();
         final Integer width = image.getWidth();
-
-        // 1. 创建新验证码图片
-        // 存储创建失败的图片验证码路径, 此路径包含 newImageCodePaths 数组索引位置, 例如: index_absImagePath
-        List<String> failures = new CopyOnWriteArrayList<>();
-        // 存储异步执行 future
-        List<CompletableFuture<Void>> futures = new ArrayList<>();
-
-        for (int y = 0; y < totalImages; y++) {
-            final String code = generateVerifyCode(imageCodeLength);
-            String imageFileName = code + IMAGE_NAME_DELIMITER + getUuid() + "." + IMAGE_TYPE;
-            final String imageAbsPath = getAbsPath(image.getImageCacheDirectory()) + PATH_SEPARATOR + imageFileName;
-            newImageCodePaths[y] = imageAbsPath;
-
-            // 创建异步执行图片验证码生成 future
-            final int index = y;
-            final CompletableFuture<Void> voidCompletableFuture = CompletableFuture.runAsync(() -> {
+        final String imageCacheAbsPath = getAbsPath(image.getImageCacheDirectory());
+
+        // 已有相同大小的缓存时逐个替换, 否则生成完整的新缓存后再替换
+        final String[] oldImageCodePaths = this.imageCodePaths;
+        final boolean incremental = oldImageCodePaths != null && oldImageCodePaths.length == totalImages;
+        final String[] newImageCodePaths = incremental ? oldImageCodePaths : new String[totalImages];
+
+        final RenderStatistics statistics = this.renderExecutor.regenerate(RENDER_NAME, totalImages, new ValidateCodeRenderExecutor.CodeSlots<String>() {
+            @NonNull
+            @Override
+            public String render() throws Exception {
+                final String code = generateVerifyCode(imageCodeLength);
+                final String imageAbsPath = imageCacheAbsPath + PATH_SEPARATOR + code + IMAGE_NAME_DELIMITER + getUuid() + "." + IMAGE_TYPE;
                 try (final OutputStream outputStream =
                              Files.newOutputStream(Paths.get(imageAbsPath), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
                     ImageUtil.outputImage(width, height, outputStream, code);
                 }
+                return imageAbsPath;
+            }
+
+            @Nullable
+            @Override
+            public String swap(int index, @NonNull String imageAbsPath) {
+                final String old;
+                synchronized (newImageCodePaths) {
+                    old = newImageCodePaths[index];
+                    newImageCodePaths[index] = imageAbsPath;
+                }
+                if (incremental) {
+                    // volatile 写, 使读取 imageCodePaths 的线程能看到替换后的路径
+                    imageCodePaths = newImageCodePaths;
+                }
+                return old;
+            }
+
+            @Override
+            public void cleanup(@NonNull String imageAbsPath) {
+                // 删除失败的文件都记录在日志文件中, 方便后续清除.
+                try {
+                    if (!Files.deleteIfExists(Paths.get(imageAbsPath))) {
+                        log.warn("删除旧的验证码图片失败: {}", imageAbsPath);
+                    }
+                }
                 catch (Exception e) {
-                    // 创建图片验证码失败, 添加 newImageCodePaths 索引信息添加到图片验证码路径上, 例如: index_absImagePath
-                    failures.add(index + IMAGE_NAME_DELIMITER + imageAbsPath);
+                    log.warn("删除旧的验证码图片失败: " + imageAbsPath, e);
                 }
-            });
-            futures.add(voidCompletableFuture);
-        }
+            }
+        });
 
-        try {
-            // 等待异步执行完成,
-            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenRun(() -> {
-                // 并对创建图片验证码失败的结果进行重新创建, 如果再此创建不成功, 随机赋值一个已成功的图片验证码路径.
-                for (String failure : failures) {
-                    final String[] split = failure.split(IMAGE_NAME_DELIMITER, 2);
-                    final String imageAbsPath = split[1];
-                    try (final OutputStream outputStream =
-                                 Files.newOutputStream(Paths.get(imageAbsPath), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
-                        final String fileName = imageAbsPath.substring(imageAbsPath.indexOf(PATH_SEPARATOR) + 1);
-                        final String code = fileName.substring(0, fileName.indexOf(IMAGE_NAME_DELIMITER));
-                        ImageUtil.outputImage(width, height, outputStream, code);
+        if (!incremental) {
+            // 生成失败的位置复制一个已成功的图片验证码; 全部失败时保留旧的缓存
+            if (!fillFailures(newImageCodePaths, imageCacheAbsPath)) {
+                log.warn("生成图片验证码全部失败, 保留旧的图片验证码缓存: {}", statistics);
+                return;
+            }
+            this.imageCodePaths = newImageCodePaths;
+            // 删除旧的验证码图片
+            if (oldImageCodePaths != null) {
+                for (String oldImageCodePath : oldImageCodePaths) {
+                    try {
+                        if (oldImageCodePath != null && !Files.deleteIfExists(Paths.get(oldImageCodePath))) {
+                            log.warn("删除旧的验证码图片失败: {}", oldImageCodePath);
+                        }
                     }
                     catch (Exception e) {
-                        newImageCodePaths[Integer.parseInt(split[0])] = getImageAbsPath(newImageCodePaths);
+                        log.warn("删除旧的验证码图片失败: " + oldImageCodePath, e);
                     }
                 }
-            }).get();
-
+            }
         }
-        catch (InterruptedException | ExecutionException e) {
-            log.error("创建新验证码图片失败: " + e.getMessage(), e);
+
+        log.info("生成图片验证码任务: {}", statistics);
+    }
+
+    /**
+     * 内存池不存在时创建并填充整个内存池, 否则按 memoryPoolRefreshRatio 轮换替换内存池中的一部分图片验证码
+     */
+    private void refreshImageCodePool() {
+        final ValidateCodeProperties.ImageCodeProperties image = validateCodeProperties.getImage();
+        ImageCodePool pool = this.imageCodePool;
+        final boolean create = pool == null;
+        if (create) {
+            pool = new ImageCodePool(totalImages, image.getWidth(), image.getHeight(), image.getLength());
         }
+        final float ratio = create ? 1.0F : Math.min(1.0F, Math.max(0.0F, image.getMemoryPoolRefreshRatio()));
+        final int[] reserved = pool.reserveRefresh(ratio);
+        final ImageCodePool imageCodePool = pool;
+        final RenderStatistics statistics = this.renderExecutor.regenerate(RENDER_NAME, reserved[1], new ValidateCodeRenderExecutor.CodeSlots<ImageCodePool.PooledImageCode>() {
+            @NonNull
+            @Override
+            public ImageCodePool.PooledImageCode render() throws Exception {
+                return imageCodePool.render();
+            }
 
-        this.imageCodePaths = newImageCodePaths;
+            @Nullable
+            @Override
+            public ImageCodePool.PooledImageCode swap(int index, @NonNull ImageCodePool.PooledImageCode code) {
+                return imageCodePool.swap(imageCodePool.index(reserved[0] + index), code);
+            }
+
+            @Override
+            public void cleanup(@NonNull ImageCodePool.PooledImageCode code) {
+                // 堆外内存由 GC 回收
+            }
+        });
+        if (create) {
+            this.imageCodePool = pool;
+        }
+        log.info("{}图片验证码内存池: 总数={}, {}", create ? "创建" : "刷新", pool.size(), statistics);
+    }
 
-        // 2. 删除旧的验证码图片, 删除失败的文件都记录在日志文件中, 方便后续清除.
-        if (oldImageCodePaths != null) {
-            //noinspection ConstantConditions
-            for (int i = 0; i < totalImages; i++) {
+    /**
+     * 对生成失败(为 null)的位置随机复制一个已成功的图片验证码文件, 每个位置引用各自的文件,
+     * 以免逐个替换时删除仍被其他位置引用的图片. 复制失败的位置保持为 null, 读取时会跳过.
+     * @param imageCodePaths        图片验证码路径数组
+     * @param imageCacheAbsPath     缓存图片验证码的目录
+     * @return  是否有生成成功的图片验证码
+     */
+    private boolean fillFailures(@NonNull String[] imageCodePaths, @NonNull String imageCacheAbsPath) {
+        final List<String> successes = Arrays.stream(imageCodePaths).filter(Objects::nonNull).collect(Collectors.toList());
+        if (successes.isEmpty()) {
+            return false;
+        }
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < imageCodePaths.length; i++) {
+            if (imageCodePaths[i] == null) {
+                final String source = successes.get(random.nextInt(successes.size()));
+                final String sourceFileName = Optional.ofNullable(getFileName(source)).orElse(source);
+                final String code = sourceFileName.substring(0, sourceFileName.indexOf(IMAGE_NAME_DELIMITER));
+                final String target = imageCacheAbsPath + PATH_SEPARATOR + code + IMAGE_NAME_DELIMITER + getUuid() + "." + IMAGE_TYPE;
                 try {
-                    final boolean deleteIfExists = Files.deleteIfExists(Paths.get(oldImageCodePaths[i]));
-                    if (!deleteIfExists) {
-                        log.warn("删除旧的验证码图片失败: {}", oldImageCodePaths[i]);
-                    }
+                    Files.copy(Paths.get(source), Paths.get(target));
+                    imageCodePaths[i] = target;
                 }
                 catch (Exception e) {
-                    log.warn("删除旧的验证码图片失败: " + oldImageCodePaths[i], e);
+                    log.warn(String.format("复制验证码图片 %s 失败: %s", source, e.getMessage()), e);
                 }
             }
-            // 设置为 null, 有助于垃圾回收
-            //noinspection UnusedAssignment
-            oldImageCodePaths = null;
         }
-
-        log.info("生成图片验证码任务总耗时={} 毫秒", Instant.now().toEpochMilli() - now.toEpochMilli());
+        return true;
     }
 
-}
\ No newline at end of file
+}
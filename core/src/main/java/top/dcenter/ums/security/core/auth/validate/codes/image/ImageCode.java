@@ -29,6 +29,8 @@ import lombok.ToString;
 import org.springframework.data.annotation.Transient;
 import top.dcenter.ums.security.core.api.validate.code.ValidateCode;
 
+import java.nio.ByteBuffer;
+
 /**
  * 图片验证码封装, 添加 @Transient 注解的是为了再保存 session 时把不必要的且图片字段清楚
  * @author zhailiang
@@ -46,8 +48,16 @@ public class ImageCode extends ValidateCode {
     @Transient
     private transient String imageUrl;
 
+    /**
+     * 内存池模式时的 png 图片数据(只读), 此时 imageUrl 为 null
+     */
+    @ToString.Exclude
+    @Transient
+    private transient ByteBuffer imageBuffer;
+
     public ImageCode() {
         this.imageUrl = null;
+        this.imageBuffer = null;
     }
 
     /**
@@ -59,6 +69,19 @@ public class ImageCode extends ValidateCode {
     public ImageCode(String imageUrl, String code, int expireIn) {
         super(code, expireIn);
         this.imageUrl = imageUrl;
+        this.imageBuffer = null;
+    }
+
+    /**
+     * 内存池模式的图片验证码
+     * @param imageBuffer   png 图片数据(只读)
+     * @param code          验证码字符串
+     * @param expireIn      秒
+     */
+    public ImageCode(ByteBuffer imageBuffer, String code, int expireIn) {
+        super(code, expireIn);
+        this.imageUrl = null;
+        this.imageBuffer = imageBuffer;
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,162 @@
+/*
+ * MIT License
+ * Copyright (c) 2020-2029 YongWu zheng (dcenter.top and gitee.com/pcore and github.com/ZeroOrInfinity)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package top.dcenter.ums.security.core.auth.validate.codes.image;
+
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static top.dcenter.ums.security.core.util.ValidateCodeUtil.generateVerifyCode;
+
+/**
+ * 图片验证码内存池: 预先编码为 png 的图片验证码保存在堆外内存(direct ByteBuffer)中, 获取验证码时无锁随机选取, 不读写文件. <br>
+ * 刷新时按顺序轮换替换一部分图片验证码({@link #reserveRefresh(float)}), 替换单个位置是原子操作, 正在发送的旧图片数据不受影响.
+ * @author YongWu zheng
+ * @version V2.0  Created by 2020/11/30 15:10
+ */
+public class ImageCodePool {
+
+    private final AtomicReferenceArray<PooledImageCode> pool;
+    /**
+     * 下一次刷新开始的位置
+     */
+    private final AtomicInteger refreshCursor = new AtomicInteger(0);
+    private final int width;
+    private final int height;
+    private final int codeLength;
+
+    public ImageCodePool(int size, int width, int height, int codeLength) {
+        this.pool = new AtomicReferenceArray<>(Math.max(1, size));
+        this.width = width;
+        this.height = height;
+        this.codeLength = codeLength;
+    }
+
+    /**
+     * 随机获取一个图片验证码
+     * @return  图片验证码, 内存池还未填充时返回 null
+     */
+    @Nullable
+    public PooledImageCode randomImageCode() {
+        return this.pool.get(ThreadLocalRandom.current().nextInt(this.pool.length()));
+    }
+
+    /**
+     * 预留下一次轮换替换的位置
+     * @param ratio 替换的比例, 取值范围: (0, 1]
+     * @return  int[]{开始位置, 替换数量}, 替换位置为 {@link #index(int)}(开始位置 + i), i 从 0 到 替换数量 - 1
+     */
+    @NonNull
+    public int[] reserveRefresh(float ratio) {
+        final int size = this.pool.length();
+        // 以 float 计算, 避免 ratio 转为 double 后的误差使替换数量多 1 个(如 10 * 0.3F)
+        final int count = Math.max(1, Math.min(size, (int) Math.ceil(size * ratio)));
+        return new int[]{this.refreshCursor.getAndAdd(count), count};
+    }
+
+    /**
+     * @param position  位置, 可以超过内存池大小
+     * @return  内存池中的位置
+     */
+    public int index(int position) {
+        return Math.floorMod(position, this.pool.length());
+    }
+
+    /**
+     * 原子替换 index 位置的图片验证码
+     * @param index         内存池中的位置
+     * @param imageCode     新的图片验证码
+     * @return  被替换的图片验证码, 没有时返回 null
+     */
+    @Nullable
+    public PooledImageCode swap(int index, @NonNull PooledImageCode imageCode) {
+        return this.pool.getAndSet(index, imageCode);
+    }
+
+    /**
+     * 生成一个新的图片验证码
+     * @return  图片验证码
+     * @throws IOException  生成失败
+     */
+    @NonNull
+    public PooledImageCode render() throws IOException {
+        final String code = generateVerifyCode(this.codeLength);
+        return new PooledImageCode(code, encode(this.width, this.height, code));
+    }
+
+    public int size() {
+        return this.pool.length();
+    }
+
+    /**
+     * 把图片验证码编码为 png 并保存在堆外内存中
+     * @param width     图片宽度
+     * @param height    图片高度
+     * @param code      验证码
+     * @return  只读的 png 图片数据
+     * @throws IOException  编码失败
+     */
+    @NonNull
+    public static ByteBuffer encode(int width, int height, @NonNull String code) throws IOException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(8192);
+        ImageUtil.outputImage(width, height, outputStream, code);
+        final byte[] bytes = outputStream.toByteArray();
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes).flip();
+        return buffer.asReadOnlyBuffer();
+    }
+
+    /**
+     * 内存池中的图片验证码: 验证码与只读的 png 图片数据
+     */
+    public static final class PooledImageCode {
+
+        private final String code;
+        private final ByteBuffer image;
+
+        PooledImageCode(String code, ByteBuffer image) {
+            this.code = code;
+            this.image = image;
+        }
+
+        @NonNull
+        public String getCode() {
+            return this.code;
+        }
+
+        /**
+         * @return  png 图片数据的只读视图, 每次调用返回独立的 position/limit, 可以并发读取
+         */
+        @NonNull
+        public ByteBuffer getImage() {
+            return this.image.duplicate();
+        }
+    }
+}
@@ -39,6 +39,7 @@ import top.dcenter.ums.security.core.util.MvcUtil;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
 import java.nio.channels.WritableByteChannel;
@@ -80,6 +81,21 @@ public class ImageValidateCodeProcessor extends AbstractValidateCodeProcessor {
 
             response.setContentType(MediaType.IMAGE_PNG_VALUE);
 
+            // 内存池模式: 直接把内存中的 png 数据写入响应
+            final ByteBuffer imageBuffer = imageCode.getImageBuffer();
+            if (imageBuffer != null)
+            {
+                final ByteBuffer buffer = imageBuffer.duplicate();
+                response.setContentLength(buffer.remaining());
+                try (final WritableByteChannel writableByteChannel = Channels.newChannel(response.getOutputStream())) {
+                    while (buffer.hasRemaining())
+                    {
+                        writableByteChannel.write(buffer);
+                    }
+                }
+                return true;
+            }
+
             try (final FileChannel fileChannel = FileChannel.open(Paths.get(imageCode.getImageUrl()), StandardOpenOption.READ);
                  final WritableByteChannel writableByteChannel = Channels.newChannel(response.getOutputStream())) {
                 fileChannel.transferTo(0, fileChannel.size(), writableByteChannel);
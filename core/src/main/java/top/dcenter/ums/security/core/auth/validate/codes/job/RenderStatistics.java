@@ -0,0 +1,66 @@
+/*
+ * MIT License
+ * Copyright (c) 2020-2029 YongWu zheng (dcenter.top and gitee.com/pcore and github.com/ZeroOrInfinity)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package top.dcenter.ums.security.core.auth.validate.codes.job;
+
+import lombok.Getter;
+
+/**
+ * 一次验证码图片生成任务的统计数据
+ * @author YongWu zheng
+ * @version V2.0  Created by 2020/11/30 17:20
+ */
+@Getter
+public class RenderStatistics {
+
+    /**
+     * 验证码类型名称, 例如: image, slider
+     */
+    private final String name;
+    private final int total;
+    private final int rendered;
+    private final int failed;
+    private final long durationMillis;
+
+    public RenderStatistics(String name, int total, int rendered, int failed, long durationMillis) {
+        this.name = name;
+        this.total = total;
+        this.rendered = rendered;
+        this.failed = failed;
+        this.durationMillis = durationMillis;
+    }
+
+    /**
+     * @return 吞吐量: 每秒生成的验证码图片数, 耗时为 0 时返回 0.0
+     */
+    public double getThroughput() {
+        return this.durationMillis <= 0L ? 0.0D : this.rendered * 1000.0D / this.durationMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("RenderStatistics{name=%s, total=%d, rendered=%d, failed=%d, duration=%dms, " +
+                                     "throughput=%.2f/s}",
+                             this.name, this.total, this.rendered, this.failed, this.durationMillis, getThroughput());
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * MIT License
+ * Copyright (c) 2020-2029 YongWu zheng (dcenter.top and gitee.com/pcore and github.com/ZeroOrInfinity)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package top.dcenter.ums.security.core.auth.validate.codes.job;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import top.dcenter.ums.security.core.auth.properties.ValidateCodeProperties;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 验证码图片生成专用的线程池: 线程数固定, 通过已提交未完成任务数的上限实现背压; 每生成一个验证码就替换对应位置的旧验证码,
+ * 被替换的旧验证码在延迟 renderCleanupGrace 后清理, 不需要等全部生成完成后再一次性替换与删除.
+ * @author YongWu zheng
+ * @version V2.0  Created by 2020/11/30 17:05
+ */
+@Slf4j
+public class ValidateCodeRenderExecutor implements DisposableBean {
+
+    private final ThreadPoolExecutor executor;
+    private final int maxPending;
+    private final long cleanupGraceNanos;
+    /**
+     * Map(验证码类型名称, 最近一次生成任务的统计数据)
+     */
+    private final Map<String, RenderStatistics> lastStatistics = new ConcurrentHashMap<>();
+
+    public ValidateCodeRenderExecutor(@NonNull ValidateCodeProperties validateCodeProperties) {
+        final int threads = Math.max(1, validateCodeProperties.getRenderThreads());
+        final AtomicInteger threadNumber = new AtomicInteger(1);
+        this.executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                                               new LinkedBlockingQueue<>(),
+                                               r -> {
+                                                   Thread thread = new Thread(r, "validateCodeRender-" + threadNumber.getAndIncrement());
+                                                   thread.setDaemon(true);
+                                                   return thread;
+                                               });
+        this.executor.allowCoreThreadTimeOut(true);
+        this.maxPending = Math.max(1, validateCodeProperties.getRenderMaxPending());
+        final Duration grace = validateCodeProperties.getRenderCleanupGrace();
+        this.cleanupGraceNanos = grace == null ? 0L : Math.max(0L, grace.toNanos());
+    }
+
+    /**
+     * 验证码位置的生成, 替换与清理逻辑
+     * @param <T>   验证码类型, 例如: 验证码图片路径
+     */
+    public interface CodeSlots<T> {
+        /**
+         * 生成一个新的验证码
+         * @return  新的验证码
+         * @throws Exception    生成失败
+         */
+        @NonNull
+        T render() throws Exception;
+
+        /**
+         * 用新的验证码替换 index 位置的验证码
+         * @param index 位置
+         * @param code  新的验证码
+         * @return  被替换的旧验证码, 没有时返回 null
+         */
+        @Nullable
+        T swap(int index, @NonNull T code);
+
+        /**
+         * 清理被替换的旧验证码, 例如: 删除旧的验证码图片文件
+         * @param code  被替换的旧验证码
+         */
+        void cleanup(@NonNull T code);
+    }
+
+    /**
+     * 在线程池中生成 total 个验证码, 每生成一个即替换对应位置的验证码, 等待全部完成后返回统计数据.
+     * 生成失败时重试一次, 仍失败时保留旧的验证码.
+     * @param name      验证码类型名称, 例如: image, slider
+     * @param total     生成的数量, 位置为 0 到 total - 1
+     * @param slots     验证码位置的生成, 替换与清理逻辑
+     * @param <T>       验证码类型
+     * @return  统计数据
+     */
+    @NonNull
+    public <T> RenderStatistics regenerate(@NonNull String name, int total, @NonNull CodeSlots<T> slots) {
+        final long start = System.nanoTime();
+        final Semaphore pending = new Semaphore(this.maxPending);
+        final CountDownLatch latch = new CountDownLatch(total);
+        final AtomicInteger rendered = new AtomicInteger(0);
+        final AtomicInteger failed = new AtomicInteger(0);
+        final Queue<Retired<T>> retiredQueue = new ConcurrentLinkedQueue<>();
+
+        try
+        {
+            for (int i = 0; i < total; i++)
+            {
+                pending.acquire();
+                final int index = i;
+                final Runnable task = () -> {
+                    try
+                    {
+                        final T code = renderWithRetry(slots);
+                        final T old = slots.swap(index, code);
+                        if (old != null)
+                        {
+                            retiredQueue.add(new Retired<>(old, System.nanoTime()));
+                        }
+                        rendered.incrementAndGet();
+                        cleanupRetired(retiredQueue, slots, System.nanoTime() - this.cleanupGraceNanos, false);
+                    }
+                    catch (Exception e)
+                    {
+                        failed.incrementAndGet();
+                        log.warn(String.format("生成验证码失败: name=%s, index=%d, error=%s", name, index, e.getMessage()), e);
+                    }
+                    finally
+                    {
+                        pending.release();
+                        latch.countDown();
+                    }
+                };
+                try
+                {
+                    this.executor.execute(task);
+                }
+                catch (RejectedExecutionException e)
+                {
+                    failed.incrementAndGet();
+                    pending.release();
+                    latch.countDown();
+                }
+            }
+            latch.await();
+
+            // 等待宽限期后清理剩余的旧验证码
+            final Retired<T> last = lastOf(retiredQueue);
+            if (last != null)
+            {
+                final long waitNanos = last.retiredTime + this.cleanupGraceNanos - System.nanoTime();
+                if (waitNanos > 0L)
+                {
+                    TimeUnit.NANOSECONDS.sleep(waitNanos);
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            log.warn("生成验证码任务被中断: name={}", name);
+        }
+        cleanupRetired(retiredQueue, slots, 0L, true);
+
+        final RenderStatistics statistics =
+                new RenderStatistics(name, total, rendered.get(), failed.get(),
+                                     TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        this.lastStatistics.put(name, statistics);
+        return statistics;
+    }
+
+    /**
+     * @param name  验证码类型名称, 例如: image, slider
+     * @return  最近一次生成任务的统计数据, 没有时返回 null
+     */
+    @Nullable
+    public RenderStatistics getLastStatistics(@NonNull String name) {
+        return this.lastStatistics.get(name);
+    }
+
+    @Override
+    public void destroy() {
+        this.executor.shutdownNow();
+    }
+
+    private static <T> T renderWithRetry(CodeSlots<T> slots) throws Exception {
+        try
+        {
+            return slots.render();
+        }
+        catch (Exception e)
+        {
+            return slots.render();
+        }
+    }
+
+    /**
+     * 清理在 retiredBefore 之前被替换的旧验证码, all 为 true 时清理全部
+     */
+    private static <T> void cleanupRetired(Queue<Retired<T>> retiredQueue, CodeSlots<T> slots,
+                                           long retiredBefore, boolean all) {
+        Retired<T> retired;
+        while ((retired = retiredQueue.peek()) != null && (all || retired.retiredTime - retiredBefore <= 0L))
+        {
+            if (!retiredQueue.remove(retired))
+            {
+                continue;
+            }
+            try
+            {
+                slots.cleanup(retired.code);
+            }
+            catch (Exception e)
+            {
+                log.warn("清理旧的验证码失败: " + retired.code, e);
+            }
+        }
+    }
+
+    @Nullable
+    private static <T> Retired<T> lastOf(Queue<Retired<T>> retiredQueue) {
+        Retired<T> last = null;
+        for (Retired<T> retired : retiredQueue)
+        {
+            last = retired;
+        }
+        return last;
+    }
+
+    private static final class Retired<T> {
+
+        private final T code;
+        private final long retiredTime;
+
+        Retired(T code, long retiredTime) {
+            this.code = code;
+            this.retiredTime = retiredTime;
+        }
+    }
+}
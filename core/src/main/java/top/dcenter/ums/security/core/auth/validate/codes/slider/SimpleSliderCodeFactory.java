@@ -25,11 +25,15 @@ package top.dcenter.ums.security.core.auth.validate.codes.slider;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
 import org.springframework.util.StringUtils;
 import top.dcenter.ums.security.common.enums.ErrorCodeEnum;
 import top.dcenter.ums.security.core.api.validate.code.slider.SliderCodeFactory;
 import top.dcenter.ums.security.core.auth.properties.ValidateCodeProperties;
+import top.dcenter.ums.security.core.auth.validate.codes.job.RenderStatistics;
+import top.dcenter.ums.security.core.auth.validate.codes.job.ValidateCodeRenderExecutor;
 import top.dcenter.ums.security.core.exception.ValidateCodeException;
+import top.dcenter.ums.security.core.util.MvcUtil;
 import top.dcenter.ums.security.core.util.ValidateCodeUtil;
 
 import javax.annotation.PostConstruct;
@@ -43,24 +47,26 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.time.Instant;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.stream.Collectors;
 
-import static top.dcenter.ums.security.core.auth.validate.codes.slider.SliderCodeUtil.cutImageByTemplate;
+import static top.dcenter.ums.security.core.auth.validate.codes.slider.SliderCodeUtil.cutImage;
 import static top.dcenter.ums.security.core.auth.validate.codes.slider.SliderCodeUtil.getImageByteBASE64;
+import static top.dcenter.ums.security.core.auth.validate.codes.slider.SliderCodeUtil.getImageBytes;
 import static top.dcenter.ums.security.core.auth.validate.codes.slider.SliderCodeUtil.getRandomImageFile;
+import static top.dcenter.ums.security.core.auth.validate.codes.slider.SliderCodeUtil.toIntImage;
+import static top.dcenter.ums.security.common.consts.SecurityConstants.URL_SEPARATOR;
+import static top.dcenter.ums.security.core.auth.validate.codes.slider.SliderImagePool.MARK_IMAGE;
+import static top.dcenter.ums.security.core.auth.validate.codes.slider.SliderImagePool.SRC_IMAGE;
 import static top.dcenter.ums.security.core.util.ValidateCodeUtil.PATH_SEPARATOR;
 import static top.dcenter.ums.security.core.util.ValidateCodeUtil.getAbsPath;
 import static top.dcenter.ums.security.core.util.ValidateCodeUtil.getFileName;
-import static top.dcenter.ums.security.core.util.ValidateCodeUtil.getImageAbsPath;
 import static top.dcenter.ums.security.core.util.ValidateCodeUtil.getUuid;
 import static top.dcenter.ums.security.core.util.ValidateCodeUtil.readFiles2CacheImageCodes;
 
@@ -97,8 +103,23 @@ public class SimpleSliderCodeFactory implements SliderCodeFactory {
      */
     private static final float PERCENTAGE = 0.9F;
 
+    /**
+     * 生成验证码图片任务统计数据的名称
+     */
+    private static final String RENDER_NAME = "slider";
+
+    /**
+     * 以二进制图片的方式发送滑块验证码时, 图片 url 的路径
+     */
+    public static final String SLIDER_IMAGE_PATH = "/slider/image";
+
     private final ValidateCodeProperties validateCodeProperties;
 
+    /**
+     * 生成验证码图片的专用线程池
+     */
+    private final ValidateCodeRenderExecutor renderExecutor;
+
     /**
      * 抠图模板图片的绝对路径
      */
@@ -115,6 +136,16 @@ public class SimpleSliderCodeFactory implements SliderCodeFactory {
      */
     private volatile String[] codeImagePaths = null;
 
+    /**
+     * 解码后的模板图片与源图片的缓存: Map(图片绝对路径, 图片)
+     */
+    private final Map<String, BufferedImage> decodedImages = new ConcurrentHashMap<>();
+
+    /**
+     * 以二进制图片的方式发送滑块验证码时的滑块验证码图片内存池, 否则为 null
+     */
+    private final SliderImagePool sliderImagePool;
+
     /**
      * 缓存的验证码图片数
      */
@@ -130,7 +161,27 @@ public class SimpleSliderCodeFactory implements SliderCodeFactory {
 
 
     public SimpleSliderCodeFactory(ValidateCodeProperties validateCodeProperties) {
+        this(validateCodeProperties, new ValidateCodeRenderExecutor(validateCodeProperties));
+    }
+
+    public SimpleSliderCodeFactory(ValidateCodeProperties validateCodeProperties,
+                                   ValidateCodeRenderExecutor renderExecutor) {
+        this(validateCodeProperties, renderExecutor,
+             validateCodeProperties.getSlider().getEnableBinaryImage() ?
+                     new SliderImagePool(validateCodeProperties.getTotalImages()) : null);
+    }
+
+    /**
+     * @param validateCodeProperties    validateCodeProperties
+     * @param renderExecutor            生成验证码图片的专用线程池
+     * @param sliderImagePool           滑块验证码图片内存池, 不以二进制图片的方式发送滑块验证码时为 null
+     */
+    public SimpleSliderCodeFactory(ValidateCodeProperties validateCodeProperties,
+                                   ValidateCodeRenderExecutor renderExecutor,
+                                   @Nullable SliderImagePool sliderImagePool) {
         this.validateCodeProperties = validateCodeProperties;
+        this.renderExecutor = renderExecutor;
+        this.sliderImagePool = sliderImagePool;
         final ValidateCodeProperties.SliderCodeProperties slider = validateCodeProperties.getSlider();
         this.grayscale = slider.getGrayscale();
         this.totalImages = validateCodeProperties.getTotalImages();
@@ -149,6 +200,11 @@ public class SimpleSliderCodeFactory implements SliderCodeFactory {
     public void init() {
         // 判断是否配置了图片验证码
         if (validateCodeProperties.getSlider().getAuthUrls().size() > 0) {
+            if (this.sliderImagePool != null) {
+                // 填充滑块验证码图片内存池
+                refreshValidateCodeJob();
+                return;
+            }
             // 从缓存中读取滑块验证码或者重新创建滑块验证码缓存
             readOrCreateCacheImageCodes();
         }
@@ -160,6 +216,9 @@ public class SimpleSliderCodeFactory implements SliderCodeFactory {
         try
         {
             final ThreadLocalRandom random = ThreadLocalRandom.current();
+            if (this.sliderImagePool != null) {
+                return getBinarySliderCode(random);
+            }
             if (codeImagePaths != null) {
                 // 从缓存中获取验证码
                 final String srcImageAbsPath = codeImagePaths[random.nextInt(totalImages)];
@@ -221,6 +280,89 @@ public class SimpleSliderCodeFactory implements SliderCodeFactory {
                               height);
     }
 
+    /**
+     * 从滑块验证码图片内存池中随机获取滑块验证码, 返回的滑块验证码只包含图片的 url, 不包含图片数据
+     * @param random    {@link ThreadLocalRandom}
+     * @return  滑块验证码
+     * @throws IOException  内存池还未填充时, 实时生成滑块验证码错误
+     */
+    @NonNull
+    private SliderCode getBinarySliderCode(ThreadLocalRandom random) throws IOException {
+        SliderImagePool.SliderImage image = this.sliderImagePool.randomImage();
+        if (image == null) {
+            // 内存池还未填充, 实时生成并放入内存池
+            image = renderSliderImage(random);
+            final SliderImagePool.SliderImage old = this.sliderImagePool.swap(random.nextInt(this.sliderImagePool.size()), image);
+            if (old != null) {
+                this.sliderImagePool.remove(old);
+            }
+        }
+
+        final SliderCode sliderCode = new SliderCode(null,
+                                                     expireIn,
+                                                     image.getToken(),
+                                                     null,
+                                                     null,
+                                                     image.getLocationX(),
+                                                     image.getLocationY(),
+                                                     image.getSourceWidth(),
+                                                     image.getSourceHeight());
+        // {servletContextPath}{validateCodeUrlPrefix}/slider/image/{token}/{type}
+        final String urlPrefix = MvcUtil.getServletContextPath()
+                + this.validateCodeProperties.getValidateCodeUrlPrefix()
+                + SLIDER_IMAGE_PATH + URL_SEPARATOR + image.getToken() + URL_SEPARATOR;
+        sliderCode.setSourceImageUrl(urlPrefix + SRC_IMAGE);
+        sliderCode.setNewImageUrl(urlPrefix + MARK_IMAGE);
+        return sliderCode;
+    }
+
+    /**
+     * 生成 png 编码的滑块验证码图片
+     * @param random    {@link ThreadLocalRandom}
+     * @return  滑块验证码图片
+     * @throws IOException  生成滑块验证码错误
+     */
+    @NonNull
+    private SliderImagePool.SliderImage renderSliderImage(ThreadLocalRandom random) throws IOException {
+        final SliderCutResult cutResult = cutImage(readImage(getRandomImageFile(this.templateImagePaths, random)),
+                                                   readImage(getRandomImageFile(this.originalImagePaths, random)),
+                                                   this.grayscale);
+        final BufferedImage srcImage = cutResult.getSrcImage();
+        return new SliderImagePool.SliderImage(getUuid(),
+                                               cutResult.getLocationX(),
+                                               cutResult.getLocationY(),
+                                               srcImage.getWidth(),
+                                               srcImage.getHeight(),
+                                               getImageBytes(srcImage),
+                                               getImageBytes(cutResult.getMarkImage()));
+    }
+
+    /**
+     * 重新生成滑块验证码图片内存池中的图片, 逐个替换, 被替换的图片在宽限期后从 token 索引中移除
+     */
+    private void refreshSliderImagePool() {
+        final SliderImagePool pool = this.sliderImagePool;
+        final RenderStatistics statistics = this.renderExecutor.regenerate(RENDER_NAME, pool.size(), new ValidateCodeRenderExecutor.CodeSlots<SliderImagePool.SliderImage>() {
+            @NonNull
+            @Override
+            public SliderImagePool.SliderImage render() throws Exception {
+                return renderSliderImage(ThreadLocalRandom.current());
+            }
+
+            @Nullable
+            @Override
+            public SliderImagePool.SliderImage swap(int index, @NonNull SliderImagePool.SliderImage image) {
+                return pool.swap(index, image);
+            }
+
+            @Override
+            public void cleanup(@NonNull SliderImagePool.SliderImage image) {
+                pool.remove(image);
+            }
+        });
+        log.info("生成滑块验证码任务: {}", statistics);
+    }
+
     @Override
     public void refreshValidateCodeJob() {
 
@@ -229,93 +371,97 @@ public class SimpleSliderCodeFactory implements SliderCodeFactory {
             return;
         }
 
-        final Instant now = Instant.now();
-        final ThreadLocalRandom random = ThreadLocalRandom.current();
-        String[] oldCodeImagePaths = this.codeImagePaths;
-        final String[] newImageCodePaths = new String[totalImages];
+        if (this.sliderImagePool != null) {
+            refreshSliderImagePool();
+            return;
+        }
+
         ValidateCodeProperties.SliderCodeProperties slider = validateCodeProperties.getSlider();
         final String codeImageAbsPath = getAbsPath(slider.getCodeImageDirectory());
 
-        // 1. 创建新验证码图片
-        // 存储 newImageCodePaths 数组索引位置
-        List<Integer> failures = new CopyOnWriteArrayList<>();
-        // 存储异步执行 future
-        List<CompletableFuture<Void>> futures = new ArrayList<>();
-        for (int y = 0; y < totalImages; y++) {
-            try {
-                // 生成滑块验证码图片
-                final ImageInfo imageInfo = generateSliderImage(random, codeImageAbsPath);
-                newImageCodePaths[y] = imageInfo.srcImageAbsPath;
-                // 创建异步执行图片验证码生成 future
-                final int index = y;
-                final CompletableFuture<Void> voidCompletableFuture = CompletableFuture.runAsync(() -> {
-                    try {
-                        // 写入文件
-                        write2File(imageInfo.srcImageAbsPath, imageInfo.sliderCodeInfo.srcImage);
-                        write2File(imageInfo.markImageAbsPath, imageInfo.sliderCodeInfo.markImage);
-                    }
-                    catch (Exception e) {
-                        // 创建图片验证码失败, 添加 newImageCodePaths 索引信息
-                        failures.add(index);
-                    }
-                });
-                futures.add(voidCompletableFuture);
+        // 已有相同大小的缓存时逐个替换, 否则生成完整的新缓存后再替换
+        final String[] oldCodeImagePaths = this.codeImagePaths;
+        final boolean incremental = oldCodeImagePaths != null && oldCodeImagePaths.length == totalImages;
+        final String[] newImageCodePaths = incremental ? oldCodeImagePaths : new String[totalImages];
+
+        final RenderStatistics statistics = this.renderExecutor.regenerate(RENDER_NAME, totalImages, new ValidateCodeRenderExecutor.CodeSlots<String>() {
+            @NonNull
+            @Override
+            public String render() throws Exception {
+                // 生成滑块验证码图片并写入文件
+                final ImageInfo imageInfo = generateSliderImage(ThreadLocalRandom.current(), codeImageAbsPath);
+                write2File(imageInfo.srcImageAbsPath, imageInfo.sliderCodeInfo.srcImage);
+                write2File(imageInfo.markImageAbsPath, imageInfo.sliderCodeInfo.markImage);
+                return imageInfo.srcImageAbsPath;
+            }
+
+            @Nullable
+            @Override
+            public String swap(int index, @NonNull String srcImageAbsPath) {
+                final String old;
+                synchronized (newImageCodePaths) {
+                    old = newImageCodePaths[index];
+                    newImageCodePaths[index] = srcImageAbsPath;
+                }
+                if (incremental) {
+                    // volatile 写, 使读取 codeImagePaths 的线程能看到替换后的路径
+                    codeImagePaths = newImageCodePaths;
+                }
+                return old;
             }
-            catch (Exception e) {
-                log.error("创建新滑块验证码图片失败: " + e.getMessage(), e);
+
+            @Override
+            public void cleanup(@NonNull String srcImageAbsPath) {
+                deleteCodeImages(srcImageAbsPath);
             }
-        }
-        try {
-            // 等待异步执行完成,
-            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenRun(() -> {
-                ThreadLocalRandom localRandom = ThreadLocalRandom.current();
-                // 对创建图片验证码失败的结果进行重新创建, 如果再此创建不成功, 随机赋值一个已成功的图片验证码路径.
-                for (Integer index : failures) {
-                    try {
-                        // 生成滑块验证码图片
-                        final ImageInfo imageInfo = generateSliderImage(localRandom, codeImageAbsPath);
-                        newImageCodePaths[index] = imageInfo.srcImageAbsPath;
-                        // 写入文件
-                        write2File(imageInfo.srcImageAbsPath, imageInfo.sliderCodeInfo.srcImage);
-                        write2File(imageInfo.markImageAbsPath, imageInfo.sliderCodeInfo.markImage);
+        });
+
+        if (!incremental) {
+            // 生成失败的位置随机赋值一个已成功的图片验证码路径
+            final List<String> successes = Arrays.stream(newImageCodePaths)
+                                                 .filter(Objects::nonNull)
+                                                 .collect(Collectors.toList());
+            if (!successes.isEmpty()) {
+                final ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < totalImages; i++) {
+                    if (newImageCodePaths[i] == null) {
+                        newImageCodePaths[i] = successes.get(random.nextInt(successes.size()));
                     }
-                    catch (Exception e) {
-                        // 随机获取一个已有的缓存验证码赋值
-                        newImageCodePaths[index] = getImageAbsPath(newImageCodePaths);
+                }
+                this.codeImagePaths = newImageCodePaths;
+            }
+            // 删除旧的验证码图片
+            if (oldCodeImagePaths != null) {
+                for (String srcImageCodePath : oldCodeImagePaths) {
+                    if (srcImageCodePath != null) {
+                        deleteCodeImages(srcImageCodePath);
                     }
                 }
-            }).get();
-        }
-        catch (InterruptedException | ExecutionException e) {
-            log.error("创建新滑块验证码图片失败: " + e.getMessage(), e);
+            }
         }
 
-        this.codeImagePaths = newImageCodePaths;
+        log.info("生成滑块验证码任务: {}", statistics);
+    }
 
-        // 2. 删除旧的验证码图片, 删除失败的文件都记录在日志文件中, 方便后续清除.
-        if (oldCodeImagePaths != null) {
-            for (int i = 0; i < totalImages; i++) {
-                final String srcImageCodePath = oldCodeImagePaths[i];
-                try {
-                    boolean deleteIfExists = Files.deleteIfExists(Paths.get(srcImageCodePath));
-                    if (!deleteIfExists) {
-                        log.warn("删除旧的验证码图片失败: {}", srcImageCodePath);
-                    }
-                    String markImageCodePath = getMarkImageAbsPath(srcImageCodePath);
-                    deleteIfExists = Files.deleteIfExists(Paths.get(markImageCodePath));
-                    if (!deleteIfExists) {
-                        log.warn("删除旧的验证码图片失败: {}", markImageCodePath);
-                    }
-                }
-                catch (Exception e) {
-                    log.warn("删除旧的验证码图片失败: " + srcImageCodePath, e);
-                }
+    /**
+     * 删除缓存的滑块验证码大图与小图, 删除失败的文件都记录在日志文件中, 方便后续清除.
+     * @param srcImageCodePath  滑块验证码大图的绝对路径
+     */
+    private void deleteCodeImages(@NonNull String srcImageCodePath) {
+        try {
+            boolean deleteIfExists = Files.deleteIfExists(Paths.get(srcImageCodePath));
+            if (!deleteIfExists) {
+                log.warn("删除旧的验证码图片失败: {}", srcImageCodePath);
+            }
+            String markImageCodePath = getMarkImageAbsPath(srcImageCodePath);
+            deleteIfExists = Files.deleteIfExists(Paths.get(markImageCodePath));
+            if (!deleteIfExists) {
+                log.warn("删除旧的验证码图片失败: {}", markImageCodePath);
             }
-            // 设置为 null, 加速垃圾回收
-            //noinspection UnusedAssignment
-            oldCodeImagePaths = null;
         }
-        log.info("生成图片验证码任务总耗时={} 毫秒", Instant.now().toEpochMilli() - now.toEpochMilli());
+        catch (Exception e) {
+            log.warn("删除旧的验证码图片失败: " + srcImageCodePath, e);
+        }
     }
 
     private void readOrCreateCacheImageCodes() {
@@ -442,18 +588,18 @@ public class SimpleSliderCodeFactory implements SliderCodeFactory {
      * @return                      生成的滑块验证码信息
      */
     private SliderCodeInfo createSliderCodeInfo(File templateFile, File originalFile, int grayscale) throws IOException {
-        BufferedImage templateImage = ImageIO.read(templateFile);
-        BufferedImage oriImage = ImageIO.read(originalFile);
-        final Map<String, Object> sliderCodeInfoMap = cutImageByTemplate(templateImage, oriImage, grayscale);
+        BufferedImage templateImage = readImage(templateFile);
+        BufferedImage oriImage = readImage(originalFile);
+        final SliderCutResult cutResult = cutImage(templateImage, oriImage, grayscale);
 
-        BufferedImage markImage = (BufferedImage) sliderCodeInfoMap.get("markImage");
-        BufferedImage srcImage = (BufferedImage) sliderCodeInfoMap.get("srcImage");
+        BufferedImage markImage = cutResult.getMarkImage();
+        BufferedImage srcImage = cutResult.getSrcImage();
 
         // 构建缓存的文件名称
         final StringBuilder fileName = new StringBuilder();
-        fileName.append(sliderCodeInfoMap.get("locationX"))
+        fileName.append(cutResult.getLocationX())
                 .append(IMAGE_NAME_DELIMITER)
-                .append(sliderCodeInfoMap.get("locationY"))
+                .append(cutResult.getLocationY())
                 .append(IMAGE_NAME_DELIMITER)
                 .append(srcImage.getWidth())
                 .append(IMAGE_NAME_DELIMITER)
@@ -465,6 +611,26 @@ public class SimpleSliderCodeFactory implements SliderCodeFactory {
 
     }
 
+    /**
+     * 读取模板图片或源图片, 解码后的图片转换为可以直接操作像素数组的图片并缓存, 抠图时不会修改缓存的图片
+     * @param imageFile     图片文件
+     * @return              解码后的图片
+     * @throws IOException  读取图片错误
+     */
+    private BufferedImage readImage(File imageFile) throws IOException {
+        final String path = imageFile.getAbsolutePath();
+        BufferedImage image = this.decodedImages.get(path);
+        if (image == null) {
+            final BufferedImage decoded = ImageIO.read(imageFile);
+            if (decoded == null) {
+                throw new IOException("不支持的图片格式: " + path);
+            }
+            image = toIntImage(decoded);
+            this.decodedImages.putIfAbsent(path, image);
+        }
+        return image;
+    }
+
     /**
      * 为了提取重复代码, 重构方法而设置的内部类, 主要目的为传递多个变量值
      */
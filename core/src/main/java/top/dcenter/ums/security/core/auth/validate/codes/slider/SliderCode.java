@@ -50,6 +50,12 @@ public class SliderCode extends ValidateCode {
     @ToString.Exclude
     @Transient
     private transient String sourceImage;
+    /** 以二进制图片的方式发送滑块验证码时, 抠图图片的 url */
+    @Transient
+    private transient String newImageUrl;
+    /** 以二进制图片的方式发送滑块验证码时, 抠图后的源图片的 url */
+    @Transient
+    private transient String sourceImageUrl;
 
     /**
      * token
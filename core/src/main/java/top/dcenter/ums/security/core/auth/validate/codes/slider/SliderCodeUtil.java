@@ -24,11 +24,15 @@
 package top.dcenter.ums.security.core.auth.validate.codes.slider;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.lang.NonNull;
 import org.springframework.util.Base64Utils;
 
 import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
@@ -66,11 +70,20 @@ public class SliderCodeUtil {
      */
     @SuppressWarnings("AlibabaLowerCamelCaseVariableNaming")
     public static byte[] getImageByteBASE64(BufferedImage image) throws IOException {
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        return Base64Utils.encode(getImageBytes(image));
+    }
+
+    /**
+     * 图片转 png 编码的字节数组
+     * @param image     {@link BufferedImage}
+     * @return png 编码的字节数组
+     * @throws IOException  png 编码发生异常
+     */
+    public static byte[] getImageBytes(BufferedImage image) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
         ImageIO.write(image, "png", out);
         // 转成 byte 数组
-        byte[] bytes = out.toByteArray();
-        return Base64Utils.encode(bytes);
+        return out.toByteArray();
     }
 
     /**
@@ -89,11 +102,36 @@ public class SliderCodeUtil {
      * @param imageTarget   源图片
      * @param grayscale     在模板上抠图区灰阶等级: 4-10, 数值越高, 灰色越深
      * @return 返回生成的滑块图片数据: 处理后的源图片(srcImage)与处理后模板图片(markImage), 以及 X 轴(locationX), Y 轴(locationY)信息.
+     * @deprecated 使用 {@link #cutImage(BufferedImage, BufferedImage, int)} 代替
      */
+    @Deprecated
     public static Map<String, Object> cutImageByTemplate(BufferedImage imageTemplate, BufferedImage imageTarget,
                                                          int grayscale) {
 
+        final SliderCutResult result = cutImage(imageTemplate, imageTarget, grayscale);
+
         Map<String, Object> sliderCodeInfoMap = new HashMap<>(4);
+        sliderCodeInfoMap.put("markImage", result.getMarkImage());
+        sliderCodeInfoMap.put("srcImage", result.getSrcImage());
+        sliderCodeInfoMap.put("locationX", result.getLocationX());
+        sliderCodeInfoMap.put("locationY", result.getLocationY());
+
+        return sliderCodeInfoMap;
+    }
+
+    /**
+     * 根据模板抠图, 直接操作 TYPE_INT_ARGB/TYPE_INT_RGB 图片的 {@link DataBufferInt} 数组, 不逐像素经过 ColorModel 转换.<br>
+     * 不修改传入的图片, 返回的是新的图片, 因此传入的图片可以缓存重用;
+     * 传入的图片为 {@link #toIntImage(BufferedImage)} 转换后的图片时, 只需复制像素数组.
+     *
+     * @param imageTemplate 模板图片
+     * @param imageTarget   源图片
+     * @param grayscale     在模板上抠图区灰阶等级: 4-10, 数值越高, 灰色越深
+     * @return 返回生成的滑块图片数据: 处理后的源图片(srcImage)与处理后模板图片(markImage), 以及 X 轴(locationX), Y 轴(locationY)信息.
+     */
+    @NonNull
+    public static SliderCutResult cutImage(@NonNull BufferedImage imageTemplate, @NonNull BufferedImage imageTarget,
+                                           int grayscale) {
 
         ThreadLocalRandom random = ThreadLocalRandom.current();
 
@@ -118,95 +156,118 @@ public class SliderCodeUtil {
         final int offsetY = height / 10;
         int locationY = offsetY + random.nextInt(srcHeight - height - offsetY);
 
-        // 抠图后对应的模板图片
-        Graphics2D graphics = imageTemplate.createGraphics();
-        graphics.setBackground(Color.white);
+        // 复制为新的图片, 抠图后对应的模板图片
+        final BufferedImage markImage = copyToIntImage(imageTemplate, BufferedImage.TYPE_INT_ARGB);
+        final boolean srcHasAlpha = imageTarget.getColorModel().hasAlpha();
+        final BufferedImage srcImage = copyToIntImage(imageTarget, srcHasAlpha ? BufferedImage.TYPE_INT_ARGB
+                                                                               : BufferedImage.TYPE_INT_RGB);
 
-        // 对源图片进行抠图, 把抠除的图片放置到对应的模板图片 imageTemplate 上
-        cutImageByTemplate(imageTarget, imageTemplate, grayscale, locationX, locationY);
+        // 对源图片进行抠图, 把抠除的图片放置到对应的模板图片上
+        cutImageByTemplate(getData(srcImage), srcWidth, srcHasAlpha, getData(markImage), width, height,
+                           grayscale, locationX, locationY);
 
-        // 设置“抗锯齿”的属性
-        graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-        graphics.setStroke(new BasicStroke(5, BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL));
-        graphics.drawImage(imageTemplate, 0, 0, null);
-        graphics.dispose();
-
-        sliderCodeInfoMap.put("markImage", imageTemplate);
-        sliderCodeInfoMap.put("srcImage", imageTarget);
-        sliderCodeInfoMap.put("locationX", locationX);
-        sliderCodeInfoMap.put("locationY", locationY);
+        return new SliderCutResult(srcImage, markImage, locationX, locationY);
+    }
 
-        return sliderCodeInfoMap;
+    /**
+     * 把图片转换为可以直接操作像素数组的图片: 有透明通道时为 TYPE_INT_ARGB, 否则为 TYPE_INT_RGB;
+     * 已经是对应类型的图片时直接返回.
+     *
+     * @param image 图片
+     * @return 可以直接操作像素数组的图片
+     */
+    @NonNull
+    public static BufferedImage toIntImage(@NonNull BufferedImage image) {
+        final int type = image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        if (isSimpleIntImage(image, type)) {
+            return image;
+        }
+        return copyToIntImage(image, type);
     }
 
     /**
      * 对源图片进行抠图, 并生成对应模板图片.
      *
-     * @param oriImage      源图片
-     * @param templateImage 模板图片
+     * @param src           源图片像素数组
+     * @param srcWidth      源图片宽
+     * @param srcHasAlpha   源图片像素是否包含透明通道
+     * @param mark          模板图片像素数组(TYPE_INT_ARGB)
+     * @param cutWidth      模板图片宽
+     * @param cutHeight     模板图片高
      * @param grayscale     在模板上抠图区灰阶等级: 4-10, 数值越高, 灰色越深
      * @param locationX     X 轴
      * @param locationY     Y 轴
      */
-    private static void cutImageByTemplate(BufferedImage oriImage, BufferedImage templateImage,
-                                           int grayscale,
-                                           int locationX, int locationY) {
-        // 源文件图像矩阵
-        int[][] oriImageData = getImageData(oriImage);
-        // 模板图像矩阵
-        int[][] templateImageData = getImageData(templateImage);
-        // 源图片高宽
-        final int width = oriImageData.length;
-        final int height = oriImageData[0].length;
-        // 模板图片高宽
-        final int cutWidth = templateImageData.length;
-        final int cutHeight = templateImageData[0].length;
-
-        for (int i = 0; i < width; i++) {
-            for (int j = 0; j < height; j++) {
-                // 是否模板区域
-                final boolean isMarkTarget = (i >= locationX && j >= locationY) && (i < locationX + cutWidth && j < locationY + cutHeight);
-                if (isMarkTarget) {
-
-                    int rgb = oriImage.getRGB(i, j);
-                    int templateRgb = templateImage.getRGB(i - locationX, j - locationY);
-                    //noinspection ConditionCoveredByFurtherCondition
-                    if (templateRgb != 16777215 && templateRgb != -1 && templateRgb <= 0) {
-                        // 抠图上复制对应颜色值
-                        templateImage.setRGB(i - locationX, j - locationY, rgb);
-                        // 对源图片的抠图区域进行灰度处理
-                        int r = (0xff & rgb);
-                        int g = (0xff & (rgb >> 8));
-                        int b = (0xff & (rgb >> 16));
-                        int gray = (r + g + b) / grayscale;
-                        rgb = 255 << 24 | gray << 16 | gray << 8 | gray;
-                        oriImage.setRGB(i, j, rgb);
-                    }
-                    else {
-                        rgb = rgb & 0x00ffffff;
-                        templateImage.setRGB(i - locationX, j - locationY, rgb);
-                    }
-
+    private static void cutImageByTemplate(int[] src, int srcWidth, boolean srcHasAlpha,
+                                           int[] mark, int cutWidth, int cutHeight,
+                                           int grayscale, int locationX, int locationY) {
+        // TYPE_INT_RGB 的像素不包含透明通道, 补全为不透明
+        final int alphaMask = srcHasAlpha ? 0 : 0xFF000000;
+        for (int y = 0; y < cutHeight; y++) {
+            final int srcRow = (locationY + y) * srcWidth + locationX;
+            final int markRow = y * cutWidth;
+            for (int x = 0; x < cutWidth; x++) {
+                final int rgb = src[srcRow + x] | alphaMask;
+                final int templateRgb = mark[markRow + x];
+                // 模板区域: 与逐像素实现的判断相同, 不是白色(-1 与 0x00ffffff)且 ARGB 值小于等于 0
+                if (templateRgb != -1 && templateRgb <= 0) {
+                    // 抠图上复制对应颜色值
+                    mark[markRow + x] = rgb;
+                    // 对源图片的抠图区域进行灰度处理
+                    final int gray = ((rgb & 0xff) + ((rgb >> 8) & 0xff) + ((rgb >> 16) & 0xff)) / grayscale;
+                    src[srcRow + x] = 0xFF000000 | gray << 16 | gray << 8 | gray;
+                }
+                else {
+                    mark[markRow + x] = rgb & 0x00ffffff;
                 }
             }
         }
-
     }
 
     /**
-     * 生成图像矩阵
+     * 复制图片为指定类型(TYPE_INT_ARGB/TYPE_INT_RGB)的新图片
      *
-     * @param bufferedImage {@link BufferedImage}
-     * @return 字节流图片
+     * @param image 图片
+     * @param type  新图片的类型
+     * @return 新图片
      */
-    private static int[][] getImageData(BufferedImage bufferedImage) {
-        int[][] data = new int[bufferedImage.getWidth()][bufferedImage.getHeight()];
-        for (int i = 0; i < bufferedImage.getWidth(); i++) {
-            for (int j = 0; j < bufferedImage.getHeight(); j++) {
-                data[i][j] = bufferedImage.getRGB(i, j);
-            }
+    private static BufferedImage copyToIntImage(BufferedImage image, int type) {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final BufferedImage copy = new BufferedImage(width, height, type);
+        if (isSimpleIntImage(image, type)) {
+            System.arraycopy(getData(image), 0, getData(copy), 0, width * height);
+            return copy;
         }
-        return data;
+        final Graphics2D graphics = copy.createGraphics();
+        try {
+            // 直接复制像素值, 不与目标图片的透明背景混合
+            graphics.setComposite(AlphaComposite.Src);
+            graphics.drawImage(image, 0, 0, null);
+        }
+        finally {
+            graphics.dispose();
+        }
+        return copy;
+    }
+
+    /**
+     * 是否为指定类型, 且像素数组与图片一一对应(不是子图片)的图片
+     */
+    private static boolean isSimpleIntImage(BufferedImage image, int type) {
+        if (image.getType() != type) {
+            return false;
+        }
+        final WritableRaster raster = image.getRaster();
+        return raster.getParent() == null
+                && raster.getSampleModelTranslateX() == 0
+                && raster.getSampleModelTranslateY() == 0
+                && raster.getDataBuffer().getOffset() == 0
+                && ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride() == image.getWidth();
+    }
+
+    private static int[] getData(BufferedImage image) {
+        return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
     }
 
 }
\ No newline at end of file
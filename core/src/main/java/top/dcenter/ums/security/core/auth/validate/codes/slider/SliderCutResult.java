@@ -0,0 +1,61 @@
+/*
+ * MIT License
+ * Copyright (c) 2020-2029 YongWu zheng (dcenter.top and gitee.com/pcore and github.com/ZeroOrInfinity)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package top.dcenter.ums.security.core.auth.validate.codes.slider;
+
+import lombok.Getter;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * 根据模板抠图的结果: 处理后的源图片(srcImage)与处理后模板图片(markImage), 以及 X 轴(locationX), Y 轴(locationY)信息.
+ * @author YongWu zheng
+ * @version V2.0  Created by 2020/12/1 9:40
+ */
+@Getter
+public class SliderCutResult {
+
+    /**
+     * 抠图后的源图片
+     */
+    private final BufferedImage srcImage;
+    /**
+     * 抠图图片
+     */
+    private final BufferedImage markImage;
+    /**
+     * 抠图位置的 X 轴
+     */
+    private final int locationX;
+    /**
+     * 抠图位置的 Y 轴
+     */
+    private final int locationY;
+
+    public SliderCutResult(BufferedImage srcImage, BufferedImage markImage, int locationX, int locationY) {
+        this.srcImage = srcImage;
+        this.markImage = markImage;
+        this.locationX = locationX;
+        this.locationY = locationY;
+    }
+}
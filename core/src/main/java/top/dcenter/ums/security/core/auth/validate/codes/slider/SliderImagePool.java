@@ -0,0 +1,155 @@
+/*
+ * MIT License
+ * Copyright (c) 2020-2029 YongWu zheng (dcenter.top and gitee.com/pcore and github.com/ZeroOrInfinity)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package top.dcenter.ums.security.core.auth.validate.codes.slider;
+
+import lombok.Getter;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 滑块验证码图片内存池: 以二进制图片的方式发送滑块验证码时, 保存 png 编码的抠图图片与抠图后的源图片,
+ * 获取验证码时无锁随机选取, 获取图片时根据 token 查找.
+ * @author YongWu zheng
+ * @version V2.0  Created by 2020/12/1 14:20
+ */
+public class SliderImagePool {
+
+    /**
+     * 抠图后的源图片的类型
+     */
+    public static final String SRC_IMAGE = "src";
+    /**
+     * 抠图图片的类型
+     */
+    public static final String MARK_IMAGE = "mark";
+
+    private final AtomicReferenceArray<SliderImage> pool;
+    /**
+     * Map(token, SliderImage)
+     */
+    private final ConcurrentMap<String, SliderImage> tokenIndex;
+
+    public SliderImagePool(int size) {
+        this.pool = new AtomicReferenceArray<>(Math.max(1, size));
+        this.tokenIndex = new ConcurrentHashMap<>(this.pool.length() * 2);
+    }
+
+    /**
+     * 随机获取一个滑块验证码图片
+     * @return  滑块验证码图片, 内存池还未填充时返回 null
+     */
+    @Nullable
+    public SliderImage randomImage() {
+        return this.pool.get(ThreadLocalRandom.current().nextInt(this.pool.length()));
+    }
+
+    /**
+     * 根据 token 获取滑块验证码图片
+     * @param token     滑块验证码 token
+     * @return  滑块验证码图片, 不存在或已被移除时返回 null
+     */
+    @Nullable
+    public SliderImage get(@NonNull String token) {
+        return this.tokenIndex.get(token);
+    }
+
+    /**
+     * 原子替换 index 位置的滑块验证码图片, 被替换的图片仍可以通过 token 获取, 直到调用 {@link #remove(SliderImage)}
+     * @param index     位置
+     * @param image     新的滑块验证码图片
+     * @return  被替换的滑块验证码图片, 没有时返回 null
+     */
+    @Nullable
+    public SliderImage swap(int index, @NonNull SliderImage image) {
+        this.tokenIndex.put(image.getToken(), image);
+        return this.pool.getAndSet(index, image);
+    }
+
+    /**
+     * 移除被替换的滑块验证码图片
+     * @param image     被替换的滑块验证码图片
+     */
+    public void remove(@NonNull SliderImage image) {
+        this.tokenIndex.remove(image.getToken(), image);
+    }
+
+    public int size() {
+        return this.pool.length();
+    }
+
+    /**
+     * 滑块验证码图片: 坐标信息与 png 编码的图片数据. 图片数据为共享的数组, 只读.
+     */
+    @Getter
+    public static final class SliderImage {
+
+        private final String token;
+        private final int locationX;
+        private final int locationY;
+        private final int sourceWidth;
+        private final int sourceHeight;
+        private final byte[] srcImage;
+        private final byte[] markImage;
+
+        public SliderImage(String token, int locationX, int locationY, int sourceWidth, int sourceHeight,
+                           byte[] srcImage, byte[] markImage) {
+            this.token = token;
+            this.locationX = locationX;
+            this.locationY = locationY;
+            this.sourceWidth = sourceWidth;
+            this.sourceHeight = sourceHeight;
+            this.srcImage = srcImage;
+            this.markImage = markImage;
+        }
+
+        /**
+         * @param type  图片类型: {@link #SRC_IMAGE} 或 {@link #MARK_IMAGE}
+         * @return  png 图片数据, type 不合法时返回 null
+         */
+        @Nullable
+        public byte[] getImage(@NonNull String type) {
+            if (SRC_IMAGE.equals(type)) {
+                return this.srcImage;
+            }
+            if (MARK_IMAGE.equals(type)) {
+                return this.markImage;
+            }
+            return null;
+        }
+
+        /**
+         * @param type  图片类型: {@link #SRC_IMAGE} 或 {@link #MARK_IMAGE}
+         * @return  图片的 ETag, 同一 token 的图片内容不变
+         */
+        @NonNull
+        public String getETag(@NonNull String type) {
+            return "\"" + this.token + "-" + type + "\"";
+        }
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * MIT License
+ * Copyright (c) 2020-2029 YongWu zheng (dcenter.top and gitee.com/pcore and github.com/ZeroOrInfinity)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package top.dcenter.ums.security.core.auth.validate.codes.sms;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.lang.NonNull;
+import top.dcenter.ums.security.core.api.validate.code.sms.SmsCodeSender;
+import top.dcenter.ums.security.core.auth.properties.ValidateCodeProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 短信验证码异步发送器: 验证码进入有界队列后立即返回, 由专用的守护线程从队列中批量取出,
+ * 通过 {@link SmsCodeSender} 发送; {@link SmsCodeSender#getMaxBatchSize()} 大于 1 时按批次提交给短信网关.<br>
+ * 队列已满时拒绝入队, 由调用方返回获取验证码失败, 避免短信网关缓慢时占用 servlet 线程或无限堆积.
+ * @author YongWu zheng
+ * @version V2.0  Created by 2020/12/3 11:05
+ */
+@Slf4j
+public class SmsDispatcher implements DisposableBean {
+
+    /**
+     * 发送耗时直方图的上界(毫秒), 最后一个桶为大于最大上界的耗时
+     */
+    private static final long[] LATENCY_BOUNDS = {50L, 100L, 200L, 500L, 1000L, 2000L, 5000L, 10000L};
+
+    private final SmsCodeSender smsCodeSender;
+    private final BlockingQueue<SmsMessage> queue;
+    private final int batchSize;
+    private final Thread[] workers;
+    private volatile boolean running = true;
+
+    private final AtomicLong submittedCount = new AtomicLong(0L);
+    private final AtomicLong rejectedCount = new AtomicLong(0L);
+    private final AtomicLong successCount = new AtomicLong(0L);
+    private final AtomicLong failureCount = new AtomicLong(0L);
+    private final AtomicLong batchCount = new AtomicLong(0L);
+    private final AtomicLong totalLatencyMillis = new AtomicLong(0L);
+    private final AtomicLong[] latencyHistogram = new AtomicLong[LATENCY_BOUNDS.length + 1];
+
+    public SmsDispatcher(@NonNull ValidateCodeProperties validateCodeProperties, @NonNull SmsCodeSender smsCodeSender) {
+        final ValidateCodeProperties.SmsCodeProperties sms = validateCodeProperties.getSms();
+        this.smsCodeSender = smsCodeSender;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, sms.getSendQueueCapacity()));
+        this.batchSize = Math.max(1, Math.min(sms.getSendBatchSize(), smsCodeSender.getMaxBatchSize()));
+        for (int i = 0; i < this.latencyHistogram.length; i++) {
+            this.latencyHistogram[i] = new AtomicLong(0L);
+        }
+
+        this.workers = new Thread[Math.max(1, sms.getSendThreads())];
+        for (int i = 0; i < this.workers.length; i++) {
+            final Thread worker = new Thread(this::work, "smsDispatch-" + (i + 1));
+            worker.setDaemon(true);
+            worker.start();
+            this.workers[i] = worker;
+        }
+    }
+
+    /**
+     * 短信验证码入队, 不阻塞
+     * @param mobile        手机号
+     * @param validateCode  验证码
+     * @return  是否成功入队, 队列已满或已关闭时返回 false
+     */
+    public boolean submit(@NonNull String mobile, @NonNull String validateCode) {
+        if (!this.running || !this.queue.offer(new SmsMessage(mobile, validateCode, System.currentTimeMillis()))) {
+            this.rejectedCount.incrementAndGet();
+            return false;
+        }
+        this.submittedCount.incrementAndGet();
+        return true;
+    }
+
+    private void work() {
+        final List<SmsMessage> batch = new ArrayList<>(this.batchSize);
+        while (this.running || !this.queue.isEmpty()) {
+            try {
+                final SmsMessage first = this.queue.poll(1L, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                if (this.batchSize > 1) {
+                    this.queue.drainTo(batch, this.batchSize - 1);
+                }
+                send(batch);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void send(@NonNull List<SmsMessage> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        final int size = batch.size();
+        boolean[] results;
+        try {
+            if (size == 1) {
+                final SmsMessage message = batch.get(0);
+                results = new boolean[]{this.smsCodeSender.sendSms(message.mobile, message.validateCode)};
+            }
+            else {
+                final String[] mobiles = new String[size];
+                final String[] validateCodes = new String[size];
+                for (int i = 0; i < size; i++) {
+                    mobiles[i] = batch.get(i).mobile;
+                    validateCodes[i] = batch.get(i).validateCode;
+                }
+                results = this.smsCodeSender.sendSms(mobiles, validateCodes);
+            }
+        }
+        catch (Exception e) {
+            log.error(String.format("异步发送短信验证码失败: size=%d, error=%s", size, e.getMessage()), e);
+            results = new boolean[size];
+        }
+        this.batchCount.incrementAndGet();
+
+        final long now = System.currentTimeMillis();
+        for (int i = 0; i < size; i++) {
+            final SmsMessage message = batch.get(i);
+            if (results != null && i < results.length && results[i]) {
+                this.successCount.incrementAndGet();
+            }
+            else {
+                this.failureCount.incrementAndGet();
+                log.warn("异步发送短信验证码失败: mobile={}", message.mobile);
+            }
+            recordLatency(now - message.enqueueTime);
+        }
+    }
+
+    private void recordLatency(long latencyMillis) {
+        this.totalLatencyMillis.addAndGet(latencyMillis);
+        int i = 0;
+        while (i < LATENCY_BOUNDS.length && latencyMillis > LATENCY_BOUNDS[i]) {
+            i++;
+        }
+        this.latencyHistogram[i].incrementAndGet();
+    }
+
+    /**
+     * 获取队列中等待发送的短信数
+     * @return  队列深度
+     */
+    public int getQueueDepth() {
+        return this.queue.size();
+    }
+
+    public long getSubmittedCount() {
+        return this.submittedCount.get();
+    }
+
+    public long getRejectedCount() {
+        return this.rejectedCount.get();
+    }
+
+    public long getSuccessCount() {
+        return this.successCount.get();
+    }
+
+    public long getFailureCount() {
+        return this.failureCount.get();
+    }
+
+    public long getBatchCount() {
+        return this.batchCount.get();
+    }
+
+    /**
+     * 获取平均发送耗时(毫秒), 从入队到短信网关返回
+     * @return  平均发送耗时, 没有发送记录时返回 0
+     */
+    public double getAverageLatencyMillis() {
+        final long count = getSuccessCount() + getFailureCount();
+        return count == 0L ? 0.0D : (double) this.totalLatencyMillis.get() / count;
+    }
+
+    /**
+     * 获取发送耗时直方图的上界(毫秒)
+     * @return  上界数组的副本
+     */
+    @NonNull
+    public long[] getLatencyBounds() {
+        return LATENCY_BOUNDS.clone();
+    }
+
+    /**
+     * 获取发送耗时直方图, 数组长度为 {@link #getLatencyBounds()} 的长度加 1, 最后一个值为大于最大上界的数量
+     * @return  发送耗时直方图的快照
+     */
+    @NonNull
+    public long[] getLatencyHistogram() {
+        final long[] histogram = new long[this.latencyHistogram.length];
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] = this.latencyHistogram[i].get();
+        }
+        return histogram;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SmsDispatcher{queueDepth=%d, submitted=%d, rejected=%d, success=%d, failure=%d, " +
+                                     "batches=%d, averageLatencyMillis=%.1f}",
+                             getQueueDepth(), getSubmittedCount(), getRejectedCount(), getSuccessCount(),
+                             getFailureCount(), getBatchCount(), getAverageLatencyMillis());
+    }
+
+    @Override
+    public void destroy() {
+        // 停止入队, 工作线程发送完队列中剩余的短信后退出, 超时后中断
+        this.running = false;
+        for (Thread worker : this.workers) {
+            try {
+                worker.join(TimeUnit.SECONDS.toMillis(5L));
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        for (Thread worker : this.workers) {
+            if (worker.isAlive()) {
+                worker.interrupt();
+            }
+        }
+        if (!this.queue.isEmpty()) {
+            log.warn("关闭短信验证码异步发送器时, 仍有 {} 条短信未发送", this.queue.size());
+        }
+    }
+
+    /**
+     * 待发送的短信验证码
+     */
+    private static final class SmsMessage {
+        private final String mobile;
+        private final String validateCode;
+        private final long enqueueTime;
+
+        private SmsMessage(String mobile, String validateCode, long enqueueTime) {
+            this.mobile = mobile;
+            this.validateCode = validateCode;
+            this.enqueueTime = enqueueTime;
+        }
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * MIT License
+ * Copyright (c) 2020-2029 YongWu zheng (dcenter.top and gitee.com/pcore and github.com/ZeroOrInfinity)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package top.dcenter.ums.security.core.auth.validate.codes.sms;
+
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import org.springframework.util.StringUtils;
+import top.dcenter.ums.security.core.auth.properties.ValidateCodeProperties;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 发送短信验证码的滑动窗口限流器: 限制每个 IP 与每个手机号在滑动窗口内的发送次数, 以及同一手机号两次发送的最小时间间隔.<br>
+ * 有 {@link StringRedisTemplate} 时限流数据以 zset 保存在 redis(lua 脚本原子执行, 集群共享), 否则保存在内存(单机).
+ * @author YongWu zheng
+ * @version V2.0  Created by 2020/12/3 10:20
+ */
+public class SmsSendThrottle {
+
+    /**
+     * 手机号限流的 redis key 前缀
+     */
+    public static final String MOBILE_KEY_PREFIX = "SMS_THROTTLE:MOBILE:";
+    /**
+     * IP 限流的 redis key 前缀
+     */
+    public static final String IP_KEY_PREFIX = "SMS_THROTTLE:IP:";
+
+    /**
+     * 内存模式下, 每获取多少次许可清理一次过期的滑动窗口
+     */
+    private static final int SWEEP_INTERVAL = 1024;
+
+    /**
+     * 单个 key 的滑动窗口限流, 返回 0 表示通过, 1 表示小于最小时间间隔, 2 表示超过最大次数.<br>
+     * KEYS[1]: key, ARGV[1]: 当前 epoch 毫秒, ARGV[2]: 窗口毫秒, ARGV[3]: 最大次数, ARGV[4]: 最小间隔毫秒, ARGV[5]: member
+     */
+    private static final RedisScript<Long> ACQUIRE_SCRIPT = new DefaultRedisScript<>(
+            "local now = tonumber(ARGV[1]) " +
+            "local window = tonumber(ARGV[2]) " +
+            "local interval = tonumber(ARGV[4]) " +
+            "local keep = math.max(window, interval) " +
+            "redis.call('ZREMRANGEBYSCORE', KEYS[1], '-inf', now - keep) " +
+            "if interval > 0 then " +
+            "  local last = redis.call('ZREVRANGE', KEYS[1], 0, 0, 'WITHSCORES') " +
+            "  if last[2] and now - tonumber(last[2]) < interval then return 1 end " +
+            "end " +
+            "if redis.call('ZCOUNT', KEYS[1], '(' .. (now - window), '+inf') >= tonumber(ARGV[3]) then return 2 end " +
+            "redis.call('ZADD', KEYS[1], now, ARGV[5]) " +
+            "redis.call('PEXPIRE', KEYS[1], keep) " +
+            "return 0",
+            Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final long windowMillis;
+    private final long mobileMinIntervalMillis;
+    private final int mobileMaxSends;
+    private final int ipMaxSends;
+
+    /**
+     * 内存模式下的滑动窗口: Map(key, 发送时间戳队列)
+     */
+    private final Map<String, Deque<Long>> windows = new ConcurrentHashMap<>();
+    private final AtomicLong acquireCount = new AtomicLong(0L);
+
+    private final AtomicLong passCount = new AtomicLong(0L);
+    private final AtomicLong mobileThrottledCount = new AtomicLong(0L);
+    private final AtomicLong ipThrottledCount = new AtomicLong(0L);
+
+    /**
+     * @param validateCodeProperties    validateCodeProperties
+     * @param stringRedisTemplate       为 null 时使用内存模式
+     */
+    public SmsSendThrottle(@NonNull ValidateCodeProperties validateCodeProperties,
+                           @Nullable StringRedisTemplate stringRedisTemplate) {
+        final ValidateCodeProperties.SmsCodeProperties sms = validateCodeProperties.getSms();
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.windowMillis = Math.max(1L, sms.getThrottleWindow().toMillis());
+        this.mobileMinIntervalMillis = Math.max(0L, sms.getMobileMinInterval().toMillis());
+        this.mobileMaxSends = sms.getMobileMaxSendsPerWindow();
+        this.ipMaxSends = sms.getIpMaxSendsPerWindow();
+    }
+
+    /**
+     * 获取发送短信验证码的许可, 先校验 IP 再校验手机号; IP 校验通过后即记录一次 IP 的发送.
+     * @param mobile    手机号
+     * @param ip        IP, 为 null 时不校验 IP
+     * @return  限流结果
+     */
+    @NonNull
+    public ThrottleResult tryAcquire(@NonNull String mobile, @Nullable String ip) {
+        final long now = System.currentTimeMillis();
+        if (StringUtils.hasText(ip)) {
+            if (acquire(IP_KEY_PREFIX + ip, now, this.ipMaxSends, 0L) != 0) {
+                this.ipThrottledCount.incrementAndGet();
+                return ThrottleResult.IP_LIMIT;
+            }
+        }
+        final int result = acquire(MOBILE_KEY_PREFIX + mobile, now, this.mobileMaxSends, this.mobileMinIntervalMillis);
+        if (result == 1) {
+            this.mobileThrottledCount.incrementAndGet();
+            return ThrottleResult.MOBILE_INTERVAL;
+        }
+        if (result != 0) {
+            this.mobileThrottledCount.incrementAndGet();
+            return ThrottleResult.MOBILE_LIMIT;
+        }
+        this.passCount.incrementAndGet();
+        return ThrottleResult.PASS;
+    }
+
+    private int acquire(@NonNull String key, long now, int maxSends, long minIntervalMillis) {
+        if (this.stringRedisTemplate != null) {
+            final Long result = this.stringRedisTemplate.execute(ACQUIRE_SCRIPT,
+                                                                 Collections.singletonList(key),
+                                                                 String.valueOf(now),
+                                                                 String.valueOf(this.windowMillis),
+                                                                 String.valueOf(maxSends),
+                                                                 String.valueOf(minIntervalMillis),
+                                                                 now + ":" + ThreadLocalRandom.current().nextLong());
+            return result == null ? 0 : result.intValue();
+        }
+
+        if (this.acquireCount.incrementAndGet() % SWEEP_INTERVAL == 0) {
+            sweep(now);
+        }
+        final long keep = Math.max(this.windowMillis, minIntervalMillis);
+        final int[] result = new int[1];
+        // 在 ConcurrentHashMap#compute 中更新, 与 sweep 互斥, 不会丢失记录
+        this.windows.compute(key, (k, window) -> {
+            if (window == null) {
+                window = new ArrayDeque<>();
+            }
+            while (!window.isEmpty() && window.peekFirst() <= now - keep) {
+                window.pollFirst();
+            }
+            if (minIntervalMillis > 0 && !window.isEmpty() && now - window.peekLast() < minIntervalMillis) {
+                result[0] = 1;
+                return window;
+            }
+            int count = 0;
+            for (Long timestamp : window) {
+                if (timestamp > now - this.windowMillis) {
+                    count++;
+                }
+            }
+            if (count >= maxSends) {
+                result[0] = 2;
+                return window;
+            }
+            window.addLast(now);
+            return window;
+        });
+        return result[0];
+    }
+
+    /**
+     * 清理内存模式下已过期的滑动窗口
+     */
+    private void sweep(long now) {
+        final long keep = Math.max(this.windowMillis, this.mobileMinIntervalMillis);
+        for (String key : this.windows.keySet()) {
+            this.windows.computeIfPresent(key, (k, window) -> {
+                final Long last = window.peekLast();
+                return last == null || last <= now - keep ? null : window;
+            });
+        }
+    }
+
+    public long getPassCount() {
+        return this.passCount.get();
+    }
+
+    public long getMobileThrottledCount() {
+        return this.mobileThrottledCount.get();
+    }
+
+    public long getIpThrottledCount() {
+        return this.ipThrottledCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SmsSendThrottle{mode=%s, passCount=%d, mobileThrottledCount=%d, ipThrottledCount=%d}",
+                             this.stringRedisTemplate == null ? "memory" : "redis",
+                             getPassCount(), getMobileThrottledCount(), getIpThrottledCount());
+    }
+
+    /**
+     * 限流结果
+     */
+    public enum ThrottleResult {
+        /**
+         * 通过
+         */
+        PASS,
+        /**
+         * 同一手机号两次发送的时间间隔小于最小时间间隔
+         */
+        MOBILE_INTERVAL,
+        /**
+         * 手机号在滑动窗口内的发送次数超过限制
+         */
+        MOBILE_LIMIT,
+        /**
+         * IP 在滑动窗口内的发送次数超过限制
+         */
+        IP_LIMIT
+    }
+}
@@ -40,6 +40,7 @@ import top.dcenter.ums.security.core.api.validate.code.enums.ValidateCodeCacheTy
 import top.dcenter.ums.security.core.api.validate.code.enums.ValidateCodeType;
 import top.dcenter.ums.security.core.api.validate.code.sms.SmsCodeSender;
 import top.dcenter.ums.security.core.auth.properties.ValidateCodeProperties;
+import top.dcenter.ums.security.core.exception.ValidateCodeException;
 import top.dcenter.ums.security.core.exception.ValidateCodeParamErrorException;
 import top.dcenter.ums.security.core.util.IpUtil;
 
@@ -48,6 +49,7 @@ import java.util.regex.PatternSyntaxException;
 
 import static top.dcenter.ums.security.common.enums.ErrorCodeEnum.MOBILE_FORMAT_ERROR;
 import static top.dcenter.ums.security.common.enums.ErrorCodeEnum.MOBILE_PARAMETER_ERROR;
+import static top.dcenter.ums.security.common.enums.ErrorCodeEnum.SMS_CODE_SEND_TOO_FREQUENTLY;
 
 
 /**
@@ -63,6 +65,16 @@ public class SmsValidateCodeProcessor extends AbstractValidateCodeProcessor {
     protected SmsCodeSender smsCodeSender;
     @Autowired
     protected ValidateCodeProperties validateCodeProperties;
+    /**
+     * 短信验证码异步发送器, ums.codes.sms.enable-async-send=true 时注入
+     */
+    @Autowired(required = false)
+    protected SmsDispatcher smsDispatcher;
+    /**
+     * 发送短信验证码限流器, ums.codes.sms.enable-throttle=true 时注入
+     */
+    @Autowired(required = false)
+    protected SmsSendThrottle smsSendThrottle;
 
     public SmsValidateCodeProcessor(@NonNull ValidateCodeGeneratorHolder validateCodeGeneratorHolder,
                                     @NonNull ValidateCodeCacheType validateCodeCacheType,
@@ -89,6 +101,22 @@ public class SmsValidateCodeProcessor extends AbstractValidateCodeProcessor {
                                                                     validateCodeProperties.getSms().getRequestParamMobileName());
             if (StringUtils.hasText(mobile) && mobile.matches(RegexConstants.MOBILE_PATTERN))
             {
+                // 滑动窗口限流
+                if (smsSendThrottle != null)
+                {
+                    SmsSendThrottle.ThrottleResult result = smsSendThrottle.tryAcquire(mobile, ip);
+                    if (!SmsSendThrottle.ThrottleResult.PASS.equals(result))
+                    {
+                        log.warn("发送短信验证码过于频繁: result={}, ip={}, sid={}, uri={}, mobile={}",
+                                 result, ip, sid, uri, mobile);
+                        throw new ValidateCodeException(SMS_CODE_SEND_TOO_FREQUENTLY, ip, mobile);
+                    }
+                }
+                // 异步发送: 入队后立即返回
+                if (smsDispatcher != null)
+                {
+                    return smsDispatcher.submit(mobile, validateCode.getCode());
+                }
                 return smsCodeSender.sendSms(mobile, validateCode.getCode());
             }
         }
@@ -47,6 +47,7 @@ import top.dcenter.ums.security.core.oauth.provider.Auth2LoginAuthenticationProv
 import top.dcenter.ums.security.core.oauth.repository.UsersConnectionRepository;
 import top.dcenter.ums.security.core.oauth.service.Auth2UserService;
 import top.dcenter.ums.security.core.oauth.signup.ConnectionService;
+import top.dcenter.ums.security.core.oauth.signup.ConnectionUpdateCoalescer;
 
 import java.util.concurrent.ExecutorService;
 
@@ -81,6 +82,9 @@ public class Auth2AutoConfigurer extends SecurityConfigurerAdapter<DefaultSecuri
     @Autowired(required = false)
     private PersistentTokenRepository persistentTokenRepository;
     @SuppressWarnings("SpringJavaAutowiredFieldsWarningInspection")
+    @Autowired(required = false)
+    private ConnectionUpdateCoalescer connectionUpdateCoalescer;
+    @SuppressWarnings("SpringJavaAutowiredFieldsWarningInspection")
     @Autowired
     private ClientProperties clientProperties;
 
@@ -130,6 +134,7 @@ public class Auth2AutoConfigurer extends SecurityConfigurerAdapter<DefaultSecuri
                 usersConnectionRepository, updateConnectionTaskExecutor,
                 auth2Properties.getAutoSignUp(), auth2Properties.getTemporaryUserAuthorities(),
                 auth2Properties.getTemporaryUserPassword());
+        auth2LoginAuthenticationProvider.setConnectionUpdateCoalescer(connectionUpdateCoalescer);
         http.authenticationProvider(postProcess(auth2LoginAuthenticationProvider));
     }
 
@@ -31,6 +31,7 @@ import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.jsontype.impl.LaissezFaireSubTypeValidator;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
@@ -50,6 +51,8 @@ import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
 import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 import org.springframework.data.redis.connection.lettuce.LettucePoolingClientConfiguration;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
@@ -58,6 +61,8 @@ import org.springframework.security.jackson2.CoreJackson2Module;
 import org.springframework.security.web.jackson2.WebJackson2Module;
 import top.dcenter.ums.security.core.jackson2.Auth2Jackson2Module;
 import top.dcenter.ums.security.core.oauth.properties.RedisCacheProperties;
+import top.dcenter.ums.security.core.oauth.repository.jdbc.cache.NearCacheInvalidationListener;
+import top.dcenter.ums.security.core.oauth.repository.jdbc.cache.RedisHashCacheBatchAspect;
 import top.dcenter.ums.security.core.oauth.repository.jdbc.cache.RedisHashCacheManager;
 import top.dcenter.ums.security.core.oauth.repository.jdbc.key.generator.RemoveConnectionsByConnectionKeyWithUserIdKeyGenerator;
 
@@ -230,13 +235,80 @@ public class RedisCacheAutoConfiguration {
                           defaultCacheConfig.entryTtl(cache.getEntryTtl()));
         }
 
-        //noinspection UnnecessaryLocalVariable
-        RedisHashCacheManager cacheManager = RedisHashCacheManager.builder(lettuceConnectionFactory)
+        RedisCacheProperties.Clean clean = cache.getClean();
+        RedisHashCacheManager.RedisHashCacheManagerBuilder builder = RedisHashCacheManager.builder(lettuceConnectionFactory)
                 .cacheDefaults(defaultCacheConfig)
                 .initialCacheNames(cacheNames)
                 .withInitialCacheConfigurations(configMap)
-                .build();
-        return cacheManager;
+                .loadLeaseTtl(cache.getLoadLeaseTtl())
+                .cleanOptions(clean.getScanCount(), clean.getBatchSize(), clean.getUseUnlink(), clean.getAsync())
+                .generationRefreshInterval(clean.getGenerationRefreshInterval());
+
+        RedisCacheProperties.Near near = cache.getNear();
+        if (near.getEnabled())
+        {
+            builder.nearCache(near.getMaximumSize(),
+                              getNearCacheTtl(near.getTtl(), cache.getDefaultExpireTime(), cache.getEntryTtl()),
+                              near.getInvalidationChannel());
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * 一级缓存失效消息的监听容器, 开启一级缓存时注入 IOC 容器.
+     * @param redisConnectionFactory    redisConnectionFactory
+     * @param cacheManager              auth2RedisHashCacheManager
+     * @return RedisMessageListenerContainer
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "ums.cache.redis.cache.near", name = "enabled", havingValue = "true")
+    public RedisMessageListenerContainer nearCacheRedisMessageListenerContainer(
+            RedisConnectionFactory redisConnectionFactory,
+            @Qualifier("auth2RedisHashCacheManager") CacheManager cacheManager) {
+
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        if (cacheManager instanceof RedisHashCacheManager && ((RedisHashCacheManager) cacheManager).isNearCacheEnabled())
+        {
+            RedisHashCacheManager redisHashCacheManager = (RedisHashCacheManager) cacheManager;
+            //noinspection ConstantConditions
+            container.addMessageListener(new NearCacheInvalidationListener(redisHashCacheManager),
+                                         new ChannelTopic(redisHashCacheManager.getNearCacheChannel()));
+        }
+        return container;
+    }
+
+    /**
+     * 一级缓存的 TTL 必须小于 redis 缓存 TTL 的 80%(redis 缓存 TTL 有 20% 的随机浮动), 否则使用 redis 缓存 TTL 的 50%.
+     */
+    private static Duration getNearCacheTtl(Duration nearTtl, Duration... redisTtls) {
+        Duration result = nearTtl;
+        for (Duration redisTtl : redisTtls)
+        {
+            if (redisTtl.isZero() || redisTtl.isNegative())
+            {
+                continue;
+            }
+            if (result.compareTo(redisTtl.multipliedBy(8).dividedBy(10)) >= 0)
+            {
+                Duration halfTtl = redisTtl.dividedBy(2);
+                log.warn("一级缓存的 TTL({}) 必须小于 redis 缓存 TTL({}) 的 80%, 改为使用 {}", result, redisTtl, halfTtl);
+                result = halfTtl;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 合并标注了 {@link top.dcenter.ums.security.core.oauth.repository.jdbc.cache.BatchCacheOperations} 的方法中的缓存操作
+     * @return RedisHashCacheBatchAspect
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "ums.cache.redis.cache", name = "batch-operations", havingValue = "true",
+                           matchIfMissing = true)
+    public RedisHashCacheBatchAspect redisHashCacheBatchAspect() {
+        return new RedisHashCacheBatchAspect();
     }
 
     @Bean("removeConnectionsByConnectionKeyWithUserIdKeyGenerator")
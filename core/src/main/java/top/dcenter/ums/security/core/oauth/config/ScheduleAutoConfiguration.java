@@ -25,6 +25,7 @@ package top.dcenter.ums.security.core.oauth.config;
 
 import org.slf4j.MDC;
 import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.AutoConfigureAfter;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
@@ -34,12 +35,15 @@ import org.springframework.lang.NonNull;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.annotation.SchedulingConfigurer;
 import org.springframework.scheduling.config.ScheduledTaskRegistrar;
+import org.springframework.transaction.PlatformTransactionManager;
 import top.dcenter.ums.security.core.oauth.job.RefreshTokenJob;
 import top.dcenter.ums.security.core.oauth.job.RefreshTokenJobImpl;
 import top.dcenter.ums.security.core.oauth.properties.Auth2Properties;
 import top.dcenter.ums.security.core.oauth.properties.ExecutorProperties;
 import top.dcenter.ums.security.core.oauth.repository.UsersConnectionRepository;
 import top.dcenter.ums.security.core.oauth.repository.UsersConnectionTokenRepository;
+import top.dcenter.ums.security.core.oauth.signup.ConnectionService;
+import top.dcenter.ums.security.core.oauth.signup.ConnectionUpdateCoalescer;
 
 import java.util.Collection;
 import java.util.List;
@@ -50,7 +54,8 @@ import java.util.stream.Collectors;
 
 /**
  * 1. 第三方授权登录 AccessToken 维护有效期定时任务配置.<br>
- * 2. 第三方授权登录时, 异步更新用户的第三方授权用户信息的 Executor 属性配置
+ * 2. 第三方授权登录时, 异步更新用户的第三方授权用户信息的 Executor 属性配置.<br>
+ * 3. 第三方授权登录时, 跳过未变化的第三方授权用户信息更新并合并窗口内的多次更新的 {@link ConnectionUpdateCoalescer} 配置
  * @author YongWu zheng
  * @version V1.0  Created by 2020-10-15 10:21
  */
@@ -81,9 +86,14 @@ public class ScheduleAutoConfiguration implements SchedulingConfigurer, Disposab
     public RefreshTokenJob refreshTokenJob(UsersConnectionTokenRepository usersConnectionTokenRepository,
                                            UsersConnectionRepository usersConnectionRepository,
                                            @Qualifier("jobTaskScheduledExecutor") ScheduledExecutorService jobTaskScheduledExecutor,
-                                           @Qualifier("refreshTokenTaskExecutor") ExecutorService refreshTokenTaskExecutor) {
-        return new RefreshTokenJobImpl(usersConnectionRepository, usersConnectionTokenRepository,
-                                       auth2Properties, jobTaskScheduledExecutor,refreshTokenTaskExecutor);
+                                           @Qualifier("refreshTokenTaskExecutor") ExecutorService refreshTokenTaskExecutor,
+                                           ObjectProvider<PlatformTransactionManager> transactionManagerProvider) {
+        RefreshTokenJobImpl refreshTokenJob =
+                new RefreshTokenJobImpl(usersConnectionRepository, usersConnectionTokenRepository,
+                                        auth2Properties, jobTaskScheduledExecutor,refreshTokenTaskExecutor);
+        // 每个批量更新批次一个事务
+        refreshTokenJob.setTransactionManager(transactionManagerProvider.getIfUnique());
+        return refreshTokenJob;
     }
 
     @Bean()
@@ -133,6 +143,13 @@ public class ScheduleAutoConfiguration implements SchedulingConfigurer, Disposab
         return threadPoolExecutor;
     }
 
+    @Bean
+    @ConditionalOnProperty(prefix = "ums.oauth", name = "enable-connection-update-coalescing", havingValue = "true")
+    public ConnectionUpdateCoalescer connectionUpdateCoalescer(ConnectionService connectionService,
+                                                               @Qualifier("updateConnectionTaskExecutor") ExecutorService updateConnectionTaskExecutor) {
+        return new ConnectionUpdateCoalescer(connectionService, updateConnectionTaskExecutor, auth2Properties);
+    }
+
     private ThreadFactory getThreadFactory(String poolName) {
         return new DefaultThreadFactory(poolName);
     }
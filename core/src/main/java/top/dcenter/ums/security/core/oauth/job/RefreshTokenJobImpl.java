@@ -25,16 +25,18 @@ package top.dcenter.ums.security.core.oauth.job;
 
 import lombok.extern.slf4j.Slf4j;
 import me.zhyd.oauth.exception.AuthException;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.data.redis.connection.RedisConnection;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.lang.NonNull;
 import org.springframework.lang.Nullable;
 import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.Assert;
 import top.dcenter.ums.security.core.oauth.entity.AuthTokenPo;
 import top.dcenter.ums.security.core.oauth.justauth.Auth2RequestHolder;
@@ -44,42 +46,83 @@ import top.dcenter.ums.security.core.oauth.repository.UsersConnectionRepository;
 import top.dcenter.ums.security.core.oauth.repository.UsersConnectionTokenRepository;
 import top.dcenter.ums.security.core.util.MvcUtil;
 
-import java.io.UnsupportedEncodingException;
-import java.nio.charset.StandardCharsets;
+import java.lang.reflect.UndeclaredThrowableException;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static top.dcenter.ums.security.core.oauth.enums.EnableRefresh.NO;
 
 /**
- * 刷新 token 定时任务实现, 前提条件, {@link AuthTokenPo} auth_token 表的 id 为 Long 类型
+ * 刷新 token 定时任务实现, 前提条件, {@link AuthTokenPo} auth_token 表的 id 为 Long 类型. <br>
+ * 通过键集分页(keyset pagination)只对确实需要刷新的 token 划分批次; 分布式时各节点通过 {@link RefreshTokenWorkQueue}
+ * 并发领取带租约的批次, 节点宕机后批次可被其他节点重新领取, 同一时间窗口内再次执行任务时从记录的进度继续.
  * @author YongWu zheng
  * @version V2.0  Created by 2020/10/14 14:03
  */
 @Slf4j
-public class RefreshTokenJobImpl implements RefreshTokenJob, InitializingBean {
+public class RefreshTokenJobImpl implements RefreshTokenJob, InitializingBean, DisposableBean {
 
     /**
      * refresh token 定时任务锁的 redis key
+     * @deprecated 分布式任务改为使用 {@link #REFRESH_TOKEN_JOB_KEY_PREFIX} 开头的工作队列
      */
+    @Deprecated
     public static final String REFRESH_TOKEN_JOB = "RefreshTokenJob:HashKey:lock";
     /**
-     * refresh token 定时任务锁的 redis key 的过期时间, 单位: 小时
+     * refresh token 定时任务工作队列的 redis key 前缀, 完整前缀为: RefreshTokenJob:{时间窗口}:
+     */
+    public static final String REFRESH_TOKEN_JOB_KEY_PREFIX = "RefreshTokenJob:";
+    /**
+     * refresh token 定时任务锁的 redis key 的过期时间(时间窗口), 单位: 小时
      */
     public static final Integer REFRESH_TOKEN_JOB_KEY_EXPIRED_IN = 6;
+    /**
+     * 批次还未划分完成且没有可领取的批次时, 等待的时间, 单位: 毫秒
+     */
+    private static final long WAIT_FOR_PLANNING_MILLIS = 200L;
 
     private final UsersConnectionRepository usersConnectionRepository;
     private final UsersConnectionTokenRepository usersConnectionTokenRepository;
     private final Auth2Properties auth2Properties;
     private final ScheduledExecutorService jobTaskScheduledExecutor;
-    private final ExecutorService refreshTokenTaskExecutor;
+    private final RefreshTokenPipeline refreshTokenPipeline;
     @SuppressWarnings("SpringJavaAutowiredMembersInspection")
     @Autowired(required = false)
     private RedisConnectionFactory redisConnectionFactory;
+    /**
+     * 批量更新 user_connection 与 auth_token 表时, 每个批次一个事务
+     */
+    private volatile TransactionTemplate transactionTemplate;
+
+    /**
+     * 本节点的 Id
+     */
+    private final String nodeId = UUID.randomUUID().toString();
+    /**
+     * 定时任务是否正在执行, 防止上一次任务未完成时重复执行
+     */
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    /**
+     * 同一节点的多个工作线程只能有一个划分批次
+     */
+    private final Object planMonitor = new Object();
 
     public RefreshTokenJobImpl(UsersConnectionRepository usersConnectionRepository,
                                UsersConnectionTokenRepository usersConnectionTokenRepository,
@@ -93,7 +136,8 @@ public class RefreshTokenJobImpl implements RefreshTokenJob, InitializingBean {
         Assert.notNull(auth2Properties, "auth2Properties cannot be null");
 
         this.jobTaskScheduledExecutor = jobTaskScheduledExecutor;
-        this.refreshTokenTaskExecutor = refreshTokenTaskExecutor;
+        this.refreshTokenPipeline = new RefreshTokenPipeline(refreshTokenTaskExecutor, auth2Properties,
+                                                             this::saveAbandonedResult);
         this.usersConnectionRepository = usersConnectionRepository;
         this.usersConnectionTokenRepository = usersConnectionTokenRepository;
         this.auth2Properties = auth2Properties;
@@ -104,15 +148,27 @@ public class RefreshTokenJobImpl implements RefreshTokenJob, InitializingBean {
     @Scheduled(cron = "0 * 3 * * ?")
     public void refreshTokenJob() {
         jobTaskScheduledExecutor.schedule(() -> {
-            if (this.redisConnectionFactory != null)
+            if (!running.compareAndSet(false, true))
             {
-                // 分布式
-                distributedRefreshToken();
+                log.info("refreshToken 定时刷新任务: 上一次任务还未完成, 跳过此次任务");
+                return;
             }
-            else
+            try
             {
-                // 单机
-                refreshToken();
+                if (this.redisConnectionFactory != null)
+                {
+                    // 分布式
+                    distributedRefreshToken();
+                }
+                else
+                {
+                    // 单机
+                    refreshToken();
+                }
+            }
+            finally
+            {
+                running.set(false);
             }
 
         }, 10, TimeUnit.MILLISECONDS);
@@ -122,162 +178,364 @@ public class RefreshTokenJobImpl implements RefreshTokenJob, InitializingBean {
      * 分布式执行定时任务
      */
     private void distributedRefreshToken() {
-        try (final RedisConnection connection = this.redisConnectionFactory.getConnection())
+        final RunStatistics statistics = new RunStatistics();
+        try
         {
-            final Instant now = Instant.now();
-
-            final byte[] key = REFRESH_TOKEN_JOB.getBytes(StandardCharsets.UTF_8.name());
-            final long expiredIn = Duration.ofHours(REFRESH_TOKEN_JOB_KEY_EXPIRED_IN).getSeconds();
-            // 设置过期时间
-            connection.expireAt(key, now.plusSeconds(expiredIn).toEpochMilli());
-
-            Long maxTokenId = usersConnectionTokenRepository.getMaxTokenId();
-            Integer batchCount = auth2Properties.getBatchCount();
-            long total = maxTokenId / batchCount + (maxTokenId % batchCount == 0 ? 0 : 1);
-            log.info("分布式 refreshToken 定时刷新任务开始: 总批次={}, batchCount={}, maxTokenId={}",
-                     total, batchCount, maxTokenId);
-            for (int i = 0; i < total; i++)
+            final Duration window = Duration.ofHours(REFRESH_TOKEN_JOB_KEY_EXPIRED_IN);
+            final long windowId = statistics.startTime / window.toMillis();
+            final RefreshTokenWorkQueue queue =
+                    new RefreshTokenWorkQueue(this.redisConnectionFactory,
+                                              REFRESH_TOKEN_JOB_KEY_PREFIX + "{" + windowId + "}:",
+                                              nodeId, window, auth2Properties.getRefreshTokenChunkLeaseTimeout());
+            // 同一时间窗口内的所有节点使用相同的过期时间戳, 保证批次划分一致
+            final long expiredTime = queue.initRun(getExpiredTime());
+
+            log.info("分布式 refreshToken 定时刷新任务开始: 时间窗口={}, batchCount={}, expiredTime={}",
+                     windowId, auth2Properties.getBatchCount(), expiredTime);
+
+            // 处理批次期间续期批次租约的调度线程, 每次任务独立创建, 不能与执行定时任务的线程共用
+            final ScheduledThreadPoolExecutor leaseRenewalExecutor = new ScheduledThreadPoolExecutor(1, r -> {
+                final Thread thread = new Thread(r, "refreshTokenLeaseRenewal");
+                thread.setDaemon(true);
+                return thread;
+            });
+            leaseRenewalExecutor.setRemoveOnCancelPolicy(true);
+            try
             {
-                try {
-                    final byte[] field = Integer.toString(i).getBytes(StandardCharsets.UTF_8.name());
-                    // 获取锁
-                    final Boolean lock = connection.hSetNX(key, field, "0".getBytes(StandardCharsets.UTF_8.name()));
-                    // 获取锁失败, 继续下一批次
-                    if (lock == null || !lock)
+                runWorkers(() -> distributedWorker(queue, expiredTime, statistics, leaseRenewalExecutor));
+            }
+            finally
+            {
+                leaseRenewalExecutor.shutdownNow();
+            }
+
+            log.info("分布式 refreshToken 定时刷新任务本节点结束: 时间窗口={}, {}", windowId, statistics);
+            logProviderMetrics();
+
+            if (queue.finishRun())
+            {
+                Map<String, Long> stats = queue.getStats();
+                long elapsed = stats.getOrDefault(RefreshTokenWorkQueue.FINISH_TIME_FIELD, 0L)
+                        - stats.getOrDefault(RefreshTokenWorkQueue.START_TIME_FIELD, 0L);
+                long tokens = stats.getOrDefault(RefreshTokenWorkQueue.TOKENS_FIELD, 0L);
+                log.info("分布式 refreshToken 定时刷新任务全部完成: 时间窗口={}, 批次={}, token={}, 成功={}, 失败={}, " +
+                                 "总耗时={} 毫秒, 吞吐量={} 个/秒",
+                         windowId, stats.getOrDefault(RefreshTokenWorkQueue.CHUNKS_FIELD, 0L), tokens,
+                         stats.getOrDefault(RefreshTokenWorkQueue.SUCCESS_FIELD, 0L),
+                         stats.getOrDefault(RefreshTokenWorkQueue.FAILURE_FIELD, 0L),
+                         elapsed, throughput(tokens, elapsed));
+            }
+        }
+        catch (Exception e)
+        {
+            log.error(String.format("分布式 refreshToken 定时刷新任务异常, %s, error=%s", statistics, e.getMessage()), e);
+        }
+
+    }
+
+    /**
+     * 分布式工作线程: 领取批次并刷新, 没有可领取的批次且所有批次都已划分时结束.
+     * 持有划分租约的节点每次循环划分一个批次; 处理批次期间通过 leaseRenewalExecutor 定期续期批次的租约.
+     */
+    private void distributedWorker(RefreshTokenWorkQueue queue, long expiredTime, RunStatistics statistics,
+                                   ScheduledExecutorService leaseRenewalExecutor) {
+        final Integer batchCount = auth2Properties.getBatchCount();
+        try
+        {
+            while (true)
+            {
+                if (!queue.isPlanned())
+                {
+                    synchronized (planMonitor)
                     {
-                        log.info("分布式 refreshToken 定时刷新任务: 获取锁失败, 跳过第 {} 批次", i);
-                        continue;
+                        if (!queue.isPlanned() && queue.acquirePlanLease())
+                        {
+                            planNextChunk(queue, expiredTime, batchCount);
+                        }
                     }
-                    log.info("分布式 refreshToken 定时刷新任务: 获取锁成功, 执行第 {} 批次", i);
-                    // 从数据库表 auth_token 获取符合条件的记录数; 从第三方刷新 token 信息, 并对 user_connection 与 auth_token 表进行更新
-                    refresh(batchCount, i);
                 }
-                catch (UnsupportedEncodingException e) {
-                    log.error(String.format("分布式 refreshToken 定时刷新任务 key(%d) 类型转换异常, error=%s", i, e.getMessage()), e);
+
+                final RefreshTokenWorkQueue.TokenIdRange range = queue.claim();
+                if (range == null)
+                {
+                    if (queue.isPlanned())
+                    {
+                        return;
+                    }
+                    TimeUnit.MILLISECONDS.sleep(WAIT_FOR_PLANNING_MILLIS);
+                    continue;
                 }
-            }
 
-            log.info("分布式 refreshToken 定时刷新任务结束: 总批次={}, batchCount={}, maxTokenId={}, 总耗时={} 毫秒",
-                     total, batchCount, maxTokenId, Instant.now().toEpochMilli() - now.toEpochMilli());
+                log.debug("分布式 refreshToken 定时刷新任务: 领取批次成功, 执行批次 {}", range);
+                final long renewalPeriod = queue.getLeaseRenewalPeriodMillis();
+                final ScheduledFuture<?> leaseRenewal =
+                        leaseRenewalExecutor.scheduleAtFixedRate(() -> renewLease(queue, range),
+                                                                 renewalPeriod, renewalPeriod, TimeUnit.MILLISECONDS);
+                final long[] result;
+                try
+                {
+                    result = refresh(expiredTime, range);
+                }
+                finally
+                {
+                    leaseRenewal.cancel(false);
+                }
+                queue.complete(range, result[0], result[1], result[2]);
+                statistics.record(result[0], result[1], result[2]);
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            log.warn("分布式 refreshToken 定时刷新任务被中断: {}", statistics);
+        }
+        catch (Exception e)
+        {
+            log.error(String.format("分布式 refreshToken 定时刷新任务工作线程异常, %s, error=%s",
+                                    statistics, e.getMessage()), e);
+        }
+    }
 
+    /**
+     * 续期批次的租约, 异常时只记录日志, 以免后续的续期被取消
+     */
+    private void renewLease(RefreshTokenWorkQueue queue, RefreshTokenWorkQueue.TokenIdRange range) {
+        try
+        {
+            if (!queue.renewLease(range))
+            {
+                log.warn("分布式 refreshToken 定时刷新任务: 批次 {} 已不在处理中, 续期租约失败", range);
+            }
         }
         catch (Exception e)
         {
-            log.error(String.format("分布式 refreshToken 定时刷新任务异常, error=%s", e.getMessage()), e);
+            log.warn(String.format("分布式 refreshToken 定时刷新任务: 批次 %s 续期租约异常: %s", range, e.getMessage()), e);
         }
+    }
 
+    /**
+     * 从记录的划分进度开始, 通过键集分页划分下一个批次
+     */
+    private void planNextChunk(RefreshTokenWorkQueue queue, long expiredTime, int batchCount) throws Exception {
+        final long cursor = queue.getPlanCursor();
+        final List<Long> ids = usersConnectionTokenRepository.findRefreshTokenIdsByExpireTime(expiredTime, cursor,
+                                                                                              batchCount);
+        if (ids.isEmpty())
+        {
+            queue.finishPlanning();
+            return;
+        }
+        queue.addChunk(new RefreshTokenWorkQueue.TokenIdRange(ids.get(0), ids.get(ids.size() - 1)));
+        if (ids.size() < batchCount)
+        {
+            queue.finishPlanning();
+        }
     }
 
     /**
      * 单机执行定时任务
      */
     private void refreshToken() {
+        final RunStatistics statistics = new RunStatistics();
         try
         {
-            long start = Instant.now().toEpochMilli();
-
-            Long maxTokenId = usersConnectionTokenRepository.getMaxTokenId();
-            Integer batchCount = auth2Properties.getBatchCount();
-            long total = maxTokenId / batchCount + (maxTokenId % batchCount == 0 ? 0 : 1);
+            final long expiredTime = getExpiredTime();
+            final Integer batchCount = auth2Properties.getBatchCount();
 
-            log.info("refreshToken 定时刷新任务开始: 总批次={}, batchCount={}, maxTokenId={}",
-                     total, batchCount, maxTokenId);
-            for (int i = 0; i < total; i++)
+            log.info("refreshToken 定时刷新任务开始: batchCount={}, expiredTime={}", batchCount, expiredTime);
+            long cursor = 0L;
+            List<Long> ids;
+            do
             {
-                log.info("refreshToken 定时刷新任务: 执行第 {} 批次", i);
-                // 从数据库表 auth_token 获取符合条件的记录数; 从第三方刷新 token 信息, 并对 user_connection 与 auth_token 表进行更新
-                refresh(batchCount, i);
-            }
+                // 键集分页, 只划分确实需要刷新的记录
+                ids = usersConnectionTokenRepository.findRefreshTokenIdsByExpireTime(expiredTime, cursor, batchCount);
+                if (ids.isEmpty())
+                {
+                    break;
+                }
+                final RefreshTokenWorkQueue.TokenIdRange range =
+                        new RefreshTokenWorkQueue.TokenIdRange(ids.get(0), ids.get(ids.size() - 1));
+                log.debug("refreshToken 定时刷新任务: 执行批次 {}", range);
+                final long[] result = refresh(expiredTime, range);
+                statistics.record(result[0], result[1], result[2]);
+                cursor = range.getEndId();
+            } while (ids.size() >= batchCount);
 
-            log.info("refreshToken 定时刷新任务结束: 总批次={}, batchCount={}, maxTokenId={}, 总耗时={} 毫秒",
-                     total, batchCount, maxTokenId, Instant.now().toEpochMilli() - start);
+            log.info("refreshToken 定时刷新任务结束: {}", statistics);
+            logProviderMetrics();
         }
         catch (Exception e)
         {
-            log.error(String.format("单机 refreshToken 定时刷新任务异常, error=%s", e.getMessage()), e);
+            log.error(String.format("单机 refreshToken 定时刷新任务异常, %s, error=%s", statistics, e.getMessage()), e);
         }
     }
 
     /**
-     * 从数据库表 auth_token 获取符合条件的记录数; 从第三方刷新 token 信息, 并对 user_connection 与 auth_token 表进行更新
-     * @param batchCount    每次从数据库表 auth_token 获取的记录数
-     * @param batch         迭代批次, 通过与 batchCount 来计算 tokenId 范围
+     * 在本节点启动 refreshTokenWorkers 个工作线程, 并等待全部结束. 工作线程池由本次任务创建与关闭,
+     * 不占用 jobTaskScheduledExecutor 的线程.
      */
-    private void refresh(Integer batchCount, int batch) {
+    private void runWorkers(Runnable worker) {
+        final int workers = Math.max(1, auth2Properties.getRefreshTokenWorkers());
+        if (workers == 1)
+        {
+            worker.run();
+            return;
+        }
+        final AtomicInteger threadNumber = new AtomicInteger(1);
+        final ExecutorService workerExecutor = Executors.newFixedThreadPool(workers, r -> {
+            final Thread thread = new Thread(r, "refreshTokenWorker-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try
+        {
+            final List<CompletableFuture<Void>> futures = new ArrayList<>(workers);
+            for (int i = 0; i < workers; i++)
+            {
+                futures.add(CompletableFuture.runAsync(worker, workerExecutor));
+            }
+            futures.forEach(CompletableFuture::join);
+        }
+        finally
+        {
+            workerExecutor.shutdownNow();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        refreshTokenPipeline.shutdown();
+    }
 
-        // 过期时间戳(获取小于此时间戳的记录)
-        final long expiredTime = Instant.now().toEpochMilli() + Duration.ofHours(auth2Properties.getRemainingExpireIn()).toMillis();
+    /**
+     * 输出各个第三方服务商 refresh token 的统计指标(从应用启动开始累计)
+     */
+    private void logProviderMetrics() {
+        refreshTokenPipeline.getMetrics().forEach(metrics -> log.info("refreshToken 定时刷新任务: {}", metrics));
+    }
+
+    /**
+     * 过期时间戳(获取小于此时间戳的记录)
+     */
+    private long getExpiredTime() {
+        return Instant.now().toEpochMilli() + Duration.ofHours(auth2Properties.getRemainingExpireIn()).toMillis();
+    }
+
+    /**
+     * 从数据库表 auth_token 获取批次内符合条件的记录; 通过 {@link RefreshTokenPipeline} 从第三方刷新 token 信息,
+     * 等待批次内所有的 token 刷新完成后, 批量对 user_connection 与 auth_token 表进行更新.
+     * @param expiredTime   过期时间戳(获取小于此时间戳的记录)
+     * @param range         批次, token id 范围
+     * @return  long[]{token 数量, 成功数量, 失败数量}
+     */
+    private long[] refresh(long expiredTime, RefreshTokenWorkQueue.TokenIdRange range) throws InterruptedException {
+
+        final long[] result = new long[3];
         try {
-            // 获取 token 记录
+            // 获取 token 记录, 已刷新的 token 过期时间已更新, 重新处理批次时不会重复刷新
             List<AuthTokenPo> authTokenPoList =
                     usersConnectionTokenRepository.findAuthTokenByExpireTimeAndBetweenId(expiredTime,
-                                                                                         1L + ((long) batch) * batchCount,
-                                                                                         (batch + 1L) * batchCount);
-            // 异步更新, 如果异步线程池处理过慢, refreshTokenTaskExecutor 的默认拒绝策略为 CallerRunsPolicy, 即改为同步更新
-            authTokenPoList.forEach(
-                    token ->
-                    {
-                        final Auth2DefaultRequest auth2DefaultRequest = Auth2RequestHolder.getAuth2DefaultRequest(token.getProviderId());
-                        refreshTokenTaskExecutor.execute(() -> getTokenAndUpdateAuthTokenPo(token, auth2DefaultRequest));
-                    }
-            );
+                                                                                         range.getStartId(),
+                                                                                         range.getEndId());
+            result[0] = authTokenPoList.size();
+            // 每个第三方有独立的队列, 并发数与限流, 慢的第三方不会拖慢其他第三方
+            final List<AuthTokenPo> tokens = new ArrayList<>(authTokenPoList.size());
+            final List<CompletableFuture<AuthTokenPo>> futures = new ArrayList<>(authTokenPoList.size());
+            for (AuthTokenPo token : authTokenPoList)
+            {
+                final Auth2DefaultRequest auth2DefaultRequest = Auth2RequestHolder.getAuth2DefaultRequest(token.getProviderId());
+                if (auth2DefaultRequest == null)
+                {
+                    log.info("RefreshToken 不支持: providerId={}, ", token.getProviderId());
+                    result[2]++;
+                    continue;
+                }
+                tokens.add(token);
+                futures.add(refreshTokenPipeline.submit(token, auth2DefaultRequest::refreshToken));
+            }
+
+            final List<AuthTokenPo> refreshedTokens = new ArrayList<>(futures.size());
+            for (int i = 0; i < futures.size(); i++)
+            {
+                final AuthTokenPo refreshed = getRefreshedToken(tokens.get(i), futures.get(i));
+                if (refreshed == null)
+                {
+                    result[2]++;
+                    continue;
+                }
+                refreshedTokens.add(refreshed);
+            }
+
+            // 批量更新 user_connection 与 auth_token 表
+            final int writeBatchSize = Math.max(1, auth2Properties.getRefreshTokenWriteBatchSize());
+            for (int from = 0; from < refreshedTokens.size(); from += writeBatchSize)
+            {
+                final List<AuthTokenPo> batch =
+                        refreshedTokens.subList(from, Math.min(from + writeBatchSize, refreshedTokens.size()));
+                try
+                {
+                    updateAuthTokenPos(batch);
+                    result[1] += batch.size();
+                }
+                catch (Exception e)
+                {
+                    result[2] += batch.size();
+                    log.error(String.format("RefreshToken 批量更新失败: 批次=%s, 记录数=%d, error=%s",
+                                            range, batch.size(), e.getMessage()), e);
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            throw e;
         }
         catch (Exception e) {
-            log.error(String.format("refreshToken 定时刷新任务从 auth_token 获取的记录数出现异常: 第 %d 批次, batchCount=%d, error=%s",
-                                    batch, batchCount, e.getMessage()), e);
+            log.error(String.format("refreshToken 定时刷新任务从 auth_token 获取的记录数出现异常: 批次=%s, error=%s",
+                                    range, e.getMessage()), e);
         }
+        return result;
     }
 
     /**
-     * 从第三方刷新 token 信息, 并对 user_connection 与 auth_token 表进行更新
-     * @param token                 {@link AuthTokenPo}
-     * @param auth2DefaultRequest   {@link Auth2DefaultRequest}
+     * 等待第三方刷新 token 的结果, 第三方不支持 refresh token 时更新 auth_token 表的 enableRefresh 字段.
+     * @param token     需要刷新的 token
+     * @param future    刷新结果
+     * @return  刷新后的 token, 刷新失败时返回 null
+     * @throws InterruptedException 等待刷新结果时被中断
      */
-    private void getTokenAndUpdateAuthTokenPo(@NonNull AuthTokenPo token,
-                                         @Nullable Auth2DefaultRequest auth2DefaultRequest) {
-        if (auth2DefaultRequest != null)
-        {
-            try {
-                AuthTokenPo authTokenPo;
+    @Nullable
+    private AuthTokenPo getRefreshedToken(@NonNull AuthTokenPo token,
+                                          @NonNull CompletableFuture<AuthTokenPo> future) throws InterruptedException {
+        final Duration timeout = auth2Properties.getRefreshTokenResultTimeout();
+        try {
+            return future.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        }
+        catch (TimeoutException ex) {
+            // 超时按失败处理, 未执行的任务不再执行; 已在执行中的任务之后刷新成功时由 saveAbandonedResult 保存
+            future.completeExceptionally(ex);
+            log.error("RefreshToken 等待刷新结果超时: tokenId={}, providerId={}, timeout={}",
+                      token.getId(), token.getProviderId(), timeout);
+            return null;
+        }
+        catch (ExecutionException ex) {
+            final Throwable e = ex.getCause();
+            if (e instanceof AuthException)
+            {
+                log.info("RefreshToken 第三方 {} 不支持: tokenId={}", token.getProviderId(), token.getId());
                 try {
-                    // 从第三方刷新 accessToken
-                    authTokenPo = auth2DefaultRequest.refreshToken(token);
+                    // 更新为第三方不支持 refresh token
+                    usersConnectionTokenRepository.updateEnableRefreshByTokenId(NO, token.getId());
                 }
-                catch (Exception e) {
-                    String msg;
-
-                    if (e instanceof AuthException)
-                    {
-                        msg = String.format("RefreshToken 第三方 %s 不支持: tokenId=%s",
-                                            token.getProviderId(), token.getId());
-                        log.info(msg);
-                        authTokenPo = token;
-                        authTokenPo.setEnableRefresh(NO);
-                        // 更新为第三方不支持 refresh token
-                        usersConnectionTokenRepository.updateEnableRefreshByTokenId(NO, token.getId());
-                    }
-                    else
-                    {
-                        msg = String.format("RefreshToken 失败: tokenId=%s, error=%s",
-                                            token.getId(), e.getMessage());
-                        log.error(msg, e);
-                    }
-                    return;
+                catch (Exception exception) {
+                    log.error(String.format("RefreshToken 更新 enableRefresh 失败: tokenId=%s, error=%s",
+                                            token.getId(), exception.getMessage()), exception);
                 }
-
-                // 根据 authTokenPo 对 user_connection 与 auth_token 表进行更新
-                updateAuthTokenPo(authTokenPo);
-
             }
-            catch (Exception e) {
-                String msg = String.format("RefreshToken 失败: tokenId=%s, error=%s",
-                                           token.getId(), e.getMessage());
-                log.error(msg, e);
+            else
+            {
+                log.error(String.format("RefreshToken 失败: tokenId=%s, error=%s",
+                                        token.getId(), e.getMessage()), e);
             }
-        }
-        else
-        {
-            log.info("RefreshToken 不支持: providerId={}, ", token.getProviderId());
+            return null;
         }
     }
 
@@ -292,6 +550,85 @@ public class RefreshTokenJobImpl implements RefreshTokenJob, InitializingBean {
         usersConnectionRepository.updateConnectionByTokenId(token);
     }
 
+    /**
+     * 在同一个事务中根据 tokens 对 user_connection 与 auth_token 表进行 JDBC 批量更新.<br>
+     * 有唯一的 {@link PlatformTransactionManager} 时通过 {@link TransactionTemplate} 开启事务(定时任务内部调用时
+     * {@link Transactional} 注解不生效), 否则由批量更新方法各自的事务处理.
+     * @param tokens        {@link AuthTokenPo} 列表
+     * @throws Exception    更新 user_connection 或 auth_token 出现错误.
+     */
+    @Transactional(rollbackFor = {Exception.class}, propagation = Propagation.REQUIRED)
+    public void updateAuthTokenPos(@NonNull List<AuthTokenPo> tokens) throws Exception {
+        if (tokens.isEmpty())
+        {
+            return;
+        }
+        final TransactionTemplate template = this.transactionTemplate;
+        if (template == null)
+        {
+            usersConnectionTokenRepository.updateAuthTokens(tokens);
+            usersConnectionRepository.updateConnectionsByTokenIds(tokens);
+            return;
+        }
+        try
+        {
+            template.execute(status -> {
+                try
+                {
+                    usersConnectionTokenRepository.updateAuthTokens(tokens);
+                }
+                catch (RuntimeException e)
+                {
+                    throw e;
+                }
+                catch (Exception e)
+                {
+                    throw new UndeclaredThrowableException(e);
+                }
+                usersConnectionRepository.updateConnectionsByTokenIds(tokens);
+                return null;
+            });
+        }
+        catch (UndeclaredThrowableException e)
+        {
+            throw (Exception) e.getUndeclaredThrowable();
+        }
+    }
+
+    /**
+     * 保存等待结果超时后才刷新成功的 token: 第三方轮换 refresh token 时旧的 refresh token 已失效, 不能丢弃新的 token
+     * @param token 刷新后的 token
+     */
+    private void saveAbandonedResult(@NonNull AuthTokenPo token) {
+        try
+        {
+            updateAuthTokenPos(Collections.singletonList(token));
+            log.info("RefreshToken 保存超时后刷新成功的 token: tokenId={}, providerId={}",
+                     token.getId(), token.getProviderId());
+        }
+        catch (Exception e)
+        {
+            log.error(String.format("RefreshToken 保存超时后刷新成功的 token 失败: tokenId=%s, providerId=%s, error=%s",
+                                    token.getId(), token.getProviderId(), e.getMessage()), e);
+        }
+    }
+
+    /**
+     * 设置 refreshToken 批量更新时使用的事务管理器
+     * @param transactionManager    事务管理器, 为 null 时由批量更新方法各自的事务处理
+     */
+    public void setTransactionManager(@Nullable PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = transactionManager == null ? null : new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * @return 各个第三方服务商 refresh token 的统计指标
+     */
+    @NonNull
+    public List<RefreshTokenProviderMetrics> getRefreshTokenMetrics() {
+        return refreshTokenPipeline.getMetrics();
+    }
+
     @Override
     public void afterPropertiesSet() throws Exception {
         // 3. 动态注入 refreshTokenJob() Scheduled 的映射 cron
@@ -301,4 +638,35 @@ public class RefreshTokenJobImpl implements RefreshTokenJob, InitializingBean {
             MvcUtil.setScheduledCron(methodName, auth2Properties.getRefreshTokenJobCron(), this.getClass());
         }
     }
+
+    private static String throughput(long tokens, long elapsedMillis) {
+        return String.format("%.2f", elapsedMillis <= 0L ? 0.0D : tokens * 1000.0D / elapsedMillis);
+    }
+
+    /**
+     * 本节点此次任务的统计数据
+     */
+    private static final class RunStatistics {
+
+        private final long startTime = System.currentTimeMillis();
+        private final AtomicLong chunks = new AtomicLong(0L);
+        private final AtomicLong tokens = new AtomicLong(0L);
+        private final AtomicLong success = new AtomicLong(0L);
+        private final AtomicLong failure = new AtomicLong(0L);
+
+        void record(long tokens, long success, long failure) {
+            this.chunks.incrementAndGet();
+            this.tokens.addAndGet(tokens);
+            this.success.addAndGet(success);
+            this.failure.addAndGet(failure);
+        }
+
+        @Override
+        public String toString() {
+            long elapsed = System.currentTimeMillis() - startTime;
+            return String.format("批次=%d, token=%d, 成功=%d, 失败=%d, 耗时=%d 毫秒, 吞吐量=%s 个/秒",
+                                 chunks.get(), tokens.get(), success.get(), failure.get(),
+                                 elapsed, throughput(tokens.get(), elapsed));
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,417 @@
+/*
+ * MIT License
+ * Copyright (c) 2020-2029 YongWu zheng (dcenter.top and gitee.com/pcore and github.com/ZeroOrInfinity)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package top.dcenter.ums.security.core.oauth.job;
+
+import lombok.extern.slf4j.Slf4j;
+import me.zhyd.oauth.exception.AuthException;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import top.dcenter.ums.security.core.oauth.entity.AuthTokenPo;
+import top.dcenter.ums.security.core.oauth.properties.Auth2Properties;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 第三方 refresh token 的执行管道: 每个第三方服务商(providerId)有独立的有界队列, 最大并发数与令牌桶限流,
+ * 刷新失败时按带随机抖动的指数退避重试. 慢的第三方只会占用自己的并发数, 不会拖慢其他第三方, 也不会使提交线程同步执行刷新逻辑.<br>
+ * 队列满时提交线程阻塞等待(背压). 第三方不支持 refresh token({@link AuthException}) 时不重试.<br>
+ * 刷新结果的 future 已完成(如等待结果超时)的任务不再执行与重试; 已在执行中的任务在 future 完成后才刷新成功时,
+ * 刷新后的 token 交给 abandonedResultHandler 保存, 以免第三方轮换 refresh token 时丢失新的 token.
+ * @author YongWu zheng
+ * @version V2.0  Created by 2020/11/30 10:45
+ */
+@Slf4j
+public class RefreshTokenPipeline {
+
+    private final Executor refreshTokenTaskExecutor;
+    private final ScheduledExecutorService retryScheduledExecutor;
+    private final Auth2Properties auth2Properties;
+    private final ConcurrentMap<String, ProviderLane> lanes = new ConcurrentHashMap<>();
+    /**
+     * 处理 future 已完成后才刷新成功的 token, 为 null 时忽略
+     */
+    private final Consumer<AuthTokenPo> abandonedResultHandler;
+
+    public RefreshTokenPipeline(@NonNull Executor refreshTokenTaskExecutor,
+                                @NonNull Auth2Properties auth2Properties) {
+        this(refreshTokenTaskExecutor, auth2Properties, null);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param refreshTokenTaskExecutor  执行刷新任务的线程池
+     * @param auth2Properties           auth2Properties
+     * @param abandonedResultHandler    处理 future 已完成(如等待结果超时)后才刷新成功的 token, 为 null 时忽略
+     */
+    public RefreshTokenPipeline(@NonNull Executor refreshTokenTaskExecutor,
+                                @NonNull Auth2Properties auth2Properties,
+                                @Nullable Consumer<AuthTokenPo> abandonedResultHandler) {
+        this.refreshTokenTaskExecutor = refreshTokenTaskExecutor;
+        this.auth2Properties = auth2Properties;
+        this.abandonedResultHandler = abandonedResultHandler;
+        // 重试使用独立的调度线程, 不能与等待刷新结果的定时任务线程共用, 否则单线程时重试任务永远无法执行
+        final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+            final Thread thread = new Thread(r, "refreshTokenRetry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.setRemoveOnCancelPolicy(true);
+        this.retryScheduledExecutor = scheduler;
+    }
+
+    /**
+     * 关闭重试的调度线程, 未执行的重试任务被丢弃, 等待刷新结果的线程通过超时结束
+     */
+    public void shutdown() {
+        retryScheduledExecutor.shutdownNow();
+    }
+
+    /**
+     * 第三方刷新 token 的逻辑
+     */
+    @FunctionalInterface
+    public interface Refresher {
+        /**
+         * 从第三方刷新 token
+         * @param token     需要刷新的 token
+         * @return  刷新后的 token
+         * @throws Exception    刷新失败
+         */
+        @NonNull
+        AuthTokenPo refresh(@NonNull AuthTokenPo token) throws Exception;
+    }
+
+    /**
+     * 提交 token 到第三方服务商对应的队列, 队列满时阻塞等待
+     * @param token         需要刷新的 token
+     * @param refresher     第三方刷新 token 的逻辑
+     * @return  刷新结果: 成功时为刷新后的 token, 最终失败时为最后一次的异常
+     * @throws InterruptedException 等待队列时被中断
+     */
+    @NonNull
+    public CompletableFuture<AuthTokenPo> submit(@NonNull AuthTokenPo token,
+                                                 @NonNull Refresher refresher) throws InterruptedException {
+        final String providerId = token.getProviderId();
+        return lanes.computeIfAbsent(providerId, ProviderLane::new).submit(token, refresher);
+    }
+
+    /**
+     * @return 各个第三方服务商的统计指标
+     */
+    @NonNull
+    public List<RefreshTokenProviderMetrics> getMetrics() {
+        final List<RefreshTokenProviderMetrics> metrics = new ArrayList<>(lanes.size());
+        lanes.values().forEach(lane -> metrics.add(lane.metrics));
+        return metrics;
+    }
+
+    /**
+     * 单个第三方服务商的队列
+     */
+    private final class ProviderLane {
+
+        private final Auth2Properties.RefreshTokenLimitProperties limit;
+        private final Semaphore queueSlots;
+        private final Queue<RefreshTask> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger inFlight = new AtomicInteger(0);
+        private final TokenBucket tokenBucket;
+        private final RefreshTokenProviderMetrics metrics;
+
+        ProviderLane(String providerId) {
+            this.limit = auth2Properties.getRefreshTokenLimit(providerId);
+            this.queueSlots = new Semaphore(Math.max(1, limit.getQueueCapacity()));
+            this.tokenBucket = new TokenBucket(limit.getPermitsPerSecond(), limit.getBurst());
+            this.metrics = new RefreshTokenProviderMetrics(providerId);
+        }
+
+        CompletableFuture<AuthTokenPo> submit(AuthTokenPo token, Refresher refresher) throws InterruptedException {
+            queueSlots.acquire();
+            final RefreshTask task = new RefreshTask(token, refresher);
+            enqueue(task);
+            return task.future;
+        }
+
+        private void enqueue(RefreshTask task) {
+            metrics.incrementQueued();
+            pending.add(task);
+            dispatch();
+        }
+
+        /**
+         * 在并发数限制内把队列中的任务交给 refreshTokenTaskExecutor 执行
+         */
+        private void dispatch() {
+            final int maxConcurrency = Math.max(1, limit.getMaxConcurrency());
+            while (!pending.isEmpty())
+            {
+                final int current = inFlight.get();
+                if (current >= maxConcurrency)
+                {
+                    return;
+                }
+                if (!inFlight.compareAndSet(current, current + 1))
+                {
+                    continue;
+                }
+                final RefreshTask task = pending.poll();
+                if (task == null)
+                {
+                    inFlight.decrementAndGet();
+                    continue;
+                }
+                if (task.attempts == 0)
+                {
+                    // 首次执行时释放队列容量, 重试的任务不再占用队列容量
+                    queueSlots.release();
+                }
+                metrics.start();
+                try
+                {
+                    refreshTokenTaskExecutor.execute(() -> run(task));
+                }
+                catch (RejectedExecutionException e)
+                {
+                    metrics.finish();
+                    metrics.recordFailure();
+                    inFlight.decrementAndGet();
+                    task.future.completeExceptionally(e);
+                }
+            }
+        }
+
+        private void run(RefreshTask task) {
+            try
+            {
+                // 等待令牌前后都检查 future 是否已完成, 已放弃的任务不再请求第三方
+                if (skipIfDone(task))
+                {
+                    return;
+                }
+                tokenBucket.acquire();
+                if (skipIfDone(task))
+                {
+                    return;
+                }
+                task.attempts++;
+                final long start = System.nanoTime();
+                try
+                {
+                    final AuthTokenPo authTokenPo = task.refresher.refresh(task.token);
+                    metrics.recordLatency(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                    metrics.recordSuccess();
+                    if (!task.future.complete(authTokenPo))
+                    {
+                        handleAbandonedResult(authTokenPo);
+                    }
+                }
+                catch (Exception e)
+                {
+                    metrics.recordLatency(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                    retryOrFail(task, e);
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                metrics.recordFailure();
+                task.future.completeExceptionally(e);
+            }
+            finally
+            {
+                metrics.finish();
+                inFlight.decrementAndGet();
+                dispatch();
+            }
+        }
+
+        private void retryOrFail(RefreshTask task, Exception e) {
+            if (e instanceof AuthException || task.attempts > limit.getMaxRetries())
+            {
+                metrics.recordFailure();
+                task.future.completeExceptionally(e);
+                return;
+            }
+            if (skipIfDone(task))
+            {
+                return;
+            }
+            final long delay = backoffDelay(task.attempts);
+            log.debug("RefreshToken 失败, {} 毫秒后重试: providerId={}, tokenId={}, attempts={}, error={}",
+                      delay, task.token.getProviderId(), task.token.getId(), task.attempts, e.getMessage());
+            try
+            {
+                retryScheduledExecutor.schedule(() -> {
+                    if (!skipIfDone(task))
+                    {
+                        enqueue(task);
+                    }
+                }, delay, TimeUnit.MILLISECONDS);
+                metrics.recordRetry();
+            }
+            catch (RejectedExecutionException ex)
+            {
+                metrics.recordFailure();
+                task.future.completeExceptionally(e);
+            }
+        }
+
+        /**
+         * future 已完成(如等待结果超时)时跳过任务
+         * @param task  刷新任务
+         * @return  是否跳过
+         */
+        private boolean skipIfDone(RefreshTask task) {
+            if (task.future.isDone())
+            {
+                metrics.recordFailure();
+                log.debug("RefreshToken 结果已不再等待, 跳过: providerId={}, tokenId={}, attempts={}",
+                          task.token.getProviderId(), task.token.getId(), task.attempts);
+                return true;
+            }
+            return false;
+        }
+
+        private void handleAbandonedResult(AuthTokenPo authTokenPo) {
+            if (abandonedResultHandler == null)
+            {
+                return;
+            }
+            try
+            {
+                abandonedResultHandler.accept(authTokenPo);
+            }
+            catch (Exception e)
+            {
+                log.error(String.format("RefreshToken 保存超时后刷新成功的 token 失败: providerId=%s, tokenId=%s, error=%s",
+                                        authTokenPo.getProviderId(), authTokenPo.getId(), e.getMessage()), e);
+            }
+        }
+
+        private long backoffDelay(int attempts) {
+            return RefreshTokenPipeline.backoffDelay(limit.getRetryBaseDelay().toMillis(),
+                                                     limit.getRetryMaxDelay().toMillis(), attempts);
+        }
+    }
+
+    /**
+     * 带随机抖动的指数退避: 退避时间在 [cap/2, cap] 之间
+     * @param baseDelay 第一次重试的退避时间(毫秒), 小于 1 时为 1
+     * @param maxDelay  最大退避时间(毫秒), 小于 baseDelay 时为 baseDelay
+     * @param attempts  已执行的次数, 从 1 开始
+     * @return  退避时间(毫秒)
+     */
+    static long backoffDelay(long baseDelay, long maxDelay, int attempts) {
+        final long cap = backoffCap(baseDelay, maxDelay, attempts);
+        return cap / 2 + ThreadLocalRandom.current().nextLong(cap / 2 + 1);
+    }
+
+    /**
+     * 指数退避时间的上限: cap = min(maxDelay, baseDelay * 2^(attempts - 1)), 不会溢出
+     * @param baseDelay 第一次重试的退避时间(毫秒), 小于 1 时为 1
+     * @param maxDelay  最大退避时间(毫秒), 小于 baseDelay 时为 baseDelay
+     * @param attempts  已执行的次数, 从 1 开始
+     * @return  退避时间的上限(毫秒)
+     */
+    static long backoffCap(long baseDelay, long maxDelay, int attempts) {
+        final long base = Math.max(1L, baseDelay);
+        final long max = Math.max(base, maxDelay);
+        final int shift = Math.max(0, Math.min(attempts - 1, 62));
+        // base * 2^shift > max
+        if (base > (max >>> shift))
+        {
+            return max;
+        }
+        return base << shift;
+    }
+
+    private static final class RefreshTask {
+
+        private final AuthTokenPo token;
+        private final Refresher refresher;
+        private final CompletableFuture<AuthTokenPo> future = new CompletableFuture<>();
+        /**
+         * 已执行的次数, 只在执行线程中修改
+         */
+        private volatile int attempts = 0;
+
+        RefreshTask(AuthTokenPo token, Refresher refresher) {
+            this.token = token;
+            this.refresher = refresher;
+        }
+    }
+
+    /**
+     * 令牌桶: 预支令牌, 令牌不足时当前线程等待到令牌生成的时间点.
+     */
+    private static final class TokenBucket {
+
+        private final double permitsPerNano;
+        private final double capacity;
+        private double permits;
+        private long lastRefillTime;
+
+        TokenBucket(double permitsPerSecond, int burst) {
+            this.permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1L);
+            this.capacity = Math.max(1, burst);
+            this.permits = this.capacity;
+            this.lastRefillTime = System.nanoTime();
+        }
+
+        void acquire() throws InterruptedException {
+            if (permitsPerNano <= 0.0D)
+            {
+                return;
+            }
+            final long waitNanos;
+            synchronized (this)
+            {
+                final long now = System.nanoTime();
+                permits = Math.min(capacity, permits + (now - lastRefillTime) * permitsPerNano);
+                lastRefillTime = now;
+                permits -= 1.0D;
+                waitNanos = permits >= 0.0D ? 0L : (long) (-permits / permitsPerNano);
+            }
+            if (waitNanos > 0L)
+            {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            }
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * MIT License
+ * Copyright (c) 2020-2029 YongWu zheng (dcenter.top and gitee.com/pcore and github.com/ZeroOrInfinity)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package top.dcenter.ums.security.core.oauth.job;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 第三方服务商 refresh token 的统计指标: 排队数, 执行中的数量, 成功数, 失败数, 重试数与请求耗时直方图.
+ * @author YongWu zheng
+ * @version V2.0  Created by 2020/11/30 10:20
+ */
+public class RefreshTokenProviderMetrics {
+
+    /**
+     * 耗时直方图的桶上限, 单位: 毫秒, 最后一个桶为大于 10000 毫秒
+     */
+    private static final long[] LATENCY_BUCKET_BOUNDS = {50L, 100L, 250L, 500L, 1000L, 2500L, 5000L, 10000L};
+
+    private final String providerId;
+    private final AtomicInteger queued = new AtomicInteger(0);
+    private final AtomicInteger inFlight = new AtomicInteger(0);
+    private final AtomicLong successCount = new AtomicLong(0L);
+    private final AtomicLong failureCount = new AtomicLong(0L);
+    private final AtomicLong retryCount = new AtomicLong(0L);
+    private final AtomicLong totalLatency = new AtomicLong(0L);
+    private final AtomicLongArray latencyBuckets = new AtomicLongArray(LATENCY_BUCKET_BOUNDS.length + 1);
+
+    public RefreshTokenProviderMetrics(String providerId) {
+        this.providerId = providerId;
+    }
+
+    void incrementQueued() {
+        this.queued.incrementAndGet();
+    }
+
+    void start() {
+        this.queued.decrementAndGet();
+        this.inFlight.incrementAndGet();
+    }
+
+    void finish() {
+        this.inFlight.decrementAndGet();
+    }
+
+    void recordSuccess() {
+        this.successCount.incrementAndGet();
+    }
+
+    void recordFailure() {
+        this.failureCount.incrementAndGet();
+    }
+
+    void recordRetry() {
+        this.retryCount.incrementAndGet();
+    }
+
+    /**
+     * 记录一次向第三方服务商请求的耗时
+     * @param latencyMillis 耗时, 单位: 毫秒
+     */
+    void recordLatency(long latencyMillis) {
+        this.totalLatency.addAndGet(latencyMillis);
+        int index = Arrays.binarySearch(LATENCY_BUCKET_BOUNDS, latencyMillis);
+        this.latencyBuckets.incrementAndGet(index >= 0 ? index : -index - 1);
+    }
+
+    public String getProviderId() {
+        return this.providerId;
+    }
+
+    public int getQueued() {
+        return this.queued.get();
+    }
+
+    public int getInFlight() {
+        return this.inFlight.get();
+    }
+
+    public long getSuccessCount() {
+        return this.successCount.get();
+    }
+
+    public long getFailureCount() {
+        return this.failureCount.get();
+    }
+
+    public long getRetryCount() {
+        return this.retryCount.get();
+    }
+
+    /**
+     * @return 耗时直方图的桶上限(毫秒)的副本, 直方图比桶上限多一个桶, 即大于最大上限的请求数
+     */
+    public long[] getLatencyBucketBounds() {
+        return LATENCY_BUCKET_BOUNDS.clone();
+    }
+
+    /**
+     * @return 耗时直方图: 每个桶内的请求数
+     */
+    public long[] getLatencyHistogram() {
+        long[] histogram = new long[this.latencyBuckets.length()];
+        for (int i = 0; i < histogram.length; i++)
+        {
+            histogram[i] = this.latencyBuckets.get(i);
+        }
+        return histogram;
+    }
+
+    /**
+     * @return 平均耗时, 单位: 毫秒, 没有请求时返回 0.0
+     */
+    public double getAverageLatency() {
+        long count = 0L;
+        for (long c : getLatencyHistogram())
+        {
+            count += c;
+        }
+        return count == 0L ? 0.0D : (double) this.totalLatency.get() / count;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("RefreshTokenProviderMetrics{providerId=%s, queued=%d, inFlight=%d, success=%d, " +
+                                     "failure=%d, retry=%d, averageLatency=%.2fms, latencyBucketBounds=%s, " +
+                                     "latencyHistogram=%s}",
+                             this.providerId, getQueued(), getInFlight(), getSuccessCount(), getFailureCount(),
+                             getRetryCount(), getAverageLatency(), Arrays.toString(LATENCY_BUCKET_BOUNDS),
+                             Arrays.toString(getLatencyHistogram()));
+    }
+}
@@ -0,0 +1,361 @@
+/*
+ * MIT License
+ * Copyright (c) 2020-2029 YongWu zheng (dcenter.top and gitee.com/pcore and github.com/ZeroOrInfinity)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package top.dcenter.ums.security.core.oauth.job;
+
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * 分布式 refreshToken 任务的工作队列, 通过 redis 在集群的各节点间共享: <br>
+ * 1. 批次(token id 范围)由获取到划分租约的节点通过键集分页(keyset pagination)划分, 并放入待处理队列(list), 划分进度(游标)记录在 redis 中,
+ *    划分节点宕机后租约过期, 其他节点从游标处继续划分. <br>
+ * 2. 各节点的工作线程并发领取批次, 领取的批次带有租约(放入 zset, score 为租约过期时间), 节点在处理批次时宕机, 租约过期后其他节点可重新领取. <br>
+ * 3. 节点在处理批次期间按租约时长的 1/3 定期续期租约, 处理耗时超过租约时长的批次不会被其他节点重复领取. <br>
+ * 4. 所有的 key 都在一个时间窗口内有效, 同一窗口内再次执行任务时从记录的进度继续, 而不是重新开始. <br>
+ * 5. 多个 key 的操作都通过 lua 脚本原子地执行, key 前缀包含 hash tag(如: RefreshTokenJob:{时间窗口}:),
+ *    同一次任务的所有 key 在 redis cluster 中位于同一个 slot. <br>
+ * 注意: 租约过期判断使用各节点的本地时间, 各节点的时间应同步.
+ * @author YongWu zheng
+ * @version V2.0  Created by 2020/11/30 10:25
+ */
+class RefreshTokenWorkQueue {
+
+    private static final String EXPIRED_TIME_FIELD = "expiredTime";
+    private static final String PLAN_CURSOR_FIELD = "planCursor";
+    private static final String PLANNED_FIELD = "planned";
+
+    static final String CHUNKS_FIELD = "chunks";
+    static final String TOKENS_FIELD = "tokens";
+    static final String SUCCESS_FIELD = "success";
+    static final String FAILURE_FIELD = "failure";
+    static final String START_TIME_FIELD = "startTime";
+    static final String FINISH_TIME_FIELD = "finishTime";
+
+    /**
+     * 初始化此次任务, 返回此次任务的过期时间戳.
+     * KEYS[1]=meta, KEYS[2]=stats, ARGV[1]=expiredTime, ARGV[2]=startTime, ARGV[3]=keyExpireSeconds
+     */
+    private static final byte[] INIT_RUN_SCRIPT = ("redis.call('hsetnx', KEYS[1], '" + EXPIRED_TIME_FIELD + "', ARGV[1]) " +
+            "redis.call('hsetnx', KEYS[2], '" + START_TIME_FIELD + "', ARGV[2]) " +
+            "redis.call('expire', KEYS[1], ARGV[3]) " +
+            "redis.call('expire', KEYS[2], ARGV[3]) " +
+            "return redis.call('hget', KEYS[1], '" + EXPIRED_TIME_FIELD + "')").getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * 添加批次到待处理队列, 记录划分进度并续期划分租约.
+     * KEYS[1]=pending, KEYS[2]=meta, KEYS[3]=planLock, ARGV[1]=chunk, ARGV[2]=planCursor, ARGV[3]=keyExpireSeconds,
+     * ARGV[4]=planLeaseMillis
+     */
+    private static final byte[] ADD_CHUNK_SCRIPT = ("redis.call('rpush', KEYS[1], ARGV[1]) " +
+            "redis.call('hset', KEYS[2], '" + PLAN_CURSOR_FIELD + "', ARGV[2]) " +
+            "redis.call('expire', KEYS[1], ARGV[3]) " +
+            "redis.call('pexpire', KEYS[3], ARGV[4]) " +
+            "return 1").getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * 领取批次: 优先从待处理队列中领取, 没有时领取租约已过期的批次, 并设置新的租约过期时间.
+     * KEYS[1]=pending, KEYS[2]=inflight, ARGV[1]=now, ARGV[2]=leaseExpireAt, ARGV[3]=keyExpireSeconds
+     */
+    private static final byte[] CLAIM_SCRIPT = ("local chunk = redis.call('lpop', KEYS[1]) " +
+            "if not chunk then " +
+            "  local expired = redis.call('zrangebyscore', KEYS[2], '-inf', ARGV[1], 'LIMIT', 0, 1) " +
+            "  if #expired == 0 then return false end " +
+            "  chunk = expired[1] " +
+            "end " +
+            "redis.call('zadd', KEYS[2], ARGV[2], chunk) " +
+            "redis.call('expire', KEYS[2], ARGV[3]) " +
+            "return chunk").getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * 续期批次的租约, 批次已完成时不续期.
+     * KEYS[1]=inflight, ARGV[1]=chunk, ARGV[2]=leaseExpireAt
+     */
+    private static final byte[] RENEW_LEASE_SCRIPT = ("if not redis.call('zscore', KEYS[1], ARGV[1]) then return 0 end " +
+            "redis.call('zadd', KEYS[1], ARGV[2], ARGV[1]) " +
+            "return 1").getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * 完成批次, 并累计此次任务的统计数据.
+     * KEYS[1]=inflight, KEYS[2]=stats, ARGV[1]=chunk, ARGV[2]=tokens, ARGV[3]=success, ARGV[4]=failure
+     */
+    private static final byte[] COMPLETE_SCRIPT = ("redis.call('zrem', KEYS[1], ARGV[1]) " +
+            "redis.call('hincrby', KEYS[2], '" + CHUNKS_FIELD + "', 1) " +
+            "redis.call('hincrby', KEYS[2], '" + TOKENS_FIELD + "', ARGV[2]) " +
+            "redis.call('hincrby', KEYS[2], '" + SUCCESS_FIELD + "', ARGV[3]) " +
+            "redis.call('hincrby', KEYS[2], '" + FAILURE_FIELD + "', ARGV[4]) " +
+            "return 1").getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * 获取或续期划分租约.
+     * KEYS[1]=planLock, ARGV[1]=nodeId, ARGV[2]=leaseMillis
+     */
+    private static final byte[] PLAN_LEASE_SCRIPT = ("local v = redis.call('get', KEYS[1]) " +
+            "if v == ARGV[1] then redis.call('pexpire', KEYS[1], ARGV[2]) return 1 end " +
+            "if not v then redis.call('set', KEYS[1], ARGV[1], 'PX', ARGV[2]) return 1 end " +
+            "return 0").getBytes(StandardCharsets.UTF_8);
+
+    private final RedisConnectionFactory redisConnectionFactory;
+    private final byte[] nodeId;
+    private final byte[] metaKey;
+    private final byte[] planLockKey;
+    private final byte[] pendingKey;
+    private final byte[] inflightKey;
+    private final byte[] statsKey;
+    private final long keyExpireSeconds;
+    private final long chunkLeaseMillis;
+    private final long planLeaseMillis;
+
+    /**
+     * @param redisConnectionFactory    redisConnectionFactory
+     * @param keyPrefix                 此次任务(时间窗口)的 key 前缀, 应包含 hash tag, 如: RefreshTokenJob:{时间窗口}:
+     * @param nodeId                    本节点的 Id
+     * @param keyExpire                 所有 key 的有效期(时间窗口)
+     * @param chunkLease                批次的租约时间, 处理批次期间定期续期
+     */
+    RefreshTokenWorkQueue(@NonNull RedisConnectionFactory redisConnectionFactory, @NonNull String keyPrefix,
+                          @NonNull String nodeId, @NonNull Duration keyExpire, @NonNull Duration chunkLease) {
+        this.redisConnectionFactory = redisConnectionFactory;
+        this.nodeId = bytes(nodeId);
+        this.metaKey = bytes(keyPrefix + "meta");
+        this.planLockKey = bytes(keyPrefix + "plan:lock");
+        this.pendingKey = bytes(keyPrefix + "pending");
+        this.inflightKey = bytes(keyPrefix + "inflight");
+        this.statsKey = bytes(keyPrefix + "stats");
+        this.keyExpireSeconds = keyExpire.getSeconds();
+        this.chunkLeaseMillis = chunkLease.toMillis();
+        this.planLeaseMillis = chunkLease.toMillis();
+    }
+
+    /**
+     * 初始化此次任务, 同一时间窗口内的所有节点使用第一个节点设置的过期时间戳.
+     * @param expiredTime   过期时间戳(刷新小于此时间戳的 token)
+     * @return  此次任务的过期时间戳
+     */
+    long initRun(long expiredTime) {
+        byte[] value = execute(connection -> connection.eval(INIT_RUN_SCRIPT, ReturnType.VALUE, 2,
+                                                             metaKey, statsKey,
+                                                             bytes(Long.toString(expiredTime)),
+                                                             bytes(Long.toString(System.currentTimeMillis())),
+                                                             bytes(Long.toString(keyExpireSeconds))));
+        return value == null ? expiredTime : Long.parseLong(string(value));
+    }
+
+    /**
+     * @return 是否已划分完所有的批次
+     */
+    boolean isPlanned() {
+        return Boolean.TRUE.equals(execute(connection -> connection.hExists(metaKey, bytes(PLANNED_FIELD))));
+    }
+
+    /**
+     * 获取或续期划分租约
+     * @return 是否持有划分租约
+     */
+    boolean acquirePlanLease() {
+        Long result = execute(connection -> connection.eval(PLAN_LEASE_SCRIPT, ReturnType.INTEGER, 1,
+                                                            planLockKey, nodeId,
+                                                            bytes(Long.toString(planLeaseMillis))));
+        return result != null && result == 1L;
+    }
+
+    /**
+     * @return 划分进度: 已划分的最后一个 token id, 没有时返回 0
+     */
+    long getPlanCursor() {
+        byte[] value = execute(connection -> connection.hGet(metaKey, bytes(PLAN_CURSOR_FIELD)));
+        return value == null ? 0L : Long.parseLong(string(value));
+    }
+
+    /**
+     * 添加批次到待处理队列, 并原子地记录划分进度
+     * @param range     批次
+     */
+    void addChunk(@NonNull TokenIdRange range) {
+        execute(connection -> connection.eval(ADD_CHUNK_SCRIPT, ReturnType.INTEGER, 3,
+                                              pendingKey, metaKey, planLockKey,
+                                              bytes(range.toString()),
+                                              bytes(Long.toString(range.getEndId())),
+                                              bytes(Long.toString(keyExpireSeconds)),
+                                              bytes(Long.toString(planLeaseMillis))));
+    }
+
+    /**
+     * 划分完所有的批次, 释放划分租约
+     */
+    void finishPlanning() {
+        execute(connection -> {
+            connection.hSet(metaKey, bytes(PLANNED_FIELD), bytes("1"));
+            return connection.del(planLockKey);
+        });
+    }
+
+    /**
+     * 领取一个批次
+     * @return  批次, 没有可领取的批次时返回 null
+     */
+    @Nullable
+    TokenIdRange claim() {
+        final long now = System.currentTimeMillis();
+        byte[] chunk = execute(connection -> connection.eval(CLAIM_SCRIPT, ReturnType.VALUE, 2,
+                                                             pendingKey, inflightKey,
+                                                             bytes(Long.toString(now)),
+                                                             bytes(Long.toString(now + chunkLeaseMillis)),
+                                                             bytes(Long.toString(keyExpireSeconds))));
+        if (chunk == null)
+        {
+            return null;
+        }
+        return TokenIdRange.parse(string(chunk));
+    }
+
+    /**
+     * 续期批次的租约
+     * @param range     批次
+     * @return  是否续期成功, 批次已完成时返回 false
+     */
+    boolean renewLease(@NonNull TokenIdRange range) {
+        final long now = System.currentTimeMillis();
+        Long result = execute(connection -> connection.eval(RENEW_LEASE_SCRIPT, ReturnType.INTEGER, 1,
+                                                            inflightKey, bytes(range.toString()),
+                                                            bytes(Long.toString(now + chunkLeaseMillis))));
+        return result != null && result == 1L;
+    }
+
+    /**
+     * @return 处理批次期间续期租约的间隔, 为租约时长的 1/3, 单位: 毫秒
+     */
+    long getLeaseRenewalPeriodMillis() {
+        return Math.max(1L, chunkLeaseMillis / 3);
+    }
+
+    /**
+     * 完成批次, 并累计此次任务的统计数据
+     * @param range     批次
+     * @param tokens    批次中需要刷新的 token 数量
+     * @param success   刷新成功的数量
+     * @param failure   刷新失败的数量
+     */
+    void complete(@NonNull TokenIdRange range, long tokens, long success, long failure) {
+        execute(connection -> connection.eval(COMPLETE_SCRIPT, ReturnType.INTEGER, 2,
+                                              inflightKey, statsKey,
+                                              bytes(range.toString()),
+                                              bytes(Long.toString(tokens)),
+                                              bytes(Long.toString(success)),
+                                              bytes(Long.toString(failure))));
+    }
+
+    /**
+     * 当所有的批次都已划分且处理完成时, 记录此次任务的结束时间
+     * @return  本节点是否为记录结束时间的节点(只有一个节点返回 true)
+     */
+    boolean finishRun() {
+        return execute(connection -> {
+            if (connection.hExists(metaKey, bytes(PLANNED_FIELD)) != Boolean.TRUE)
+            {
+                return false;
+            }
+            Long pending = connection.lLen(pendingKey);
+            Long inflight = connection.zCard(inflightKey);
+            if ((pending != null && pending > 0L) || (inflight != null && inflight > 0L))
+            {
+                return false;
+            }
+            return Boolean.TRUE.equals(connection.hSetNX(statsKey, bytes(FINISH_TIME_FIELD),
+                                                         bytes(Long.toString(System.currentTimeMillis()))));
+        });
+    }
+
+    /**
+     * @return 此次任务的统计数据
+     */
+    @NonNull
+    Map<String, Long> getStats() {
+        Map<byte[], byte[]> all = execute(connection -> connection.hGetAll(statsKey));
+        Map<String, Long> stats = new HashMap<>(8);
+        if (all != null)
+        {
+            all.forEach((k, v) -> stats.put(string(k), Long.parseLong(string(v))));
+        }
+        return stats;
+    }
+
+    private <T> T execute(Function<RedisConnection, T> callback) {
+        try (RedisConnection connection = redisConnectionFactory.getConnection())
+        {
+            return callback.apply(connection);
+        }
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 批次: token id 范围, 包含 startId 与 endId
+     */
+    static final class TokenIdRange {
+
+        private static final String SEPARATOR = "-";
+
+        private final long startId;
+        private final long endId;
+
+        TokenIdRange(long startId, long endId) {
+            this.startId = startId;
+            this.endId = endId;
+        }
+
+        long getStartId() {
+            return startId;
+        }
+
+        long getEndId() {
+            return endId;
+        }
+
+        static TokenIdRange parse(String range) {
+            int index = range.indexOf(SEPARATOR);
+            return new TokenIdRange(Long.parseLong(range.substring(0, index)),
+                                    Long.parseLong(range.substring(index + 1)));
+        }
+
+        @Override
+        public String toString() {
+            return startId + SEPARATOR + endId;
+        }
+    }
+}
@@ -27,14 +27,30 @@ import me.zhyd.oauth.cache.AuthStateCache;
 import top.dcenter.ums.security.core.oauth.justauth.enums.CacheKeyStrategy;
 
 /**
- * {@link AuthStateCache} 的扩展, 添加自定义 Cache key 的方法
+ * {@link AuthStateCache} 的扩展, 添加自定义 Cache key 的方法与只能消费一次的 state 方法
  * @author YongWu zheng
  * @version V1.0  Created by 2020/10/6 19:42
  */
 public interface Auth2StateCache extends AuthStateCache {
+
+    /**
+     * 已消费的 state 在 request 中的属性名前缀
+     */
+    String CONSUMED_STATE_ATTRIBUTE_PREFIX = Auth2StateCache.class.getName() + ".CONSUMED.";
+
     /**
      * 获取 缓存 key 的策略
      * @return CacheKeyStrategy
      */
     CacheKeyStrategy getCacheKeyStrategy();
+
+    /**
+     * 消费 state: 原子地获取并删除缓存的 state, 同一请求内再次调用 {@link #consume(String)} 或 {@link #get(String)}
+     * 返回已消费的值(请求内缓存), 不再访问缓存. 默认实现只获取不删除, 由缓存过期删除.
+     * @param key   state cache key
+     * @return  缓存的 state, 不存在或已过期时返回 null
+     */
+    default String consume(String key) {
+        return get(key);
+    }
 }
\ No newline at end of file
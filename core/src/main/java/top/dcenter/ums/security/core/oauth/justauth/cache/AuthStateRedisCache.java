@@ -23,51 +23,124 @@
 
 package top.dcenter.ums.security.core.oauth.justauth.cache;
 
-import org.springframework.util.StringUtils;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import org.springframework.util.StringUtils;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
 import top.dcenter.ums.security.core.oauth.justauth.enums.CacheKeyStrategy;
 import top.dcenter.ums.security.core.oauth.properties.Auth2Properties;
 import top.dcenter.ums.security.core.oauth.properties.JustAuthProperties;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.springframework.web.context.request.RequestAttributes.SCOPE_REQUEST;
 
 /**
- * auth state redis cache, 适用单机与分布式
+ * auth state redis cache, 适用单机与分布式<br>
+ *     1. {@link #consume(String)} 通过 lua 脚本原子地获取并删除 state, 一次往返完成 state 校验, state 只能使用一次;
+ *     消费的结果缓存在当前请求中, 同一请求内再次获取时不再访问 redis.<br>
+ *     2. {@link JustAuthProperties#getStatePipelineWrites()} 为 true 时, 合并并发的 state 写入: 第一个写入的线程以 pipeline
+ *     批量写入队列中所有的 state, 其他线程等待写入完成; 没有并发时与逐个写入相同.
  * @author YongWu zheng
  * @version V1.0  Created by 2020/10/6 19:22
  */
 public class AuthStateRedisCache implements Auth2StateCache {
 
+    /**
+     * 每次 pipeline 最多写入的 state 数量
+     */
+    private static final int MAX_PIPELINE_SIZE = 256;
+
+    /**
+     * 获取并删除 state(兼容 redis 6.2 以下不支持 GETDEL 的版本)
+     */
+    private static final RedisScript<String> CONSUME_SCRIPT = new DefaultRedisScript<>(
+            "local v = redis.call('GET', KEYS[1]) " +
+            "if v then redis.call('DEL', KEYS[1]) end " +
+            "return v",
+            String.class);
+
     private final StringRedisTemplate stringRedisTemplate;
     private final Duration timeout;
     private final String cacheKeyPrefix;
+    private final boolean pipelineWrites;
+
+    /**
+     * 等待写入的 state
+     */
+    private final Queue<PendingState> pendingStates = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushing = new AtomicBoolean(false);
 
     public AuthStateRedisCache(Auth2Properties auth2Properties, Object stringRedisTemplate) {
         this.stringRedisTemplate = (StringRedisTemplate) stringRedisTemplate;
         final JustAuthProperties justAuth = auth2Properties.getJustAuth();
         this.timeout = justAuth.getTimeout();
         this.cacheKeyPrefix = justAuth.getCacheKeyPrefix();
+        this.pipelineWrites = Boolean.TRUE.equals(justAuth.getStatePipelineWrites());
     }
 
     @Override
     public void cache(String key, String value) {
-        stringRedisTemplate.opsForValue().set(parsingKey(key), value, this.timeout);
+        this.cache(key, value, this.timeout.toMillis());
     }
 
     @Override
     public void cache(String key, String value, long timeout) {
-        stringRedisTemplate.opsForValue().set(parsingKey(key), value, timeout, TimeUnit.MILLISECONDS);
+        if (!this.pipelineWrites) {
+            stringRedisTemplate.opsForValue().set(parsingKey(key), value, timeout, TimeUnit.MILLISECONDS);
+            return;
+        }
+        final PendingState pendingState = new PendingState(parsingKey(key), value, timeout);
+        this.pendingStates.offer(pendingState);
+        flushPendingStates();
+        // 等待本线程或其他线程写入完成, 写入失败时抛出异常
+        pendingState.future.join();
     }
 
     @Override
     public String get(String key) {
+        final String consumed = getConsumed(key);
+        if (consumed != null) {
+            return consumed;
+        }
         return stringRedisTemplate.opsForValue().get(parsingKey(key));
     }
 
     @Override
     public boolean containsKey(String key) {
-        return StringUtils.hasText(stringRedisTemplate.opsForValue().get(parsingKey(key)));
+        return StringUtils.hasText(get(key));
+    }
+
+    @Override
+    public String consume(String key) {
+        final String consumed = getConsumed(key);
+        if (consumed != null) {
+            return consumed;
+        }
+        final String value = stringRedisTemplate.execute(CONSUME_SCRIPT, Collections.singletonList(parsingKey(key)));
+        if (value != null) {
+            final RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+            if (requestAttributes != null) {
+                requestAttributes.setAttribute(CONSUMED_STATE_ATTRIBUTE_PREFIX + key, value, SCOPE_REQUEST);
+            }
+        }
+        return value;
     }
 
     @Override
@@ -78,4 +151,76 @@ public class AuthStateRedisCache implements Auth2StateCache {
     private String parsingKey(String key) {
         return this.cacheKeyPrefix + key;
     }
-}
\ No newline at end of file
+
+    /**
+     * 获取当前请求中已消费的 state
+     * @param key   state cache key
+     * @return  已消费的 state, 没有时返回 null
+     */
+    @Nullable
+    private String getConsumed(String key) {
+        final RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+        if (requestAttributes == null) {
+            return null;
+        }
+        return (String) requestAttributes.getAttribute(CONSUMED_STATE_ATTRIBUTE_PREFIX + key, SCOPE_REQUEST);
+    }
+
+    /**
+     * 以 pipeline 批量写入等待写入的 state, 同一时间只有一个线程写入; 写入线程释放后会再次检查队列, 不会遗漏后入队的 state.
+     */
+    private void flushPendingStates() {
+        while (!this.pendingStates.isEmpty() && this.flushing.compareAndSet(false, true)) {
+            final List<PendingState> batch = new ArrayList<>(Math.min(this.pendingStates.size(), MAX_PIPELINE_SIZE));
+            try {
+                PendingState pendingState;
+                while (batch.size() < MAX_PIPELINE_SIZE && (pendingState = this.pendingStates.poll()) != null) {
+                    batch.add(pendingState);
+                }
+                writeBatch(batch);
+            }
+            finally {
+                this.flushing.set(false);
+            }
+        }
+    }
+
+    private void writeBatch(@NonNull List<PendingState> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            final RedisSerializer<String> serializer = this.stringRedisTemplate.getStringSerializer();
+            this.stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                final RedisStringCommands commands = connection.stringCommands();
+                for (PendingState pendingState : batch) {
+                    commands.set(serializer.serialize(pendingState.key),
+                                 serializer.serialize(pendingState.value),
+                                 Expiration.milliseconds(pendingState.timeout),
+                                 RedisStringCommands.SetOption.upsert());
+                }
+                return null;
+            });
+            batch.forEach(pendingState -> pendingState.future.complete(null));
+        }
+        catch (RuntimeException e) {
+            batch.forEach(pendingState -> pendingState.future.completeExceptionally(e));
+        }
+    }
+
+    /**
+     * 等待写入的 state
+     */
+    private static final class PendingState {
+        private final String key;
+        private final String value;
+        private final long timeout;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private PendingState(String key, String value, long timeout) {
+            this.key = key;
+            this.value = value;
+            this.timeout = timeout;
+        }
+    }
+}
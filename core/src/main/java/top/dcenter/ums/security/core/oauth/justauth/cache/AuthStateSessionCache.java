@@ -34,6 +34,7 @@ import top.dcenter.ums.security.core.oauth.properties.JustAuthProperties;
 
 import java.time.Instant;
 
+import static org.springframework.web.context.request.RequestAttributes.SCOPE_REQUEST;
 import static org.springframework.web.context.request.RequestAttributes.SCOPE_SESSION;
 
 /**
@@ -44,6 +45,7 @@ import static org.springframework.web.context.request.RequestAttributes.SCOPE_SE
  *     3. 清除缓存时间点: 获取缓存时(<code>get(key)</code>)会判断是否过期, 过期则删除, 调用 <code>containsKey(key)</code> 时会走 <code>get(key)
  *     </code> 流程. <br>
  *     4. 相同 session 与 相同的第三方 {@link AuthDefaultSource} 的 <code>name()</code>, <code>cache(key, value)</code> 会覆盖上一次的 value; <br>
+ *     5. <code>consume(key)</code> 获取并删除缓存, state 只能使用一次. <br>
  *
  * @author YongWu zheng
  * @version V1.0  Created by 2020/10/6 15:59
@@ -106,6 +108,30 @@ public class AuthStateSessionCache implements Auth2StateCache {
         requestAttributes.removeAttribute(sessionKey, SCOPE_SESSION);
     }
 
+    /**
+     * 获取并移除缓存, 结果缓存在当前请求中, 同一请求内再次调用时返回已消费的值
+     * @param key   state cache key
+     * @return  缓存的 state, 不存在或已过期时返回 null
+     */
+    @Override
+    public String consume(String key) {
+        RequestAttributes requestAttributes = RequestContextHolder.currentRequestAttributes();
+        String consumedKey = CONSUMED_STATE_ATTRIBUTE_PREFIX + key;
+        String consumed = (String) requestAttributes.getAttribute(consumedKey, SCOPE_REQUEST);
+        if (consumed != null)
+        {
+            return consumed;
+        }
+
+        String result = this.get(key);
+        if (result != null)
+        {
+            this.remove(key);
+            requestAttributes.setAttribute(consumedKey, result, SCOPE_REQUEST);
+        }
+        return result;
+    }
+
     @Override
     public boolean containsKey(String key) {
         return StringUtils.hasText(this.get(key));
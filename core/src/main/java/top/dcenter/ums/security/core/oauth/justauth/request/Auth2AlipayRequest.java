@@ -41,6 +41,7 @@ import me.zhyd.oauth.utils.UuidUtils;
 import top.dcenter.ums.security.core.oauth.entity.AuthTokenPo;
 import top.dcenter.ums.security.core.oauth.justauth.Auth2RequestHolder;
 
+import static top.dcenter.ums.security.core.oauth.justauth.request.Auth2DefaultRequest.checkAndConsumeState;
 import static top.dcenter.ums.security.core.oauth.justauth.request.Auth2DefaultRequest.determineState;
 
 
@@ -93,8 +94,8 @@ public class Auth2AlipayRequest extends AuthAlipayRequest implements Auth2Defaul
         try {
             AuthChecker.checkCode(source, authCallback);
             if (!config.isIgnoreCheckState()) {
-                AuthChecker.checkState(determineState(authStateCache, authCallback.getState(), AuthDefaultSource.ALIPAY),
-                                       source, authStateCache);
+                checkAndConsumeState(determineState(authStateCache, authCallback.getState(), AuthDefaultSource.ALIPAY),
+                                     source, authStateCache);
             }
 
             AuthToken authToken = this.getAccessToken(authCallback);
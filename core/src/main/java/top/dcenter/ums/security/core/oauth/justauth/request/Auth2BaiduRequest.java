@@ -41,6 +41,7 @@ import me.zhyd.oauth.utils.UuidUtils;
 import top.dcenter.ums.security.core.oauth.entity.AuthTokenPo;
 import top.dcenter.ums.security.core.oauth.justauth.Auth2RequestHolder;
 
+import static top.dcenter.ums.security.core.oauth.justauth.request.Auth2DefaultRequest.checkAndConsumeState;
 import static top.dcenter.ums.security.core.oauth.justauth.request.Auth2DefaultRequest.determineState;
 
 /**
@@ -91,8 +92,8 @@ public class Auth2BaiduRequest extends AuthBaiduRequest implements Auth2DefaultR
         try {
             AuthChecker.checkCode(source, authCallback);
             if (!config.isIgnoreCheckState()) {
-                AuthChecker.checkState(determineState(authStateCache, authCallback.getState(), AuthDefaultSource.BAIDU),
-                                       source, authStateCache);
+                checkAndConsumeState(determineState(authStateCache, authCallback.getState(), AuthDefaultSource.BAIDU),
+                                     source, authStateCache);
             }
 
             AuthToken authToken = this.getAccessToken(authCallback);
@@ -27,6 +27,7 @@ import com.xkcoding.http.config.HttpConfig;
 import com.xkcoding.http.exception.SimpleHttpException;
 import me.zhyd.oauth.cache.AuthStateCache;
 import me.zhyd.oauth.config.AuthDefaultSource;
+import me.zhyd.oauth.config.AuthSource;
 import me.zhyd.oauth.enums.AuthResponseStatus;
 import me.zhyd.oauth.exception.AuthException;
 import me.zhyd.oauth.model.AuthCallback;
@@ -34,6 +35,7 @@ import me.zhyd.oauth.model.AuthResponse;
 import me.zhyd.oauth.model.AuthToken;
 import me.zhyd.oauth.model.AuthUser;
 import me.zhyd.oauth.request.AuthDefaultRequest;
+import me.zhyd.oauth.utils.AuthChecker;
 import me.zhyd.oauth.utils.StringUtils;
 import me.zhyd.oauth.utils.UuidUtils;
 import org.springframework.beans.BeanUtils;
@@ -60,10 +62,11 @@ import java.time.Instant;
  * 8. {@link #refreshToken(AuthTokenPo)},<br>
  * 9. {@link #determineState(AuthStateCache, String, AuthDefaultSource)},<br>
  * 10. {@link #removeStateCacheOfSessionCache(AuthStateCache, AuthDefaultSource)},<br>
- * 11. {@link #generateState()},<br>
- * 12. {@link #getAuthTokenPo(Integer, Long, AuthResponse)},<br>
- * 13. {@link #expireIn2Timestamp(Integer, Integer, AuthTokenPo)},<br>
- * 14. {@link #responseError(Exception)}<br>
+ * 11. {@link #checkAndConsumeState(String, AuthSource, AuthStateCache)},<br>
+ * 12. {@link #generateState()},<br>
+ * 13. {@link #getAuthTokenPo(Integer, Long, AuthResponse)},<br>
+ * 14. {@link #expireIn2Timestamp(Integer, Integer, AuthTokenPo)},<br>
+ * 15. {@link #responseError(Exception)}<br>
  * @author YongWu zheng
  * @version V1.0  Created by 2020/10/7 20:27
  */
@@ -170,6 +173,28 @@ public interface Auth2DefaultRequest {
         return state;
     }
 
+    /**
+     * 校验并消费 state, 替代 {@link AuthChecker#checkState(String, AuthSource, AuthStateCache)}:
+     * {@link Auth2StateCache} 通过 {@link Auth2StateCache#consume(String)} 一次往返完成校验与删除,
+     * 其他 {@link AuthStateCache} 仍调用 {@link AuthChecker#checkState(String, AuthSource, AuthStateCache)}.
+     * @param state             通过 {@link #determineState(AuthStateCache, String, AuthDefaultSource)} 获取的 state
+     * @param source            {@link AuthSource}
+     * @param authStateCache    {@link AuthStateCache}
+     * @throws AuthException    state 不存在或已过期
+     */
+    static void checkAndConsumeState(@Nullable String state, @NonNull AuthSource source,
+                                     @NonNull AuthStateCache authStateCache) throws AuthException {
+        if (!(authStateCache instanceof Auth2StateCache))
+        {
+            AuthChecker.checkState(state, source, authStateCache);
+            return;
+        }
+        if (StringUtils.isEmpty(state) || StringUtils.isEmpty(((Auth2StateCache) authStateCache).consume(state)))
+        {
+            throw new AuthException(AuthResponseStatus.ILLEGAL_STATUS, source);
+        }
+    }
+
     /**
      * 移除 session stateCache 缓存
      * @param authStateCache    {@link AuthStateCache}
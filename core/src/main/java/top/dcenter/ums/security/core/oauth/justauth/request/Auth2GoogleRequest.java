@@ -92,8 +92,8 @@ public class Auth2GoogleRequest extends AuthGoogleRequest implements Auth2Defaul
         try {
             AuthChecker.checkCode(source, authCallback);
             if (!config.isIgnoreCheckState()) {
-                AuthChecker.checkState(determineState(authStateCache, authCallback.getState(), AuthDefaultSource.GOOGLE),
-                                       source, authStateCache);
+                checkAndConsumeState(determineState(authStateCache, authCallback.getState(), AuthDefaultSource.GOOGLE),
+                                     source, authStateCache);
             }
 
             AuthToken authToken = this.getAccessToken(authCallback);
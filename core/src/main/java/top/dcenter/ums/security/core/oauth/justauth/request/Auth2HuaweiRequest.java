@@ -92,8 +92,8 @@ public class Auth2HuaweiRequest extends AuthHuaweiRequest implements Auth2Defaul
         try {
             AuthChecker.checkCode(source, authCallback);
             if (!config.isIgnoreCheckState()) {
-                AuthChecker.checkState(determineState(authStateCache, authCallback.getState(), AuthDefaultSource.HUAWEI),
-                                       source, authStateCache);
+                checkAndConsumeState(determineState(authStateCache, authCallback.getState(), AuthDefaultSource.HUAWEI),
+                                     source, authStateCache);
             }
 
             AuthToken authToken = this.getAccessToken(authCallback);
@@ -92,8 +92,8 @@ public class Auth2JdRequest extends AuthJdRequest implements Auth2DefaultRequest
         try {
             AuthChecker.checkCode(source, authCallback);
             if (!config.isIgnoreCheckState()) {
-                AuthChecker.checkState(determineState(authStateCache, authCallback.getState(), AuthDefaultSource.JD),
-                                       source, authStateCache);
+                checkAndConsumeState(determineState(authStateCache, authCallback.getState(), AuthDefaultSource.JD),
+                                     source, authStateCache);
             }
 
             AuthToken authToken = this.getAccessToken(authCallback);
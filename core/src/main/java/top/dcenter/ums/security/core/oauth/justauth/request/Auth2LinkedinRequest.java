@@ -92,8 +92,8 @@ public class Auth2LinkedinRequest extends AuthLinkedinRequest implements Auth2De
         try {
             AuthChecker.checkCode(source, authCallback);
             if (!config.isIgnoreCheckState()) {
-                AuthChecker.checkState(determineState(authStateCache, authCallback.getState(), AuthDefaultSource.LINKEDIN),
-                                       source, authStateCache);
+                checkAndConsumeState(determineState(authStateCache, authCallback.getState(), AuthDefaultSource.LINKEDIN),
+                                     source, authStateCache);
             }
 
             AuthToken authToken = this.getAccessToken(authCallback);
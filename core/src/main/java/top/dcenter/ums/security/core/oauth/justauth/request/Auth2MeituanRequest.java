@@ -92,8 +92,8 @@ public class Auth2MeituanRequest extends AuthMeituanRequest implements Auth2Defa
         try {
             AuthChecker.checkCode(source, authCallback);
             if (!config.isIgnoreCheckState()) {
-                AuthChecker.checkState(determineState(authStateCache, authCallback.getState(), AuthDefaultSource.MEITUAN),
-                                       source, authStateCache);
+                checkAndConsumeState(determineState(authStateCache, authCallback.getState(), AuthDefaultSource.MEITUAN),
+                                     source, authStateCache);
             }
 
             AuthToken authToken = this.getAccessToken(authCallback);
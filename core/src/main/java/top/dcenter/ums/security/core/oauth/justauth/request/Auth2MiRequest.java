@@ -92,8 +92,8 @@ public class Auth2MiRequest extends AuthMiRequest implements Auth2DefaultRequest
         try {
             AuthChecker.checkCode(source, authCallback);
             if (!config.isIgnoreCheckState()) {
-                AuthChecker.checkState(determineState(authStateCache, authCallback.getState(), AuthDefaultSource.MI),
-                                       source, authStateCache);
+                checkAndConsumeState(determineState(authStateCache, authCallback.getState(), AuthDefaultSource.MI),
+                                     source, authStateCache);
             }
 
             AuthToken authToken = this.getAccessToken(authCallback);
@@ -92,8 +92,8 @@ public class Auth2MicrosoftRequest extends AuthMicrosoftRequest implements Auth2
         try {
             AuthChecker.checkCode(source, authCallback);
             if (!config.isIgnoreCheckState()) {
-                AuthChecker.checkState(determineState(authStateCache, authCallback.getState(), AuthDefaultSource.MICROSOFT),
-                                       source, authStateCache);
+                checkAndConsumeState(determineState(authStateCache, authCallback.getState(), AuthDefaultSource.MICROSOFT),
+                                     source, authStateCache);
             }
 
             AuthToken authToken = this.getAccessToken(authCallback);
@@ -92,8 +92,8 @@ public class Auth2OschinaRequest extends AuthOschinaRequest implements Auth2Defa
         try {
             AuthChecker.checkCode(source, authCallback);
             if (!config.isIgnoreCheckState()) {
-                AuthChecker.checkState(determineState(authStateCache, authCallback.getState(), AuthDefaultSource.OSCHINA),
-                                       source, authStateCache);
+                checkAndConsumeState(determineState(authStateCache, authCallback.getState(), AuthDefaultSource.OSCHINA),
+                                     source, authStateCache);
             }
 
             AuthToken authToken = this.getAccessToken(authCallback);
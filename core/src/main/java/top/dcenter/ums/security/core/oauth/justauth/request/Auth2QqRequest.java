@@ -92,8 +92,8 @@ public class Auth2QqRequest extends AuthQqRequest implements Auth2DefaultRequest
         try {
             AuthChecker.checkCode(source, authCallback);
             if (!config.isIgnoreCheckState()) {
-                AuthChecker.checkState(determineState(authStateCache, authCallback.getState(), AuthDefaultSource.QQ),
-                                       source, authStateCache);
+                checkAndConsumeState(determineState(authStateCache, authCallback.getState(), AuthDefaultSource.QQ),
+                                     source, authStateCache);
             }
 
             AuthToken authToken = this.getAccessToken(authCallback);
@@ -92,8 +92,8 @@ public class Auth2StackOverflowRequest extends AuthStackOverflowRequest implemen
         try {
             AuthChecker.checkCode(source, authCallback);
             if (!config.isIgnoreCheckState()) {
-                AuthChecker.checkState(determineState(authStateCache, authCallback.getState(), AuthDefaultSource.STACK_OVERFLOW),
-                                       source, authStateCache);
+                checkAndConsumeState(determineState(authStateCache, authCallback.getState(), AuthDefaultSource.STACK_OVERFLOW),
+                                     source, authStateCache);
             }
 
             AuthToken authToken = this.getAccessToken(authCallback);
@@ -92,8 +92,8 @@ public class Auth2TeambitionRequest extends AuthTeambitionRequest implements Aut
         try {
             AuthChecker.checkCode(source, authCallback);
             if (!config.isIgnoreCheckState()) {
-                AuthChecker.checkState(determineState(authStateCache, authCallback.getState(), AuthDefaultSource.TEAMBITION),
-                                       source, authStateCache);
+                checkAndConsumeState(determineState(authStateCache, authCallback.getState(), AuthDefaultSource.TEAMBITION),
+                                     source, authStateCache);
             }
 
             AuthToken authToken = this.getAccessToken(authCallback);
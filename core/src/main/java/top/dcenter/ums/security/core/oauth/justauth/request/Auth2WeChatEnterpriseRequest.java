@@ -92,8 +92,8 @@ public class Auth2WeChatEnterpriseRequest extends AuthWeChatEnterpriseRequest im
         try {
             AuthChecker.checkCode(source, authCallback);
             if (!config.isIgnoreCheckState()) {
-                AuthChecker.checkState(determineState(authStateCache, authCallback.getState(), AuthDefaultSource.WECHAT_ENTERPRISE),
-                                       source, authStateCache);
+                checkAndConsumeState(determineState(authStateCache, authCallback.getState(), AuthDefaultSource.WECHAT_ENTERPRISE),
+                                     source, authStateCache);
             }
 
             AuthToken authToken = this.getAccessToken(authCallback);
@@ -92,8 +92,8 @@ public class Auth2WeChatMpRequest extends AuthWeChatMpRequest implements Auth2De
         try {
             AuthChecker.checkCode(source, authCallback);
             if (!config.isIgnoreCheckState()) {
-                AuthChecker.checkState(determineState(authStateCache, authCallback.getState(), AuthDefaultSource.WECHAT_MP),
-                                       source, authStateCache);
+                checkAndConsumeState(determineState(authStateCache, authCallback.getState(), AuthDefaultSource.WECHAT_MP),
+                                     source, authStateCache);
             }
 
             AuthToken authToken = this.getAccessToken(authCallback);
@@ -92,8 +92,8 @@ public class Auth2WeiboRequest extends AuthWeiboRequest implements Auth2DefaultR
         try {
             AuthChecker.checkCode(source, authCallback);
             if (!config.isIgnoreCheckState()) {
-                AuthChecker.checkState(determineState(authStateCache, authCallback.getState(), AuthDefaultSource.WEIBO),
-                                       source, authStateCache);
+                checkAndConsumeState(determineState(authStateCache, authCallback.getState(), AuthDefaultSource.WEIBO),
+                                     source, authStateCache);
             }
 
             AuthToken authToken = this.getAccessToken(authCallback);
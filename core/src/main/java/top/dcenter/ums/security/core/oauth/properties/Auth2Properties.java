@@ -29,6 +29,7 @@ import lombok.Setter;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.NestedConfigurationProperty;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.lang.NonNull;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.web.authentication.AuthenticationSuccessHandler;
 import top.dcenter.ums.security.core.oauth.filter.login.Auth2LoginAuthenticationFilter;
@@ -37,6 +38,8 @@ import top.dcenter.ums.security.core.oauth.userdetails.TemporaryUser;
 import java.net.InetSocketAddress;
 import java.net.Proxy;
 import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * @author YongWu zheng
@@ -283,6 +286,76 @@ public class Auth2Properties {
     @Setter
     private Integer remainingExpireIn = 24;
 
+    /**
+     * 定时刷新 accessToken 任务时, 每个节点并发领取批次的工作线程数, 默认: 1.<br>
+     * 大于 1 时每次任务创建独立的工作线程池, 任务结束时关闭
+     */
+    @Setter
+    private Integer refreshTokenWorkers = 1;
+
+    /**
+     * 定时刷新 accessToken 任务时, 等待单个 token 刷新结果(包括排队, 限流与重试)的最长时间, 超时按刷新失败处理, 默认: 5 分钟
+     */
+    @Setter
+    private Duration refreshTokenResultTimeout = Duration.ofMinutes(5);
+
+    /**
+     * 定时刷新 accessToken 任务时, 分布式批次的租约时长, 默认: 10 分钟.<br>
+     * 节点处理批次期间每隔租约时长的 1/3 续期一次租约; 节点宕机后超过此时长未续期, 此批次可被其他节点重新领取.
+     */
+    @Setter
+    private Duration refreshTokenChunkLeaseTimeout = Duration.ofMinutes(10);
+
+    /**
+     * 定时刷新 accessToken 任务时, 第三方服务商的默认限流属性, 未在 {@link #refreshTokenProviderLimits} 中配置的第三方使用此属性.
+     */
+    private final RefreshTokenLimitProperties refreshTokenDefaultLimit = new RefreshTokenLimitProperties();
+
+    /**
+     * 定时刷新 accessToken 任务时, 各个第三方服务商的限流属性: Map(providerId, RefreshTokenLimitProperties),
+     * 需要根据第三方服务商的 API 配额进行配置, 例如: ums.oauth.refresh-token-provider-limits.wechat_open.permits-per-second=5
+     */
+    private final Map<String, RefreshTokenLimitProperties> refreshTokenProviderLimits = new HashMap<>();
+
+    /**
+     * 定时刷新 accessToken 任务时, 批量更新 auth_token 与 user_connection 表的记录数, 默认: 100.<br>
+     * 每个批次通过 JDBC 批处理在一个事务中提交
+     */
+    @Setter
+    private Integer refreshTokenWriteBatchSize = 100;
+
+    /**
+     * 第三方授权登录成功后, 是否跳过未变化的第三方用户信息与 token 的更新, 并合并同一第三方用户在
+     * {@link #connectionUpdateCoalesceWindow} 内的多次更新, 默认: false.<br>
+     * 第三方用户信息与 token 的指纹(不含相对有效期 expireIn)未变化且 token 未过期时不更新 user_connection 与 auth_token 表.
+     */
+    @Setter
+    private Boolean enableConnectionUpdateCoalescing = false;
+
+    /**
+     * 第三方授权登录成功后, 同一第三方用户的多次更新合并为一次更新的时间窗口, 默认: 30 秒. 为 0 时只跳过未变化的更新, 不合并.<br>
+     * 注意: {@link #enableConnectionUpdateCoalescing} 为 true 时有效
+     */
+    @Setter
+    private Duration connectionUpdateCoalesceWindow = Duration.ofSeconds(30);
+
+    /**
+     * 第三方授权登录成功后, 用于变化检测的本地指纹缓存的最大数量, 默认: 10000.<br>
+     * 注意: {@link #enableConnectionUpdateCoalescing} 为 true 时有效
+     */
+    @Setter
+    private Integer connectionUpdateFingerprintCacheSize = 10000;
+
+    /**
+     * 获取第三方服务商的 refresh token 限流属性
+     * @param providerId    第三方服务商 id
+     * @return  第三方服务商的限流属性, 没有配置时返回 {@link #refreshTokenDefaultLimit}
+     */
+    @NonNull
+    public RefreshTokenLimitProperties getRefreshTokenLimit(@NonNull String providerId) {
+        return refreshTokenProviderLimits.getOrDefault(providerId, refreshTokenDefaultLimit);
+    }
+
     // =================== justAuth 属性 ===================
 
     @NestedConfigurationProperty
@@ -298,6 +371,41 @@ public class Auth2Properties {
     private final HttpConfigProperties proxy = new HttpConfigProperties();
     
 
+    @Getter
+    @Setter
+    public static class RefreshTokenLimitProperties {
+
+        /**
+         * 等待刷新的 token 队列容量, 队列满时提交 token 的线程阻塞等待, 默认: 1000
+         */
+        private Integer queueCapacity = 1000;
+        /**
+         * 同时向第三方服务商刷新 token 的最大并发数, 默认: 2.<br>
+         * 注意: 所有第三方的最大并发数之和不应超过 refreshTokenTaskExecutor 的线程数与队列容量之和
+         */
+        private Integer maxConcurrency = 2;
+        /**
+         * 令牌桶每秒生成的令牌数, 即每秒最多向第三方服务商发起的 refresh token 请求数, 小于等于 0 时不限流, 默认: 10
+         */
+        private Double permitsPerSecond = 10.0D;
+        /**
+         * 令牌桶容量, 即允许的突发请求数, 默认: 10
+         */
+        private Integer burst = 10;
+        /**
+         * 刷新失败(不包括第三方不支持 refresh token)后的最大重试次数, 默认: 2
+         */
+        private Integer maxRetries = 2;
+        /**
+         * 重试的基础退避时间, 每次重试翻倍并加入随机抖动, 默认: 500 毫秒
+         */
+        private Duration retryBaseDelay = Duration.ofMillis(500);
+        /**
+         * 重试的最大退避时间, 默认: 10 秒
+         */
+        private Duration retryMaxDelay = Duration.ofSeconds(10);
+    }
+
     @Getter
     @Setter
     public static class HttpConfigProperties {
@@ -78,6 +78,12 @@ public class JustAuthProperties {
      */
     private String cacheKeyPrefix = "JUST_AUTH:";
 
+    /**
+     * state 缓存类型为 redis 时, 是否合并并发的 state 写入, 以 pipeline 的方式批量写入 redis, 默认: false.<br>
+     *     适用于大量并发的授权跳转(如压测), 没有并发时与逐个写入相同, 不会增加等待时间.
+     */
+    private Boolean statePipelineWrites = false;
+
     /**
      * 支持自定义授权平台的 scope 内容
      *
@@ -78,6 +78,78 @@ public class RedisCacheProperties {
          * Names of the default caches to consider for caching operations defined in the annotated class.
          */
         private Set<String> cacheNames = new HashSet<>();
+        /**
+         * 缓存加载租约的过期时间, 默认: 0, 不使用加载租约. <br>
+         * 缓存未命中时, 同一 JVM 中同一个 key 的并发加载总是共享同一个加载结果; 设置此值(大于 0)后, 集群中只有获取到租约(SETNX)的节点从数据源
+         * 加载同一个 key, 其他节点等待缓存值, 租约释放或过期后仍未缓存时自己加载. 此值应大于从数据源加载一次的耗时.
+         */
+        private Duration loadLeaseTtl = Duration.ZERO;
+        /**
+         * 清除缓存(如: @CacheEvict(allEntries = true))的配置
+         */
+        private final Clean clean = new Clean();
+        /**
+         * 是否合并标注了 {@code @BatchCacheOperations} 的方法中的缓存操作(如多个 @CacheEvict 与 @CachePut), 方法返回后(有活动的事务时
+         * 在事务完成后)通过一个 redis 管道执行, 默认: true
+         */
+        private Boolean batchOperations = true;
+        /**
+         * 进程内一级缓存(L1)的配置
+         */
+        private final Near near = new Near();
+
+    }
+
+    @Getter
+    @Setter
+    public static class Clean {
+
+        /**
+         * 清除缓存时 SCAN 命令的 COUNT, 默认: 1000
+         */
+        private Integer scanCount = 1000;
+        /**
+         * 清除缓存时每次管道批量删除的 key 数量, 默认: 500
+         */
+        private Integer batchSize = 500;
+        /**
+         * 是否使用 UNLINK 删除 key(需要 redis 4.0+), false 时使用 DEL, 默认: true
+         */
+        private Boolean useUnlink = true;
+        /**
+         * 是否在后台线程异步清除缓存, 默认: false
+         */
+        private Boolean async = false;
+        /**
+         * 缓存版本号(generation)的刷新间隔, 默认: 0, 不使用版本号. <br>
+         * 大于 0 时缓存 key 中带有版本号, 清除缓存只需把版本号加 1(O(1)), 旧版本的缓存由 SCAN 清除回收或自然过期.
+         * 其他节点在刷新间隔内仍可能读到旧版本的缓存.
+         */
+        private Duration generationRefreshInterval = Duration.ZERO;
+
+    }
+
+    @Getter
+    @Setter
+    public static class Near {
+
+        /**
+         * 是否在 redis 缓存前添加进程内一级缓存(L1), 默认: false
+         */
+        private Boolean enabled = false;
+        /**
+         * 每个缓存的一级缓存最多缓存的 redis key 数量, 默认: 10000
+         */
+        private Integer maximumSize = 10000;
+        /**
+         * 一级缓存的过期时间, 默认: 30 秒. <br>
+         * 必须小于 redis 缓存 TTL 的 80%(redis 缓存 TTL 有 20% 的随机浮动), 否则使用 redis 缓存 TTL 的 50%.
+         */
+        private Duration ttl = Duration.ofSeconds(30);
+        /**
+         * 一级缓存失效消息的 redis 频道, 写入或清除缓存时通知集群中的其他节点清除对应的一级缓存, 默认: ums:cache:near:invalidation
+         */
+        private String invalidationChannel = "ums:cache:near:invalidation";
 
     }
 
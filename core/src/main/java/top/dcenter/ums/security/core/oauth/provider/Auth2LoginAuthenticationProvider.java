@@ -19,6 +19,7 @@ package top.dcenter.ums.security.core.oauth.provider;
 import lombok.extern.slf4j.Slf4j;
 import me.zhyd.oauth.model.AuthUser;
 import org.springframework.context.support.MessageSourceAccessor;
+import org.springframework.lang.Nullable;
 import org.springframework.security.authentication.AccountExpiredException;
 import org.springframework.security.authentication.AnonymousAuthenticationToken;
 import org.springframework.security.authentication.AuthenticationProvider;
@@ -42,6 +43,7 @@ import top.dcenter.ums.security.core.oauth.justauth.request.Auth2DefaultRequest;
 import top.dcenter.ums.security.core.oauth.repository.UsersConnectionRepository;
 import top.dcenter.ums.security.core.oauth.service.Auth2UserService;
 import top.dcenter.ums.security.core.oauth.signup.ConnectionService;
+import top.dcenter.ums.security.core.oauth.signup.ConnectionUpdateCoalescer;
 import top.dcenter.ums.security.core.oauth.token.Auth2AuthenticationToken;
 import top.dcenter.ums.security.core.oauth.token.Auth2LoginAuthenticationToken;
 import top.dcenter.ums.security.core.oauth.userdetails.TemporaryUser;
@@ -96,6 +98,10 @@ public class Auth2LoginAuthenticationProvider implements AuthenticationProvider
 
 	protected MessageSourceAccessor messages = SpringSecurityMessageSource.getAccessor();
 	private UserCache userCache = new NullUserCache();
+	/**
+	 * 不为 null 时, 跳过未变化的第三方授权用户信息更新并合并窗口内的多次更新
+	 */
+	private ConnectionUpdateCoalescer connectionUpdateCoalescer;
 	private UserDetailsChecker preAuthenticationChecks = new DefaultPreAuthenticationChecks();
 	private UserDetailsChecker postAuthenticationChecks = new DefaultPostAuthenticationChecks();
 
@@ -303,6 +309,16 @@ public class Auth2LoginAuthenticationProvider implements AuthenticationProvider
 	 * @param connectionData    {@link ConnectionData}
 	 */
 	private void asyncUpdateUserConnectionAndToken(AuthUser authUser, ConnectionData connectionData) {
+		if (this.connectionUpdateCoalescer != null) {
+			try {
+				// 未变化时跳过更新, 合并窗口内的多次更新, 更新由 updateConnectionTaskExecutor 异步执行
+				this.connectionUpdateCoalescer.submit(authUser, connectionData);
+				return;
+			}
+			catch (Exception e) {
+				log.error(String.format("合并更新第三方授权登录用户信息与 token 信息失败: %s, 直接更新", e.getMessage()), e);
+			}
+		}
 		try {
 			// 异步更新第三方授权登录用户信息与 token 信息, 拒绝策略为: CALLER_RUNS
 			updateConnectionTaskExecutor.execute(
@@ -360,6 +376,10 @@ public class Auth2LoginAuthenticationProvider implements AuthenticationProvider
 		this.userCache = userCache;
 	}
 
+	public void setConnectionUpdateCoalescer(@Nullable ConnectionUpdateCoalescer connectionUpdateCoalescer) {
+		this.connectionUpdateCoalescer = connectionUpdateCoalescer;
+	}
+
 	protected UserDetailsChecker getPreAuthenticationChecks() {
 		return preAuthenticationChecks;
 	}
@@ -24,6 +24,7 @@ import top.dcenter.ums.security.core.oauth.entity.AuthTokenPo;
 import top.dcenter.ums.security.core.oauth.entity.ConnectionData;
 import top.dcenter.ums.security.core.oauth.entity.ConnectionKey;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 
@@ -187,6 +188,22 @@ public interface UsersConnectionRepository {
 	 */
 	ConnectionData updateConnectionByTokenId(AuthTokenPo token);
 
+	/**
+	 * 根据 {@code AuthTokenPo#getId()} 批量更新 {@link ConnectionData} 的 accessToken, refreshToken 与 expireTime.<br>
+	 *     默认实现逐条调用 {@link #updateConnectionByTokenId(AuthTokenPo)}, 实现类应覆盖此方法通过一次查询与 JDBC 批处理完成.
+	 *     注意: 与 {@link #updateConnectionByTokenId(AuthTokenPo)} 一样, 这接口目的用于 refreshToken 的定时任务.
+	 * @param tokens    {@link AuthTokenPo} 列表
+	 * @return          更新过的 {@link ConnectionData} 列表, 不存在的 tokenId 不返回
+	 */
+	default List<ConnectionData> updateConnectionsByTokenIds(List<AuthTokenPo> tokens) {
+		final List<ConnectionData> result = new ArrayList<>(tokens.size());
+		for (AuthTokenPo token : tokens)
+		{
+			result.add(updateConnectionByTokenId(token));
+		}
+		return result;
+	}
+
 	/**
 	 * 根据 tokenId 查找 {@link ConnectionData}<br>
 	 * 注意: 这里不做 spring cache 缓存处理, 这个接口主要用于 refreshToken 的定时任务, 只调用一次, 缓存无意义
@@ -27,7 +27,9 @@ import org.springframework.lang.NonNull;
 import top.dcenter.ums.security.core.oauth.entity.AuthTokenPo;
 import top.dcenter.ums.security.core.oauth.enums.EnableRefresh;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
 
 /**
  * A data access interface for managing a global store of users connections token to service providers.
@@ -62,6 +64,38 @@ public interface UsersConnectionTokenRepository {
 	 */
 	AuthTokenPo updateAuthToken(AuthTokenPo authToken) throws Exception;
 
+	/**
+	 * 批量持久化 authToken, 并把返回的 authToken id 保存在各个 authToken 中. 默认实现逐条调用 {@link #saveAuthToken(AuthTokenPo)},
+	 * 实现类应覆盖此方法通过 JDBC 批处理一次提交.
+	 * @param authTokens    authToken 列表
+	 * @return  保存了 id 的 authToken 列表
+	 * @throws Exception    持久化 authToken 异常
+	 */
+	default List<AuthTokenPo> saveAuthTokens(@NonNull List<AuthTokenPo> authTokens) throws Exception {
+		final List<AuthTokenPo> result = new ArrayList<>(authTokens.size());
+		for (AuthTokenPo authToken : authTokens)
+		{
+			result.add(saveAuthToken(authToken));
+		}
+		return result;
+	}
+
+	/**
+	 * 批量更新 {@link AuthTokenPo}. 默认实现逐条调用 {@link #updateAuthToken(AuthTokenPo)},
+	 * 实现类应覆盖此方法通过 JDBC 批处理一次提交.
+	 * @param authTokens    {@link AuthTokenPo} 列表
+	 * @return  更新过的 {@link AuthTokenPo} 列表
+	 * @throws Exception    数据更新异常
+	 */
+	default List<AuthTokenPo> updateAuthTokens(@NonNull List<AuthTokenPo> authTokens) throws Exception {
+		final List<AuthTokenPo> result = new ArrayList<>(authTokens.size());
+		for (AuthTokenPo authToken : authTokens)
+		{
+			result.add(updateAuthToken(authToken));
+		}
+		return result;
+	}
+
 	/**
 	 * 删除 id = tokenId 的记录
 	 * @param tokenId   tokenId
@@ -88,6 +122,26 @@ public interface UsersConnectionTokenRepository {
 	List<AuthTokenPo> findAuthTokenByExpireTimeAndBetweenId(@NonNull Long expiredTime, @NonNull Long startId,
 	                                                        @NonNull Long endId) throws Exception;
 
+	/**
+	 * 键集分页(keyset pagination)获取 id 大于 afterId 且过期时间小于等于 expiredTime 且 enableRefresh=1 的 token id, 按 id 升序.<br>
+	 *     用于定时 refreshToken 任务划分批次, 只划分确实需要刷新的记录. 默认实现通过
+	 *     {@link #findAuthTokenByExpireTimeAndBetweenId(Long, Long, Long)} 查询, 实现类应覆盖此方法只查询 id.
+	 * @param expiredTime   过期时间
+	 * @param afterId       上一页的最后一个 id, 不包含, 第一页为 0
+	 * @param limit         每页的记录数
+	 * @return  符合条件的 token id 列表, 按 id 升序
+	 * @throws Exception   查询错误
+	 */
+	default List<Long> findRefreshTokenIdsByExpireTime(@NonNull Long expiredTime, @NonNull Long afterId,
+	                                                   int limit) throws Exception {
+		return findAuthTokenByExpireTimeAndBetweenId(expiredTime, afterId + 1L, Long.MAX_VALUE)
+				.stream()
+				.map(AuthTokenPo::getId)
+				.sorted()
+				.limit(limit)
+				.collect(Collectors.toList());
+	}
+
 	/**
 	 * 根据 tokenId 更新 auth_token 表中的 enableRefresh 字段
 	 * @param enableRefresh {@link EnableRefresh}
@@ -24,6 +24,10 @@
 package top.dcenter.ums.security.core.oauth.repository.jdbc;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.CacheConfig;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.CachePut;
@@ -51,12 +55,14 @@ import top.dcenter.ums.security.core.oauth.repository.UsersConnectionRepository;
 import top.dcenter.ums.security.core.oauth.repository.exception.DuplicateConnectionException;
 import top.dcenter.ums.security.core.oauth.repository.exception.NoSuchConnectionException;
 import top.dcenter.ums.security.core.oauth.repository.exception.NotConnectedException;
+import top.dcenter.ums.security.core.oauth.repository.jdbc.cache.BatchCacheOperations;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -99,6 +105,14 @@ public class Auth2JdbcUsersConnectionRepository implements UsersConnectionReposi
 
     private final RepositoryProperties repositoryProperties;
 
+    /**
+     * 批量方法中按 spring cache 注解的语义更新缓存, 没有 auth2RedisHashCacheManager 时为 null
+     */
+    @SuppressWarnings("SpringJavaAutowiredFieldsWarningInspection")
+    @Autowired(required = false)
+    @Qualifier("auth2RedisHashCacheManager")
+    private CacheManager cacheManager;
+
     public Auth2JdbcUsersConnectionRepository(JdbcTemplate auth2UserConnectionJdbcTemplate,
                                               TextEncryptor textEncryptor,
                                               RepositoryProperties repositoryProperties) {
@@ -290,6 +304,7 @@ public class Auth2JdbcUsersConnectionRepository implements UsersConnectionReposi
             }
     )
     @Override
+    @BatchCacheOperations
     @Transactional(rollbackFor = {Exception.class}, propagation = Propagation.REQUIRED)
     public ConnectionData addConnection(ConnectionData connection) {
         addConnectionData(connection);
@@ -343,6 +358,7 @@ public class Auth2JdbcUsersConnectionRepository implements UsersConnectionReposi
             }
     )
     @Override
+    @BatchCacheOperations
     @Transactional(rollbackFor = {Exception.class}, propagation = Propagation.REQUIRED)
     public ConnectionData updateConnection(ConnectionData connection) {
         jdbcTemplate.update(repositoryProperties.getUpdateConnectionSql(),
@@ -373,6 +389,7 @@ public class Auth2JdbcUsersConnectionRepository implements UsersConnectionReposi
             }
     )
     @Override
+    @BatchCacheOperations
     @Transactional(rollbackFor = {Exception.class}, propagation = Propagation.REQUIRED)
     public ConnectionData updateConnectionByTokenId(AuthTokenPo token) {
         ConnectionData connection = findConnectionByTokenId(token.getId());
@@ -384,6 +401,85 @@ public class Auth2JdbcUsersConnectionRepository implements UsersConnectionReposi
     }
 
 
+    @Override
+    @BatchCacheOperations
+    @Transactional(rollbackFor = {Exception.class}, propagation = Propagation.REQUIRED)
+    public List<ConnectionData> updateConnectionsByTokenIds(List<AuthTokenPo> tokens) {
+        if (CollectionUtils.isEmpty(tokens))
+        {
+            return Collections.emptyList();
+        }
+        // 一次查询所有 tokenId 对应的 ConnectionData
+        final Map<Long, AuthTokenPo> tokenMap = new HashMap<>(tokens.size() * 4 / 3 + 1);
+        for (AuthTokenPo token : tokens)
+        {
+            tokenMap.put(token.getId(), token);
+        }
+        final MapSqlParameterSource parameters = new MapSqlParameterSource("tokenIds", tokenMap.keySet());
+        final List<ConnectionData> connections =
+                new NamedParameterJdbcTemplate(jdbcTemplate).query(String.format("%s where %s in (:tokenIds)",
+                                                                                 repositoryProperties.getSelectFromUserConnectionSql(),
+                                                                                 repositoryProperties.getTokenIdColumnName()),
+                                                                   parameters, connectionDataMapper);
+
+        final List<Object[]> batchArgs = new ArrayList<>(connections.size());
+        for (ConnectionData connection : connections)
+        {
+            final AuthTokenPo token = tokenMap.get(connection.getTokenId());
+            connection.setAccessToken(token.getAccessToken());
+            connection.setRefreshToken(token.getRefreshToken());
+            connection.setExpireTime(token.getExpireTime());
+            batchArgs.add(new Object[]{connection.getDisplayName(), connection.getProfileUrl(),
+                                       connection.getImageUrl(), encrypt(connection.getAccessToken()),
+                                       connection.getTokenId(), encrypt(connection.getRefreshToken()),
+                                       connection.getExpireTime(), connection.getUserId(), connection.getProviderId(),
+                                       connection.getProviderUserId()});
+        }
+        // JDBC 批处理更新
+        jdbcTemplate.batchUpdate(repositoryProperties.getUpdateConnectionSql(), batchArgs);
+        updateConnectionsInCache(connections);
+        return connections;
+    }
+
+    /**
+     * 与 {@link #updateConnectionByTokenId(AuthTokenPo)} 的 spring cache 注解一样更新缓存, 同一批次中相同的缓存清除只执行一次,
+     * 没有缓存时忽略.
+     * @param connections   更新过的 {@link ConnectionData} 列表
+     */
+    private void updateConnectionsInCache(@NonNull List<ConnectionData> connections) {
+        if (this.cacheManager == null)
+        {
+            return;
+        }
+        final Cache allClearCache =
+                this.cacheManager.getCache(RedisCacheAutoConfiguration.USER_CONNECTION_HASH_ALL_CLEAR_CACHE_NAME);
+        final Cache hashCache = this.cacheManager.getCache(USER_CONNECTION_HASH_CACHE_NAME);
+        final Set<String> allClearKeys = new HashSet<>();
+        for (ConnectionData connection : connections)
+        {
+            if (allClearCache != null)
+            {
+                if (allClearKeys.add("hm:" + connection.getUserId()))
+                {
+                    allClearCache.evict("hm:" + connection.getUserId());
+                }
+                if (allClearKeys.add("hm:" + connection.getProviderId()))
+                {
+                    allClearCache.evict("hm:" + connection.getProviderId());
+                }
+            }
+            if (hashCache != null)
+            {
+                hashCache.evict("hs:" + connection.getUserId() + "__" + connection.getProviderId());
+                hashCache.evict("hs:" + connection.getProviderId() + "__" + connection.getProviderUserId());
+                // 假定一个本地用户只能绑定一个同一第三方账号
+                hashCache.put("h:" + connection.getUserId() + "__" + connection.getProviderId(), connection);
+                hashCache.put("h:" + connection.getUserId() + ":" + connection.getProviderId() + "__"
+                                      + connection.getProviderUserId(), connection);
+            }
+        }
+    }
+
     @Override
     public ConnectionData findConnectionByTokenId(Long tokenId) {
         return jdbcTemplate.queryForObject(String.format("%s where %s = ?",
@@ -408,6 +504,7 @@ public class Auth2JdbcUsersConnectionRepository implements UsersConnectionReposi
             }
     )
     @Override
+    @BatchCacheOperations
     @Transactional(rollbackFor = {Exception.class}, propagation = Propagation.REQUIRED)
     public void removeConnections(String userId, String providerId) {
         jdbcTemplate.update(repositoryProperties.getRemoveConnectionsSql(),
@@ -435,6 +532,7 @@ public class Auth2JdbcUsersConnectionRepository implements UsersConnectionReposi
             }
     )
     @Override
+    @BatchCacheOperations
     @Transactional(rollbackFor = {Exception.class}, propagation = Propagation.REQUIRED)
     public void removeConnection(String userId, ConnectionKey connectionKey) {
         jdbcTemplate.update(repositoryProperties.getRemoveConnectionSql(),
@@ -23,14 +23,23 @@
 
 package top.dcenter.ums.security.core.oauth.repository.jdbc;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.CacheConfig;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.CachePut;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataRetrievalFailureException;
 import org.springframework.dao.IncorrectResultSizeDataAccessException;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.lang.NonNull;
 import org.springframework.security.crypto.encrypt.TextEncryptor;
 import org.springframework.transaction.annotation.Propagation;
@@ -39,26 +48,72 @@ import top.dcenter.ums.security.core.oauth.config.RedisCacheAutoConfiguration;
 import top.dcenter.ums.security.core.oauth.enums.EnableRefresh;
 import top.dcenter.ums.security.core.oauth.repository.UsersConnectionTokenRepository;
 import top.dcenter.ums.security.core.oauth.entity.AuthTokenPo;
+import top.dcenter.ums.security.core.oauth.repository.jdbc.cache.BatchCacheOperations;
 
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static top.dcenter.ums.security.core.oauth.enums.EnableRefresh.NO;
 import static top.dcenter.ums.security.core.oauth.enums.EnableRefresh.YES;
 
 /**
- * AuthToken 持久化服务
+ * AuthToken 持久化服务. {@link #saveAuthTokens(List)} 与 {@link #updateAuthTokens(List)} 通过 JDBC 批处理一次提交,
+ * MySQL 需要在连接 url 中设置 rewriteBatchedStatements=true 才会合并为多行语句.
  * @author YongWu zheng
  * @version V2.0  Created by 2020/10/10 15:32
  */
 @CacheConfig(cacheManager = "auth2RedisHashCacheManager")
 public class Auth2JdbcUsersConnectionTokenRepository implements UsersConnectionTokenRepository {
 
+    private static final String INSERT_AUTH_TOKEN_SQL =
+            "INSERT INTO auth_token(`enableRefresh` ,`providerId`, `accessToken`, `expireIn`, " +
+                    "`refreshToken`, `uid`, `openId`, `accessCode`, `unionId`, `scope`, `tokenType`, " +
+                    "`idToken`, `macAlgorithm`, `macKey`, `code`, `oauthToken`, `oauthTokenSecret`, " +
+                    "`userId`, `screenName`, `oauthCallbackConfirmed`, `expireTime`) " +
+                    "VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?);";
+
+    private static final String UPDATE_AUTH_TOKEN_SQL =
+            "UPDATE `auth_token` SET " +
+                    "`enableRefresh` = ?, " +
+                    "`providerId` = ?, " +
+                    "`accessToken` = ?, " +
+                    "`expireIn` = ?, " +
+                    "`refreshToken` = ?, " +
+                    "`uid` = ?, " +
+                    "`openId` = ?, " +
+                    "`accessCode` = ?, " +
+                    "`unionId` = ?, " +
+                    "`scope` = ?, " +
+                    "`tokenType` = ?, " +
+                    "`idToken` = ?, " +
+                    "`macAlgorithm` = ?, " +
+                    "`macKey` = ?, " +
+                    "`code` = ?, " +
+                    "`oauthToken` = ?, " +
+                    "`oauthTokenSecret` = ?, " +
+                    "`userId` = ?, " +
+                    "`screenName` = ?, " +
+                    "`oauthCallbackConfirmed` = ?, " +
+                    "`expireTime` = ? " +
+                    "WHERE `id` = ?;";
+
     private final JdbcTemplate jdbcTemplate;
 
     private final TextEncryptor textEncryptor;
 
+    /**
+     * 批量方法中按 spring cache 注解的语义更新缓存, 没有 auth2RedisHashCacheManager 时为 null
+     */
+    @SuppressWarnings("SpringJavaAutowiredFieldsWarningInspection")
+    @Autowired(required = false)
+    @Qualifier("auth2RedisHashCacheManager")
+    private CacheManager cacheManager;
+
 
     public Auth2JdbcUsersConnectionTokenRepository(JdbcTemplate auth2UserConnectionJdbcTemplate,
                                                    TextEncryptor textEncryptor) {
@@ -83,43 +138,62 @@ public class Auth2JdbcUsersConnectionTokenRepository implements UsersConnectionT
     @CachePut(cacheNames = RedisCacheAutoConfiguration.USER_CONNECTION_CACHE_NAME, key = "'s:token:' + #result.id")
     @Override
     public AuthTokenPo saveAuthToken(AuthTokenPo authToken) throws DataAccessException {
-        jdbcTemplate.update("INSERT INTO auth_token(`enableRefresh` ,`providerId`, `accessToken`, `expireIn`, " +
-                                    "`refreshToken`, `uid`, `openId`, `accessCode`, `unionId`, `scope`, `tokenType`, " +
-                                    "`idToken`, `macAlgorithm`, `macKey`, `code`, `oauthToken`, `oauthTokenSecret`, " +
-                                    "`userId`, `screenName`, `oauthCallbackConfirmed`, `expireTime`) " +
-                                    "VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?);",
-                            authToken.getEnableRefresh().getCode(),
-                            authToken.getProviderId(),
-                            encrypt(authToken.getAccessToken()),
-                            authToken.getExpireIn(),
-                            encrypt(authToken.getRefreshToken()),
-                            authToken.getUid(),
-                            authToken.getOpenId(),
-                            encrypt(authToken.getAccessCode()),
-                            authToken.getUnionId(),
-                            // Google附带属性
-                            authToken.getScope(),
-                            authToken.getTokenType(),
-                            encrypt(authToken.getIdToken()),
-                            // 小米附带属性
-                            authToken.getMacAlgorithm(),
-                            encrypt(authToken.getMacKey()),
-                            // 企业微信附带属性
-                            encrypt(authToken.getCode()),
-                            // Twitter附带属性
-                            encrypt(authToken.getOauthToken()),
-                            encrypt(authToken.getOauthTokenSecret()),
-                            authToken.getUserId(),
-                            authToken.getScreenName(),
-                            authToken.getOauthCallbackConfirmed(),
-                            // 过期时间, 基于 1970-01-01T00:00:00Z, 无过期时间默认为 -1
-                            authToken.getExpireTime());
-        // 获取 id
-        Long id = jdbcTemplate.queryForObject("SELECT LAST_INSERT_ID();", null, Long.class);
-        authToken.setId(id);
+        // 通过 generated keys 获取 id, 不再单独执行 SELECT LAST_INSERT_ID()
+        final KeyHolder keyHolder = new GeneratedKeyHolder();
+        final Object[] args = insertArgs(authToken);
+        jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement(INSERT_AUTH_TOKEN_SQL, Statement.RETURN_GENERATED_KEYS);
+            new ArgumentPreparedStatementSetter(args).setValues(ps);
+            return ps;
+        }, keyHolder);
+        final Number id = keyHolder.getKey();
+        if (id == null)
+        {
+            throw new DataRetrievalFailureException("auth_token insert did not return a generated id");
+        }
+        authToken.setId(id.longValue());
         return authToken;
     }
 
+    @Transactional(rollbackFor = {Exception.class}, propagation = Propagation.REQUIRED)
+    @BatchCacheOperations
+    @Override
+    public List<AuthTokenPo> saveAuthTokens(@NonNull List<AuthTokenPo> authTokens) throws DataAccessException {
+        if (authTokens.isEmpty())
+        {
+            return authTokens;
+        }
+        // JDBC 批处理插入, 通过 generated keys 按插入顺序获取 id
+        jdbcTemplate.execute((ConnectionCallback<Void>) con -> {
+            try (PreparedStatement ps = con.prepareStatement(INSERT_AUTH_TOKEN_SQL, Statement.RETURN_GENERATED_KEYS))
+            {
+                for (AuthTokenPo authToken : authTokens)
+                {
+                    new ArgumentPreparedStatementSetter(insertArgs(authToken)).setValues(ps);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                try (ResultSet rs = ps.getGeneratedKeys())
+                {
+                    int i = 0;
+                    while (rs.next() && i < authTokens.size())
+                    {
+                        authTokens.get(i++).setId(rs.getLong(1));
+                    }
+                    if (i < authTokens.size())
+                    {
+                        throw new DataRetrievalFailureException(
+                                String.format("auth_token batch insert returned %d generated ids, expected %d",
+                                              i, authTokens.size()));
+                    }
+                }
+            }
+            return null;
+        });
+        putTokensInCache(authTokens);
+        return authTokens;
+    }
+
     @CachePut(cacheNames = RedisCacheAutoConfiguration.USER_CONNECTION_CACHE_NAME, key = "'s:token:' + #result.id")
     @Transactional(rollbackFor = {Exception.class}, propagation = Propagation.REQUIRED)
     @Override
@@ -128,59 +202,32 @@ public class Auth2JdbcUsersConnectionTokenRepository implements UsersConnectionT
         {
             throw new RuntimeException("authToken id cannot be null");
         }
-        jdbcTemplate.update("UPDATE `auth_token` SET " +
-                                    "`enableRefresh` = ?, " +
-                                    "`providerId` = ?, " +
-                                    "`accessToken` = ?, " +
-                                    "`expireIn` = ?, " +
-                                    "`refreshToken` = ?, " +
-                                    "`uid` = ?, " +
-                                    "`openId` = ?, " +
-                                    "`accessCode` = ?, " +
-                                    "`unionId` = ?, " +
-                                    "`scope` = ?, " +
-                                    "`tokenType` = ?, " +
-                                    "`idToken` = ?, " +
-                                    "`macAlgorithm` = ?, " +
-                                    "`macKey` = ?, " +
-                                    "`code` = ?, " +
-                                    "`oauthToken` = ?, " +
-                                    "`oauthTokenSecret` = ?, " +
-                                    "`userId` = ?, " +
-                                    "`screenName` = ?, " +
-                                    "`oauthCallbackConfirmed` = ?, " +
-                                    "`expireTime` = ? " +
-                                    "WHERE `id` = ?;",
-                            authToken.getEnableRefresh().getCode(),
-                            authToken.getProviderId(),
-                            encrypt(authToken.getAccessToken()),
-                            authToken.getExpireIn(),
-                            encrypt(authToken.getRefreshToken()),
-                            authToken.getUid(),
-                            authToken.getOpenId(),
-                            encrypt(authToken.getAccessCode()),
-                            authToken.getUnionId(),
-                            // Google附带属性
-                            authToken.getScope(),
-                            authToken.getTokenType(),
-                            encrypt(authToken.getIdToken()),
-                            // 小米附带属性
-                            authToken.getMacAlgorithm(),
-                            encrypt(authToken.getMacKey()),
-                            // 企业微信附带属性
-                            encrypt(authToken.getCode()),
-                            // Twitter附带属性
-                            encrypt(authToken.getOauthToken()),
-                            encrypt(authToken.getOauthTokenSecret()),
-                            authToken.getUserId(),
-                            authToken.getScreenName(),
-                            authToken.getOauthCallbackConfirmed(),
-                            // 过期时间, 基于 1970-01-01T00:00:00Z, 无过期时间默认为 -1
-                            authToken.getExpireTime(),
-                            authToken.getId());
+        jdbcTemplate.update(UPDATE_AUTH_TOKEN_SQL, updateArgs(authToken));
         return authToken;
     }
 
+    @Transactional(rollbackFor = {Exception.class}, propagation = Propagation.REQUIRED)
+    @BatchCacheOperations
+    @Override
+    public List<AuthTokenPo> updateAuthTokens(@NonNull List<AuthTokenPo> authTokens) throws DataAccessException {
+        if (authTokens.isEmpty())
+        {
+            return authTokens;
+        }
+        final List<Object[]> batchArgs = new ArrayList<>(authTokens.size());
+        for (AuthTokenPo authToken : authTokens)
+        {
+            if (authToken.getId() == null)
+            {
+                throw new RuntimeException("authToken id cannot be null");
+            }
+            batchArgs.add(updateArgs(authToken));
+        }
+        jdbcTemplate.batchUpdate(UPDATE_AUTH_TOKEN_SQL, batchArgs);
+        putTokensInCache(authTokens);
+        return authTokens;
+    }
+
     @CacheEvict(cacheNames = RedisCacheAutoConfiguration.USER_CONNECTION_CACHE_NAME,
             key = "'s:token:' + #tokenId", beforeInvocation = true)
     @Transactional(rollbackFor = {Exception.class}, propagation = Propagation.REQUIRED)
@@ -208,6 +255,16 @@ public class Auth2JdbcUsersConnectionTokenRepository implements UsersConnectionT
                            authTokenPoMapper, startId, endId, expiredTime);
     }
 
+    @Override
+    public List<Long> findRefreshTokenIdsByExpireTime(@NonNull Long expiredTime, @NonNull Long afterId,
+                                                      int limit) throws DataAccessException {
+        return jdbcTemplate.queryForList("SELECT `id` FROM auth_token " +
+                                                 "WHERE id > ? AND `expireTime` <= ? " +
+                                                 "AND enableRefresh = " + YES.getCode() + " " +
+                                                 "ORDER BY id LIMIT ?;",
+                                         Long.class, afterId, expiredTime, limit);
+    }
+
     @CacheEvict(cacheNames = RedisCacheAutoConfiguration.USER_CONNECTION_CACHE_NAME,
             key = "'s:token:' + #tokenId", beforeInvocation = true)
     @Transactional(rollbackFor = {Exception.class}, propagation = Propagation.REQUIRED)
@@ -217,6 +274,61 @@ public class Auth2JdbcUsersConnectionTokenRepository implements UsersConnectionT
                             enableRefresh.getCode(), tokenId);
     }
 
+    /**
+     * 与 {@link #saveAuthToken(AuthTokenPo)} 的 {@link CachePut} 一样, 把 token 放入缓存, 没有缓存时忽略
+     * @param authTokens    {@link AuthTokenPo} 列表
+     */
+    private void putTokensInCache(@NonNull List<AuthTokenPo> authTokens) {
+        final Cache cache = this.cacheManager == null ? null :
+                this.cacheManager.getCache(RedisCacheAutoConfiguration.USER_CONNECTION_CACHE_NAME);
+        if (cache == null)
+        {
+            return;
+        }
+        for (AuthTokenPo authToken : authTokens)
+        {
+            cache.put("s:token:" + authToken.getId(), authToken);
+        }
+    }
+
+    @NonNull
+    private Object[] insertArgs(@NonNull AuthTokenPo authToken) {
+        return new Object[]{authToken.getEnableRefresh().getCode(),
+                            authToken.getProviderId(),
+                            encrypt(authToken.getAccessToken()),
+                            authToken.getExpireIn(),
+                            encrypt(authToken.getRefreshToken()),
+                            authToken.getUid(),
+                            authToken.getOpenId(),
+                            encrypt(authToken.getAccessCode()),
+                            authToken.getUnionId(),
+                            // Google附带属性
+                            authToken.getScope(),
+                            authToken.getTokenType(),
+                            encrypt(authToken.getIdToken()),
+                            // 小米附带属性
+                            authToken.getMacAlgorithm(),
+                            encrypt(authToken.getMacKey()),
+                            // 企业微信附带属性
+                            encrypt(authToken.getCode()),
+                            // Twitter附带属性
+                            encrypt(authToken.getOauthToken()),
+                            encrypt(authToken.getOauthTokenSecret()),
+                            authToken.getUserId(),
+                            authToken.getScreenName(),
+                            authToken.getOauthCallbackConfirmed(),
+                            // 过期时间, 基于 1970-01-01T00:00:00Z, 无过期时间默认为 -1
+                            authToken.getExpireTime()};
+    }
+
+    @NonNull
+    private Object[] updateArgs(@NonNull AuthTokenPo authToken) {
+        final Object[] insertArgs = insertArgs(authToken);
+        final Object[] args = Arrays.copyOf(insertArgs, insertArgs.length + 1);
+        args[insertArgs.length] = authToken.getId();
+        return args;
+    }
+
     private String encrypt(String text) {
         return text != null ? textEncryptor.encrypt(text) : null;
     }
@@ -0,0 +1,91 @@
+/*
+ * MIT License
+ * Copyright (c) 2020-2029 YongWu zheng (dcenter.top and gitee.com/pcore and github.com/ZeroOrInfinity)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package top.dcenter.ums.security.core.oauth.repository.jdbc.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link RedisHashCacheWriter#clean(String, byte[])} 的统计信息: 清除次数, 扫描与删除的 key 数量, 耗时.
+ * @author YongWu zheng
+ * @version V2.0  Created by 2020/11/29 10:12
+ */
+public class CacheCleanStatistics {
+
+    private final AtomicLong cleanCount = new AtomicLong(0L);
+    private final AtomicLong failureCount = new AtomicLong(0L);
+    private final AtomicLong scannedKeyCount = new AtomicLong(0L);
+    private final AtomicLong deletedKeyCount = new AtomicLong(0L);
+    private final AtomicLong totalTimeMillis = new AtomicLong(0L);
+    private volatile long lastTimeMillis = 0L;
+
+    /**
+     * 记录一次清除的结果
+     * @param scanned   扫描到的 key 数量
+     * @param deleted   删除的 key 数量
+     * @param millis    耗时, 单位: 毫秒
+     * @param success   是否成功
+     */
+    void record(long scanned, long deleted, long millis, boolean success) {
+        this.cleanCount.incrementAndGet();
+        if (!success) {
+            this.failureCount.incrementAndGet();
+        }
+        this.scannedKeyCount.addAndGet(scanned);
+        this.deletedKeyCount.addAndGet(deleted);
+        this.totalTimeMillis.addAndGet(millis);
+        this.lastTimeMillis = millis;
+    }
+
+    public long getCleanCount() {
+        return this.cleanCount.get();
+    }
+
+    public long getFailureCount() {
+        return this.failureCount.get();
+    }
+
+    public long getScannedKeyCount() {
+        return this.scannedKeyCount.get();
+    }
+
+    public long getDeletedKeyCount() {
+        return this.deletedKeyCount.get();
+    }
+
+    public long getTotalTimeMillis() {
+        return this.totalTimeMillis.get();
+    }
+
+    public long getLastTimeMillis() {
+        return this.lastTimeMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CacheCleanStatistics{cleanCount=%d, failureCount=%d, scannedKeyCount=%d, " +
+                                     "deletedKeyCount=%d, totalTimeMillis=%d, lastTimeMillis=%d}",
+                             getCleanCount(), getFailureCount(), getScannedKeyCount(),
+                             getDeletedKeyCount(), getTotalTimeMillis(), getLastTimeMillis());
+    }
+}
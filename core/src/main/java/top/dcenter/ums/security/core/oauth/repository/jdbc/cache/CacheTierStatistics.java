@@ -0,0 +1,84 @@
+/*
+ * MIT License
+ * Copyright (c) 2020-2029 YongWu zheng (dcenter.top and gitee.com/pcore and github.com/ZeroOrInfinity)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package top.dcenter.ums.security.core.oauth.repository.jdbc.cache;
+
+import lombok.Getter;
+
+/**
+ * {@link RedisHashCache} 各级缓存的命中统计: 一级缓存({@link NearCache}) 与 二级缓存(redis).
+ * @author YongWu zheng
+ * @version V2.0  Created by 2020/11/29 16:05
+ */
+@Getter
+public class CacheTierStatistics {
+
+    private final String cacheName;
+    private final long nearHitCount;
+    private final long nearMissCount;
+    private final long redisHitCount;
+    private final long redisMissCount;
+
+    public CacheTierStatistics(String cacheName, long nearHitCount, long nearMissCount,
+                               long redisHitCount, long redisMissCount) {
+        this.cacheName = cacheName;
+        this.nearHitCount = nearHitCount;
+        this.nearMissCount = nearMissCount;
+        this.redisHitCount = redisHitCount;
+        this.redisMissCount = redisMissCount;
+    }
+
+    /**
+     * @return 一级缓存命中率, 没有请求时返回 0.0
+     */
+    public double getNearHitRate() {
+        return rate(this.nearHitCount, this.nearMissCount);
+    }
+
+    /**
+     * @return redis 缓存命中率(只统计一级缓存未命中的请求), 没有请求时返回 0.0
+     */
+    public double getRedisHitRate() {
+        return rate(this.redisHitCount, this.redisMissCount);
+    }
+
+    /**
+     * @return 总的命中率, 没有请求时返回 0.0
+     */
+    public double getHitRate() {
+        return rate(this.nearHitCount + this.redisHitCount, this.redisMissCount);
+    }
+
+    private static double rate(long hit, long miss) {
+        long total = hit + miss;
+        return total == 0L ? 0.0D : (double) hit / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CacheTierStatistics{cacheName=%s, nearHitRate=%.4f, redisHitRate=%.4f, hitRate=%.4f, " +
+                                     "nearHitCount=%d, nearMissCount=%d, redisHitCount=%d, redisMissCount=%d}",
+                             this.cacheName, getNearHitRate(), getRedisHitRate(), getHitRate(),
+                             this.nearHitCount, this.nearMissCount, this.redisHitCount, this.redisMissCount);
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * MIT License
+ * Copyright (c) 2020-2029 YongWu zheng (dcenter.top and gitee.com/pcore and github.com/ZeroOrInfinity)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package top.dcenter.ums.security.core.oauth.repository.jdbc.cache;
+
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link RedisHashCache} 的进程内一级缓存(L1): Map(redis key, Map(hash field, value)). <br>
+ * 1. 与 redis 的结构保持一致, 清除 redis key 时同时清除此 key 下所有的 hash field. <br>
+ * 2. 按 redis key 分段加锁, 每段按访问顺序淘汰最久未访问的 key(LRU), 总 key 数量不超过 maximumSize. <br>
+ * 3. 每个值有过期时间, 应小于 redis 缓存的 TTL. <br>
+ * 注意: 缓存的值为反序列化后的对象, 多个调用者共享同一个实例, 不可修改.
+ * @author YongWu zheng
+ * @version V2.0  Created by 2020/11/29 15:40
+ */
+public class NearCache {
+
+    private static final int SEGMENT_COUNT = 16;
+    /**
+     * 非 hash 类型缓存的 field
+     */
+    private static final String NON_HASH_FIELD = "";
+
+    private final Segment[] segments;
+    private final long ttlNanos;
+
+    private final AtomicLong hitCount = new AtomicLong(0L);
+    private final AtomicLong missCount = new AtomicLong(0L);
+    private final AtomicLong evictionCount = new AtomicLong(0L);
+
+    /**
+     * @param maximumSize   最多缓存的 redis key 数量
+     * @param ttl           缓存的过期时间, 必须大于 0
+     */
+    public NearCache(int maximumSize, @NonNull Duration ttl) {
+        if (ttl.isZero() || ttl.isNegative()) {
+            throw new IllegalArgumentException("NearCache ttl must be greater than 0");
+        }
+        this.ttlNanos = ttl.toNanos();
+        int maxKeysPerSegment = Math.max(1, maximumSize / SEGMENT_COUNT);
+        this.segments = new Segment[SEGMENT_COUNT];
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            this.segments[i] = new Segment(maxKeysPerSegment, this.evictionCount);
+        }
+    }
+
+    /**
+     * 获取缓存值
+     * @param key   redis key
+     * @param field hash field, 非 hash 类型的缓存为 null
+     * @return  缓存值, 不存在或已过期时返回 null
+     */
+    @Nullable
+    public Object get(@NonNull String key, @Nullable String field) {
+        Segment segment = segmentFor(key);
+        Object value = null;
+        synchronized (segment) {
+            Map<String, Entry> fieldMap = segment.get(key);
+            if (fieldMap != null) {
+                String f = fieldOf(field);
+                Entry entry = fieldMap.get(f);
+                if (entry != null) {
+                    if (entry.expireAtNanos - System.nanoTime() > 0L) {
+                        value = entry.value;
+                    }
+                    else {
+                        fieldMap.remove(f);
+                        if (fieldMap.isEmpty()) {
+                            segment.remove(key);
+                        }
+                    }
+                }
+            }
+        }
+        if (value == null) {
+            this.missCount.incrementAndGet();
+            return null;
+        }
+        this.hitCount.incrementAndGet();
+        return value;
+    }
+
+    /**
+     * 缓存值
+     * @param key   redis key
+     * @param field hash field, 非 hash 类型的缓存为 null
+     * @param value 缓存值
+     */
+    public void put(@NonNull String key, @Nullable String field, @NonNull Object value) {
+        Segment segment = segmentFor(key);
+        Entry entry = new Entry(value, System.nanoTime() + this.ttlNanos);
+        synchronized (segment) {
+            segment.computeIfAbsent(key, k -> new HashMap<>(4)).put(fieldOf(field), entry);
+        }
+    }
+
+    /**
+     * 清除缓存
+     * @param key   redis key
+     * @param field hash field, 为 null 时清除此 redis key 下所有的缓存
+     */
+    public void evict(@NonNull String key, @Nullable String field) {
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            if (field == null) {
+                segment.remove(key);
+                return;
+            }
+            Map<String, Entry> fieldMap = segment.get(key);
+            if (fieldMap != null) {
+                fieldMap.remove(field);
+                if (fieldMap.isEmpty()) {
+                    segment.remove(key);
+                }
+            }
+        }
+    }
+
+    public void clear() {
+        for (Segment segment : this.segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    /**
+     * @return 缓存的 redis key 数量
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : this.segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public long getHitCount() {
+        return this.hitCount.get();
+    }
+
+    public long getMissCount() {
+        return this.missCount.get();
+    }
+
+    public long getEvictionCount() {
+        return this.evictionCount.get();
+    }
+
+    private Segment segmentFor(String key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return this.segments[h & (SEGMENT_COUNT - 1)];
+    }
+
+    private static String fieldOf(@Nullable String field) {
+        return field == null ? NON_HASH_FIELD : field;
+    }
+
+    private static final class Entry {
+        private final Object value;
+        private final long expireAtNanos;
+
+        private Entry(Object value, long expireAtNanos) {
+            this.value = value;
+            this.expireAtNanos = expireAtNanos;
+        }
+    }
+
+    private static final class Segment extends LinkedHashMap<String, Map<String, Entry>> {
+
+        private static final long serialVersionUID = 2358640374624531237L;
+
+        private final int maxKeys;
+        private final transient AtomicLong evictionCount;
+
+        private Segment(int maxKeys, AtomicLong evictionCount) {
+            super(16, 0.75F, true);
+            this.maxKeys = maxKeys;
+            this.evictionCount = evictionCount;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Map<String, Entry>> eldest) {
+            if (size() > this.maxKeys) {
+                this.evictionCount.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    }
+}
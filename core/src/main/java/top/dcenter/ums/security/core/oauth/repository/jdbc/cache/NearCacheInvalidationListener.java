@@ -0,0 +1,60 @@
+/*
+ * MIT License
+ * Copyright (c) 2020-2029 YongWu zheng (dcenter.top and gitee.com/pcore and github.com/ZeroOrInfinity)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package top.dcenter.ums.security.core.oauth.repository.jdbc.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import top.dcenter.ums.security.core.util.MvcUtil;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 接收集群中其他节点发布的一级缓存({@link NearCache})失效消息, 清除本节点对应的一级缓存.
+ * @author YongWu zheng
+ * @version V2.0  Created by 2020/11/29 16:20
+ */
+@Slf4j
+public class NearCacheInvalidationListener implements MessageListener {
+
+    private final RedisHashCacheManager cacheManager;
+
+    public NearCacheInvalidationListener(RedisHashCacheManager cacheManager) {
+        this.cacheManager = cacheManager;
+    }
+
+    @Override
+    public void onMessage(@NonNull Message message, @Nullable byte[] pattern) {
+        final String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        final NearCacheInvalidationMessage invalidationMessage = MvcUtil.json2Object(body, NearCacheInvalidationMessage.class);
+        if (invalidationMessage == null)
+        {
+            log.warn("忽略无效的一级缓存失效消息: {}", body);
+            return;
+        }
+        cacheManager.onNearCacheInvalidation(invalidationMessage);
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * MIT License
+ * Copyright (c) 2020-2029 YongWu zheng (dcenter.top and gitee.com/pcore and github.com/ZeroOrInfinity)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package top.dcenter.ums.security.core.oauth.repository.jdbc.cache;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+ * 一级缓存({@link NearCache})失效消息, 通过 redis 发布/订阅通知集群中的其他节点清除对应的一级缓存.
+ * @author YongWu zheng
+ * @version V2.0  Created by 2020/11/29 15:52
+ */
+@Getter
+@Setter
+@ToString
+public class NearCacheInvalidationMessage {
+
+    /**
+     * 发布消息的节点 Id
+     */
+    private String nodeId;
+    /**
+     * 缓存名称
+     */
+    private String cacheName;
+    /**
+     * 是否清除此缓存的所有值
+     */
+    private boolean clear;
+    /**
+     * 失效的 redis keys
+     */
+    private List<String> keys;
+    /**
+     * 与 keys 一一对应的 hash fields, 元素为 null 时清除整个 redis key
+     */
+    private List<String> fields;
+}
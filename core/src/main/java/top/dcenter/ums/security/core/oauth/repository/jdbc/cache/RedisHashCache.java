@@ -23,6 +23,7 @@
 
 package top.dcenter.ums.security.core.oauth.repository.jdbc.cache;
 
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.cache.support.NullValue;
 import org.springframework.cache.support.SimpleValueWrapper;
 import org.springframework.core.convert.ConversionFailedException;
@@ -40,20 +41,32 @@ import org.springframework.util.Assert;
 import org.springframework.util.ObjectUtils;
 import org.springframework.util.ReflectionUtils;
 import org.springframework.util.StringUtils;
+import top.dcenter.ums.security.core.util.MvcUtil;
 
 import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.StringJoiner;
+import java.util.UUID;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static top.dcenter.ums.security.core.oauth.config.RedisCacheAutoConfiguration.REDIS_CACHE_HASH_KEY_SEPARATE;
+import static top.dcenter.ums.security.core.oauth.config.RedisCacheAutoConfiguration.REDIS_CACHE_KEY_SEPARATE;
 
 
 /**
@@ -71,16 +84,63 @@ import static top.dcenter.ums.security.core.oauth.config.RedisCacheAutoConfigura
  * @see RedisHashCacheWriter
  * @since 2.0
  */
+@Slf4j
 public class RedisHashCache extends RedisCache {
 
     private static final byte[] BINARY_NULL_VALUE = RedisSerializer.java().serialize(NullValue.INSTANCE);
 
     private static final int HASH_KEY_ARRAY_LENGTH = 2;
 
+    /**
+     * 加载租约 key 的后缀
+     */
+    private static final String LEASE_KEY_SUFFIX = "~lease";
+    /**
+     * 未获取到加载租约时, 轮询缓存值的间隔时间, 单位: 毫秒
+     */
+    private static final long LEASE_POLL_INTERVAL_MILLIS = 20L;
+    /**
+     * 缓存版本号 key 的后缀
+     */
+    private static final String GENERATION_KEY_SUFFIX = "~generation";
+
     private final String name;
     private final RedisHashCacheWriter cacheWriter;
     private final RedisCacheConfiguration cacheConfig;
     private final ConversionService conversionService;
+    /**
+     * 加载租约的过期时间, 为 0 时不使用加载租约
+     */
+    private final Duration loadLeaseTtl;
+    /**
+     * 正在加载的 key 与 加载结果, 同一个 key 的并发加载共享同一个加载结果, 不同的 key 可以并行加载
+     */
+    private final ConcurrentMap<Object, CompletableFuture<Object>> inFlightLoads = new ConcurrentHashMap<>();
+    /**
+     * 缓存版本号(generation)的刷新间隔, 为 0 时不使用版本号
+     */
+    private final Duration generationRefreshInterval;
+    private final byte[] generationKey;
+    /**
+     * 本地缓存的版本号, 小于 0 时表示未从 redis 读取
+     */
+    private volatile long generation = -1L;
+    private volatile long generationCheckedNanos;
+
+    /**
+     * 一级缓存, 为 null 时不使用一级缓存
+     */
+    private volatile NearCache nearCache;
+    /**
+     * 一级缓存失效消息的频道
+     */
+    private volatile String nearCacheChannel;
+    /**
+     * 本节点的 Id, 用于忽略本节点发布的一级缓存失效消息
+     */
+    private volatile String nodeId;
+    private final AtomicLong redisHitCount = new AtomicLong(0L);
+    private final AtomicLong redisMissCount = new AtomicLong(0L);
 
     /**
      * Create new {@link RedisHashCache}.
@@ -90,6 +150,34 @@ public class RedisHashCache extends RedisCache {
      * @param cacheConfig must not be {@literal null}.
      */
     protected RedisHashCache(String name, RedisHashCacheWriter cacheWriter, RedisCacheConfiguration cacheConfig) {
+        this(name, cacheWriter, cacheConfig, Duration.ZERO);
+    }
+
+    /**
+     * Create new {@link RedisHashCache}.
+     *
+     * @param name         must not be {@literal null}.
+     * @param cacheWriter  must not be {@literal null}.
+     * @param cacheConfig  must not be {@literal null}.
+     * @param loadLeaseTtl 加载租约的过期时间, 为 0 时不使用加载租约. 使用加载租约时, 缓存未命中时集群中只有获取到租约的节点从数据源加载.
+     */
+    protected RedisHashCache(String name, RedisHashCacheWriter cacheWriter, RedisCacheConfiguration cacheConfig,
+                             @Nullable Duration loadLeaseTtl) {
+        this(name, cacheWriter, cacheConfig, loadLeaseTtl, Duration.ZERO);
+    }
+
+    /**
+     * Create new {@link RedisHashCache}.
+     *
+     * @param name                      must not be {@literal null}.
+     * @param cacheWriter               must not be {@literal null}.
+     * @param cacheConfig               must not be {@literal null}.
+     * @param loadLeaseTtl              加载租约的过期时间, 为 0 时不使用加载租约.
+     * @param generationRefreshInterval 缓存版本号(generation)的刷新间隔, 为 0 时不使用版本号. 使用版本号时, 缓存 key 中带有版本号,
+     *                                  {@link #clear()} 只需把版本号加 1(O(1)), 旧版本的缓存由后台清除或自然过期.
+     */
+    protected RedisHashCache(String name, RedisHashCacheWriter cacheWriter, RedisCacheConfiguration cacheConfig,
+                             @Nullable Duration loadLeaseTtl, @Nullable Duration generationRefreshInterval) {
 
         super(name, cacheWriter, cacheConfig);
 
@@ -101,11 +189,25 @@ public class RedisHashCache extends RedisCache {
         this.cacheWriter = cacheWriter;
         this.cacheConfig = cacheConfig;
         this.conversionService = cacheConfig.getConversionService();
+        this.loadLeaseTtl = loadLeaseTtl == null || loadLeaseTtl.isNegative() ? Duration.ZERO : loadLeaseTtl;
+        this.generationRefreshInterval = generationRefreshInterval == null || generationRefreshInterval.isNegative()
+                ? Duration.ZERO : generationRefreshInterval;
+        this.generationKey = serializeCacheKey(name + GENERATION_KEY_SUFFIX);
     }
 
     @Override
     protected Object lookup(@NonNull Object key) {
         Object[] keyPair = parsingKey(key);
+        final NearCache nearCache = this.nearCache;
+        if (nearCache != null)
+        {
+            Object nearValue = nearCache.get(nearKeyOf(keyPair), nearFieldOf(keyPair));
+            if (nearValue != null)
+            {
+                return nearValue;
+            }
+        }
+
         byte[] value;
         if (keyPair.length == HASH_KEY_ARRAY_LENGTH)
         {
@@ -119,10 +221,17 @@ public class RedisHashCache extends RedisCache {
 
         if (value == null)
         {
+            redisMissCount.incrementAndGet();
             return null;
         }
 
-        return deserializeCacheValue(value);
+        redisHitCount.incrementAndGet();
+        Object result = deserializeCacheValue(value);
+        if (nearCache != null && result != null)
+        {
+            nearCache.put(nearKeyOf(keyPair), nearFieldOf(keyPair), result);
+        }
+        return result;
     }
 
     @NonNull
@@ -137,9 +246,13 @@ public class RedisHashCache extends RedisCache {
         return this.cacheWriter;
     }
 
+    /**
+     * 缓存未命中时, 同一个 key 的并发加载共享同一个加载结果(single-flight), 不同的 key 互不阻塞.
+     * 如果设置了加载租约, 集群中只有获取到租约的节点从数据源加载, 其他节点等待缓存值.
+     */
     @Override
     @SuppressWarnings("unchecked")
-    public synchronized <T> T get(@NonNull Object key, @NonNull Callable<T> valueLoader) {
+    public <T> T get(@NonNull Object key, @NonNull Callable<T> valueLoader) {
 
         ValueWrapper result = get(key);
 
@@ -148,13 +261,39 @@ public class RedisHashCache extends RedisCache {
             return (T) result.get();
         }
 
-        T value = valueFromLoader(key, valueLoader);
-        put(key, value);
-        return value;
+        CompletableFuture<Object> loading = new CompletableFuture<>();
+        CompletableFuture<Object> inFlight = inFlightLoads.putIfAbsent(key, loading);
+        if (inFlight != null)
+        {
+            return (T) awaitInFlightLoad(key, valueLoader, inFlight);
+        }
+
+        try
+        {
+            T value = loadAndPut(key, valueLoader);
+            loading.complete(value);
+            return value;
+        }
+        catch (RuntimeException | Error e)
+        {
+            loading.completeExceptionally(e);
+            throw e;
+        }
+        finally
+        {
+            inFlightLoads.remove(key, loading);
+        }
     }
 
     @Override
     public void put(@NonNull Object key, @Nullable Object value) {
+        putInternal(key, value, true);
+    }
+
+    /**
+     * @param invalidate    是否清除本节点与集群中其他节点的一级缓存. 从数据源加载的值不需要通知其他节点.
+     */
+    private void putInternal(@NonNull Object key, @Nullable Object value, boolean invalidate) {
 
         Object cacheValue = preProcessCacheValue(value);
 
@@ -167,6 +306,30 @@ public class RedisHashCache extends RedisCache {
         }
 
         Object[] keyPair = parsingKey(key);
+        RedisHashCacheBatch batch = invalidate ? RedisHashCacheBatch.current() : null;
+        if (batch != null)
+        {
+            if (keyPair.length == HASH_KEY_ARRAY_LENGTH)
+            {
+                batch.addCommand(cacheWriter,
+                                 RedisHashCacheWriter.hPutCommand(createAndConvertCacheKey(keyPair[0]),
+                                                                  createAndConvertCacheField(keyPair[1]),
+                                                                  serializeCacheValue(cacheValue),
+                                                                  getRandomTtl(cacheConfig.getTtl())),
+                                 false);
+            }
+            else
+            {
+                batch.addCommand(cacheWriter,
+                                 RedisHashCacheWriter.putCommand(createAndConvertCacheKey(key),
+                                                                 serializeCacheValue(cacheValue),
+                                                                 getRandomTtl(cacheConfig.getTtl())),
+                                 false);
+            }
+            addNearCacheInvalidation(batch, keyPair);
+            return;
+        }
+
         if (keyPair.length == HASH_KEY_ARRAY_LENGTH)
         {
             cacheWriter.hPut(name,
@@ -179,6 +342,11 @@ public class RedisHashCache extends RedisCache {
         {
             cacheWriter.put(name, createAndConvertCacheKey(key), serializeCacheValue(cacheValue), getRandomTtl(cacheConfig.getTtl()));
         }
+
+        if (invalidate)
+        {
+            invalidateNearCache(keyPair);
+        }
     }
 
     @Override
@@ -209,6 +377,7 @@ public class RedisHashCache extends RedisCache {
 
         if (result == null)
         {
+            invalidateNearCache(keyPair);
             return null;
         }
 
@@ -218,19 +387,123 @@ public class RedisHashCache extends RedisCache {
     @Override
     public void evict(@NonNull Object key) {
         Object[] keyPair = parsingKey(key);
+        RedisHashCacheBatch batch = RedisHashCacheBatch.current();
+        if (batch != null)
+        {
+            if (keyPair.length == HASH_KEY_ARRAY_LENGTH)
+            {
+                batch.addCommand(cacheWriter,
+                                 RedisHashCacheWriter.hRemoveCommand(createAndConvertCacheKey(keyPair[0]),
+                                                                     createAndConvertCacheField(keyPair[1])),
+                                 true);
+            }
+            else
+            {
+                batch.addCommand(cacheWriter, RedisHashCacheWriter.removeCommand(createAndConvertCacheKey(key)), true);
+            }
+            addNearCacheInvalidation(batch, keyPair);
+            return;
+        }
+
         if (keyPair.length == HASH_KEY_ARRAY_LENGTH)
         {
             cacheWriter.hRemove(name, createAndConvertCacheKey(keyPair[0]),createAndConvertCacheField(keyPair[1]));
-            return;
         }
-        cacheWriter.remove(name, createAndConvertCacheKey(key));
+        else
+        {
+            cacheWriter.remove(name, createAndConvertCacheKey(key));
+        }
+        invalidateNearCache(keyPair);
     }
 
+    /**
+     * 清除此缓存的所有值. 使用版本号(generation)时, 把版本号加 1 即完成逻辑清除, 旧版本的缓存交由
+     * {@link RedisHashCacheWriter#clean(String, byte[])} 回收(可异步), 其他节点在刷新版本号前仍可能读到旧版本的缓存.
+     */
     @Override
     public void clear() {
+        // 保证批量操作中已收集的操作在清除前执行
+        RedisHashCacheBatch batch = RedisHashCacheBatch.current();
+        if (batch != null)
+        {
+            batch.flush();
+        }
+        if (isGenerationEnabled())
+        {
+            long oldGeneration = currentGeneration();
+            this.generation = cacheWriter.incrementGeneration(name, generationKey);
+            this.generationCheckedNanos = System.nanoTime();
+            clearNearCache();
+            String oldPattern = prefixIfNecessary(oldGeneration + REDIS_CACHE_KEY_SEPARATE + "*");
+            cacheWriter.clean(name, serializeCacheKey(oldPattern));
+            return;
+        }
         byte[] pattern = conversionService.convert(createCacheKey("*"), byte[].class);
         //noinspection ConstantConditions
         cacheWriter.clean(name, pattern);
+        clearNearCache();
+    }
+
+    /**
+     * 开启一级缓存. 写入或清除缓存时, 同时清除本节点的一级缓存, 并通过 redis 发布/订阅通知集群中的其他节点.
+     *
+     * @param nearCache 一级缓存
+     * @param channel   一级缓存失效消息的频道
+     * @param nodeId    本节点的 Id
+     */
+    void enableNearCache(@NonNull NearCache nearCache, @NonNull String channel, @NonNull String nodeId) {
+        this.nearCacheChannel = channel;
+        this.nodeId = nodeId;
+        this.nearCache = nearCache;
+    }
+
+    /**
+     * 处理集群中其他节点发布的一级缓存失效消息, 只清除本节点的一级缓存.
+     *
+     * @param message   一级缓存失效消息
+     */
+    void onNearCacheInvalidation(@NonNull NearCacheInvalidationMessage message) {
+        final NearCache nearCache = this.nearCache;
+        if (nearCache == null || ObjectUtils.nullSafeEquals(this.nodeId, message.getNodeId()))
+        {
+            return;
+        }
+        if (message.isClear())
+        {
+            nearCache.clear();
+            return;
+        }
+        List<String> keys = message.getKeys();
+        List<String> fields = message.getFields();
+        if (keys == null)
+        {
+            return;
+        }
+        for (int i = 0, size = keys.size(); i < size; i++)
+        {
+            String field = fields != null && i < fields.size() ? fields.get(i) : null;
+            nearCache.evict(keys.get(i), field);
+        }
+    }
+
+    /**
+     * @return 各级缓存的命中统计
+     */
+    @NonNull
+    public CacheTierStatistics getTierStatistics() {
+        final NearCache nearCache = this.nearCache;
+        return new CacheTierStatistics(name,
+                                       nearCache == null ? 0L : nearCache.getHitCount(),
+                                       nearCache == null ? 0L : nearCache.getMissCount(),
+                                       redisHitCount.get(), redisMissCount.get());
+    }
+
+    /**
+     * @return 一级缓存, 未开启时返回 null
+     */
+    @Nullable
+    public NearCache getNearCache() {
+        return nearCache;
     }
 
     /**
@@ -324,12 +597,12 @@ public class RedisHashCache extends RedisCache {
 
         String convertedKey = convertKey(key);
 
-        if (!cacheConfig.usePrefix())
+        if (isGenerationEnabled())
         {
-            return convertedKey;
+            convertedKey = currentGeneration() + REDIS_CACHE_KEY_SEPARATE + convertedKey;
         }
 
-        return prefixCacheKey(convertedKey);
+        return prefixIfNecessary(convertedKey);
     }
 
     /**
@@ -409,6 +682,175 @@ public class RedisHashCache extends RedisCache {
         return randomTtl;
     }
 
+    /**
+     * 等待同一个 key 正在进行的加载, 加载异常时抛出与加载线程相同的异常
+     */
+    private Object awaitInFlightLoad(Object key, Callable<?> valueLoader, CompletableFuture<Object> inFlight) {
+        try
+        {
+            return inFlight.join();
+        }
+        catch (CompletionException e)
+        {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error)
+            {
+                throw (Error) cause;
+            }
+            throw new ValueRetrievalException(key, valueLoader, cause);
+        }
+    }
+
+    /**
+     * 从数据源加载并缓存, 如果设置了加载租约, 只有获取到租约的节点从数据源加载.
+     * 未获取到租约时等待租约持有者缓存的值, 租约释放或过期后仍未缓存时自己加载.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T loadAndPut(Object key, Callable<T> valueLoader) {
+
+        if (loadLeaseTtl.isZero())
+        {
+            T value = valueFromLoader(key, valueLoader);
+            putInternal(key, value, false);
+            return value;
+        }
+
+        byte[] leaseKey = createAndConvertLeaseKey(key);
+        byte[] token = UUID.randomUUID().toString().getBytes(StandardCharsets.UTF_8);
+        if (cacheWriter.tryLease(name, leaseKey, token, loadLeaseTtl))
+        {
+            try
+            {
+                T value = valueFromLoader(key, valueLoader);
+                putInternal(key, value, false);
+                return value;
+            }
+            finally
+            {
+                cacheWriter.releaseLease(name, leaseKey, token);
+            }
+        }
+
+        ValueWrapper result = waitForLeaseHolder(key, leaseKey);
+        if (result != null)
+        {
+            return (T) result.get();
+        }
+
+        T value = valueFromLoader(key, valueLoader);
+        putInternal(key, value, false);
+        return value;
+    }
+
+    @Nullable
+    private ValueWrapper waitForLeaseHolder(Object key, byte[] leaseKey) {
+        long deadline = System.nanoTime() + loadLeaseTtl.toNanos();
+        try
+        {
+            do
+            {
+                TimeUnit.MILLISECONDS.sleep(LEASE_POLL_INTERVAL_MILLIS);
+                ValueWrapper result = get(key);
+                if (result != null)
+                {
+                    return result;
+                }
+            } while (cacheWriter.hasLease(name, leaseKey) && System.nanoTime() < deadline);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    private byte[] createAndConvertLeaseKey(Object key) {
+        Object[] keyPair = parsingKey(key);
+        if (keyPair.length == HASH_KEY_ARRAY_LENGTH)
+        {
+            return serializeCacheKey(createCacheKey(keyPair[0]) + REDIS_CACHE_HASH_KEY_SEPARATE
+                                             + convertKey(keyPair[1]) + LEASE_KEY_SUFFIX);
+        }
+        return serializeCacheKey(createCacheKey(key) + LEASE_KEY_SUFFIX);
+    }
+
+    private void invalidateNearCache(Object[] keyPair) {
+        if (this.nearCache == null)
+        {
+            return;
+        }
+        NearCacheInvalidationMessage message = new NearCacheInvalidationMessage();
+        message.setKeys(Collections.singletonList(nearKeyOf(keyPair)));
+        message.setFields(Collections.singletonList(nearFieldOf(keyPair)));
+        invalidateNearCache(message);
+    }
+
+    /**
+     * 清除本节点的一级缓存, 并通知集群中的其他节点
+     * @param message   包含失效的 keys 与 fields 的消息
+     */
+    void invalidateNearCache(@NonNull NearCacheInvalidationMessage message) {
+        final NearCache nearCache = this.nearCache;
+        if (nearCache == null || message.getKeys() == null)
+        {
+            return;
+        }
+        List<String> keys = message.getKeys();
+        List<String> fields = message.getFields();
+        for (int i = 0, size = keys.size(); i < size; i++)
+        {
+            nearCache.evict(keys.get(i), fields.get(i));
+        }
+        publishNearCacheInvalidation(message);
+    }
+
+    private void addNearCacheInvalidation(RedisHashCacheBatch batch, Object[] keyPair) {
+        if (this.nearCache != null)
+        {
+            batch.addNearCacheInvalidation(this, nearKeyOf(keyPair), nearFieldOf(keyPair));
+        }
+    }
+
+    private void clearNearCache() {
+        final NearCache nearCache = this.nearCache;
+        if (nearCache == null)
+        {
+            return;
+        }
+        nearCache.clear();
+
+        NearCacheInvalidationMessage message = new NearCacheInvalidationMessage();
+        message.setClear(true);
+        publishNearCacheInvalidation(message);
+    }
+
+    private void publishNearCacheInvalidation(NearCacheInvalidationMessage message) {
+        message.setNodeId(nodeId);
+        message.setCacheName(name);
+        try
+        {
+            String json = MvcUtil.toJsonString(message);
+            cacheWriter.publish(nearCacheChannel.getBytes(StandardCharsets.UTF_8), json.getBytes(StandardCharsets.UTF_8));
+        }
+        catch (Exception e)
+        {
+            log.error("发布一级缓存失效消息失败: {}", message, e);
+        }
+    }
+
+    private String nearKeyOf(Object[] keyPair) {
+        return convertKey(keyPair[0]);
+    }
+
+    @Nullable
+    private String nearFieldOf(Object[] keyPair) {
+        return keyPair.length == HASH_KEY_ARRAY_LENGTH ? convertKey(keyPair[1]) : null;
+    }
+
     private Object[] parsingKey(Object key) {
         if (key instanceof String)
         {
@@ -463,6 +905,35 @@ public class RedisHashCache extends RedisCache {
         return serializeCacheKey(convertKey(field));
     }
 
+    private String prefixIfNecessary(String key) {
+
+        if (!cacheConfig.usePrefix())
+        {
+            return key;
+        }
+
+        return prefixCacheKey(key);
+    }
+
+    private boolean isGenerationEnabled() {
+        return !generationRefreshInterval.isZero();
+    }
+
+    /**
+     * 获取缓存的版本号, 超过刷新间隔时从 redis 重新读取
+     */
+    private long currentGeneration() {
+        long now = System.nanoTime();
+        long current = this.generation;
+        if (current < 0L || now - this.generationCheckedNanos > generationRefreshInterval.toNanos())
+        {
+            current = cacheWriter.getGeneration(name, generationKey);
+            this.generation = current;
+            this.generationCheckedNanos = now;
+        }
+        return current;
+    }
+
     private String prefixCacheKey(String key) {
 
         // allow contextual cache names by computing the key prefix on every call.
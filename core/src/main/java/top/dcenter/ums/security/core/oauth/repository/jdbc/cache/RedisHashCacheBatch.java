@@ -0,0 +1,195 @@
+/*
+ * MIT License
+ * Copyright (c) 2020-2029 YongWu zheng (dcenter.top and gitee.com/pcore and github.com/ZeroOrInfinity)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package top.dcenter.ums.security.core.oauth.repository.jdbc.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * 当前线程的 {@link RedisHashCache} 批量操作: 收集一次方法调用中所有的缓存写入与清除操作(如多个 @CacheEvict 与 @CachePut),
+ * 结束时按原顺序通过一个 redis 管道执行, 并把一级缓存失效消息合并为每个缓存一条. <br>
+ * 结束时如果当前线程有活动的事务, 在事务完成后执行: 提交时执行所有操作, 回滚时只执行清除操作, 避免写入回滚的数据;
+ * 否则立即执行. 支持嵌套, 最外层结束时执行. <br>
+ * 批量中的操作不检查缓存锁(locking {@link RedisHashCacheWriter}).
+ * @author YongWu zheng
+ * @version V2.0  Created by 2020/11/29 21:18
+ */
+@Slf4j
+public final class RedisHashCacheBatch {
+
+    private static final ThreadLocal<RedisHashCacheBatch> CURRENT = new ThreadLocal<>();
+
+    /**
+     * 嵌套深度
+     */
+    private int depth = 0;
+    private final Map<RedisHashCacheWriter, List<Consumer<RedisConnection>>> commandsMap = new IdentityHashMap<>();
+    /**
+     * 清除命令, 事务回滚时只执行清除命令
+     */
+    private final Map<RedisHashCacheWriter, List<Consumer<RedisConnection>>> evictCommandsMap = new IdentityHashMap<>();
+    private final Map<RedisHashCache, NearCacheInvalidationMessage> invalidationsMap = new IdentityHashMap<>();
+
+    private RedisHashCacheBatch() {}
+
+    /**
+     * 开始当前线程的批量操作, 必须在 finally 中调用 {@link #end()}
+     */
+    public static void begin() {
+        RedisHashCacheBatch batch = CURRENT.get();
+        if (batch == null)
+        {
+            batch = new RedisHashCacheBatch();
+            CURRENT.set(batch);
+        }
+        batch.depth++;
+    }
+
+    /**
+     * 结束当前线程的批量操作. 最外层结束时, 如果当前线程有活动的事务, 在事务完成后执行收集的操作, 否则立即执行.
+     */
+    public static void end() {
+        RedisHashCacheBatch batch = CURRENT.get();
+        if (batch == null)
+        {
+            return;
+        }
+        if (--batch.depth > 0)
+        {
+            return;
+        }
+        CURRENT.remove();
+        if (batch.isEmpty())
+        {
+            return;
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive())
+        {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    batch.flush(status == TransactionSynchronization.STATUS_COMMITTED);
+                }
+            });
+            return;
+        }
+        batch.flush();
+    }
+
+    /**
+     * @return 当前线程的批量操作, 不在批量操作中时返回 null
+     */
+    @Nullable
+    static RedisHashCacheBatch current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * 添加管道中执行的命令
+     * @param cacheWriter   执行命令的 cacheWriter
+     * @param command       命令
+     * @param evict         是否为清除命令, 事务回滚时只执行清除命令
+     */
+    void addCommand(@NonNull RedisHashCacheWriter cacheWriter, @NonNull Consumer<RedisConnection> command,
+                    boolean evict) {
+        this.commandsMap.computeIfAbsent(cacheWriter, k -> new ArrayList<>()).add(command);
+        if (evict)
+        {
+            this.evictCommandsMap.computeIfAbsent(cacheWriter, k -> new ArrayList<>()).add(command);
+        }
+    }
+
+    /**
+     * 添加一级缓存失效的 key
+     * @param cache     缓存
+     * @param key       redis key
+     * @param field     hash field, 为 null 时清除整个 redis key
+     */
+    void addNearCacheInvalidation(@NonNull RedisHashCache cache, @NonNull String key, @Nullable String field) {
+        NearCacheInvalidationMessage message = this.invalidationsMap.computeIfAbsent(cache, k -> {
+            NearCacheInvalidationMessage m = new NearCacheInvalidationMessage();
+            m.setKeys(new ArrayList<>());
+            m.setFields(new ArrayList<>());
+            return m;
+        });
+        message.getKeys().add(key);
+        message.getFields().add(field);
+    }
+
+    /**
+     * 立即执行已收集的操作, 并清空. 用于不能延迟的操作(如: {@link RedisHashCache#clear()})执行前保证操作顺序.
+     */
+    void flush() {
+        flush(true);
+    }
+
+    /**
+     * 执行已收集的操作, 并清空. 一级缓存失效消息总是发送.
+     * @param committed 事务是否已提交, 为 false 时只执行清除命令
+     */
+    private void flush(boolean committed) {
+        final Map<RedisHashCacheWriter, List<Consumer<RedisConnection>>> commands =
+                committed ? this.commandsMap : this.evictCommandsMap;
+        try
+        {
+            for (Map.Entry<RedisHashCacheWriter, List<Consumer<RedisConnection>>> entry : commands.entrySet())
+            {
+                try
+                {
+                    entry.getKey().executePipelined(entry.getValue());
+                }
+                catch (Exception e)
+                {
+                    log.error("redis 缓存批量操作失败: commands={}", entry.getValue().size(), e);
+                }
+            }
+            for (Map.Entry<RedisHashCache, NearCacheInvalidationMessage> entry : this.invalidationsMap.entrySet())
+            {
+                entry.getKey().invalidateNearCache(entry.getValue());
+            }
+        }
+        finally
+        {
+            this.commandsMap.clear();
+            this.evictCommandsMap.clear();
+            this.invalidationsMap.clear();
+        }
+    }
+
+    private boolean isEmpty() {
+        return this.commandsMap.isEmpty() && this.invalidationsMap.isEmpty();
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * MIT License
+ * Copyright (c) 2020-2029 YongWu zheng (dcenter.top and gitee.com/pcore and github.com/ZeroOrInfinity)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package top.dcenter.ums.security.core.oauth.repository.jdbc.cache;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+
+/**
+ * {@link BatchCacheOperations} 切面: 在缓存切面的外层开始与结束 {@link RedisHashCacheBatch}, 收集方法中所有的缓存操作.
+ * @author YongWu zheng
+ * @version V2.0  Created by 2020/11/29 21:46
+ */
+@Aspect
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class RedisHashCacheBatchAspect {
+
+    @Around("@annotation(top.dcenter.ums.security.core.oauth.repository.jdbc.cache.BatchCacheOperations)")
+    public Object batchCacheOperations(ProceedingJoinPoint pjp) throws Throwable {
+        RedisHashCacheBatch.begin();
+        try
+        {
+            return pjp.proceed();
+        }
+        finally
+        {
+            RedisHashCacheBatch.end();
+        }
+    }
+}
@@ -16,6 +16,8 @@
 
 package top.dcenter.ums.security.core.oauth.repository.jdbc.cache;
 
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cache.Cache;
 import org.springframework.cache.transaction.AbstractTransactionSupportingCacheManager;
 import org.springframework.data.redis.cache.RedisCache;
 import org.springframework.data.redis.cache.RedisCacheConfiguration;
@@ -24,6 +26,7 @@ import org.springframework.lang.NonNull;
 import org.springframework.lang.Nullable;
 import org.springframework.util.Assert;
 
+import java.time.Duration;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -33,6 +36,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.UUID;
 
 /**
  * 对 {@link org.springframework.data.redis.cache.RedisCacheManager} 进行了扩展, 添加了对 Hash类型的缓存的支持
@@ -54,12 +58,30 @@ import java.util.Set;
  * @see RedisHashCacheWriter
  */
 @SuppressWarnings({"AlibabaCommentsMustBeJavadocFormat", "unused"})
-public class RedisHashCacheManager extends AbstractTransactionSupportingCacheManager {
+public class RedisHashCacheManager extends AbstractTransactionSupportingCacheManager implements DisposableBean {
 
 	private final RedisHashCacheWriter cacheWriter;
 	private final RedisCacheConfiguration defaultCacheConfig;
 	private final Map<String, RedisCacheConfiguration> initialCacheConfiguration;
 	private final boolean allowInFlightCacheCreation;
+	/**
+	 * 加载租约的过期时间, 为 0 时不使用加载租约
+	 */
+	private Duration loadLeaseTtl = Duration.ZERO;
+	/**
+	 * 缓存版本号(generation)的刷新间隔, 为 0 时不使用版本号
+	 */
+	private Duration generationRefreshInterval = Duration.ZERO;
+	/**
+	 * 一级缓存最多缓存的 redis key 数量, 为 0 时不使用一级缓存
+	 */
+	private int nearCacheMaximumSize = 0;
+	private Duration nearCacheTtl = Duration.ZERO;
+	private String nearCacheChannel;
+	/**
+	 * 本节点的 Id, 用于忽略本节点发布的一级缓存失效消息
+	 */
+	private final String nodeId = UUID.randomUUID().toString();
 
 	/**
 	 * Creates new {@link RedisHashCacheManager} using given {@link RedisHashCacheWriter} and default
@@ -278,6 +300,64 @@ public class RedisHashCacheManager extends AbstractTransactionSupportingCacheMan
 		return Collections.unmodifiableMap(configurationMap);
 	}
 
+	/**
+	 * @return 清除缓存(SCAN + 批量 UNLINK)的统计信息
+	 */
+	public CacheCleanStatistics getCleanStatistics() {
+		return cacheWriter.getCleanStatistics();
+	}
+
+	/**
+	 * @return 各缓存的各级缓存(一级缓存与 redis)命中统计, Map(cacheName, CacheTierStatistics)
+	 */
+	public Map<String, CacheTierStatistics> getTierStatistics() {
+
+		Map<String, CacheTierStatistics> statisticsMap = new HashMap<>(getCacheNames().size());
+		getCacheNames().forEach(it -> {
+			Cache cache = lookupCache(it);
+			if (cache instanceof RedisHashCache) {
+				statisticsMap.put(it, ((RedisHashCache) cache).getTierStatistics());
+			}
+		});
+
+		return Collections.unmodifiableMap(statisticsMap);
+	}
+
+	/**
+	 * @return 是否开启了一级缓存
+	 */
+	public boolean isNearCacheEnabled() {
+		return nearCacheMaximumSize > 0 && nearCacheChannel != null;
+	}
+
+	/**
+	 * @return 一级缓存失效消息的频道, 未开启一级缓存时返回 null
+	 */
+	@Nullable
+	public String getNearCacheChannel() {
+		return nearCacheChannel;
+	}
+
+	/**
+	 * 处理集群中其他节点发布的一级缓存失效消息
+	 *
+	 * @param message 一级缓存失效消息
+	 */
+	void onNearCacheInvalidation(NearCacheInvalidationMessage message) {
+		if (nodeId.equals(message.getNodeId()) || message.getCacheName() == null) {
+			return;
+		}
+		Cache cache = lookupCache(message.getCacheName());
+		if (cache instanceof RedisHashCache) {
+			((RedisHashCache) cache).onNearCacheInvalidation(message);
+		}
+	}
+
+	@Override
+	public void destroy() {
+		cacheWriter.shutdownClean();
+	}
+
 	/**
 	 * Configuration hook for creating {@link RedisCache} with given name and {@code cacheConfig}.
 	 *
@@ -286,7 +366,13 @@ public class RedisHashCacheManager extends AbstractTransactionSupportingCacheMan
 	 * @return never {@literal null}.
 	 */
 	protected RedisCache createRedisCache(String name, @Nullable RedisCacheConfiguration cacheConfig) {
-		return new RedisHashCache(name, cacheWriter, cacheConfig != null ? cacheConfig : defaultCacheConfig);
+		RedisHashCache cache = new RedisHashCache(name, cacheWriter,
+		                                          cacheConfig != null ? cacheConfig : defaultCacheConfig,
+		                                          loadLeaseTtl, generationRefreshInterval);
+		if (isNearCacheEnabled()) {
+			cache.enableNearCache(new NearCache(nearCacheMaximumSize, nearCacheTtl), nearCacheChannel, nodeId);
+		}
+		return cache;
 	}
 
 	/**
@@ -303,6 +389,15 @@ public class RedisHashCacheManager extends AbstractTransactionSupportingCacheMan
 		private RedisCacheConfiguration defaultCacheConfiguration = RedisCacheConfiguration.defaultCacheConfig();
 		private final Map<String, RedisCacheConfiguration> initialCaches = new LinkedHashMap<>();
 		private boolean enableTransactions;
+		private Duration loadLeaseTtl = Duration.ZERO;
+		private Duration generationRefreshInterval = Duration.ZERO;
+		private int cleanScanCount = RedisHashCacheWriter.DEFAULT_CLEAN_SCAN_COUNT;
+		private int cleanBatchSize = RedisHashCacheWriter.DEFAULT_CLEAN_BATCH_SIZE;
+		private boolean cleanUseUnlink = true;
+		private boolean cleanAsync = false;
+		private int nearCacheMaximumSize = 0;
+		private Duration nearCacheTtl = Duration.ZERO;
+		private String nearCacheChannel;
 		boolean allowInFlightCacheCreation = true;
 
 		private RedisHashCacheManagerBuilder() {}
@@ -430,6 +525,77 @@ public class RedisHashCacheManager extends AbstractTransactionSupportingCacheMan
 			return this;
 		}
 
+		/**
+		 * 设置加载租约的过期时间. 缓存未命中时, 集群中只有获取到租约(SETNX)的节点从数据源加载同一个 key, 其他节点等待缓存值.
+		 *
+		 * @param loadLeaseTtl 加载租约的过期时间, 为 0 时不使用加载租约. must not be {@literal null}.
+		 * @return this {@link RedisHashCacheManagerBuilder}.
+		 */
+		public RedisHashCacheManagerBuilder loadLeaseTtl(Duration loadLeaseTtl) {
+
+			Assert.notNull(loadLeaseTtl, "LoadLeaseTtl must not be null!");
+
+			this.loadLeaseTtl = loadLeaseTtl;
+			return this;
+		}
+
+		/**
+		 * 设置清除缓存({@link RedisCache#clear()})的参数, 清除时使用 SCAN 游标扫描 key, 并通过管道批量删除.
+		 *
+		 * @param scanCount SCAN 命令的 COUNT, 必须大于 0
+		 * @param batchSize 每次管道批量删除的 key 数量, 必须大于 0
+		 * @param useUnlink 是否使用 UNLINK(redis 4.0+) 删除, false 时使用 DEL
+		 * @param async     是否在后台线程异步清除
+		 * @return this {@link RedisHashCacheManagerBuilder}.
+		 */
+		public RedisHashCacheManagerBuilder cleanOptions(int scanCount, int batchSize, boolean useUnlink, boolean async) {
+
+			Assert.isTrue(scanCount > 0, "ScanCount must be greater than 0!");
+			Assert.isTrue(batchSize > 0, "BatchSize must be greater than 0!");
+
+			this.cleanScanCount = scanCount;
+			this.cleanBatchSize = batchSize;
+			this.cleanUseUnlink = useUnlink;
+			this.cleanAsync = async;
+			return this;
+		}
+
+		/**
+		 * 开启缓存版本号(generation). 缓存 key 中带有版本号, {@link RedisCache#clear()} 只需把版本号加 1(O(1)),
+		 * 旧版本的缓存由 SCAN 清除回收或自然过期.
+		 *
+		 * @param refreshInterval 本地缓存的版本号从 redis 刷新的间隔, 为 0 时不使用版本号. must not be {@literal null}.
+		 * @return this {@link RedisHashCacheManagerBuilder}.
+		 */
+		public RedisHashCacheManagerBuilder generationRefreshInterval(Duration refreshInterval) {
+
+			Assert.notNull(refreshInterval, "RefreshInterval must not be null!");
+
+			this.generationRefreshInterval = refreshInterval;
+			return this;
+		}
+
+		/**
+		 * 开启一级缓存({@link NearCache}). 一级缓存的 TTL 应小于 redis 缓存的 TTL, 写入或清除缓存时通过 redis 发布/订阅
+		 * 通知集群中的其他节点清除对应的一级缓存, 需要把 {@link NearCacheInvalidationListener} 注册到此频道.
+		 *
+		 * @param maximumSize 最多缓存的 redis key 数量, 必须大于 0
+		 * @param ttl         一级缓存的过期时间, 必须大于 0
+		 * @param channel     一级缓存失效消息的频道. must not be {@literal null}.
+		 * @return this {@link RedisHashCacheManagerBuilder}.
+		 */
+		public RedisHashCacheManagerBuilder nearCache(int maximumSize, Duration ttl, String channel) {
+
+			Assert.isTrue(maximumSize > 0, "MaximumSize must be greater than 0!");
+			Assert.isTrue(ttl != null && !ttl.isZero() && !ttl.isNegative(), "Ttl must be greater than 0!");
+			Assert.hasText(channel, "Channel must not be empty!");
+
+			this.nearCacheMaximumSize = maximumSize;
+			this.nearCacheTtl = ttl;
+			this.nearCacheChannel = channel;
+			return this;
+		}
+
 		/**
 		 * Disable in-flight {@link org.springframework.cache.Cache} creation for unconfigured caches.
 		 * <p />
@@ -481,6 +647,12 @@ public class RedisHashCacheManager extends AbstractTransactionSupportingCacheMan
 			                                                     allowInFlightCacheCreation);
 
 			cm.setTransactionAware(enableTransactions);
+			cm.loadLeaseTtl = loadLeaseTtl;
+			cm.generationRefreshInterval = generationRefreshInterval;
+			cm.nearCacheMaximumSize = nearCacheMaximumSize;
+			cm.nearCacheTtl = nearCacheTtl;
+			cm.nearCacheChannel = nearCacheChannel;
+			cacheWriter.configureClean(cleanScanCount, cleanBatchSize, cleanUseUnlink, cleanAsync);
 
 			return cm;
 		}
@@ -23,19 +23,32 @@
 
 package top.dcenter.ums.security.core.oauth.repository.jdbc.cache;
 
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.dao.PessimisticLockingFailureException;
 import org.springframework.data.redis.cache.RedisCacheWriter;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisClusterNode;
 import org.springframework.data.redis.connection.RedisConnection;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.connection.RedisStringCommands.SetOption;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.ScanOptions;
 import org.springframework.data.redis.core.types.Expiration;
 import org.springframework.lang.NonNull;
 import org.springframework.lang.Nullable;
 import org.springframework.util.Assert;
 
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.Function;
@@ -61,11 +74,44 @@ import static java.util.Optional.ofNullable;
  * @author Mark Paluch
  * @since 2.0
  */
+@Slf4j
 class RedisHashCacheWriter implements IRedisHashCacheWriter {
 
+	/**
+	 * SCAN 命令默认的 COUNT
+	 */
+	static final int DEFAULT_CLEAN_SCAN_COUNT = 1000;
+	/**
+	 * 每次管道批量删除的默认 key 数量
+	 */
+	static final int DEFAULT_CLEAN_BATCH_SIZE = 500;
+	/**
+	 * 管道中每个 UNLINK/DEL 命令的 key 数量
+	 */
+	private static final int KEYS_PER_DELETE_COMMAND = 100;
+
+	/**
+	 * 仅当租约的值与 token 相同时才删除租约, 防止删除其他节点获取的租约
+	 */
+	private static final byte[] RELEASE_LEASE_SCRIPT = ("if redis.call('get', KEYS[1]) == ARGV[1] then " +
+			"return redis.call('del', KEYS[1]) else return 0 end").getBytes(StandardCharsets.UTF_8);
+
 	private final RedisConnectionFactory connectionFactory;
 	private final Duration sleepTime;
 
+	private final CacheCleanStatistics cleanStatistics = new CacheCleanStatistics();
+	/**
+	 * 等待执行的异步清除任务(name|pattern), 相同的清除任务在执行前只保留一个
+	 */
+	private final Set<String> pendingCleans = ConcurrentHashMap.newKeySet();
+	private volatile int cleanScanCount = DEFAULT_CLEAN_SCAN_COUNT;
+	private volatile int cleanBatchSize = DEFAULT_CLEAN_BATCH_SIZE;
+	private volatile boolean cleanUseUnlink = true;
+	/**
+	 * 异步清除的执行器, 为 null 时同步清除
+	 */
+	private volatile ExecutorService cleanExecutor;
+
 	/**
 	 * @param connectionFactory must not be {@literal null}.
 	 */
@@ -237,38 +283,308 @@ class RedisHashCacheWriter implements IRedisHashCacheWriter {
 
 	}
 
+	/**
+	 * 使用 SCAN 游标(非阻塞)扫描匹配 pattern 的 key, 并通过管道批量 UNLINK(或 DEL), 不使用会阻塞 redis 的 KEYS 命令.
+	 * 开启异步清除时提交到后台线程执行, 相同的 name 与 pattern 在执行前只保留一个清除任务.
+	 */
 	@Override
 	public void clean(@NonNull String name, @NonNull byte[] pattern) {
 
 		Assert.notNull(name, "Name must not be null!");
 		Assert.notNull(pattern, "Pattern must not be null!");
 
-		execute(name, connection -> {
+		ExecutorService executor = this.cleanExecutor;
+		if (executor == null) {
+			doClean(name, pattern);
+			return;
+		}
+
+		String taskKey = name + "|" + new String(pattern, StandardCharsets.UTF_8);
+		if (!pendingCleans.add(taskKey)) {
+			log.debug("cache [{}] clean [{}] is already pending", name, taskKey);
+			return;
+		}
+		try {
+			executor.execute(() -> {
+				pendingCleans.remove(taskKey);
+				try {
+					doClean(name, pattern);
+				}
+				catch (Exception e) {
+					log.error("cache [{}] async clean failure: pattern={}", name, taskKey, e);
+				}
+			});
+		}
+		catch (RejectedExecutionException e) {
+			pendingCleans.remove(taskKey);
+			throw e;
+		}
+	}
+
+	/**
+	 * 设置清除缓存的参数
+	 *
+	 * @param scanCount SCAN 命令的 COUNT, 必须大于 0
+	 * @param batchSize 每次管道批量删除的 key 数量, 必须大于 0
+	 * @param useUnlink 是否使用 UNLINK(redis 4.0+) 删除, false 时使用 DEL
+	 * @param async     是否异步清除
+	 */
+	synchronized void configureClean(int scanCount, int batchSize, boolean useUnlink, boolean async) {
+
+		Assert.isTrue(scanCount > 0, "ScanCount must be greater than 0!");
+		Assert.isTrue(batchSize > 0, "BatchSize must be greater than 0!");
+
+		this.cleanScanCount = scanCount;
+		this.cleanBatchSize = batchSize;
+		this.cleanUseUnlink = useUnlink;
+		if (async && this.cleanExecutor == null) {
+			this.cleanExecutor = Executors.newSingleThreadExecutor(r -> {
+				Thread thread = new Thread(r, "ums-redis-hash-cache-clean");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		else if (!async && this.cleanExecutor != null) {
+			this.cleanExecutor.shutdown();
+			this.cleanExecutor = null;
+		}
+	}
+
+	/**
+	 * 关闭异步清除的执行器
+	 */
+	synchronized void shutdownClean() {
+		if (this.cleanExecutor != null) {
+			this.cleanExecutor.shutdown();
+			this.cleanExecutor = null;
+		}
+	}
 
-			boolean wasLocked = false;
+	/**
+	 * @return 清除缓存的统计信息
+	 */
+	CacheCleanStatistics getCleanStatistics() {
+		return cleanStatistics;
+	}
 
+	/**
+	 * 在同一个连接上以管道方式执行命令, 不检查缓存锁.
+	 *
+	 * @param commands 管道中执行的命令
+	 */
+	void executePipelined(List<Consumer<RedisConnection>> commands) {
+		if (commands.isEmpty()) {
+			return;
+		}
+		executeLockFree(connection -> {
+			connection.openPipeline();
 			try {
+				commands.forEach(command -> command.accept(connection));
+			} finally {
+				connection.closePipeline();
+			}
+		});
+	}
 
-				if (isLockingCacheWriter()) {
-					doLock(name, connection);
-					wasLocked = true;
+	/**
+	 * 管道中写入缓存的命令
+	 */
+	static Consumer<RedisConnection> putCommand(byte[] key, byte[] value, @Nullable Duration ttl) {
+		return connection -> {
+			if (shouldExpireWithin(ttl)) {
+				connection.set(key, value, Expiration.from(ttl.toMillis(), TimeUnit.MILLISECONDS), SetOption.upsert());
+			} else {
+				connection.set(key, value);
+			}
+		};
+	}
+
+	/**
+	 * 管道中写入 hash 缓存的命令
+	 */
+	static Consumer<RedisConnection> hPutCommand(byte[] key, byte[] field, byte[] value, @Nullable Duration ttl) {
+		return connection -> {
+			connection.hSet(key, field, value);
+			if (shouldExpireWithin(ttl)) {
+				connection.expire(key, ttl.getSeconds());
+			}
+		};
+	}
+
+	/**
+	 * 管道中删除缓存的命令
+	 */
+	static Consumer<RedisConnection> removeCommand(byte[] key) {
+		return connection -> connection.del(key);
+	}
+
+	/**
+	 * 管道中删除 hash 缓存的命令
+	 */
+	static Consumer<RedisConnection> hRemoveCommand(byte[] key, byte[] field) {
+		return connection -> connection.hDel(key, field);
+	}
+
+	/**
+	 * 发布消息
+	 *
+	 * @param channel 频道
+	 * @param message 消息
+	 */
+	void publish(byte[] channel, byte[] message) {
+		executeLockFree(connection -> connection.publish(channel, message));
+	}
+
+	/**
+	 * 获取缓存的版本号(generation)
+	 *
+	 * @param name          the name of the cache.
+	 * @param generationKey 版本号的 key
+	 * @return 版本号, 不存在时返回 0
+	 */
+	long getGeneration(String name, byte[] generationKey) {
+		byte[] value = execute(name, connection -> connection.get(generationKey));
+		if (value == null) {
+			return 0L;
+		}
+		return Long.parseLong(new String(value, StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * 缓存的版本号(generation)加 1
+	 *
+	 * @param name          the name of the cache.
+	 * @param generationKey 版本号的 key
+	 * @return 新的版本号
+	 */
+	long incrementGeneration(String name, byte[] generationKey) {
+		return ofNullable(execute(name, connection -> connection.incr(generationKey))).orElse(0L);
+	}
+
+	private void doClean(String name, byte[] pattern) {
+
+		final long start = System.nanoTime();
+		final long[] counts = new long[2];
+		boolean success = false;
+		try {
+			execute(name, connection -> {
+
+				boolean wasLocked = false;
+
+				try {
+
+					if (isLockingCacheWriter()) {
+						doLock(name, connection);
+						wasLocked = true;
+					}
+
+					scanAndDelete(name, connection, pattern, counts);
+				} finally {
+
+					if (wasLocked && isLockingCacheWriter()) {
+						doUnlock(name, connection);
+					}
 				}
 
-				byte[][] keys = ofNullable(connection.keys(pattern)).orElse(Collections.emptySet())
-						.toArray(new byte[0][]);
+				return "OK";
+			});
+			success = true;
+		}
+		finally {
+			long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+			cleanStatistics.record(counts[0], counts[1], millis, success);
+			log.debug("cache [{}] clean finished: success={}, scanned={}, deleted={}, time={}ms",
+			          name, success, counts[0], counts[1], millis);
+		}
+	}
 
-				if (keys.length > 0) {
-					connection.del(keys);
+	/**
+	 * SCAN 扫描匹配的 key, 每满 cleanBatchSize 个 key 通过另一个连接批量删除. 集群时分别扫描每个 master 节点.
+	 * @param counts    counts[0] 为扫描到的 key 数量, counts[1] 为删除的 key 数量
+	 */
+	private void scanAndDelete(String name, RedisConnection connection, byte[] pattern, long[] counts) {
+
+		ScanOptions options = ScanOptions.scanOptions()
+		                                 .match(new String(pattern, StandardCharsets.UTF_8))
+		                                 .count(this.cleanScanCount)
+		                                 .build();
+		if (connection instanceof RedisClusterConnection) {
+			// 集群连接不支持无节点的 SCAN
+			RedisClusterConnection clusterConnection = (RedisClusterConnection) connection;
+			for (RedisClusterNode node : clusterConnection.clusterGetNodes()) {
+				if (node.isMaster()) {
+					scanAndDelete(name, clusterConnection.scan(node, options), counts);
 				}
-			} finally {
+			}
+			return;
+		}
+		scanAndDelete(name, connection.scan(options), counts);
+	}
 
-				if (wasLocked && isLockingCacheWriter()) {
-					doUnlock(name, connection);
+	private void scanAndDelete(String name, Cursor<byte[]> cursor, long[] counts) {
+
+		final int batchSize = this.cleanBatchSize;
+		List<byte[]> batch = new ArrayList<>(batchSize);
+		try {
+			while (cursor.hasNext()) {
+				batch.add(cursor.next());
+				counts[0]++;
+				if (batch.size() >= batchSize) {
+					counts[1] += deleteInPipeline(batch);
+					batch.clear();
+					log.debug("cache [{}] clean progress: scanned={}, deleted={}", name, counts[0], counts[1]);
 				}
 			}
+		}
+		finally {
+			try {
+				cursor.close();
+			}
+			catch (IOException e) {
+				log.warn("cache [{}] close scan cursor failure", name, e);
+			}
+		}
 
-			return "OK";
-		});
+		if (!batch.isEmpty()) {
+			counts[1] += deleteInPipeline(batch);
+		}
+	}
+
+	private long deleteInPipeline(List<byte[]> keys) {
+
+		final boolean useUnlink = this.cleanUseUnlink;
+		RedisConnection connection = connectionFactory.getConnection();
+		//noinspection TryFinallyCanBeTryWithResources
+		try {
+			if (connection instanceof RedisClusterConnection) {
+				// 集群连接的多 key 删除按 slot 分发, 不使用管道
+				long deleted = 0L;
+				for (int i = 0, size = keys.size(); i < size; i += KEYS_PER_DELETE_COMMAND) {
+					byte[][] subKeys = keys.subList(i, Math.min(i + KEYS_PER_DELETE_COMMAND, size)).toArray(new byte[0][]);
+					Long result = useUnlink ? connection.unlink(subKeys) : connection.del(subKeys);
+					deleted += ofNullable(result).orElse(0L);
+				}
+				return deleted;
+			}
+			connection.openPipeline();
+			for (int i = 0, size = keys.size(); i < size; i += KEYS_PER_DELETE_COMMAND) {
+				byte[][] subKeys = keys.subList(i, Math.min(i + KEYS_PER_DELETE_COMMAND, size)).toArray(new byte[0][]);
+				if (useUnlink) {
+					connection.unlink(subKeys);
+				} else {
+					connection.del(subKeys);
+				}
+			}
+			long deleted = 0L;
+			for (Object result : connection.closePipeline()) {
+				if (result instanceof Long) {
+					deleted += (Long) result;
+				}
+			}
+			return deleted;
+		} finally {
+			connection.close();
+		}
 	}
 
 	/**
@@ -291,6 +607,48 @@ class RedisHashCacheWriter implements IRedisHashCacheWriter {
 		executeLockFree(connection -> doUnlock(name, connection));
 	}
 
+	/**
+	 * 尝试获取加载缓存值的租约(SET key token NX PX ttl), 用于集群中只有一个节点从数据源加载同一个热点 key.
+	 *
+	 * @param name     the name of the cache.
+	 * @param leaseKey 租约 key
+	 * @param token    租约持有者的标识, 释放租约时校验
+	 * @param ttl      租约的过期时间, 防止持有者宕机后租约无法释放
+	 * @return 是否获取到租约
+	 */
+	boolean tryLease(String name, byte[] leaseKey, byte[] token, Duration ttl) {
+
+		Assert.notNull(leaseKey, "LeaseKey must not be null!");
+		Assert.notNull(token, "Token must not be null!");
+		Assert.isTrue(shouldExpireWithin(ttl), "Lease ttl must be positive!");
+
+		return execute(name, connection -> ofNullable(connection.set(leaseKey, token,
+		                                                             Expiration.from(ttl.toMillis(), TimeUnit.MILLISECONDS),
+		                                                             SetOption.ifAbsent())).orElse(Boolean.FALSE));
+	}
+
+	/**
+	 * 租约是否存在
+	 *
+	 * @param name     the name of the cache.
+	 * @param leaseKey 租约 key
+	 * @return 租约是否存在
+	 */
+	boolean hasLease(String name, byte[] leaseKey) {
+		return execute(name, connection -> ofNullable(connection.exists(leaseKey)).orElse(Boolean.FALSE));
+	}
+
+	/**
+	 * 释放租约, 只有租约的持有者才能释放.
+	 *
+	 * @param name     the name of the cache.
+	 * @param leaseKey 租约 key
+	 * @param token    租约持有者的标识
+	 */
+	void releaseLease(String name, byte[] leaseKey, byte[] token) {
+		executeLockFree(connection -> connection.eval(RELEASE_LEASE_SCRIPT, ReturnType.INTEGER, 1, leaseKey, token));
+	}
+
 	private Boolean doLock(String name, RedisConnection connection) {
 		return connection.setNX(createCacheLockKey(name), new byte[0]);
 	}
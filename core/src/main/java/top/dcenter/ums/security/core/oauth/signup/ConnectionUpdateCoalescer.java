@@ -0,0 +1,440 @@
+/*
+ * MIT License
+ * Copyright (c) 2020-2029 YongWu zheng (dcenter.top and gitee.com/pcore and github.com/ZeroOrInfinity)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package top.dcenter.ums.security.core.oauth.signup;
+
+import lombok.extern.slf4j.Slf4j;
+import me.zhyd.oauth.model.AuthToken;
+import me.zhyd.oauth.model.AuthUser;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import top.dcenter.ums.security.core.oauth.entity.AuthTokenPo;
+import top.dcenter.ums.security.core.oauth.entity.ConnectionData;
+import top.dcenter.ums.security.core.oauth.justauth.request.Auth2DefaultRequest;
+import top.dcenter.ums.security.core.oauth.properties.Auth2Properties;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 第三方授权登录成功后, 更新第三方用户信息与 token 的合并器:<br>
+ * 1. 变化检测: 计算第三方用户信息与 token 的指纹(不含相对有效期 expireIn), 指纹未变化且 token 未过期时跳过更新,
+ * 首次登录时(无指纹缓存)与数据库中的第三方登录记录比较.<br>
+ * 2. 合并更新: 同一第三方用户在 {@link Auth2Properties#getConnectionUpdateCoalesceWindow()} 内的多次更新合并为窗口结束时的一次更新,
+ * 以最后一次登录的信息为准.<br>
+ * 指纹缓存为本地缓存, 分布式应用时各节点独立判断, 最坏情况为多一次更新. 更新由 updateConnectionTaskExecutor 异步执行.
+ * @author YongWu zheng
+ * @version V2.0  Created by 2020/12/4 10:18
+ */
+@Slf4j
+public class ConnectionUpdateCoalescer implements DisposableBean {
+
+    private final ConnectionService connectionService;
+    private final ExecutorService updateConnectionTaskExecutor;
+    private final long windowMillis;
+    private final int maximumSize;
+    /**
+     * http 超时时间(HttpConfigProperties.timeout), 单位毫秒, 用于计算 token 过期时间
+     */
+    private final Integer timeout;
+    private final Map<String, ConnectionState> stateMap;
+    /**
+     * 合并窗口结束时执行更新的调度器, windowMillis 为 0 时为 null
+     */
+    private final ScheduledExecutorService flushScheduler;
+
+    private final AtomicLong submittedCount = new AtomicLong(0L);
+    private final AtomicLong skippedCount = new AtomicLong(0L);
+    private final AtomicLong coalescedCount = new AtomicLong(0L);
+    private final AtomicLong writtenCount = new AtomicLong(0L);
+    private final AtomicLong failureCount = new AtomicLong(0L);
+
+    public ConnectionUpdateCoalescer(@NonNull ConnectionService connectionService,
+                                     @NonNull ExecutorService updateConnectionTaskExecutor,
+                                     @NonNull Auth2Properties auth2Properties) {
+        this.connectionService = connectionService;
+        this.updateConnectionTaskExecutor = updateConnectionTaskExecutor;
+        final Duration window = auth2Properties.getConnectionUpdateCoalesceWindow();
+        this.windowMillis = window == null || window.isNegative() ? 0L : window.toMillis();
+        this.maximumSize = Math.max(1, auth2Properties.getConnectionUpdateFingerprintCacheSize());
+        this.timeout = auth2Properties.getProxy().getHttpConfig().getTimeout();
+        this.stateMap = new ConcurrentHashMap<>(Math.min(this.maximumSize, 1024));
+        if (this.windowMillis > 0L) {
+            final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+                final Thread thread = new Thread(r, "connectionUpdateCoalesce");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.setRemoveOnCancelPolicy(true);
+            this.flushScheduler = scheduler;
+        }
+        else {
+            this.flushScheduler = null;
+        }
+    }
+
+    /**
+     * 提交第三方用户信息与 token 的更新: 未变化时跳过, 合并窗口内的重复更新延迟到窗口结束时合并执行, 否则立即异步更新.
+     * @param authUser  第三方授权登录返回的用户信息
+     * @param data      数据库中的第三方登录记录
+     */
+    public void submit(@NonNull AuthUser authUser, @NonNull ConnectionData data) {
+        this.submittedCount.incrementAndGet();
+        final String key = data.getProviderId() + ":" + data.getProviderUserId() + ":" + data.getUserId();
+        final long now = System.currentTimeMillis();
+        final PendingUpdate update = new PendingUpdate(authUser, data, fingerprint(authUser), this.timeout);
+        final Decision[] decision = new Decision[1];
+
+        this.stateMap.compute(key, (k, state) -> {
+            if (state == null) {
+                state = new ConnectionState();
+                if (isSameAsStored(authUser, data, now)) {
+                    // 与数据库中的记录相同, 记录指纹
+                    state.fingerprint = update.fingerprint;
+                    state.expireTime = data.getExpireTime();
+                    decision[0] = Decision.SKIP;
+                    return state;
+                }
+            }
+            else if (Arrays.equals(state.fingerprint, update.fingerprint) && isNotExpired(state.expireTime, now)) {
+                // 与最后一次更新相同, 丢弃窗口内等待合并的更新
+                state.pending = null;
+                decision[0] = Decision.SKIP;
+                return state;
+            }
+
+            if (state.pending != null) {
+                // 已有等待合并的更新, 以最新的信息为准
+                state.pending = update;
+                decision[0] = Decision.COALESCED;
+            }
+            else if (now - state.lastWriteTime < this.windowMillis) {
+                state.pending = update;
+                decision[0] = Decision.SCHEDULE;
+            }
+            else {
+                state.markWritten(update);
+                decision[0] = Decision.WRITE;
+            }
+            return state;
+        });
+
+        switch (decision[0]) {
+            case SKIP:
+                this.skippedCount.incrementAndGet();
+                break;
+            case COALESCED:
+                this.coalescedCount.incrementAndGet();
+                break;
+            case SCHEDULE:
+                scheduleFlush(key);
+                break;
+            case WRITE:
+                execute(key, update);
+                break;
+            default:
+                break;
+        }
+
+        if (this.stateMap.size() > this.maximumSize) {
+            evict(now);
+        }
+    }
+
+    private void scheduleFlush(@NonNull String key) {
+        final ConnectionState state = this.stateMap.get(key);
+        final long delay = state == null ? 0L : Math.max(0L, state.lastWriteTime + this.windowMillis - System.currentTimeMillis());
+        try {
+            //noinspection ConstantConditions
+            this.flushScheduler.schedule(() -> flush(key), delay, TimeUnit.MILLISECONDS);
+        }
+        catch (Exception e) {
+            // 调度器已关闭, 直接更新
+            flush(key);
+        }
+    }
+
+    /**
+     * 合并窗口结束, 执行等待合并的更新
+     * @param key   第三方用户的 key
+     */
+    private void flush(@NonNull String key) {
+        final PendingUpdate[] holder = new PendingUpdate[1];
+        this.stateMap.computeIfPresent(key, (k, state) -> {
+            final PendingUpdate pending = state.pending;
+            if (pending != null) {
+                state.pending = null;
+                state.markWritten(pending);
+                holder[0] = pending;
+            }
+            return state;
+        });
+        if (holder[0] != null) {
+            execute(key, holder[0]);
+        }
+    }
+
+    private void execute(@NonNull String key, @NonNull PendingUpdate update) {
+        try {
+            // 异步更新第三方授权登录用户信息与 token 信息, 拒绝策略为: CALLER_RUNS
+            this.updateConnectionTaskExecutor.execute(() -> write(key, update));
+        }
+        catch (Exception e) {
+            log.error(String.format("异步更新第三方授权登录用户信息与 token 信息失败: %s, 再次同步更新", e.getMessage()), e);
+            write(key, update);
+        }
+    }
+
+    private void write(@NonNull String key, @NonNull PendingUpdate update) {
+        try {
+            this.connectionService.updateUserConnection(update.authUser, update.data);
+            this.writtenCount.incrementAndGet();
+        }
+        catch (Exception e) {
+            this.failureCount.incrementAndGet();
+            // 更新失败, 清除指纹, 下次登录时重新更新
+            this.stateMap.computeIfPresent(key, (k, state) -> {
+                if (state.fingerprint == update.fingerprint) {
+                    state.fingerprint = null;
+                }
+                return state;
+            });
+            log.error(String.format("更新第三方授权登录用户信息与 token 信息失败: providerId=%s, providerUserId=%s, userId=%s, error=%s",
+                                    update.data.getProviderId(), update.data.getProviderUserId(),
+                                    update.data.getUserId(), e.getMessage()), e);
+        }
+    }
+
+    /**
+     * 指纹缓存超过最大数量时, 淘汰合并窗口外且没有等待合并更新的记录, 淘汰到最大数量的 3/4
+     * @param now   当前时间
+     */
+    private void evict(long now) {
+        final int target = this.maximumSize - (this.maximumSize >> 2);
+        boolean ignoreWindow = false;
+        for (int round = 0; round < 2 && this.stateMap.size() > target; round++) {
+            final Iterator<String> iterator = this.stateMap.keySet().iterator();
+            while (iterator.hasNext() && this.stateMap.size() > target) {
+                final boolean inWindow = !ignoreWindow;
+                this.stateMap.computeIfPresent(iterator.next(), (k, state) -> {
+                    if (state.pending != null || (inWindow && now - state.lastWriteTime < this.windowMillis)) {
+                        return state;
+                    }
+                    return null;
+                });
+            }
+            ignoreWindow = true;
+        }
+    }
+
+    /**
+     * 第三方用户信息与 token 是否与数据库中的记录相同且 token 未过期
+     */
+    private static boolean isSameAsStored(@NonNull AuthUser authUser, @NonNull ConnectionData data, long now) {
+        final AuthToken token = authUser.getToken();
+        return token != null
+                && Objects.equals(authUser.getUsername(), data.getDisplayName())
+                && Objects.equals(authUser.getAvatar(), data.getImageUrl())
+                && Objects.equals(authUser.getBlog(), data.getProfileUrl())
+                && Objects.equals(token.getAccessToken(), data.getAccessToken())
+                && Objects.equals(token.getRefreshToken(), data.getRefreshToken())
+                && isNotExpired(data.getExpireTime(), now);
+    }
+
+    private static boolean isNotExpired(@Nullable Long expireTime, long now) {
+        // 无过期时间为 -1
+        return expireTime != null && (expireTime < 0L || expireTime > now);
+    }
+
+    /**
+     * 计算第三方用户信息与 token 的指纹(SHA-256), 不含相对有效期 expireIn 与 refreshTokenExpireIn
+     * @param authUser  第三方授权登录返回的用户信息
+     * @return  指纹
+     */
+    @NonNull
+    static byte[] fingerprint(@NonNull AuthUser authUser) {
+        final StringBuilder sb = new StringBuilder(512);
+        append(sb, authUser.getUuid());
+        append(sb, authUser.getUsername());
+        append(sb, authUser.getAvatar());
+        append(sb, authUser.getBlog());
+        final AuthToken token = authUser.getToken();
+        if (token != null) {
+            append(sb, token.getAccessToken());
+            append(sb, token.getRefreshToken());
+            append(sb, token.getUid());
+            append(sb, token.getOpenId());
+            append(sb, token.getAccessCode());
+            append(sb, token.getUnionId());
+            append(sb, token.getScope());
+            append(sb, token.getTokenType());
+            append(sb, token.getIdToken());
+            append(sb, token.getMacAlgorithm());
+            append(sb, token.getMacKey());
+            append(sb, token.getCode());
+            append(sb, token.getOauthToken());
+            append(sb, token.getOauthTokenSecret());
+            append(sb, token.getUserId());
+            append(sb, token.getScreenName());
+            append(sb, token.getOauthCallbackConfirmed());
+        }
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(sb.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        catch (NoSuchAlgorithmException e) {
+            // JDK 必须支持 SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void append(@NonNull StringBuilder sb, @Nullable Object value) {
+        // 字段分隔符为 \u0000, null 值标记为 \u0001
+        sb.append(value == null ? "\u0001" : value.toString()).append('\u0000');
+    }
+
+    @Override
+    public void destroy() {
+        if (this.flushScheduler != null) {
+            this.flushScheduler.shutdownNow();
+        }
+        // 同步执行所有等待合并的更新
+        for (String key : this.stateMap.keySet()) {
+            final PendingUpdate[] holder = new PendingUpdate[1];
+            this.stateMap.computeIfPresent(key, (k, state) -> {
+                holder[0] = state.pending;
+                state.pending = null;
+                return state;
+            });
+            if (holder[0] != null) {
+                write(key, holder[0]);
+            }
+        }
+    }
+
+    public long getSubmittedCount() {
+        return this.submittedCount.get();
+    }
+
+    public long getSkippedCount() {
+        return this.skippedCount.get();
+    }
+
+    public long getCoalescedCount() {
+        return this.coalescedCount.get();
+    }
+
+    public long getWrittenCount() {
+        return this.writtenCount.get();
+    }
+
+    public long getFailureCount() {
+        return this.failureCount.get();
+    }
+
+    public int size() {
+        return this.stateMap.size();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ConnectionUpdateCoalescer{size=%d, submitted=%d, skipped=%d, coalesced=%d, written=%d, failure=%d}",
+                             size(), getSubmittedCount(), getSkippedCount(), getCoalescedCount(),
+                             getWrittenCount(), getFailureCount());
+    }
+
+    private enum Decision {
+        /**
+         * 未变化, 跳过更新
+         */
+        SKIP,
+        /**
+         * 合并到已有的等待合并的更新
+         */
+        COALESCED,
+        /**
+         * 在合并窗口内, 延迟到窗口结束时更新
+         */
+        SCHEDULE,
+        /**
+         * 立即更新
+         */
+        WRITE
+    }
+
+    /**
+     * 第三方用户的更新状态, 只在 {@link ConcurrentHashMap#compute} 中修改
+     */
+    private static final class ConnectionState {
+        /**
+         * 最后一次更新(或与数据库记录相同)的指纹, 更新失败时为 null
+         */
+        private byte[] fingerprint;
+        /**
+         * 最后一次更新的 token 过期时间, 基于 1970-01-01T00:00:00Z, 无过期时间为 -1
+         */
+        private Long expireTime;
+        private long lastWriteTime;
+        private PendingUpdate pending;
+
+        private void markWritten(@NonNull PendingUpdate update) {
+            this.fingerprint = update.fingerprint;
+            this.expireTime = update.expireTime;
+            this.lastWriteTime = System.currentTimeMillis();
+        }
+    }
+
+    private static final class PendingUpdate {
+        private final AuthUser authUser;
+        private final ConnectionData data;
+        private final byte[] fingerprint;
+        /**
+         * token 过期时间, 与 {@link ConnectionService#updateUserConnection(AuthUser, ConnectionData)} 保存的过期时间计算方式相同,
+         * 用于判断 token 是否仍有效
+         */
+        private final Long expireTime;
+
+        private PendingUpdate(@NonNull AuthUser authUser, @NonNull ConnectionData data,
+                              @NonNull byte[] fingerprint, @NonNull Integer timeout) {
+            this.authUser = authUser;
+            this.data = data;
+            this.fingerprint = fingerprint;
+            final AuthToken token = authUser.getToken();
+            final AuthTokenPo authTokenPo = new AuthTokenPo();
+            Auth2DefaultRequest.expireIn2Timestamp(timeout, token == null ? null : token.getExpireIn(), authTokenPo);
+            this.expireTime = authTokenPo.getExpireTime();
+        }
+    }
+}
@@ -50,27 +50,30 @@ public class RolePermissionsServiceAspect implements ApplicationContextAware {
     public void handlerUpdateRolesAuthoritiesMethod(JoinPoint jp, boolean result, Long roleId, Long... resourceIds) {
         if (jp.getTarget() instanceof RolePermissionsService) {
             if (result) {
-                applicationContext.publishEvent(new UpdateRolesAuthoritiesEvent(true, ResourcesType.ROLE));
+                applicationContext.publishEvent(new UpdateRolesAuthoritiesEvent(true, ResourcesType.ROLE,
+                                                                                roleId, null, resourceIds));
             }
         }
     }
 
-    @AfterReturning(pointcut = "execution(boolean *..updateAuthoritiesOfAllTenant(..)) && args(tenantAuthority, roleId, resourceIds)",
+    @AfterReturning(pointcut = "execution(boolean *..updateResourcesOfTenant(..)) && args(tenantAuthority, roleId, resourceIds)",
                     returning = "result", argNames = "jp, result, tenantAuthority, roleId, resourceIds")
     public void handlerUpdateTenantsAuthoritiesMethod(JoinPoint jp, boolean result, String tenantAuthority, Long roleId, Long... resourceIds) {
         if (jp.getTarget() instanceof RolePermissionsService) {
             if (result) {
-                applicationContext.publishEvent(new UpdateRolesAuthoritiesEvent(true, ResourcesType.TENANT));
+                applicationContext.publishEvent(new UpdateRolesAuthoritiesEvent(true, ResourcesType.TENANT,
+                                                                                roleId, tenantAuthority, resourceIds));
             }
         }
     }
 
-    @AfterReturning(pointcut = "execution(boolean *..updateAuthoritiesOfAllScopes(..)) && args(scopeAuthority, roleId, resourceIds)",
+    @AfterReturning(pointcut = "execution(boolean *..updateResourcesOfScope(..)) && args(scopeAuthority, roleId, resourceIds)",
                     returning = "result", argNames = "jp, result, scopeAuthority, roleId, resourceIds")
     public void handlerUpdateScopesAuthoritiesMethod(JoinPoint jp, boolean result, String scopeAuthority, Long roleId, Long... resourceIds) {
         if (jp.getTarget() instanceof RolePermissionsService) {
             if (result) {
-                applicationContext.publishEvent(new UpdateRolesAuthoritiesEvent(true, ResourcesType.SCOPE));
+                applicationContext.publishEvent(new UpdateRolesAuthoritiesEvent(true, ResourcesType.SCOPE,
+                                                                                roleId, scopeAuthority, resourceIds));
             }
         }
     }
@@ -26,17 +26,25 @@ package top.dcenter.ums.security.core.permission.config;
 import org.springframework.boot.autoconfigure.AutoConfigureAfter;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.data.redis.RedisAutoConfiguration;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.EnableAspectJAutoProxy;
 import org.springframework.core.annotation.Order;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.scheduling.annotation.EnableAsync;
 import top.dcenter.ums.security.core.api.permission.service.UpdateAndCacheAuthoritiesService;
 import top.dcenter.ums.security.core.api.permission.service.UriAuthorizeService;
 import top.dcenter.ums.security.core.auth.config.SecurityAutoConfiguration;
 import top.dcenter.ums.security.core.permission.aspect.RolePermissionsServiceAspect;
 import top.dcenter.ums.security.core.permission.evaluator.UriAuthoritiesPermissionEvaluator;
+import top.dcenter.ums.security.core.permission.listener.ClusterUpdateRolesAuthoritiesListener;
 import top.dcenter.ums.security.core.permission.listener.UpdateRolesAuthoritiesListener;
+import top.dcenter.ums.security.core.permission.properties.PermissionProperties;
 import top.dcenter.ums.security.core.permission.service.DefaultUriAuthorizeService;
 
 /**
@@ -50,13 +58,16 @@ import top.dcenter.ums.security.core.permission.service.DefaultUriAuthorizeServi
 @EnableAsync
 @EnableAspectJAutoProxy
 @Order(99)
-@AutoConfigureAfter({SecurityAutoConfiguration.class})
+@AutoConfigureAfter({SecurityAutoConfiguration.class, RedisAutoConfiguration.class})
 public class PermissionAutoConfiguration {
 
     @Bean
     @ConditionalOnBean(type = "top.dcenter.ums.security.core.api.permission.service.UpdateAndCacheAuthoritiesService")
-    public UpdateRolesAuthoritiesListener updateRolesAuthoritiesListener(UpdateAndCacheAuthoritiesService updateAndCacheAuthoritiesService) {
-        return new UpdateRolesAuthoritiesListener(updateAndCacheAuthoritiesService);
+    public UpdateRolesAuthoritiesListener updateRolesAuthoritiesListener(UpdateAndCacheAuthoritiesService updateAndCacheAuthoritiesService,
+                                                                         UriAuthorizeService uriAuthorizeService,
+                                                                         PermissionProperties permissionProperties) {
+        return new UpdateRolesAuthoritiesListener(updateAndCacheAuthoritiesService, uriAuthorizeService,
+                                                  permissionProperties.getUpdateCoalesceWindow());
     }
 
     @Bean
@@ -65,6 +76,28 @@ public class PermissionAutoConfiguration {
         return new RolePermissionsServiceAspect();
     }
 
+    @Bean
+    @ConditionalOnBean(type = {"top.dcenter.ums.security.core.api.permission.service.UpdateAndCacheAuthoritiesService",
+                               "org.springframework.data.redis.connection.RedisConnectionFactory"})
+    @ConditionalOnProperty(prefix = "ums.permission", name = "enable-cluster-update", havingValue = "true")
+    public ClusterUpdateRolesAuthoritiesListener clusterUpdateRolesAuthoritiesListener(RedisConnectionFactory redisConnectionFactory,
+                                                                                       PermissionProperties permissionProperties) {
+        return new ClusterUpdateRolesAuthoritiesListener(new StringRedisTemplate(redisConnectionFactory),
+                                                         permissionProperties);
+    }
+
+    @Bean
+    @ConditionalOnBean(type = "top.dcenter.ums.security.core.permission.listener.ClusterUpdateRolesAuthoritiesListener")
+    public RedisMessageListenerContainer permissionRedisMessageListenerContainer(RedisConnectionFactory redisConnectionFactory,
+                                                                                PermissionProperties permissionProperties,
+                                                                                ClusterUpdateRolesAuthoritiesListener clusterUpdateRolesAuthoritiesListener) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        container.addMessageListener(clusterUpdateRolesAuthoritiesListener,
+                                     new ChannelTopic(permissionProperties.getClusterUpdateChannel()));
+        return container;
+    }
+
     @Bean
     @ConditionalOnMissingBean(type = "top.dcenter.ums.security.core.api.permission.service.UriAuthorizeService")
     public UriAuthorizeService uriAuthorizeService() {
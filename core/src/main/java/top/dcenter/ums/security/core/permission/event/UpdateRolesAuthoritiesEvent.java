@@ -25,10 +25,13 @@ package top.dcenter.ums.security.core.permission.event;
 
 import lombok.Getter;
 import org.springframework.context.ApplicationEvent;
+import org.springframework.lang.Nullable;
 import top.dcenter.ums.security.core.permission.enums.ResourcesType;
 
 /**
- * 更新角色权限事件
+ * 更新角色权限事件. <br>
+ * roleId 与 authority(多租户权限或 scope 权限) 表示更新的范围, 为 null 时表示更新此 {@link ResourcesType} 的所有角色权限;
+ * resourceIds 为角色(roleId)更新后所拥有的所有资源 Ids.
  * @author YongWu zheng
  * @version V1.0  Created by 2020/10/2 19:14
  */
@@ -37,13 +40,81 @@ public class UpdateRolesAuthoritiesEvent extends ApplicationEvent {
 
     @Getter
     private final ResourcesType type;
+    /**
+     * 更新的角色 Id, 可以为 null
+     */
+    @Getter
+    private final Long roleId;
+    /**
+     * 更新的多租户权限(如: TENANT_110110)或 scope 权限(如: SCOPE_read), 可以为 null
+     */
+    @Getter
+    private final String authority;
+    /**
+     * 角色(roleId)更新后所拥有的资源 Ids, 可以为 null
+     */
+    @Getter
+    private final Long[] resourceIds;
+    /**
+     * 是否为集群中其他节点发布的事件, 此事件不再向集群广播
+     */
+    @Getter
+    private final boolean remote;
+
     /**
      * Create a new {@code ApplicationEvent}.
      *
      * @param isUpdate 是否更新
+     * @param type     资源类型
      */
     public UpdateRolesAuthoritiesEvent(Boolean isUpdate, ResourcesType type) {
+        this(isUpdate, type, null, null, null, false);
+    }
+
+    /**
+     * Create a new {@code ApplicationEvent}.
+     *
+     * @param isUpdate  是否更新
+     * @param type      资源类型
+     * @param roleId    更新的角色 Id, 可以为 null
+     * @param authority 更新的多租户权限或 scope 权限, 可以为 null
+     */
+    public UpdateRolesAuthoritiesEvent(Boolean isUpdate, ResourcesType type,
+                                       @Nullable Long roleId, @Nullable String authority) {
+        this(isUpdate, type, roleId, authority, null, false);
+    }
+
+    /**
+     * Create a new {@code ApplicationEvent}.
+     *
+     * @param isUpdate      是否更新
+     * @param type          资源类型
+     * @param roleId        更新的角色 Id, 可以为 null
+     * @param authority     更新的多租户权限或 scope 权限, 可以为 null
+     * @param resourceIds   角色(roleId)更新后所拥有的资源 Ids, 可以为 null
+     */
+    public UpdateRolesAuthoritiesEvent(Boolean isUpdate, ResourcesType type, @Nullable Long roleId,
+                                       @Nullable String authority, @Nullable Long[] resourceIds) {
+        this(isUpdate, type, roleId, authority, resourceIds, false);
+    }
+
+    /**
+     * Create a new {@code ApplicationEvent}.
+     *
+     * @param isUpdate    是否更新
+     * @param type        资源类型
+     * @param roleId      更新的角色 Id, 可以为 null
+     * @param authority   更新的多租户权限或 scope 权限, 可以为 null
+     * @param resourceIds 角色(roleId)更新后所拥有的资源 Ids, 可以为 null
+     * @param remote      是否为集群中其他节点发布的事件
+     */
+    public UpdateRolesAuthoritiesEvent(Boolean isUpdate, ResourcesType type, @Nullable Long roleId,
+                                       @Nullable String authority, @Nullable Long[] resourceIds, boolean remote) {
         super(isUpdate);
         this.type = type;
+        this.roleId = roleId;
+        this.authority = authority;
+        this.resourceIds = resourceIds;
+        this.remote = remote;
     }
 }
\ No newline at end of file
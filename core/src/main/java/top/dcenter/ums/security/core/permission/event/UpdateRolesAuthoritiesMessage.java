@@ -0,0 +1,73 @@
+/*
+ * MIT License
+ * Copyright (c) 2020-2029 YongWu zheng (dcenter.top and gitee.com/pcore and github.com/ZeroOrInfinity)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package top.dcenter.ums.security.core.permission.event;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+import top.dcenter.ums.security.core.permission.enums.ResourcesType;
+
+/**
+ * 集群中广播的角色权限更新消息, 通过 redis 发布/订阅传递, 接收节点转换为 {@link UpdateRolesAuthoritiesEvent}.
+ * @author YongWu zheng
+ * @version V2.0  Created by 2020/11/29 10:36
+ */
+@Getter
+@Setter
+@ToString
+public class UpdateRolesAuthoritiesMessage {
+
+    /**
+     * 发布消息的节点 Id
+     */
+    private String nodeId;
+    /**
+     * 全局递增的版本号
+     */
+    private Long version;
+    /**
+     * 资源类型
+     */
+    private ResourcesType type;
+    /**
+     * 更新的角色 Id, 可以为 null
+     */
+    private Long roleId;
+    /**
+     * 更新的多租户权限或 scope 权限, 可以为 null
+     */
+    private String authority;
+    /**
+     * 角色(roleId)更新后所拥有的资源 Ids, 可以为 null
+     */
+    private Long[] resourceIds;
+
+    /**
+     * 消息所对应的更新范围, 同一范围内只处理版本号更大的消息
+     * @return 如: ROLE:1:, TENANT::TENANT_110110
+     */
+    public String sliceKey() {
+        return type + ":" + (roleId == null ? "" : roleId) + ":" + (authority == null ? "" : authority);
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * MIT License
+ * Copyright (c) 2020-2029 YongWu zheng (dcenter.top and gitee.com/pcore and github.com/ZeroOrInfinity)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package top.dcenter.ums.security.core.permission.listener;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeansException;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.context.ApplicationListener;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import top.dcenter.ums.security.core.permission.event.UpdateRolesAuthoritiesEvent;
+import top.dcenter.ums.security.core.permission.event.UpdateRolesAuthoritiesMessage;
+import top.dcenter.ums.security.core.permission.properties.PermissionProperties;
+import top.dcenter.ums.security.core.util.MvcUtil;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 集群角色权限更新监听器: 通过 redis 发布/订阅在集群中同步 {@link UpdateRolesAuthoritiesEvent}. <br>
+ * 1. 本机发布的 {@link UpdateRolesAuthoritiesEvent} 通过 INCR 获取全局递增的版本号后广播到 redis 频道;
+ * 事件在事务中发布时, 在事务提交后才广播, 避免其他节点读取到未提交的数据, 事务回滚时不广播.<br>
+ * 2. 接收到其他节点的消息后, 以 remote 事件的方式在本机发布 {@link UpdateRolesAuthoritiesEvent},
+ * 由 {@link UpdateRolesAuthoritiesListener} 只更新消息所对应的(角色/多租户/SCOPE)范围.<br>
+ * 3. 同一范围内版本号不大于已处理版本号的消息(重复或乱序)直接丢弃, 因为更新时总是读取最新的数据.<br>
+ * 4. 已处理的版本号最多记录 {@value #MAX_SLICE_SIZE} 个范围, 超过时淘汰版本号落后最新版本号较多的范围; 被淘汰范围的过期消息
+ * 会被当作新消息处理, 只会多执行一次更新.
+ * @author YongWu zheng
+ * @version V2.0  Created by 2020/11/29 10:52
+ */
+@Slf4j
+public class ClusterUpdateRolesAuthoritiesListener implements ApplicationListener<UpdateRolesAuthoritiesEvent>,
+        MessageListener, ApplicationContextAware {
+
+    /**
+     * 最多记录已处理版本号的范围数量
+     */
+    static final int MAX_SLICE_SIZE = 1024;
+
+    /**
+     * 本节点 Id
+     */
+    private final String nodeId = UUID.randomUUID().toString();
+    private final StringRedisTemplate stringRedisTemplate;
+    private final PermissionProperties permissionProperties;
+    /**
+     * Map(sliceKey, 已处理的最大版本号)
+     */
+    private final Map<String, Long> sliceVersionMap = new ConcurrentHashMap<>(16);
+    /**
+     * 已处理的最大版本号
+     */
+    private final AtomicLong latestVersion = new AtomicLong(0L);
+
+    private ApplicationContext applicationContext;
+
+    public ClusterUpdateRolesAuthoritiesListener(StringRedisTemplate stringRedisTemplate,
+                                                 PermissionProperties permissionProperties) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.permissionProperties = permissionProperties;
+    }
+
+    @Override
+    public void onApplicationEvent(@NonNull UpdateRolesAuthoritiesEvent event) {
+        Object source = event.getSource();
+        if (event.isRemote() || !(source instanceof Boolean) || !((Boolean) source))
+        {
+            return;
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive())
+        {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    broadcast(event);
+                }
+            });
+            return;
+        }
+        broadcast(event);
+    }
+
+    /**
+     * 获取全局递增的版本号后广播角色权限更新消息
+     * @param event 本机发布的角色权限更新事件
+     */
+    private void broadcast(@NonNull UpdateRolesAuthoritiesEvent event) {
+        try {
+            final Long version = stringRedisTemplate.opsForValue()
+                                                    .increment(permissionProperties.getClusterUpdateVersionKey());
+            final UpdateRolesAuthoritiesMessage message = new UpdateRolesAuthoritiesMessage();
+            message.setNodeId(this.nodeId);
+            message.setVersion(version);
+            message.setType(event.getType());
+            message.setRoleId(event.getRoleId());
+            message.setAuthority(event.getAuthority());
+            message.setResourceIds(event.getResourceIds());
+            // 本机已更新, 记录版本号
+            acceptVersion(message);
+
+            stringRedisTemplate.convertAndSend(permissionProperties.getClusterUpdateChannel(),
+                                               MvcUtil.toJsonString(message));
+        }
+        catch (Exception e) {
+            log.error(String.format("广播角色权限更新消息失败: type=%s, roleId=%s, authority=%s, error=%s",
+                                    event.getType(), event.getRoleId(), event.getAuthority(), e.getMessage()), e);
+        }
+    }
+
+    @Override
+    public void onMessage(@NonNull Message message, @Nullable byte[] pattern) {
+        final String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        final UpdateRolesAuthoritiesMessage updateMessage = MvcUtil.json2Object(body, UpdateRolesAuthoritiesMessage.class);
+        if (updateMessage == null || updateMessage.getType() == null || updateMessage.getVersion() == null)
+        {
+            log.warn("忽略无效的角色权限更新消息: {}", body);
+            return;
+        }
+        // 本机发布的消息
+        if (this.nodeId.equals(updateMessage.getNodeId()))
+        {
+            return;
+        }
+        // 重复或乱序的消息
+        if (!acceptVersion(updateMessage))
+        {
+            log.debug("忽略过期的角色权限更新消息: {}", updateMessage);
+            return;
+        }
+
+        log.info("接收到角色权限更新消息: {}", updateMessage);
+        applicationContext.publishEvent(new UpdateRolesAuthoritiesEvent(true, updateMessage.getType(),
+                                                                        updateMessage.getRoleId(),
+                                                                        updateMessage.getAuthority(),
+                                                                        updateMessage.getResourceIds(),
+                                                                        true));
+    }
+
+    /**
+     * 当消息版本号大于此范围已处理的版本号时, 记录此版本号
+     * @param message   角色权限更新消息
+     * @return  是否为新版本的消息
+     */
+    private boolean acceptVersion(@NonNull UpdateRolesAuthoritiesMessage message) {
+        final long version = message.getVersion() == null ? 0L : message.getVersion();
+        final boolean[] accepted = new boolean[]{false};
+        sliceVersionMap.compute(message.sliceKey(), (k, v) -> {
+            if (v == null || version > v)
+            {
+                accepted[0] = true;
+                return version;
+            }
+            return v;
+        });
+        if (accepted[0])
+        {
+            final long latest = latestVersion.accumulateAndGet(version, Math::max);
+            if (sliceVersionMap.size() > MAX_SLICE_SIZE)
+            {
+                evictSlices(latest);
+            }
+        }
+        return accepted[0];
+    }
+
+    /**
+     * 淘汰版本号落后最新版本号 MAX_SLICE_SIZE / 2 以上的范围. 版本号全局唯一递增, 每个范围记录的版本号互不相同,
+     * 因此淘汰后最多剩余 MAX_SLICE_SIZE / 2 个范围, 均摊到每个消息的淘汰代价为 O(1).
+     * @param latest    已处理的最大版本号
+     */
+    private void evictSlices(long latest) {
+        final long threshold = latest - MAX_SLICE_SIZE / 2;
+        sliceVersionMap.values().removeIf(v -> v <= threshold);
+    }
+
+    @Override
+    public void setApplicationContext(@NonNull ApplicationContext applicationContext) throws BeansException {
+        this.applicationContext = applicationContext;
+    }
+}
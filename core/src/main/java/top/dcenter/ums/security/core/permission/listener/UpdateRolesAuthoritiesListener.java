@@ -23,43 +23,201 @@
 
 package top.dcenter.ums.security.core.permission.listener;
 
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.context.ApplicationListener;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.lang.NonNull;
 import top.dcenter.ums.security.core.api.permission.service.UpdateAndCacheAuthoritiesService;
+import top.dcenter.ums.security.core.api.permission.service.UriAuthorizeService;
 import top.dcenter.ums.security.core.permission.event.UpdateRolesAuthoritiesEvent;
 
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
 /**
- * uri 权限更新监听器
+ * uri 权限更新监听器. <br>
+ * 在合并窗口(updateCoalesceWindow)内接收到的多个更新事件合并为一次更新, 在独立的线程中异步执行:<br>
+ * 1. 基于 角色 的更新: 有全量更新时只执行一次 {@link UpdateAndCacheAuthoritiesService#updateAuthoritiesOfAllRoles()},
+ * 否则把所有变更的角色合并后执行一次 {@link UpdateAndCacheAuthoritiesService#updateAuthoritiesOfRoles(Map)}.<br>
+ * 2. 基于 多租户/SCOPE 的更新: 同一租户/scope 只更新一次.
  * @author YongWu zheng
  * @version V1.0  Created by 2020/10/2 19:53
  */
-public class UpdateRolesAuthoritiesListener implements ApplicationListener<UpdateRolesAuthoritiesEvent> {
+@Slf4j
+public class UpdateRolesAuthoritiesListener implements ApplicationListener<UpdateRolesAuthoritiesEvent>, DisposableBean {
 
     private final UpdateAndCacheAuthoritiesService updateAndCacheAuthoritiesService;
+    private final UriAuthorizeService uriAuthorizeService;
+    private final long coalesceWindowMillis;
+    private final ScheduledExecutorService updateExecutor;
+
+    private final Object lock = new Object();
+    /**
+     * 合并窗口内待执行的更新, 由 lock 保护
+     */
+    private PendingUpdates pendingUpdates;
 
-    public UpdateRolesAuthoritiesListener(UpdateAndCacheAuthoritiesService updateAndCacheAuthoritiesService) {
+    public UpdateRolesAuthoritiesListener(UpdateAndCacheAuthoritiesService updateAndCacheAuthoritiesService,
+                                          UriAuthorizeService uriAuthorizeService,
+                                          Duration updateCoalesceWindow) {
         this.updateAndCacheAuthoritiesService = updateAndCacheAuthoritiesService;
+        this.uriAuthorizeService = uriAuthorizeService;
+        this.coalesceWindowMillis = Math.max(0L, updateCoalesceWindow.toMillis());
+        this.updateExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ums-update-roles-authorities");
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
-    @Async
     @Override
-    public void onApplicationEvent(UpdateRolesAuthoritiesEvent event) {
+    public void onApplicationEvent(@NonNull UpdateRolesAuthoritiesEvent event) {
         Object source = event.getSource();
         if (source instanceof Boolean && ((Boolean) source))
         {
+            synchronized (this.lock) {
+                if (this.pendingUpdates == null) {
+                    this.pendingUpdates = new PendingUpdates();
+                    this.updateExecutor.schedule(this::flush, this.coalesceWindowMillis, TimeUnit.MILLISECONDS);
+                }
+                this.pendingUpdates.add(event);
+            }
+        }
+    }
+
+    /**
+     * 执行合并窗口内的所有更新
+     */
+    private void flush() {
+        final PendingUpdates updates;
+        synchronized (this.lock) {
+            updates = this.pendingUpdates;
+            this.pendingUpdates = null;
+        }
+        if (updates == null) {
+            return;
+        }
+
+        // 每个更新单独处理异常, 一个更新失败不影响其他更新
+        if (updates.allRoles) {
+            try {
+                this.updateAndCacheAuthoritiesService.updateAuthoritiesOfAllRoles();
+            }
+            catch (Exception e) {
+                log.error(String.format("更新所有角色权限失败: error=%s", e.getMessage()), e);
+            }
+        }
+        else if (!updates.roleResourceIdsMap.isEmpty()) {
+            try {
+                this.updateAndCacheAuthoritiesService.updateAuthoritiesOfRoles(updates.roleResourceIdsMap);
+            }
+            catch (Exception e) {
+                log.error(String.format("更新角色权限失败: roleIds=%s, error=%s",
+                                        updates.roleResourceIdsMap.keySet(), e.getMessage()), e);
+            }
+        }
+
+        if (updates.allTenants) {
+            try {
+                this.updateAndCacheAuthoritiesService.updateAuthoritiesOfAllTenant();
+            }
+            catch (Exception e) {
+                log.error(String.format("更新所有多租户权限失败: error=%s", e.getMessage()), e);
+            }
+        }
+        else {
+            for (String tenantAuthority : updates.tenantAuthorities) {
+                try {
+                    this.updateAndCacheAuthoritiesService.updateAuthoritiesOfTenant(tenantAuthority);
+                }
+                catch (Exception e) {
+                    log.error(String.format("更新多租户权限失败: tenantAuthority=%s, error=%s",
+                                            tenantAuthority, e.getMessage()), e);
+                }
+            }
+        }
+
+        if (updates.allScopes) {
+            try {
+                this.updateAndCacheAuthoritiesService.updateAuthoritiesOfAllScopes();
+            }
+            catch (Exception e) {
+                log.error(String.format("更新所有 SCOPE 权限失败: error=%s", e.getMessage()), e);
+            }
+        }
+        else {
+            for (String scopeAuthority : updates.scopeAuthorities) {
+                try {
+                    this.updateAndCacheAuthoritiesService.updateAuthoritiesOfScope(scopeAuthority);
+                }
+                catch (Exception e) {
+                    log.error(String.format("更新 SCOPE 权限失败: scopeAuthority=%s, error=%s",
+                                            scopeAuthority, e.getMessage()), e);
+                }
+            }
+        }
+
+        // 权限更新后, 替换缓存的用户 uri(资源) 权限视图
+        this.uriAuthorizeService.clearAuthoritiesCache();
+    }
+
+    @Override
+    public void destroy() {
+        this.updateExecutor.shutdown();
+    }
+
+    /**
+     * 合并窗口内待执行的更新
+     */
+    private static class PendingUpdates {
+        private boolean allRoles = false;
+        private boolean allTenants = false;
+        private boolean allScopes = false;
+        /**
+         * Map(roleId, resourceIds), 同一角色只保留最后一次更新的 resourceIds
+         */
+        private final Map<Long, Long[]> roleResourceIdsMap = new LinkedHashMap<>();
+        private final Set<String> tenantAuthorities = new LinkedHashSet<>();
+        private final Set<String> scopeAuthorities = new LinkedHashSet<>();
+
+        private void add(@NonNull UpdateRolesAuthoritiesEvent event) {
             switch(event.getType()) {
                 case ROLE:
-                    this.updateAndCacheAuthoritiesService.updateAuthoritiesOfAllRoles();
+                    if (event.getRoleId() == null) {
+                        this.allRoles = true;
+                        this.roleResourceIdsMap.clear();
+                    }
+                    else if (!this.allRoles) {
+                        this.roleResourceIdsMap.put(event.getRoleId(), event.getResourceIds());
+                    }
                     break;
                 case TENANT:
-                    this.updateAndCacheAuthoritiesService.updateAuthoritiesOfAllTenant();
+                    if (event.getAuthority() == null) {
+                        this.allTenants = true;
+                        this.tenantAuthorities.clear();
+                    }
+                    else if (!this.allTenants) {
+                        this.tenantAuthorities.add(event.getAuthority());
+                    }
                     break;
                 case SCOPE:
-                    this.updateAndCacheAuthoritiesService.updateAuthoritiesOfAllScopes();
+                    if (event.getAuthority() == null) {
+                        this.allScopes = true;
+                        this.scopeAuthorities.clear();
+                    }
+                    else if (!this.allScopes) {
+                        this.scopeAuthorities.add(event.getAuthority());
+                    }
                     break;
                 default:
                     break;
             }
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,248 @@
+/*
+ * MIT License
+ * Copyright (c) 2020-2029 YongWu zheng (dcenter.top and gitee.com/pcore and github.com/ZeroOrInfinity)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package top.dcenter.ums.security.core.permission.matcher;
+
+import org.springframework.http.HttpMethod;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import org.springframework.util.AntPathMatcher;
+import top.dcenter.ums.security.core.permission.enums.PermissionType;
+import top.dcenter.ums.security.core.util.matcher.SegmentTrieMatcher;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 预编译的 uri(资源) 权限匹配器. <br>
+ * 把所有角色 uri(资源) 权限 Map(role, Map(uri, Set(permission))) 一次性编译为 {@link SegmentTrieMatcher} 前缀树,
+ * 每个 uri 按 {@link PermissionType} 保存拥有此权限的角色位图(BitSet). <br>
+ * 查询时只需沿 requestUri 的路径段遍历前缀树, 耗时与 requestUri 的长度成正比, 与 uri(资源) 的数量无关.<br><br>
+ * 注意:<br>
+ * 1. 匹配语义与 {@link AntPathMatcher#match(String, String)} 保持一致, 非默认配置的 {@link AntPathMatcher} 见 {@link SegmentTrieMatcher}.<br>
+ * 2. 实例不可变, 线程安全; 角色权限更新时需以新的版本号重新编译.
+ * @author YongWu zheng
+ * @version V2.0  Created by 2020/11/28 14:26
+ */
+public final class UriAuthorityMatcher {
+
+    private static final PermissionType[] PERMISSION_TYPES = PermissionType.values();
+
+    /**
+     * 编译时的权限版本号, 用于判断源数据是否更新
+     */
+    private final long version;
+    /**
+     * 编译时的源数据, 只用于判断源数据的引用是否变化
+     */
+    private final Map<String, Map<String, Set<String>>> source;
+    /**
+     * Map(role, 角色在位图中的索引)
+     */
+    private final Map<String, Integer> roleIndexMap;
+    /**
+     * Map(permission, PermissionType)
+     */
+    private final Map<String, PermissionType> permissionTypeMap;
+    private final SegmentTrieMatcher<UriEntry> trieMatcher;
+    private final int patternCount;
+
+    private UriAuthorityMatcher(@NonNull Map<String, Map<String, Set<String>>> source, long version,
+                                @NonNull AntPathMatcher antPathMatcher) {
+        this.version = version;
+        this.source = source;
+        this.trieMatcher = new SegmentTrieMatcher<>(antPathMatcher);
+        this.roleIndexMap = new HashMap<>(source.size());
+        this.permissionTypeMap = new HashMap<>(PERMISSION_TYPES.length);
+        for (PermissionType type : PERMISSION_TYPES) {
+            this.permissionTypeMap.put(type.getPermission(), type);
+        }
+
+        final Map<String, UriEntry> entryMap = new HashMap<>(64);
+        source.forEach((role, uriAuthoritiesMap) -> {
+            if (uriAuthoritiesMap == null) {
+                return;
+            }
+            final int roleIndex = this.roleIndexMap.computeIfAbsent(role, k -> this.roleIndexMap.size());
+            uriAuthoritiesMap.forEach((uri, permissions) -> {
+                if (uri == null) {
+                    return;
+                }
+                UriEntry entry = entryMap.computeIfAbsent(uri, this::addUri);
+                entry.addPermissions(roleIndex, permissions, this.permissionTypeMap);
+            });
+        });
+        this.patternCount = entryMap.size();
+    }
+
+    /**
+     * 编译所有角色 uri(资源) 权限
+     * @param rolesAuthoritiesMap   所有角色 uri(资源) 权限 Map(role, Map(uri, Set(permission)))
+     * @param version               权限版本号, 角色权限每次更新时递增
+     * @param antPathMatcher        用于匹配单个路径段中的通配符
+     * @return  UriAuthorityMatcher
+     */
+    @NonNull
+    public static UriAuthorityMatcher compile(@NonNull Map<String, Map<String, Set<String>>> rolesAuthoritiesMap,
+                                              long version, @NonNull AntPathMatcher antPathMatcher) {
+        return new UriAuthorityMatcher(rolesAuthoritiesMap, version, antPathMatcher);
+    }
+
+    /**
+     * 判断此匹配器是否以 version 版本的权限编译
+     * @param version   权限版本号
+     * @return  是否为同一个版本
+     */
+    public boolean isCompiledAt(long version) {
+        return this.version == version;
+    }
+
+    /**
+     * 判断此匹配器是否以 version 版本的权限编译, 且编译时的源数据与 rolesAuthoritiesMap 为同一个引用
+     * @param rolesAuthoritiesMap   所有角色 uri(资源) 权限 Map(role, Map(uri, Set(permission)))
+     * @param version               权限版本号
+     * @return  是否为同一个版本的同一个源数据
+     */
+    public boolean isCompiledFrom(@NonNull Map<String, Map<String, Set<String>>> rolesAuthoritiesMap, long version) {
+        return this.version == version && this.source == rolesAuthoritiesMap;
+    }
+
+    /**
+     * 获取编译的 uri 数量
+     * @return uri 数量
+     */
+    public int getPatternCount() {
+        return this.patternCount;
+    }
+
+    /**
+     * 把角色集合转换为角色位图, 不存在的角色忽略.
+     * @param userRoleSet   用户所拥有的角色集合
+     * @return  角色位图
+     */
+    @NonNull
+    public BitSet getRoleMask(@NonNull Collection<String> userRoleSet) {
+        final BitSet roleMask = new BitSet(this.roleIndexMap.size());
+        for (String role : userRoleSet) {
+            Integer index = this.roleIndexMap.get(role);
+            if (index != null) {
+                roleMask.set(index);
+            }
+        }
+        return roleMask;
+    }
+
+    /**
+     * 判断 roleMask 中的角色是否拥有 requestUri 在 requestMethod 下相对应的权限.
+     * @param roleMask      用户的角色位图, 通过 {@link #getRoleMask(Collection)} 获取
+     * @param requestUri    不包含 ServletContextPath 的 requestUri
+     * @param requestMethod requestMethod
+     * @return  有访问权限则返回 true, 否则返回 false.
+     */
+    public boolean hasPermissionOfMethod(@NonNull BitSet roleMask, @NonNull String requestUri,
+                                         @NonNull String requestMethod) {
+        if (roleMask.isEmpty()) {
+            return false;
+        }
+        final HttpMethod httpMethod = HttpMethod.resolve(requestMethod);
+        if (httpMethod == null) {
+            return false;
+        }
+        final PermissionType permissionType = PermissionType.getPermissionType(httpMethod);
+        if (permissionType == null) {
+            return false;
+        }
+        final int ordinal = permissionType.ordinal();
+        return this.trieMatcher.anyMatch(requestUri, entry -> entry.hasPermission(ordinal, roleMask));
+    }
+
+    /**
+     * 判断 roleMask 中的角色是否拥有 requestUri 相对应的 uriAuthority 权限.
+     * @param roleMask      用户的角色位图, 通过 {@link #getRoleMask(Collection)} 获取
+     * @param requestUri    不包含 ServletContextPath 的 requestUri
+     * @param uriAuthority  uri 权限
+     * @return  有访问权限则返回 true, 否则返回 false.
+     */
+    public boolean hasPermission(@NonNull BitSet roleMask, @NonNull String requestUri, @Nullable String uriAuthority) {
+        if (roleMask.isEmpty() || uriAuthority == null) {
+            return false;
+        }
+        return this.trieMatcher.anyMatch(requestUri, entry -> entry.hasPermission(uriAuthority, roleMask));
+    }
+
+    @NonNull
+    private UriEntry addUri(@NonNull String uri) {
+        final UriEntry entry = new UriEntry();
+        this.trieMatcher.add(uri, entry);
+        return entry;
+    }
+
+    /**
+     * uri 的角色权限位图
+     */
+    private static final class UriEntry {
+        /**
+         * 数组索引为 {@link PermissionType#ordinal()}, 值为拥有此权限的角色位图
+         */
+        private final BitSet[] rolesOfPermissionType = new BitSet[PERMISSION_TYPES.length];
+        /**
+         * Map(permission, 拥有此权限的角色位图)
+         */
+        private final Map<String, BitSet> rolesOfPermission = new HashMap<>(8);
+
+        private void addPermissions(int roleIndex, @Nullable Set<String> permissions,
+                                    @NonNull Map<String, PermissionType> permissionTypeMap) {
+            if (permissions == null) {
+                return;
+            }
+            for (String permission : permissions) {
+                if (permission == null) {
+                    continue;
+                }
+                this.rolesOfPermission.computeIfAbsent(permission, k -> new BitSet()).set(roleIndex);
+                PermissionType type = permissionTypeMap.get(permission);
+                if (type != null) {
+                    int ordinal = type.ordinal();
+                    if (this.rolesOfPermissionType[ordinal] == null) {
+                        this.rolesOfPermissionType[ordinal] = new BitSet();
+                    }
+                    this.rolesOfPermissionType[ordinal].set(roleIndex);
+                }
+            }
+        }
+
+        private boolean hasPermission(int permissionTypeOrdinal, @NonNull BitSet roleMask) {
+            BitSet roles = this.rolesOfPermissionType[permissionTypeOrdinal];
+            return roles != null && roles.intersects(roleMask);
+        }
+
+        private boolean hasPermission(@NonNull String permission, @NonNull BitSet roleMask) {
+            BitSet roles = this.rolesOfPermission.get(permission);
+            return roles != null && roles.intersects(roleMask);
+        }
+    }
+
+}
@@ -0,0 +1,225 @@
+/*
+ * MIT License
+ * Copyright (c) 2020-2029 YongWu zheng (dcenter.top and gitee.com/pcore and github.com/ZeroOrInfinity)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package top.dcenter.ums.security.core.permission.matcher;
+
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 用户权限视图缓存: Map(规范化的 角色/多租户/SCOPE 权限, {@link UriAuthorityView}). <br>
+ * 大量用户通常只共享少数几种 角色/多租户/SCOPE 组合, 以此组合为 key 缓存用户的 uri(资源) 权限视图, 避免每次请求都解析权限与生成角色位图.<br>
+ * 缓存有最大数量限制, 超过时淘汰最久未访问的视图(LRU): 每个分段为按访问顺序排序的 {@link LinkedHashMap}, 由分段锁保护,
+ * 读写与淘汰都是 O(1). 最大数量较小时只有一个分段(严格的 LRU), 较大时按 key 的 hash 分为 {@value #SEGMENT_COUNT} 段,
+ * 每个分段独立淘汰, 以减少锁竞争.
+ * @author YongWu zheng
+ * @version V2.0  Created by 2020/11/28 20:05
+ */
+public class UriAuthorityViewCache {
+
+    /**
+     * 最大数量较大时的分段数量, 2 的幂
+     */
+    static final int SEGMENT_COUNT = 16;
+    /**
+     * 每个分段的最小容量, 最大数量小于 SEGMENT_COUNT * MIN_SEGMENT_CAPACITY 时只使用一个分段
+     */
+    private static final int MIN_SEGMENT_CAPACITY = 16;
+
+    private final Segment[] segments;
+    private final int segmentMask;
+    private final int maximumSize;
+
+    private final AtomicLong hitCount = new AtomicLong(0L);
+    private final AtomicLong missCount = new AtomicLong(0L);
+    private final AtomicLong evictionCount = new AtomicLong(0L);
+
+    public UriAuthorityViewCache(int maximumSize) {
+        this.maximumSize = Math.max(1, maximumSize);
+        final int segmentCount = this.maximumSize < SEGMENT_COUNT * MIN_SEGMENT_CAPACITY ? 1 : SEGMENT_COUNT;
+        this.segmentMask = segmentCount - 1;
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            // 余数分配给前面的分段, 所有分段容量之和等于 maximumSize
+            int capacity = this.maximumSize / segmentCount + (i < this.maximumSize % segmentCount ? 1 : 0);
+            this.segments[i] = new Segment(capacity, this.evictionCount);
+        }
+    }
+
+    /**
+     * 获取缓存的用户权限视图, 并更新此视图的访问顺序
+     * @param authorityKey  规范化的 角色/多租户/SCOPE 权限
+     * @return  UriAuthorityView, 不存在时返回 null
+     */
+    @Nullable
+    public UriAuthorityView get(@NonNull String authorityKey) {
+        final Segment segment = segmentFor(authorityKey);
+        final UriAuthorityView view;
+        synchronized (segment) {
+            view = segment.get(authorityKey);
+        }
+        if (view == null) {
+            this.missCount.incrementAndGet();
+            return null;
+        }
+        this.hitCount.incrementAndGet();
+        return view;
+    }
+
+    /**
+     * 缓存用户权限视图, 超过分段容量时淘汰此分段最久未访问的视图
+     * @param authorityKey  规范化的 角色/多租户/SCOPE 权限
+     * @param view          用户权限视图
+     */
+    public void put(@NonNull String authorityKey, @NonNull UriAuthorityView view) {
+        final Segment segment = segmentFor(authorityKey);
+        synchronized (segment) {
+            segment.put(authorityKey, view);
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : this.segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    @NonNull
+    private Segment segmentFor(@NonNull String authorityKey) {
+        int h = authorityKey.hashCode();
+        return this.segments[(h ^ (h >>> 16)) & this.segmentMask];
+    }
+
+    public long getHitCount() {
+        return this.hitCount.get();
+    }
+
+    public long getMissCount() {
+        return this.missCount.get();
+    }
+
+    public long getEvictionCount() {
+        return this.evictionCount.get();
+    }
+
+    /**
+     * 获取命中率
+     * @return 命中率, 没有请求时返回 1.0
+     */
+    public double getHitRate() {
+        long hit = this.hitCount.get();
+        long total = hit + this.missCount.get();
+        return total == 0L ? 1.0D : (double) hit / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("UriAuthorityViewCache{size=%d, maximumSize=%d, hitCount=%d, missCount=%d, evictionCount=%d}",
+                             size(), this.maximumSize, getHitCount(), getMissCount(), getEvictionCount());
+    }
+
+    /**
+     * 按访问顺序排序的 LRU 分段, 由调用方对分段本身加锁
+     */
+    private static final class Segment extends LinkedHashMap<String, UriAuthorityView> {
+
+        private static final long serialVersionUID = 2387502945012859123L;
+
+        private final int capacity;
+        private final transient AtomicLong evictionCount;
+
+        private Segment(int capacity, AtomicLong evictionCount) {
+            super(Math.min(capacity, 64), 0.75F, true);
+            this.capacity = capacity;
+            this.evictionCount = evictionCount;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, UriAuthorityView> eldest) {
+            if (size() > this.capacity) {
+                this.evictionCount.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * 不可变的用户 uri(资源) 权限视图: 已编译的权限匹配器与用户的角色位图, 访问顺序由 {@link UriAuthorityViewCache} 维护.
+     */
+    public static final class UriAuthorityView {
+
+        private final UriAuthorityMatcher matcher;
+        private final BitSet roleMask;
+        private final Set<String> roleSet;
+
+        public UriAuthorityView(@NonNull UriAuthorityMatcher matcher, @NonNull Set<String> roleSet) {
+            this.matcher = matcher;
+            this.roleSet = roleSet;
+            this.roleMask = matcher.getRoleMask(roleSet);
+        }
+
+        @NonNull
+        public UriAuthorityMatcher getMatcher() {
+            return this.matcher;
+        }
+
+        /**
+         * 返回角色位图的副本
+         * @return 角色位图
+         */
+        @NonNull
+        public BitSet getRoleMask() {
+            return (BitSet) this.roleMask.clone();
+        }
+
+        @NonNull
+        public Set<String> getRoleSet() {
+            return this.roleSet;
+        }
+
+        /**
+         * @see UriAuthorityMatcher#hasPermissionOfMethod(BitSet, String, String)
+         */
+        public boolean hasPermissionOfMethod(@NonNull String requestUri, @NonNull String requestMethod) {
+            return this.matcher.hasPermissionOfMethod(this.roleMask, requestUri, requestMethod);
+        }
+
+        /**
+         * @see UriAuthorityMatcher#hasPermission(BitSet, String, String)
+         */
+        public boolean hasPermission(@NonNull String requestUri, @Nullable String uriAuthority) {
+            return this.matcher.hasPermission(this.roleMask, requestUri, uriAuthority);
+        }
+    }
+}
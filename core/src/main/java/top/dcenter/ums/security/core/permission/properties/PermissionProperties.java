@@ -0,0 +1,63 @@
+/*
+ * MIT License
+ * Copyright (c) 2020-2029 YongWu zheng (dcenter.top and gitee.com/pcore and github.com/ZeroOrInfinity)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package top.dcenter.ums.security.core.permission.properties;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * 权限服务配置属性
+ * @author YongWu zheng
+ * @version V2.0  Created by 2020/11/29 10:12
+ */
+@Getter
+@Setter
+@ConfigurationProperties("ums.permission")
+public class PermissionProperties {
+
+    /**
+     * 是否通过 redis 发布/订阅在集群中同步角色权限更新(UpdateRolesAuthoritiesEvent), 默认: false. <br>
+     * 开启时 IOC 容器中必须有 RedisConnectionFactory, 且需实现 UpdateAndCacheAuthoritiesService.
+     */
+    private Boolean enableClusterUpdate = false;
+
+    /**
+     * 角色权限更新消息的 redis 订阅频道, 默认: ums:permission:update
+     */
+    private String clusterUpdateChannel = "ums:permission:update";
+
+    /**
+     * 角色权限更新消息版本号的 redis key, 通过 INCR 生成全局递增的版本号, 默认: ums:permission:update:version
+     */
+    private String clusterUpdateVersionKey = "ums:permission:update:version";
+
+    /**
+     * 角色权限更新事件的合并窗口, 窗口内的多次更新合并为一次更新, 默认: 200 毫秒
+     */
+    private Duration updateCoalesceWindow = Duration.ofMillis(200);
+
+}
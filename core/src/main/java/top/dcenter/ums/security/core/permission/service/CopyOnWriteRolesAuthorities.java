@@ -0,0 +1,127 @@
+/*
+ * MIT License
+ * Copyright (c) 2020-2029 YongWu zheng (dcenter.top and gitee.com/pcore and github.com/ZeroOrInfinity)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package top.dcenter.ums.security.core.permission.service;
+
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import top.dcenter.ums.security.core.api.permission.service.AbstractUriAuthorizeService;
+import top.dcenter.ums.security.core.api.permission.service.UpdateAndCacheAuthoritiesService;
+import top.dcenter.ums.security.core.permission.listener.UpdateRolesAuthoritiesListener;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 写时复制的所有角色 uri(资源) 权限缓存 Map(role, Map(uri, Set(permission))). <br>
+ * 用于实现 {@link UpdateAndCacheAuthoritiesService#updateAuthoritiesOfRoles(Map)} 的增量更新: 只替换变更角色的权限,
+ * 其他角色的权限 Map 被新旧快照共享, 更新代价与变更角色的权限数量成正比. <br>
+ * 每次更新都会生成新的快照, 已有快照不会被修改. {@link AbstractUriAuthorizeService} 在权限版本号变化
+ * (即调用 {@link AbstractUriAuthorizeService#clearAuthoritiesCache()}) 或 {@link #get()} 返回的快照引用变化时重新编译
+ * uri(资源) 权限匹配器, 快照未变化时复用已编译的匹配器; 通过 {@link UpdateRolesAuthoritiesListener} 更新时会自动调用
+ * {@code clearAuthoritiesCache()}, 其他途径更新后建议也调用此方法, 使用户权限视图缓存整体替换.
+ * 读操作({@link #get()})无锁, 写操作串行.
+ * @author YongWu zheng
+ * @version V2.0  Created by 2020/11/29 16:20
+ */
+public class CopyOnWriteRolesAuthorities {
+
+    private volatile Map<String, Map<String, Set<String>>> rolesAuthorities = Collections.emptyMap();
+
+    private final Object lock = new Object();
+
+    /**
+     * 获取所有角色 uri(资源) 权限的不可变快照
+     * @return Map(role, Map(uri, Set(permission)))
+     */
+    @NonNull
+    public Map<String, Map<String, Set<String>>> get() {
+        return this.rolesAuthorities;
+    }
+
+    /**
+     * 全量替换所有角色 uri(资源) 权限
+     * @param rolesAuthorities  Map(role, Map(uri, Set(permission)))
+     */
+    public void replaceAll(@NonNull Map<String, Map<String, Set<String>>> rolesAuthorities) {
+        synchronized (this.lock) {
+            final Map<String, Map<String, Set<String>>> snapshot = new HashMap<>(rolesAuthorities.size());
+            rolesAuthorities.forEach((role, uriAuthorities) -> snapshot.put(role, immutable(uriAuthorities)));
+            this.rolesAuthorities = Collections.unmodifiableMap(snapshot);
+        }
+    }
+
+    /**
+     * 增量更新角色的 uri(资源) 权限, uriAuthorities 为 null 时删除此角色
+     * @param changedRolesAuthorities   Map(role, Map(uri, Set(permission))), 变更角色的所有 uri(资源) 权限
+     */
+    public void putRoles(@NonNull Map<String, Map<String, Set<String>>> changedRolesAuthorities) {
+        if (changedRolesAuthorities.isEmpty()) {
+            return;
+        }
+        synchronized (this.lock) {
+            final Map<String, Map<String, Set<String>>> snapshot = new HashMap<>(this.rolesAuthorities);
+            changedRolesAuthorities.forEach((role, uriAuthorities) -> {
+                if (uriAuthorities == null) {
+                    snapshot.remove(role);
+                }
+                else {
+                    snapshot.put(role, immutable(uriAuthorities));
+                }
+            });
+            this.rolesAuthorities = Collections.unmodifiableMap(snapshot);
+        }
+    }
+
+    /**
+     * 增量更新单个角色的 uri(资源) 权限
+     * @param role              角色, 如: ROLE_ADMIN
+     * @param uriAuthorities    Map(uri, Set(permission)), 为 null 时删除此角色
+     */
+    public void putRole(@NonNull String role, @Nullable Map<String, Set<String>> uriAuthorities) {
+        putRoles(Collections.singletonMap(role, uriAuthorities));
+    }
+
+    /**
+     * 删除角色的 uri(资源) 权限
+     * @param roles 角色集合
+     */
+    public void removeRoles(@NonNull Collection<String> roles) {
+        final Map<String, Map<String, Set<String>>> changedRolesAuthorities = new HashMap<>(roles.size());
+        roles.forEach(role -> changedRolesAuthorities.put(role, null));
+        putRoles(changedRolesAuthorities);
+    }
+
+    @NonNull
+    private static Map<String, Set<String>> immutable(@NonNull Map<String, Set<String>> uriAuthorities) {
+        final Map<String, Set<String>> map = new HashMap<>(uriAuthorities.size());
+        uriAuthorities.forEach((uri, permissions) ->
+                map.put(uri, permissions == null ? Collections.emptySet()
+                                                 : Collections.unmodifiableSet(new HashSet<>(permissions))));
+        return Collections.unmodifiableMap(map);
+    }
+}
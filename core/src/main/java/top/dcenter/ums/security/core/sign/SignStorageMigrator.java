@@ -0,0 +1,174 @@
+/*
+ * MIT License
+ * Copyright (c) 2020-2029 YongWu zheng (dcenter.top and gitee.com/pcore and github.com/ZeroOrInfinity)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package top.dcenter.ums.security.core.sign;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.BitFieldSubCommands;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.lang.NonNull;
+import top.dcenter.ums.security.core.sign.properties.SignProperties;
+import top.dcenter.ums.security.core.util.SignUtil;
+
+import java.io.UnsupportedEncodingException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * 用户签到 key 存储布局的迁移工具: 把每月一个 key(uid:yyyyMM) 的签到数据迁移到
+ * {@link SignProperties#getSignKeyWindowMonths()} 指定的多个月一个 key(uid:yyyyMM+N) 中.<br>
+ * 迁移通过 SETBIT 逐位写入, 是幂等操作, 迁移期间新的签到不会被覆盖, 可以在切换配置后在线执行, 也可以重复执行.<br>
+ * 每批用户只使用一个连接与两次 redis 管道: 一次读取所有月份的位图, 一次写入与删除.
+ * @author YongWu zheng
+ * @version V2.0  Created by 2020/12/5 16:20
+ */
+@Slf4j
+public class SignStorageMigrator {
+
+    /**
+     * 每批迁移的用户数
+     */
+    private static final int BATCH_SIZE = 500;
+
+    private final RedisConnectionFactory redisConnectionFactory;
+    private final SignProperties signProperties;
+
+    public SignStorageMigrator(RedisConnectionFactory redisConnectionFactory, SignProperties signProperties) {
+        this.redisConnectionFactory = redisConnectionFactory;
+        this.signProperties = signProperties;
+    }
+
+    /**
+     * 把指定用户在 [fromMonth, toMonth] 月份内每月一个 key 的签到数据迁移到当前配置的多个月一个 key 中
+     * @param uids              用户ID 列表
+     * @param fromMonth         起始月份(包含), 只取年月
+     * @param toMonth           结束月份(包含), 只取年月
+     * @param deleteMonthKeys   迁移后是否删除每月一个的旧 key
+     * @return  已迁移的(有签到数据的)每月一个的 key 数量
+     * @throws UnsupportedEncodingException UnsupportedEncodingException
+     * @throws IllegalStateException    当前配置为每月一个 key 时
+     */
+    public long migrate(@NonNull List<String> uids, @NonNull LocalDate fromMonth, @NonNull LocalDate toMonth,
+                        boolean deleteMonthKeys) throws UnsupportedEncodingException {
+        final int windowMonths = signProperties.getSignKeyWindowMonths();
+        if (windowMonths == 1)
+        {
+            throw new IllegalStateException("当前配置为每月一个用户签到 key, 不需要迁移: ums.sign.sign-key-window-months=1");
+        }
+        final List<LocalDate> months = new ArrayList<>();
+        for (LocalDate month = fromMonth.withDayOfMonth(1); !month.isAfter(toMonth); month = month.plusMonths(1))
+        {
+            months.add(month);
+        }
+        if (months.isEmpty() || uids.isEmpty())
+        {
+            return 0L;
+        }
+
+        long migrated = 0L;
+        for (int from = 0; from < uids.size(); from += BATCH_SIZE)
+        {
+            migrated += migrateBatch(uids.subList(from, Math.min(from + BATCH_SIZE, uids.size())),
+                                     months, windowMonths, deleteMonthKeys);
+        }
+        log.info("用户签到 key 迁移完成: users={}, months={}, migratedKeys={}", uids.size(), months.size(), migrated);
+        return migrated;
+    }
+
+    private long migrateBatch(@NonNull List<String> uids, @NonNull List<LocalDate> months, int windowMonths,
+                              boolean deleteMonthKeys) throws UnsupportedEncodingException {
+        final String charset = signProperties.getCharset();
+        final String prefix = signProperties.getSignKeyPrefix();
+        final int size = uids.size() * months.size();
+        final List<byte[]> monthKeys = new ArrayList<>(size);
+        final List<byte[]> windowKeys = new ArrayList<>(size);
+        for (String uid : uids)
+        {
+            for (LocalDate month : months)
+            {
+                monthKeys.add((prefix + SignUtil.buildSignKey(uid, month)).getBytes(charset));
+                windowKeys.add((prefix + SignUtil.buildSignKey(uid, month, windowMonths)).getBytes(charset));
+            }
+        }
+
+        long migrated = 0L;
+        try (RedisConnection connection = redisConnectionFactory.getConnection())
+        {
+            // 读取所有每月一个 key 的签到位图
+            connection.openPipeline();
+            for (int i = 0; i < size; i++)
+            {
+                final LocalDate month = months.get(i % months.size());
+                connection.bitField(monthKeys.get(i),
+                                    BitFieldSubCommands.create()
+                                                       .get(BitFieldSubCommands.BitFieldType.unsigned(month.lengthOfMonth()))
+                                                       .valueAt(0L));
+            }
+            final List<Object> results = Optional.ofNullable(connection.closePipeline()).orElse(new ArrayList<>(0));
+
+            // 逐位写入多个月一个的 key 中, 不覆盖迁移期间的新签到
+            connection.openPipeline();
+            final Long userExpired = signProperties.getUserExpired();
+            for (int i = 0; i < size; i++)
+            {
+                final LocalDate month = months.get(i % months.size());
+                final int lengthOfMonth = month.lengthOfMonth();
+                final long bitmap = SignUtil.reverseBitField(bitFieldValue(results, i), lengthOfMonth);
+                if (bitmap == 0L)
+                {
+                    continue;
+                }
+                final long monthOffset = SignUtil.signWindowOffset(month, windowMonths);
+                final byte[] windowKey = windowKeys.get(i);
+                for (int day = 0; day < lengthOfMonth; day++)
+                {
+                    if (((bitmap >>> day) & 1L) == 1L)
+                    {
+                        connection.setBit(windowKey, monthOffset + day, true);
+                    }
+                }
+                connection.expire(windowKey, userExpired);
+                if (deleteMonthKeys)
+                {
+                    connection.del(monthKeys.get(i));
+                }
+                migrated++;
+            }
+            connection.closePipeline();
+        }
+        return migrated;
+    }
+
+    private static long bitFieldValue(@NonNull List<Object> results, int index) {
+        final Object result = index < results.size() ? results.get(index) : null;
+        if (result instanceof List && !((List<?>) result).isEmpty())
+        {
+            final Object value = ((List<?>) result).get(0);
+            return value instanceof Number ? ((Number) value).longValue() : 0L;
+        }
+        return 0L;
+    }
+}
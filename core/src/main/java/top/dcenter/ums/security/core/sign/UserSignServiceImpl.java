@@ -28,19 +28,24 @@ import org.springframework.data.redis.connection.BitFieldSubCommands;
 import org.springframework.data.redis.connection.RedisConnection;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.connection.RedisPipelineException;
+import org.springframework.data.redis.connection.ReturnType;
 import org.springframework.lang.NonNull;
 import top.dcenter.ums.security.core.api.sign.service.SignService;
+import top.dcenter.ums.security.core.sign.enums.DailySignStatisticsType;
 import top.dcenter.ums.security.core.sign.properties.SignProperties;
 import top.dcenter.ums.security.core.util.SignUtil;
 
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Consumer;
 
 import static top.dcenter.ums.security.core.util.SignUtil.formatDate;
 
@@ -58,6 +63,16 @@ import static top.dcenter.ums.security.core.util.SignUtil.formatDate;
  * 8. 获取用户最近几天的签到情况<br>
  * 9. 删除指定用户与指定日期的数据<br>
  * 10. 删除指定月份的用户签到统计数据<br>
+ * 11. 批量检查多个用户是否签到<br>
+ * 12. 批量获取多个用户当月签到次数<br>
+ * 13. 批量获取多个用户当月最近连续签到次数<br>
+ * 14. 批量获取多个用户当月的签到位图<br>
+ * 15. 批量获取多个用户最近几天的签到位图<br>
+ * 批量接口每次调用只使用一个连接, 所有用户的命令通过一次 redis 管道执行.<br>
+ * 用户签到 key 默认每月一个; 通过 {@link SignProperties#getSignKeyWindowMonths()} 可以一个 key 存储多个月(如一年),
+ * 当月的签到位图为窗口位图中从当月第一天的偏移量开始的片段, 所有接口的语义不变.<br>
+ * 开启每天所有用户签到的全局统计({@link SignProperties#getDailySignStatisticsType()})时, 用户签到时在同一个管道中
+ * 更新当天的全局位图或 HyperLogLog, 统计查询见 {@link UserSignStatisticsServiceImpl}.<br>
  * @author flex_song
  * @author YongWu zheng
  * @version V1.0  Created by 2020-09-14 10:00
@@ -70,6 +85,25 @@ public class UserSignServiceImpl implements SignService {
      */
     private static final String PATTERN = "yyyy-MM-dd";
 
+    /**
+     * 位图偏移量的最大值(不包含), redis 位图最大为 512MB
+     */
+    private static final long MAX_BIT_OFFSET = 1L << 32;
+
+    /**
+     * 把 uid 映射为递增的位图偏移量并设置当天的全局签到位图.<br>
+     * KEYS[1] = uidIndexKey, KEYS[2] = uidSequenceKey, KEYS[3] = 当天的全局签到位图 key, ARGV[1] = uid, ARGV[2] = TTL(秒)
+     */
+    private static final byte[] DAILY_SIGN_INDEX_SCRIPT =
+            ("local idx = redis.call('HGET', KEYS[1], ARGV[1]) " +
+             "if not idx then " +
+             "  idx = redis.call('INCR', KEYS[2]) - 1 " +
+             "  redis.call('HSET', KEYS[1], ARGV[1], idx) " +
+             "end " +
+             "redis.call('SETBIT', KEYS[3], idx, 1) " +
+             "redis.call('EXPIRE', KEYS[3], ARGV[2]) " +
+             "return tonumber(idx)").getBytes(StandardCharsets.UTF_8);
+
     private final RedisConnectionFactory redisConnectionFactory;
     private final SignProperties signProperties;
 
@@ -89,7 +123,36 @@ public class UserSignServiceImpl implements SignService {
     private byte[] buildSignKey(String uid, LocalDate date) throws UnsupportedEncodingException {
 
         return (signProperties.getSignKeyPrefix()
-                + SignUtil.buildSignKey(uid, date)).getBytes(charset);
+                + SignUtil.buildSignKey(uid, date, signProperties.getSignKeyWindowMonths())).getBytes(charset);
+    }
+
+    /**
+     * 是否一个用户签到 key 存储多个月
+     * @return  是否一个用户签到 key 存储多个月
+     */
+    private boolean isMultiMonthSignKey() {
+        return signProperties.getSignKeyWindowMonths() > 1;
+    }
+
+    /**
+     * 获取 date 所在月份的签到位图在用户签到 key 中的偏移量
+     * @param date  日期
+     * @return  当月的签到位图在用户签到 key 中的偏移量, 每月一个 key 时为 0
+     */
+    private long monthOffset(LocalDate date) {
+        return SignUtil.signWindowOffset(date, signProperties.getSignKeyWindowMonths());
+    }
+
+    /**
+     * 获取 date 所在月份的签到位图的 BITFIELD GET 子命令
+     * @param date  日期
+     * @param bits  无符号的位数
+     * @return  BITFIELD GET 子命令
+     */
+    private BitFieldSubCommands monthSubCommands(LocalDate date, int bits) {
+        return BitFieldSubCommands.create()
+                                  .get(BitFieldSubCommands.BitFieldType.unsigned(bits))
+                                  .valueAt(monthOffset(date));
     }
 
     private byte[] buildTotalSignKey(LocalDate date) throws UnsupportedEncodingException {
@@ -98,6 +161,12 @@ public class UserSignServiceImpl implements SignService {
                 + SignUtil.formatDate(date)).getBytes(charset);
     }
 
+    private byte[] buildDailySignKey(LocalDate date) throws UnsupportedEncodingException {
+
+        return (signProperties.getDailySignKeyPrefix()
+                + SignUtil.formatDate(date, "yyyyMMdd")).getBytes(charset);
+    }
+
     private byte[] buildDayKey(LocalDate date) throws UnsupportedEncodingException {
         return (Integer.toString(date.getDayOfMonth()).getBytes(charset));
     }
@@ -107,12 +176,16 @@ public class UserSignServiceImpl implements SignService {
      *
      * @param uid  用户ID
      * @param date 日期
-     * @return 已删除的 key 数量
+     * @return 已删除的 key 数量, 一个用户签到 key 存储多个月时为已清除的有签到数据的月份数量
      * @throws UnsupportedEncodingException UnsupportedEncodingException
      */
     @Override
     public long delSignByUidAndDate(@NonNull String uid, @NonNull LocalDate date) throws UnsupportedEncodingException {
 
+        if (isMultiMonthSignKey())
+        {
+            return clearMonthSignBitmaps(Collections.singletonMap(uid, date));
+        }
         byte[] key = buildSignKey(uid, date);
         return del(key);
     }
@@ -121,12 +194,16 @@ public class UserSignServiceImpl implements SignService {
      * 删除指定用户与指定日期的数据
      *
      * @param keyMap  k = 用户ID, v = LocalDate
-     * @return 已删除的 key 数量
+     * @return 已删除的 key 数量, 一个用户签到 key 存储多个月时为已清除的有签到数据的月份数量
      * @throws UnsupportedEncodingException UnsupportedEncodingException
      */
     @Override
     public long delSignByUidAndDate(@NonNull Map<String, LocalDate> keyMap) throws UnsupportedEncodingException {
 
+        if (isMultiMonthSignKey())
+        {
+            return clearMonthSignBitmaps(keyMap);
+        }
         List<byte[]> keyList = new ArrayList<>();
         Set<Map.Entry<String, LocalDate>> entries = keyMap.entrySet();
         for (Map.Entry<String, LocalDate> entry : entries)
@@ -178,10 +255,13 @@ public class UserSignServiceImpl implements SignService {
     @Override
     public Boolean doSign(@NonNull String uid, @NonNull LocalDate date) throws UnsupportedEncodingException {
 
-        int offset = date.getDayOfMonth() - 1;
+        long offset = monthOffset(date) + date.getDayOfMonth() - 1;
         byte[] key = buildSignKey(uid, date);
         byte[] totalKey = buildTotalSignKey(date);
         byte[] dayKey = buildDayKey(date);
+        final DailySignStatisticsType dailyType = signProperties.getDailySignStatisticsType();
+        byte[] dailyKey = dailyType == null || DailySignStatisticsType.NONE.equals(dailyType) ? null : buildDailySignKey(date);
+        byte[] uidBytes = uid.getBytes(charset);
         List<Object> pipelineList;
         try (RedisConnection connection = getConnection())
         {
@@ -192,6 +272,11 @@ public class UserSignServiceImpl implements SignService {
             connection.hIncrBy(totalKey, dayKey, 1L);
             connection.expire(key, signProperties.getUserExpired());
             connection.expire(totalKey, signProperties.getTotalExpired());
+            if (dailyKey != null)
+            {
+                // 每天所有用户签到的全局统计, 与用户签到在同一个管道中
+                dailySign(connection, uid, uidBytes, dailyKey, dailyType);
+            }
 
             pipelineList = connection.closePipeline();
         }
@@ -216,7 +301,7 @@ public class UserSignServiceImpl implements SignService {
     @Override
     public boolean checkSign(@NonNull String uid, @NonNull LocalDate date) throws UnsupportedEncodingException {
 
-        int offset = date.getDayOfMonth() - 1;
+        long offset = monthOffset(date) + date.getDayOfMonth() - 1;
         byte[] key = buildSignKey(uid, date);
         try (RedisConnection connection = getConnection())
         {
@@ -237,6 +322,16 @@ public class UserSignServiceImpl implements SignService {
     public long getSignCount(@NonNull String uid, @NonNull LocalDate date) throws UnsupportedEncodingException {
 
         byte[] key = buildSignKey(uid, date);
+        if (isMultiMonthSignKey())
+        {
+            // BITCOUNT 只支持按字节的范围, 通过 BITFIELD 获取当月的签到位图再计数
+            List<Long> list;
+            try (RedisConnection connection = getConnection())
+            {
+                list = connection.bitField(key, monthSubCommands(date, date.lengthOfMonth()));
+            }
+            return Long.bitCount(firstValue(Optional.ofNullable(list).orElse(new ArrayList<>(0))));
+        }
         try (RedisConnection connection = getConnection())
         {
             Long success = connection.bitCount(key);
@@ -288,11 +383,7 @@ public class UserSignServiceImpl implements SignService {
         int signCount = 0;
         List<Long> list;
         byte[] key = buildSignKey(uid, date);
-        final BitFieldSubCommands subCommands =
-                BitFieldSubCommands.create()
-                        .get(BitFieldSubCommands.BitFieldType
-                                     .unsigned(date.getDayOfMonth()))
-                        .valueAt(0L);
+        final BitFieldSubCommands subCommands = monthSubCommands(date, date.getDayOfMonth());
         try (RedisConnection connection = getConnection())
         {
             list = connection.bitField(key, subCommands);
@@ -329,6 +420,19 @@ public class UserSignServiceImpl implements SignService {
         //noinspection UnusedAssignment
         Long pos = -1L;
         byte[] key = buildSignKey(uid, date);
+        if (isMultiMonthSignKey())
+        {
+            // BITPOS 只支持按字节的范围, 通过 BITFIELD 获取当月的签到位图再查找
+            final int lengthOfMonth = date.lengthOfMonth();
+            List<Long> list;
+            try (RedisConnection connection = getConnection())
+            {
+                list = connection.bitField(key, monthSubCommands(date, lengthOfMonth));
+            }
+            final long bitmap = SignUtil.reverseBitField(firstValue(Optional.ofNullable(list).orElse(new ArrayList<>(0))),
+                                                         lengthOfMonth);
+            return bitmap == 0L ? null : date.withDayOfMonth(Long.numberOfTrailingZeros(bitmap) + 1);
+        }
         try (RedisConnection connection = getConnection())
         {
             pos = connection.bitPos(key, true);
@@ -351,11 +455,7 @@ public class UserSignServiceImpl implements SignService {
         Map<String, Boolean> signMap = new HashMap<>(date.getDayOfMonth());
         List<Long> list;
         byte[] key = buildSignKey(uid, date);
-        final BitFieldSubCommands subCommands =
-                BitFieldSubCommands.create()
-                        .get(BitFieldSubCommands.BitFieldType
-                                     .unsigned(date.lengthOfMonth()))
-                        .valueAt(0L);
+        final BitFieldSubCommands subCommands = monthSubCommands(date, date.lengthOfMonth());
         try (RedisConnection connection = getConnection())
         {
             list = connection.bitField(key, subCommands);
@@ -402,6 +502,251 @@ public class UserSignServiceImpl implements SignService {
         return signMap;
     }
 
+    @Override
+    public boolean[] checkSigns(@NonNull List<String> uids, @NonNull LocalDate date) throws UnsupportedEncodingException {
+        final boolean[] result = new boolean[uids.size()];
+        if (result.length == 0)
+        {
+            return result;
+        }
+        final long offset = monthOffset(date) + date.getDayOfMonth() - 1;
+        final List<byte[]> keys = buildSignKeys(uids, date);
+        final List<Object> results = executePipelined(connection -> {
+            for (byte[] key : keys)
+            {
+                connection.getBit(key, offset);
+            }
+        });
+        for (int i = 0; i < result.length; i++)
+        {
+            result[i] = i < results.size() && Boolean.TRUE.equals(results.get(i));
+        }
+        return result;
+    }
+
+    @Override
+    public int[] getSignCounts(@NonNull List<String> uids, @NonNull LocalDate date) throws UnsupportedEncodingException {
+        final int[] result = new int[uids.size()];
+        if (result.length == 0)
+        {
+            return result;
+        }
+        if (isMultiMonthSignKey())
+        {
+            // BITCOUNT 只支持按字节的范围, 通过当月的签到位图计数
+            final long[] bitmaps = getSignBitmaps(uids, date);
+            for (int i = 0; i < result.length; i++)
+            {
+                result[i] = Long.bitCount(bitmaps[i]);
+            }
+            return result;
+        }
+        final List<byte[]> keys = buildSignKeys(uids, date);
+        final List<Object> results = executePipelined(connection -> {
+            for (byte[] key : keys)
+            {
+                connection.bitCount(key);
+            }
+        });
+        for (int i = 0; i < result.length; i++)
+        {
+            final Object count = i < results.size() ? results.get(i) : null;
+            result[i] = count instanceof Number ? ((Number) count).intValue() : 0;
+        }
+        return result;
+    }
+
+    @Override
+    public int[] getContinuousSignCounts(@NonNull List<String> uids, @NonNull LocalDate date) throws UnsupportedEncodingException {
+        final long[] bitmaps = getSignBitmaps(uids, date);
+        final int dayOfMonth = date.getDayOfMonth();
+        final int[] result = new int[bitmaps.length];
+        for (int i = 0; i < result.length; i++)
+        {
+            result[i] = SignUtil.continuousSignCount(bitmaps[i], dayOfMonth);
+        }
+        return result;
+    }
+
+    @Override
+    public long[] getSignBitmaps(@NonNull List<String> uids, @NonNull LocalDate date) throws UnsupportedEncodingException {
+        final long[] result = new long[uids.size()];
+        if (result.length == 0)
+        {
+            return result;
+        }
+        final int lengthOfMonth = date.lengthOfMonth();
+        final List<byte[]> keys = buildSignKeys(uids, date);
+        final BitFieldSubCommands subCommands = monthSubCommands(date, lengthOfMonth);
+        final List<Object> results = executePipelined(connection -> {
+            for (byte[] key : keys)
+            {
+                connection.bitField(key, subCommands);
+            }
+        });
+        for (int i = 0; i < result.length; i++)
+        {
+            result[i] = SignUtil.reverseBitField(firstValue(bitFieldResult(results, i)), lengthOfMonth);
+        }
+        return result;
+    }
+
+    @Override
+    public long[] getSignBitmapsForTheLastFewDays(@NonNull List<String> uids, @NonNull LocalDate date,
+                                                  int lastFewDays) throws UnsupportedEncodingException {
+        if (lastFewDays < 1 || lastFewDays > Long.SIZE)
+        {
+            throw new IllegalArgumentException("lastFewDays must be between 1 and 64: " + lastFewDays);
+        }
+        final long[] result = new long[uids.size()];
+        if (result.length == 0)
+        {
+            return result;
+        }
+
+        // 按月份把最近几天划分为多个片段, 每个片段为一个月内截止到 monthDate 的 days 天
+        final List<LocalDate> segmentDates = new ArrayList<>(3);
+        final List<Integer> segmentDays = new ArrayList<>(3);
+        LocalDate monthDate = date;
+        for (int remaining = lastFewDays; remaining > 0; )
+        {
+            final int days = Math.min(remaining, monthDate.getDayOfMonth());
+            segmentDates.add(monthDate);
+            segmentDays.add(days);
+            remaining -= days;
+            monthDate = monthDate.withDayOfMonth(1).minusDays(1);
+        }
+
+        final int segments = segmentDates.size();
+        final List<byte[]> keys = new ArrayList<>(result.length * segments);
+        final List<BitFieldSubCommands> subCommandsList = new ArrayList<>(segments);
+        for (int j = 0; j < segments; j++)
+        {
+            final int days = segmentDays.get(j);
+            subCommandsList.add(BitFieldSubCommands.create()
+                                        .get(BitFieldSubCommands.BitFieldType.unsigned(days))
+                                        .valueAt(monthOffset(segmentDates.get(j))
+                                                         + segmentDates.get(j).getDayOfMonth() - days));
+        }
+        for (String uid : uids)
+        {
+            for (int j = 0; j < segments; j++)
+            {
+                keys.add(buildSignKey(uid, segmentDates.get(j)));
+            }
+        }
+
+        final List<Object> results = executePipelined(connection -> {
+            for (int k = 0; k < keys.size(); k++)
+            {
+                connection.bitField(keys.get(k), subCommandsList.get(k % segments));
+            }
+        });
+
+        for (int i = 0; i < result.length; i++)
+        {
+            long bitmap = 0L;
+            int daysAgo = 0;
+            for (int j = 0; j < segments; j++)
+            {
+                // BITFIELD 返回值的最低位为片段的最后一天, 即 daysAgo 天前
+                bitmap |= firstValue(bitFieldResult(results, i * segments + j)) << daysAgo;
+                daysAgo += segmentDays.get(j);
+            }
+            result[i] = bitmap;
+        }
+        return result;
+    }
+
+    /**
+     * 更新当天所有用户签到的全局统计
+     * @param connection    处于管道模式的连接
+     * @param uid           用户ID
+     * @param uidBytes      用户ID的 byte[]
+     * @param dailyKey      当天的全局统计 key
+     * @param dailyType     全局统计类型
+     * @throws UnsupportedEncodingException UnsupportedEncodingException
+     */
+    private void dailySign(@NonNull RedisConnection connection, @NonNull String uid, @NonNull byte[] uidBytes,
+                           @NonNull byte[] dailyKey, @NonNull DailySignStatisticsType dailyType) throws UnsupportedEncodingException {
+        final Long dailyExpired = signProperties.getDailySignExpired();
+        if (DailySignStatisticsType.HYPER_LOG_LOG.equals(dailyType))
+        {
+            connection.pfAdd(dailyKey, uidBytes);
+            connection.expire(dailyKey, dailyExpired);
+            return;
+        }
+        if (signProperties.getDailySignNumericUid())
+        {
+            long bitOffset;
+            try
+            {
+                bitOffset = Long.parseLong(uid);
+            }
+            catch (NumberFormatException e)
+            {
+                bitOffset = -1L;
+            }
+            if (bitOffset < 0L || bitOffset >= MAX_BIT_OFFSET)
+            {
+                log.warn("全局签到位图统计忽略非法的数字 uid: uid={}", uid);
+                return;
+            }
+            connection.setBit(dailyKey, bitOffset, true);
+            connection.expire(dailyKey, dailyExpired);
+            return;
+        }
+        connection.eval(DAILY_SIGN_INDEX_SCRIPT, ReturnType.INTEGER, 3,
+                        signProperties.getUidIndexKey().getBytes(charset),
+                        signProperties.getUidSequenceKey().getBytes(charset),
+                        dailyKey, uidBytes, dailyExpired.toString().getBytes(charset));
+    }
+
+    /**
+     * 在一个连接中通过管道执行 redis 命令
+     * @param commands  redis 命令
+     * @return  管道中各个命令的执行结果
+     */
+    @NonNull
+    private List<Object> executePipelined(@NonNull Consumer<RedisConnection> commands) {
+        List<Object> results;
+        try (RedisConnection connection = getConnection())
+        {
+            connection.openPipeline();
+            commands.accept(connection);
+            results = connection.closePipeline();
+        }
+        return Optional.ofNullable(results).orElse(new ArrayList<>(0));
+    }
+
+    @NonNull
+    private List<byte[]> buildSignKeys(@NonNull List<String> uids, @NonNull LocalDate date) throws UnsupportedEncodingException {
+        final List<byte[]> keys = new ArrayList<>(uids.size());
+        for (String uid : uids)
+        {
+            keys.add(buildSignKey(uid, date));
+        }
+        return keys;
+    }
+
+    /**
+     * 获取管道中 BITFIELD 命令的执行结果
+     * @param results   管道中各个命令的执行结果
+     * @param index     BITFIELD 命令在管道中的索引
+     * @return  BITFIELD 命令的执行结果, 没有结果时返回空列表
+     */
+    @SuppressWarnings("unchecked")
+    @NonNull
+    private static List<Long> bitFieldResult(@NonNull List<Object> results, int index) {
+        final Object result = index < results.size() ? results.get(index) : null;
+        return result instanceof List ? (List<Long>) result : new ArrayList<>(0);
+    }
+
+    private static long firstValue(@NonNull List<Long> list) {
+        final Long value = list.isEmpty() ? null : list.get(0);
+        return value == null ? 0L : value;
+    }
+
     /**
      * 把 list 数据注入到 signMap 中
      * @param date              date 与 lowDay 和 beforeOfHighDay 有对应关系
@@ -445,13 +790,13 @@ public class UserSignServiceImpl implements SignService {
 
         // 当月
         int currentMonthType = dayOfMonth;
-        int currentMonthOffset = 0;
+        long currentMonthOffset = monthOffset(date);
         int currentMonthLowDay = dayOfMonth;
         int currentMonthBeforeOfHighDay = 0;
 
         // 上月
         int preMonthType = remainingDays;
-        int preMonthOffset = lengthOfPreMonth- remainingDays;
+        long preMonthOffset = monthOffset(preMonthsDate) + lengthOfPreMonth - remainingDays;
         int preMonthLowDay = lengthOfPreMonth;
         int preMonthBeforeOfHighDay = lengthOfPreMonth - remainingDays;
 
@@ -471,11 +816,13 @@ public class UserSignServiceImpl implements SignService {
                 BitFieldSubCommands.create()
                         .get(BitFieldSubCommands.BitFieldType.unsigned(preMonthType))
                         .valueAt(preMonthOffset);
-        try (RedisConnection connection = getConnection())
-        {
-            currentMonthList = connection.bitField(key, subCommands);
-            preMonthList = connection.bitField(preMonthKey, preMonthSubCommands);
-        }
+        // 两个 BITFIELD 通过一次管道执行
+        final List<Object> results = executePipelined(connection -> {
+            connection.bitField(key, subCommands);
+            connection.bitField(preMonthKey, preMonthSubCommands);
+        });
+        currentMonthList = bitFieldResult(results, 0);
+        preMonthList = bitFieldResult(results, 1);
 
         // 当月
         fillingSignMap(date, signMap, currentMonthLowDay, currentMonthBeforeOfHighDay,
@@ -490,7 +837,7 @@ public class UserSignServiceImpl implements SignService {
     /**
      * 获取指定天数的签到情况, 指定天数都在同一个月内
      * @param type              无符号的位数
-     * @param offset            偏移量
+     * @param offset            当月签到位图中的偏移量
      * @param uid               用户id
      * @param date              日期
      * @param lowDay            低位数(DayOfMonth)
@@ -506,7 +853,7 @@ public class UserSignServiceImpl implements SignService {
         final BitFieldSubCommands subCommands =
                 BitFieldSubCommands.create()
                         .get(BitFieldSubCommands.BitFieldType.unsigned(type))
-                        .valueAt(offset);
+                        .valueAt(monthOffset(date) + offset);
         try (RedisConnection connection = getConnection())
         {
             list = connection.bitField(key, subCommands);
@@ -516,6 +863,43 @@ public class UserSignServiceImpl implements SignService {
     }
 
 
+    /**
+     * 一个用户签到 key 存储多个月时, 清除指定用户与指定日期所在月份的签到位图, 不影响同一个 key 中其他月份的签到数据
+     *
+     * @param keyMap  k = 用户ID, v = LocalDate
+     * @return 清除前有签到数据的月份数量
+     * @throws UnsupportedEncodingException UnsupportedEncodingException
+     */
+    private long clearMonthSignBitmaps(@NonNull Map<String, LocalDate> keyMap) throws UnsupportedEncodingException {
+        final List<byte[]> keys = new ArrayList<>(keyMap.size());
+        final List<BitFieldSubCommands> subCommandsList = new ArrayList<>(keyMap.size());
+        for (Map.Entry<String, LocalDate> entry : keyMap.entrySet())
+        {
+            final LocalDate date = entry.getValue();
+            keys.add(buildSignKey(entry.getKey(), date));
+            subCommandsList.add(BitFieldSubCommands.create()
+                                        .set(BitFieldSubCommands.BitFieldType.unsigned(date.lengthOfMonth()))
+                                        .valueAt(monthOffset(date))
+                                        .to(0L));
+        }
+        final List<Object> results = executePipelined(connection -> {
+            for (int i = 0; i < keys.size(); i++)
+            {
+                connection.bitField(keys.get(i), subCommandsList.get(i));
+            }
+        });
+        long cleared = 0L;
+        for (int i = 0; i < keys.size(); i++)
+        {
+            // BITFIELD SET 返回旧值
+            if (firstValue(bitFieldResult(results, i)) != 0L)
+            {
+                cleared++;
+            }
+        }
+        return cleared;
+    }
+
     /**
      * 从 redis 中删除指定的 keyList
      *
@@ -0,0 +1,308 @@
+/*
+ * MIT License
+ * Copyright (c) 2020-2029 YongWu zheng (dcenter.top and gitee.com/pcore and github.com/ZeroOrInfinity)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package top.dcenter.ums.security.core.sign;
+
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.lang.NonNull;
+import top.dcenter.ums.security.core.api.sign.service.SignStatisticsService;
+import top.dcenter.ums.security.core.sign.enums.DailySignStatisticsType;
+import top.dcenter.ums.security.core.sign.properties.SignProperties;
+import top.dcenter.ums.security.core.util.SignUtil;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * 基于 Redis 位图或 HyperLogLog 的每天所有用户签到的全局统计实现类<br><br>
+ * 要自定义全局统计功能, 实现 {@link SignStatisticsService}, 注入 IOC 即可<br><br>
+ * 全局统计 key 由 {@link UserSignServiceImpl} 在用户签到时在同一个管道中更新, 统计类型由
+ * {@link SignProperties#getDailySignStatisticsType()} 决定; 并集, 交集与留存通过 lua 脚本在 redis 服务端一次计算完成.
+ * 注意: 多 key 操作不支持 redis cluster.<br>
+ * @author YongWu zheng
+ * @version V2.0  Created by 2020/12/6 10:36
+ */
+public class UserSignStatisticsServiceImpl implements SignStatisticsService {
+
+    /**
+     * HyperLogLog 通过容斥原理估算交集时的最大天数, 需要执行 2^n - 1 次 PFCOUNT
+     */
+    private static final int MAX_HYPER_LOG_LOG_INTERSECTION_DAYS = 6;
+
+    /**
+     * 对多个全局签到位图执行 BITOP 并返回结果的 BITCOUNT, 临时 key 用完即删.<br>
+     * KEYS[1] = 临时 key, KEYS[2..n] = 全局签到位图 key, ARGV[1] = OR/AND
+     */
+    private static final byte[] BITOP_COUNT_SCRIPT =
+            ("if #KEYS == 2 then return redis.call('BITCOUNT', KEYS[2]) end " +
+             "redis.call('BITOP', ARGV[1], KEYS[1], unpack(KEYS, 2)) " +
+             "local count = redis.call('BITCOUNT', KEYS[1]) " +
+             "redis.call('DEL', KEYS[1]) " +
+             "return count").getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * 计算留存: 返回 {同期群用户数, 留存用户数}, 临时 key 用完即删.<br>
+     * KEYS[1], KEYS[2] = 临时 key, KEYS[3..2+ARGV[1]] = 同期群的全局签到位图 key, 之后为回访的全局签到位图 key,
+     * ARGV[1] = 同期群的 key 数量
+     */
+    private static final byte[] BITMAP_RETENTION_SCRIPT =
+            ("local n = tonumber(ARGV[1]) " +
+             "local cohort, back = {}, {} " +
+             "for i = 3, #KEYS do " +
+             "  if i < 3 + n then cohort[#cohort + 1] = KEYS[i] else back[#back + 1] = KEYS[i] end " +
+             "end " +
+             "redis.call('BITOP', 'OR', KEYS[1], unpack(cohort)) " +
+             "local total = redis.call('BITCOUNT', KEYS[1]) " +
+             "if total == 0 then redis.call('DEL', KEYS[1]) return {0, 0} end " +
+             "redis.call('BITOP', 'OR', KEYS[2], unpack(back)) " +
+             "redis.call('BITOP', 'AND', KEYS[2], KEYS[1], KEYS[2]) " +
+             "local retained = redis.call('BITCOUNT', KEYS[2]) " +
+             "redis.call('DEL', KEYS[1], KEYS[2]) " +
+             "return {total, retained}").getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * 通过容斥原理估算多个 HyperLogLog 的交集基数. KEYS = 全局签到 HyperLogLog key
+     */
+    private static final byte[] HYPER_LOG_LOG_INTERSECTION_SCRIPT =
+            ("local n = #KEYS " +
+             "local total = 0 " +
+             "for mask = 1, 2 ^ n - 1 do " +
+             "  local keys = {} " +
+             "  for i = 1, n do " +
+             "    if math.floor(mask / 2 ^ (i - 1)) % 2 == 1 then keys[#keys + 1] = KEYS[i] end " +
+             "  end " +
+             "  local count = redis.call('PFCOUNT', unpack(keys)) " +
+             "  if #keys % 2 == 1 then total = total + count else total = total - count end " +
+             "end " +
+             "if total < 0 then total = 0 end " +
+             "return total").getBytes(StandardCharsets.UTF_8);
+    private final RedisConnectionFactory redisConnectionFactory;
+    private final SignProperties signProperties;
+    private final String charset;
+
+    public UserSignStatisticsServiceImpl(RedisConnectionFactory redisConnectionFactory, SignProperties signProperties) {
+        this.redisConnectionFactory = redisConnectionFactory;
+        this.signProperties = signProperties;
+        charset = signProperties.getCharset();
+    }
+
+    public RedisConnection getConnection() {
+        return redisConnectionFactory.getConnection();
+    }
+
+    private byte[] buildDailySignKey(LocalDate date) throws UnsupportedEncodingException {
+
+        return (signProperties.getDailySignKeyPrefix()
+                + SignUtil.formatDate(date, "yyyyMMdd")).getBytes(charset);
+    }
+
+    private byte[] buildTemporaryKey() throws UnsupportedEncodingException {
+
+        return (signProperties.getDailySignKeyPrefix() + "tmp:" + UUID.randomUUID().toString()).getBytes(charset);
+    }
+
+    @Override
+    public long getDailySignUserCount(@NonNull LocalDate date) throws UnsupportedEncodingException {
+        final byte[] dailyKey = buildDailySignKey(date);
+        final Long count;
+        try (RedisConnection connection = getConnection())
+        {
+            if (DailySignStatisticsType.HYPER_LOG_LOG.equals(getDailySignStatisticsType()))
+            {
+                count = connection.pfCount(dailyKey);
+            }
+            else
+            {
+                count = connection.bitCount(dailyKey);
+            }
+        }
+        return Optional.ofNullable(count).orElse(0L);
+    }
+
+    @Override
+    public long getSignUserCountOfAnyDays(@NonNull List<LocalDate> dates) throws UnsupportedEncodingException {
+        if (dates.isEmpty())
+        {
+            return 0L;
+        }
+        final byte[][] dailyKeys = buildDailySignKeys(dates);
+        final Long count;
+        try (RedisConnection connection = getConnection())
+        {
+            if (DailySignStatisticsType.HYPER_LOG_LOG.equals(getDailySignStatisticsType()))
+            {
+                // PFCOUNT 多个 key 即为并集的基数
+                count = connection.pfCount(dailyKeys);
+            }
+            else
+            {
+                count = connection.eval(BITOP_COUNT_SCRIPT, ReturnType.INTEGER, dailyKeys.length + 1,
+                                        bitOpKeysAndArgs(dailyKeys, "OR"));
+            }
+        }
+        return Optional.ofNullable(count).orElse(0L);
+    }
+
+    @Override
+    public long getSignUserCountOfAllDays(@NonNull List<LocalDate> dates) throws UnsupportedEncodingException {
+        if (dates.isEmpty())
+        {
+            return 0L;
+        }
+        final byte[][] dailyKeys = buildDailySignKeys(dates);
+        final Long count;
+        try (RedisConnection connection = getConnection())
+        {
+            if (DailySignStatisticsType.HYPER_LOG_LOG.equals(getDailySignStatisticsType()))
+            {
+                if (dailyKeys.length > MAX_HYPER_LOG_LOG_INTERSECTION_DAYS)
+                {
+                    throw new IllegalArgumentException(String.format("HyperLogLog 估算交集最多支持 %d 天: %d",
+                                                                     MAX_HYPER_LOG_LOG_INTERSECTION_DAYS,
+                                                                     dailyKeys.length));
+                }
+                count = connection.eval(HYPER_LOG_LOG_INTERSECTION_SCRIPT, ReturnType.INTEGER,
+                                        dailyKeys.length, dailyKeys);
+            }
+            else
+            {
+                count = connection.eval(BITOP_COUNT_SCRIPT, ReturnType.INTEGER, dailyKeys.length + 1,
+                                        bitOpKeysAndArgs(dailyKeys, "AND"));
+            }
+        }
+        return Optional.ofNullable(count).orElse(0L);
+    }
+
+    @Override
+    public double getRetentionRate(@NonNull List<LocalDate> cohortDates,
+                                   @NonNull List<LocalDate> returnDates) throws UnsupportedEncodingException {
+        if (cohortDates.isEmpty() || returnDates.isEmpty())
+        {
+            return 0.0D;
+        }
+        final byte[][] cohortKeys = buildDailySignKeys(cohortDates);
+        final byte[][] returnKeys = buildDailySignKeys(returnDates);
+        final long total, retained;
+        if (DailySignStatisticsType.HYPER_LOG_LOG.equals(getDailySignStatisticsType()))
+        {
+            final byte[][] allKeys = new byte[cohortKeys.length + returnKeys.length][];
+            System.arraycopy(cohortKeys, 0, allKeys, 0, cohortKeys.length);
+            System.arraycopy(returnKeys, 0, allKeys, cohortKeys.length, returnKeys.length);
+            // 容斥原理: |A ∩ B| = |A| + |B| - |A ∪ B|
+            final List<Object> results = executePipelined(connection -> {
+                connection.pfCount(cohortKeys);
+                connection.pfCount(returnKeys);
+                connection.pfCount(allKeys);
+            });
+            total = longResult(results, 0);
+            retained = Math.max(0L, Math.min(total, total + longResult(results, 1) - longResult(results, 2)));
+        }
+        else
+        {
+            final byte[][] keysAndArgs = new byte[2 + cohortKeys.length + returnKeys.length + 1][];
+            keysAndArgs[0] = buildTemporaryKey();
+            keysAndArgs[1] = buildTemporaryKey();
+            System.arraycopy(cohortKeys, 0, keysAndArgs, 2, cohortKeys.length);
+            System.arraycopy(returnKeys, 0, keysAndArgs, 2 + cohortKeys.length, returnKeys.length);
+            keysAndArgs[keysAndArgs.length - 1] = Integer.toString(cohortKeys.length).getBytes(charset);
+            final List<Object> results;
+            try (RedisConnection connection = getConnection())
+            {
+                results = connection.eval(BITMAP_RETENTION_SCRIPT, ReturnType.MULTI, keysAndArgs.length - 1,
+                                          keysAndArgs);
+            }
+            final List<Object> counts = Optional.ofNullable(results).orElse(new ArrayList<>(0));
+            total = longResult(counts, 0);
+            retained = longResult(counts, 1);
+        }
+        return total == 0L ? 0.0D : (double) retained / total;
+    }
+
+    @NonNull
+    private DailySignStatisticsType getDailySignStatisticsType() {
+        final DailySignStatisticsType dailyType = signProperties.getDailySignStatisticsType();
+        if (dailyType == null || DailySignStatisticsType.NONE.equals(dailyType))
+        {
+            throw new IllegalStateException("每天所有用户签到的全局统计未开启: ums.sign.daily-sign-statistics-type=NONE");
+        }
+        return dailyType;
+    }
+
+    @NonNull
+    private byte[][] buildDailySignKeys(@NonNull List<LocalDate> dates) throws UnsupportedEncodingException {
+        final byte[][] keys = new byte[dates.size()][];
+        for (int i = 0; i < keys.length; i++)
+        {
+            keys[i] = buildDailySignKey(dates.get(i));
+        }
+        return keys;
+    }
+
+    /**
+     * {@link #BITOP_COUNT_SCRIPT} 的 keys 与 args
+     * @param dailyKeys 全局签到位图 key
+     * @param operation OR/AND
+     * @return  临时 key + dailyKeys + operation
+     * @throws UnsupportedEncodingException UnsupportedEncodingException
+     */
+    @NonNull
+    private byte[][] bitOpKeysAndArgs(@NonNull byte[][] dailyKeys, @NonNull String operation) throws UnsupportedEncodingException {
+        final byte[][] keysAndArgs = new byte[dailyKeys.length + 2][];
+        keysAndArgs[0] = buildTemporaryKey();
+        System.arraycopy(dailyKeys, 0, keysAndArgs, 1, dailyKeys.length);
+        keysAndArgs[keysAndArgs.length - 1] = operation.getBytes(charset);
+        return keysAndArgs;
+    }
+
+    private static long longResult(@NonNull List<Object> results, int index) {
+        final Object result = index < results.size() ? results.get(index) : null;
+        return result instanceof Number ? ((Number) result).longValue() : 0L;
+    }
+
+    /**
+     * 在一个连接中通过管道执行 redis 命令
+     * @param commands  redis 命令
+     * @return  管道中各个命令的执行结果
+     */
+    @NonNull
+    private List<Object> executePipelined(@NonNull Consumer<RedisConnection> commands) {
+        List<Object> results;
+        try (RedisConnection connection = getConnection())
+        {
+            connection.openPipeline();
+            commands.accept(connection);
+            results = connection.closePipeline();
+        }
+        return Optional.ofNullable(results).orElse(new ArrayList<>(0));
+    }
+
+
+}
@@ -24,14 +24,18 @@
 package top.dcenter.ums.security.core.sign.config;
 
 import org.springframework.boot.autoconfigure.AutoConfigureAfter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import top.dcenter.ums.security.core.api.sign.service.SignService;
+import top.dcenter.ums.security.core.api.sign.service.SignStatisticsService;
 import top.dcenter.ums.security.core.auth.config.SecurityAutoConfiguration;
-import top.dcenter.ums.security.core.sign.properties.SignProperties;
+import top.dcenter.ums.security.core.sign.SignStorageMigrator;
 import top.dcenter.ums.security.core.sign.UserSignServiceImpl;
+import top.dcenter.ums.security.core.sign.UserSignStatisticsServiceImpl;
+import top.dcenter.ums.security.core.sign.properties.SignProperties;
 
 /**
  * 签到配置类
@@ -47,4 +51,21 @@ public class SignAutoConfiguration {
     public SignService signService(RedisConnectionFactory redisConnectionFactory, SignProperties signProperties) {
         return new UserSignServiceImpl(redisConnectionFactory, signProperties);
     }
+
+    /**
+     * 每天所有用户签到的全局统计, ums.sign.daily-sign-statistics-type 不为 NONE 时才注入
+     */
+    @Bean
+    @ConditionalOnExpression("!'${ums.sign.daily-sign-statistics-type:NONE}'.equalsIgnoreCase('NONE')")
+    @ConditionalOnMissingBean(type = "top.dcenter.ums.security.core.api.sign.service.SignStatisticsService")
+    public SignStatisticsService signStatisticsService(RedisConnectionFactory redisConnectionFactory,
+                                                      SignProperties signProperties) {
+        return new UserSignStatisticsServiceImpl(redisConnectionFactory, signProperties);
+    }
+
+    @Bean
+    @ConditionalOnMissingBean(type = "top.dcenter.ums.security.core.sign.SignStorageMigrator")
+    public SignStorageMigrator signStorageMigrator(RedisConnectionFactory redisConnectionFactory, SignProperties signProperties) {
+        return new SignStorageMigrator(redisConnectionFactory, signProperties);
+    }
 }
\ No newline at end of file
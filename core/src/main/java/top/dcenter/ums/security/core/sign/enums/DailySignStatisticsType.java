@@ -0,0 +1,47 @@
+/*
+ * MIT License
+ * Copyright (c) 2020-2029 YongWu zheng (dcenter.top and gitee.com/pcore and github.com/ZeroOrInfinity)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package top.dcenter.ums.security.core.sign.enums;
+
+/**
+ * 每天所有用户签到的全局统计类型, 用于统计多天内签到的用户数(并集/交集)与留存率
+ * @author YongWu zheng
+ * @version V2.0  Created by 2020/12/5 10:12
+ */
+public enum DailySignStatisticsType {
+    /**
+     * 不统计
+     */
+    NONE,
+    /**
+     * redis 位图(每天一个 key, 用户索引 -> bit), 精确统计, 通过 BITOP/BITCOUNT 计算并集, 交集与留存.
+     * 用户索引为数字 uid 或由 uid 映射的递增整数, 见 SignProperties#getDailySignNumericUid()
+     */
+    BITMAP,
+    /**
+     * redis HyperLogLog(每天一个 key), 固定 12KB 内存的近似统计(标准误差 0.81%), 通过 PFCOUNT 计算并集,
+     * 交集与留存通过容斥原理估算
+     */
+    HYPER_LOG_LOG
+
+}
@@ -26,6 +26,7 @@ package top.dcenter.ums.security.core.sign.properties;
 import lombok.Getter;
 import lombok.Setter;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import top.dcenter.ums.security.core.sign.enums.DailySignStatisticsType;
 
 import java.nio.charset.StandardCharsets;
 
@@ -67,6 +68,57 @@ public class SignProperties {
      */
     private Long totalExpired = 5356800L;
 
+    /**
+     * 一个用户签到 key 存储的月数, 必须能整除 12, 即: 1, 2, 3, 4, 6, 12, 默认: 1.<br>
+     * 为 1 时每个用户每月一个位图 key(uid:yyyyMM); 大于 1 时每个用户每 N 个月一个位图 key(uid:yyyyMM+N), 按窗口内的第几天寻址,
+     * 例如 12 为每个用户每年一个 key, 可大幅减少 key 的数量与 key 的内存开销. 每次签到都会刷新 key 的 TTL({@link #userExpired}).<br>
+     * 注意: 更改此配置后, 旧的签到数据需要通过 {@link top.dcenter.ums.security.core.sign.SignStorageMigrator} 迁移.
+     */
+    private Integer signKeyWindowMonths = 1;
+
+    /**
+     * 每天所有用户签到的全局统计类型, 默认: NONE. 不为 NONE 时, 用户签到时在同一个管道中更新当天的全局统计 key,
+     * 并注入 SignStatisticsService 用于统计多天内签到的用户数(并集/交集)与留存率. 注意: 更改类型时需要删除已有的全局统计 key
+     */
+    private DailySignStatisticsType dailySignStatisticsType = DailySignStatisticsType.NONE;
+
+    /**
+     * 用于 redis 每天所有用户签到的全局统计 key 前缀, 完整 key 为: 前缀 + yyyyMMdd, 默认为: daily:sign:
+     */
+    private String dailySignKeyPrefix = "daily:sign:";
+
+    /**
+     * 每天所有用户签到的全局统计 redis key TTL, 默认: 三个月 , 单位: 秒
+     */
+    private Long dailySignExpired = 8035200L;
+
+    /**
+     * dailySignStatisticsType 为 BITMAP 时, uid 是否为非负整数(小于 2^32), 默认: false.<br>
+     * 为 true 时直接使用 uid 作为位图的偏移量; 为 false 时通过 redis hash({@link #uidIndexKey})把 uid 映射为递增的整数.
+     */
+    private Boolean dailySignNumericUid = false;
+
+    /**
+     * dailySignStatisticsType 为 BITMAP 且 dailySignNumericUid 为 false 时, uid 到位图偏移量映射的 redis hash key,
+     * 默认为: sign:uid:index
+     */
+    private String uidIndexKey = "sign:uid:index";
+
+    /**
+     * dailySignStatisticsType 为 BITMAP 且 dailySignNumericUid 为 false 时, 生成位图偏移量的 redis 计数器 key,
+     * 默认为: sign:uid:seq
+     */
+    private String uidSequenceKey = "sign:uid:seq";
+
+    public void setSignKeyWindowMonths(Integer signKeyWindowMonths) {
+        //noinspection AlibabaUndefineMagicConstant
+        if (signKeyWindowMonths < 1 || 12 % signKeyWindowMonths != 0)
+        {
+            throw new RuntimeException("一个用户签到 key 存储的月数必须能整除 12");
+        }
+        this.signKeyWindowMonths = signKeyWindowMonths;
+    }
+
     public void setLastFewDays(Integer lastFewDays) {
         //noinspection AlibabaUndefineMagicConstant
         if (lastFewDays > 28)
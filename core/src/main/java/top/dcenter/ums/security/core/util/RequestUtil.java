@@ -38,7 +38,6 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
-import static java.util.Optional.ofNullable;
 import static top.dcenter.ums.security.common.consts.SecurityConstants.URL_PARAMETER_SEPARATOR;
 import static top.dcenter.ums.security.core.util.MvcUtil.getServletContextPath;
 
@@ -66,13 +65,19 @@ public class RequestUtil {
                                                             Class<T> clz) {
         try
         {
-            byte[] bodies;
+            byte[] bodies = null;
             if (request instanceof AjaxOrFormRequestFilter.AjaxOrFormRequest)
             {
                 AjaxOrFormRequestFilter.AjaxOrFormRequest ajaxOrFormRequest = (AjaxOrFormRequestFilter.AjaxOrFormRequest) request;
-                bodies = ofNullable(ajaxOrFormRequest.getBody()).orElse("".getBytes(StandardCharsets.UTF_8));
+                bodies = ajaxOrFormRequest.getBody();
+                Map<String, Object> formMap = ajaxOrFormRequest.getFormMap();
+                if (bodies != null && formMap != null && !formMap.isEmpty() && !isJsonBody(bodies))
+                {
+                    // 已解析的 form 数据直接绑定到 clz, 不需要再转换为 json 字符串
+                    return objectMapper.convertValue(formMap, clz);
+                }
             }
-            else
+            if (bodies == null)
             {
                 bodies = readAllBytes(request.getInputStream());
             }
@@ -113,8 +118,25 @@ public class RequestUtil {
         {
             Map<String, Object> map = ConvertUtil.string2JsonMap(requestBody, URL_PARAMETER_SEPARATOR,
                                              SecurityConstants.KEY_VALUE_SEPARATOR);
-            return objectMapper.readValue(map.toString(), clz);
+            // 直接绑定到 clz, 不需要再转换为 json 字符串
+            return objectMapper.convertValue(map, clz);
+        }
+    }
+
+    /**
+     * 请求体的第一个非空白字符是否为 json 的前缀
+     * @param body  请求体
+     * @return  是否为 json 格式的请求体
+     */
+    private static boolean isJsonBody(byte[] body) {
+        for (byte b : body)
+        {
+            if (!Character.isWhitespace(b))
+            {
+                return b == VALIDATE_JSON_PREFIX.charAt(0);
+            }
         }
+        return false;
     }
 
     /**
@@ -247,8 +269,8 @@ public class RequestUtil {
      *
      * @since 11
      */
-    @SuppressWarnings({"SameParameterValue", "AlibabaLowerCamelCaseVariableNaming"})
-    private static byte[] readNBytes(int len, InputStream inputStream) throws IOException {
+    @SuppressWarnings({"AlibabaLowerCamelCaseVariableNaming"})
+    public static byte[] readNBytes(int len, InputStream inputStream) throws IOException {
         if (len < 0) {
             throw new IllegalArgumentException("len < 0");
         }
@@ -52,6 +52,53 @@ public class SignUtil {
         return date.format(DateTimeFormatter.ofPattern(pattern));
     }
 
+    /**
+     * 用户当月签到位图中指定日期是否已签到
+     * @param monthBitmap   当月签到位图, 第 n 位(从 0 开始)表示当月第 n + 1 天
+     * @param dayOfMonth    当月的第几天
+     * @return  是否已签到
+     */
+    public static boolean isSigned(long monthBitmap, int dayOfMonth) {
+        return ((monthBitmap >>> (dayOfMonth - 1)) & 1L) == 1L;
+    }
+
+    /**
+     * 用户最近几天签到位图中指定天数之前是否已签到
+     * @param lastFewDaysBitmap 最近几天的签到位图, 第 n 位(从 0 开始)表示 n 天前
+     * @param daysAgo           几天前, 0 表示当天
+     * @return  是否已签到
+     */
+    public static boolean isSignedDaysAgo(long lastFewDaysBitmap, int daysAgo) {
+        return ((lastFewDaysBitmap >>> daysAgo) & 1L) == 1L;
+    }
+
+    /**
+     * 根据用户当月签到位图计算截止到 dayOfMonth 的最近连续签到次数, 当天尚未签到时从前一天开始计算
+     * @param monthBitmap   当月签到位图, 第 n 位(从 0 开始)表示当月第 n + 1 天
+     * @param dayOfMonth    当月的第几天
+     * @return  最近连续签到次数
+     */
+    public static int continuousSignCount(long monthBitmap, int dayOfMonth) {
+        final int day = isSigned(monthBitmap, dayOfMonth) ? dayOfMonth : dayOfMonth - 1;
+        if (day < 1)
+        {
+            return 0;
+        }
+        // 截止到 day 的位图左移到最高位, 最高位开始连续为 1 的个数即为连续签到次数
+        final long bits = monthBitmap << (64 - day);
+        return Math.min(day, Long.numberOfLeadingZeros(~bits));
+    }
+
+    /**
+     * 把 redis BITFIELD GET u{bits} 的返回值(第一个 bit 为最高位)转换为第一个 bit 为最低位的位图
+     * @param value     BITFIELD GET 的返回值
+     * @param bits      无符号的位数, 1 - 63
+     * @return  第一个 bit 为最低位的位图
+     */
+    public static long reverseBitField(long value, int bits) {
+        return Long.reverse(value) >>> (64 - bits);
+    }
+
     /**
      * 构建 redis 上用户签到 key 字符串
      * @param uid   用户 ID
@@ -62,4 +109,45 @@ public class SignUtil {
         return String.format("%s:%s", uid, formatDate(date));
     }
 
+    /**
+     * 构建 redis 上用户签到 key 字符串, 一个 key 存储 windowMonths 个月的签到位图
+     * @param uid           用户 ID
+     * @param date          date
+     * @param windowMonths  一个签到 key 存储的月数, 必须能整除 12
+     * @return  返回签到 key 字符串, windowMonths 为 1 时格式如: uid:yyyyMM, 否则格式如: uid:yyyyMM+windowMonths,
+     *          yyyyMM 为窗口的起始月份
+     */
+    public static String buildSignKey(String uid, LocalDate date, int windowMonths) {
+        if (windowMonths == 1)
+        {
+            return buildSignKey(uid, date);
+        }
+        return String.format("%s:%s+%d", uid, formatDate(signWindowStart(date, windowMonths)), windowMonths);
+    }
+
+    /**
+     * 获取 date 所在签到窗口的第一天
+     * @param date          date
+     * @param windowMonths  一个签到 key 存储的月数, 必须能整除 12
+     * @return  签到窗口的第一天
+     */
+    public static LocalDate signWindowStart(LocalDate date, int windowMonths) {
+        final int startMonth = (date.getMonthValue() - 1) / windowMonths * windowMonths + 1;
+        return LocalDate.of(date.getYear(), startMonth, 1);
+    }
+
+    /**
+     * 获取 date 所在月份的第一天在签到窗口位图中的偏移量, 即签到窗口的第一天到当月第一天的天数
+     * @param date          date
+     * @param windowMonths  一个签到 key 存储的月数, 必须能整除 12
+     * @return  当月在签到窗口位图中的偏移量, windowMonths 为 1 时为 0
+     */
+    public static int signWindowOffset(LocalDate date, int windowMonths) {
+        if (windowMonths == 1)
+        {
+            return 0;
+        }
+        return (int) (date.withDayOfMonth(1).toEpochDay() - signWindowStart(date, windowMonths).toEpochDay());
+    }
+
 }
\ No newline at end of file
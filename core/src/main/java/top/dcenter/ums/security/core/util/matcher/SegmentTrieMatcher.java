@@ -0,0 +1,338 @@
+/*
+ * MIT License
+ * Copyright (c) 2020-2029 YongWu zheng (dcenter.top and gitee.com/pcore and github.com/ZeroOrInfinity)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package top.dcenter.ums.security.core.util.matcher;
+
+import org.springframework.lang.NonNull;
+import org.springframework.util.AntPathMatcher;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * 按路径段(segment)组织的 ant 风格路径前缀树匹配器, 每个路径(pattern)携带一个 payload. <br>
+ * 通配符段({@code *}, {@code **}, {@code *.html}, {@code {id}} 等)作为树中的通配节点, 查询时沿 path 的路径段
+ * 遍历前缀树(NFA), 耗时与 path 的长度成正比, 与 pattern 的数量无关.<br><br>
+ * 注意:<br>
+ * 1. 匹配语义与 {@link AntPathMatcher#match(String, String)} 保持一致. 前缀树只支持 {@link AntPathMatcher} 的默认配置
+ * (路径分隔符为 /, 大小写敏感, 不 trim 路径段), 其他配置或 {@link AntPathMatcher} 的子类时所有 pattern 都通过 antPathMatcher 逐个匹配.<br>
+ * 2. 少数无法按段拆分的 pattern(如正则中包含路径分隔符 {@code /user/{path:a/b}}) 会退回到 {@link AntPathMatcher} 逐个匹配.<br>
+ * 3. 通过 {@link #add(String, Object)} 构建完成后只读, 安全发布后线程安全; 构建过程不是线程安全的.
+ * @param <T>   pattern 携带的 payload 类型
+ * @author YongWu zheng
+ * @version V2.0  Created by 2020/12/7 14:20
+ */
+public final class SegmentTrieMatcher<T> {
+
+    public static final String PATH_SEPARATOR = "/";
+    private static final String SINGLE_WILDCARD = "*";
+    private static final String DOUBLE_WILDCARD = "**";
+
+    private final Node<T> root = new Node<>();
+    /**
+     * 无法按路径段编译的 pattern, 退回到 antPathMatcher 匹配
+     */
+    private final List<Entry<T>> fallbackEntries = new ArrayList<>(0);
+    private final AntPathMatcher antPathMatcher;
+    /**
+     * antPathMatcher 是否为前缀树支持的默认配置
+     */
+    private final boolean segmentMatchingSupported;
+
+    /**
+     * @param antPathMatcher    用于匹配单个路径段中的通配符, 非默认配置时用于匹配整个 pattern
+     */
+    public SegmentTrieMatcher(@NonNull AntPathMatcher antPathMatcher) {
+        this.antPathMatcher = antPathMatcher;
+        this.segmentMatchingSupported = isSegmentMatchingSupported(antPathMatcher);
+    }
+
+    /**
+     * 添加 pattern 与其 payload, 同一个 pattern 添加多次时分别匹配
+     * @param pattern   ant 风格的路径
+     * @param payload   payload
+     */
+    public void add(@NonNull String pattern, @NonNull T payload) {
+        final Entry<T> entry = new Entry<>(pattern, payload);
+        if (!this.segmentMatchingSupported || !isCompilable(pattern)) {
+            this.fallbackEntries.add(entry);
+            return;
+        }
+        final String[] segments = tokenize(pattern);
+        Node<T> node = this.root;
+        for (String segment : segments) {
+            node = node.child(segment);
+        }
+        node.entries.add(entry);
+        // 记录以单个 * 结尾且不含 ** 的 pattern, 用于匹配以分隔符结尾的 path
+        final int len = segments.length;
+        if (len > 0 && SINGLE_WILDCARD.equals(segments[len - 1]) && !entry.hasDoubleWildcard) {
+            node.trailingSingleWildcardEntries.add(entry);
+        }
+    }
+
+    /**
+     * 判断是否存在匹配 path 且 payload 满足 predicate 的 pattern. predicate 返回 true 时立即结束,
+     * 因此也可以通过始终返回 false 的 predicate 遍历所有匹配的 payload.
+     * @param path      path
+     * @param predicate payload 的判断条件, 在 pattern 匹配 path 之前或之后调用
+     * @return  存在匹配 path 且 payload 满足 predicate 的 pattern 时返回 true
+     */
+    public boolean anyMatch(@NonNull String path, @NonNull Predicate<? super T> predicate) {
+
+        for (Entry<T> entry : this.fallbackEntries) {
+            if (predicate.test(entry.payload) && this.antPathMatcher.match(entry.pattern, path)) {
+                return true;
+            }
+        }
+
+        final String[] segments = tokenize(path);
+        final boolean pathEndsWithSeparator = path.endsWith(PATH_SEPARATOR);
+        final boolean pathStartsWithSeparator = path.startsWith(PATH_SEPARATOR);
+
+        // 当前匹配到的节点(NFA 状态集)
+        List<Node<T>> current = new ArrayList<>(4);
+        addWithClosure(current, this.root);
+        List<Node<T>> next = new ArrayList<>(4);
+
+        for (int i = 0, len = segments.length; i < len && !current.isEmpty(); i++) {
+            final String segment = segments[i];
+            for (Node<T> node : current) {
+                node.step(segment, next, this.antPathMatcher);
+            }
+            List<Node<T>> tmp = current;
+            current = next;
+            next = tmp;
+            next.clear();
+        }
+
+        for (Node<T> node : current) {
+            if (pathEndsWithSeparator && node.singleWildcard != null) {
+                // path 以分隔符结尾时, 最后剩下的单个 * 可以匹配空段(与 AntPathMatcher 保持一致)
+                for (Entry<T> entry : node.singleWildcard.trailingSingleWildcardEntries) {
+                    if (entry.startsWithSeparator == pathStartsWithSeparator && predicate.test(entry.payload)) {
+                        return true;
+                    }
+                }
+            }
+            for (Entry<T> entry : node.entries) {
+                if (entry.startsWithSeparator != pathStartsWithSeparator) {
+                    continue;
+                }
+                // 含有 ** 的 pattern 不区分结尾分隔符; 否则 pattern 与 path 的结尾分隔符必须一致
+                if ((entry.hasDoubleWildcard || entry.endsWithSeparator == pathEndsWithSeparator)
+                        && predicate.test(entry.payload)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 通过探测判断 antPathMatcher 是否为默认配置: 路径分隔符为 /, 大小写敏感, 不 trim 路径段. 子类的匹配规则未知, 不支持.
+     * @param antPathMatcher    antPathMatcher
+     * @return  是否可以按 / 分段通过前缀树匹配
+     */
+    public static boolean isSegmentMatchingSupported(@NonNull AntPathMatcher antPathMatcher) {
+        return antPathMatcher.getClass() == AntPathMatcher.class
+                // 路径分隔符不是 / 时, /* 为一个段, 可以匹配 /a/b
+                && !antPathMatcher.match("/*", "/a/b")
+                && !antPathMatcher.match("/a", "/A")
+                && !antPathMatcher.match("/a", "/ a");
+    }
+
+    /**
+     * 添加节点以及通过 ** 可以零段到达的节点
+     */
+    private static <T> void addWithClosure(@NonNull List<Node<T>> nodes, @NonNull Node<T> node) {
+        Node<T> n = node;
+        while (n != null) {
+            if (!nodes.contains(n)) {
+                nodes.add(n);
+            }
+            n = n.doubleWildcard;
+        }
+    }
+
+    /**
+     * 正则变量中含有路径分隔符时无法按段匹配
+     */
+    private static boolean isCompilable(@NonNull String pattern) {
+        int depth = 0;
+        for (int i = 0, len = pattern.length(); i < len; i++) {
+            char c = pattern.charAt(i);
+            if (c == '{') {
+                depth++;
+            }
+            else if (c == '}') {
+                depth--;
+            }
+            else if (c == '/' && depth > 0) {
+                return false;
+            }
+        }
+        return depth == 0;
+    }
+
+    /**
+     * 与 AntPathMatcher 相同的分段规则: 以 / 分隔, 忽略空段, 不 trim.
+     */
+    @NonNull
+    private static String[] tokenize(@NonNull String path) {
+        final List<String> segments = new ArrayList<>(8);
+        int start = 0;
+        final int len = path.length();
+        for (int i = 0; i <= len; i++) {
+            if (i == len || path.charAt(i) == '/') {
+                if (i > start) {
+                    segments.add(path.substring(start, i));
+                }
+                start = i + 1;
+            }
+        }
+        return segments.toArray(new String[0]);
+    }
+
+    private static boolean isPatternSegment(@NonNull String segment) {
+        return segment.indexOf('*') != -1 || segment.indexOf('?') != -1 || segment.indexOf('{') != -1;
+    }
+
+    /**
+     * 前缀树节点
+     */
+    private static final class Node<T> {
+        /**
+         * 字面量子节点
+         */
+        private Map<String, Node<T>> literalChildren;
+        /**
+         * 含通配符的子节点, 如: *.html, user-?, {id}
+         */
+        private Map<String, Node<T>> patternChildren;
+        /**
+         * * 子节点
+         */
+        private Node<T> singleWildcard;
+        /**
+         * ** 子节点
+         */
+        private Node<T> doubleWildcard;
+        /**
+         * 是否为 ** 节点
+         */
+        private boolean isDoubleWildcard;
+        /**
+         * 在此节点结束的 pattern
+         */
+        private final List<Entry<T>> entries = new ArrayList<>(1);
+        /**
+         * 以单个 * 结尾的 pattern
+         */
+        private final List<Entry<T>> trailingSingleWildcardEntries = new ArrayList<>(0);
+
+        @NonNull
+        private Node<T> child(@NonNull String segment) {
+            if (DOUBLE_WILDCARD.equals(segment)) {
+                if (this.doubleWildcard == null) {
+                    this.doubleWildcard = new Node<>();
+                    this.doubleWildcard.isDoubleWildcard = true;
+                }
+                return this.doubleWildcard;
+            }
+            if (SINGLE_WILDCARD.equals(segment)) {
+                if (this.singleWildcard == null) {
+                    this.singleWildcard = new Node<>();
+                }
+                return this.singleWildcard;
+            }
+            if (isPatternSegment(segment)) {
+                if (this.patternChildren == null) {
+                    this.patternChildren = new HashMap<>(4);
+                }
+                return this.patternChildren.computeIfAbsent(segment, k -> new Node<>());
+            }
+            if (this.literalChildren == null) {
+                this.literalChildren = new HashMap<>(4);
+            }
+            return this.literalChildren.computeIfAbsent(segment, k -> new Node<>());
+        }
+
+        /**
+         * 消耗一个路径段, 把可到达的节点添加到 next
+         */
+        private void step(@NonNull String segment, @NonNull List<Node<T>> next,
+                          @NonNull AntPathMatcher antPathMatcher) {
+            if (this.literalChildren != null) {
+                Node<T> node = this.literalChildren.get(segment);
+                if (node != null) {
+                    addWithClosure(next, node);
+                }
+            }
+            if (this.singleWildcard != null) {
+                addWithClosure(next, this.singleWildcard);
+            }
+            if (this.patternChildren != null) {
+                this.patternChildren.forEach((pattern, node) -> {
+                    if (antPathMatcher.match(pattern, segment)) {
+                        addWithClosure(next, node);
+                    }
+                });
+            }
+            // ** 节点可以继续消耗路径段
+            if (this.isDoubleWildcard) {
+                addWithClosure(next, this);
+            }
+        }
+    }
+
+    /**
+     * pattern 与 payload
+     */
+    private static final class Entry<T> {
+        private final String pattern;
+        private final T payload;
+        private final boolean startsWithSeparator;
+        private final boolean endsWithSeparator;
+        private final boolean hasDoubleWildcard;
+
+        private Entry(@NonNull String pattern, @NonNull T payload) {
+            this.pattern = pattern;
+            this.payload = payload;
+            this.startsWithSeparator = pattern.startsWith(PATH_SEPARATOR);
+            this.endsWithSeparator = pattern.endsWith(PATH_SEPARATOR);
+            boolean doubleWildcard = false;
+            for (String segment : tokenize(pattern)) {
+                if (DOUBLE_WILDCARD.equals(segment)) {
+                    doubleWildcard = true;
+                    break;
+                }
+            }
+            this.hasDoubleWildcard = doubleWildcard;
+        }
+    }
+
+}
@@ -0,0 +1,125 @@
+/*
+ * MIT License
+ * Copyright (c) 2020-2029 YongWu zheng (dcenter.top and gitee.com/pcore and github.com/ZeroOrInfinity)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package top.dcenter.ums.security.core.api.permission.service;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.util.AntPathMatcher;
+
+import javax.servlet.http.HttpServletResponse;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static java.util.Collections.singletonMap;
+
+/**
+ * {@link AbstractUriAuthorizeService} 权限缓存失效测试
+ * @author YongWu zheng
+ * @version V2.0  Created by 2020/12/7 16:25
+ */
+public class AbstractUriAuthorizeServiceTest {
+
+    private static final String ROLE = "ROLE_USER";
+
+    private final Authentication authentication =
+            new UsernamePasswordAuthenticationToken("user", "", AuthorityUtils.createAuthorityList(ROLE));
+
+    @Test
+    public void recompileWhenRolesAuthoritiesMapIsReplaced() {
+        final TestUriAuthorizeService service = new TestUriAuthorizeService();
+        service.rolesAuthorities = rolesAuthorities("/users", "list");
+
+        Assertions.assertTrue(service.hasPermission(authentication, "/users", "list"));
+        Assertions.assertFalse(service.hasPermission(authentication, "/orders", "list"));
+
+        // 返回新的 Map 且未调用 clearAuthoritiesCache()
+        service.rolesAuthorities = rolesAuthorities("/orders", "list");
+
+        Assertions.assertFalse(service.hasPermission(authentication, "/users", "list"));
+        Assertions.assertTrue(service.hasPermission(authentication, "/orders", "list"));
+    }
+
+    @Test
+    public void reuseMatcherWhenRolesAuthoritiesMapIsUnchanged() {
+        final TestUriAuthorizeService service = new TestUriAuthorizeService();
+        service.rolesAuthorities = rolesAuthorities("/users", "list");
+
+        Assertions.assertTrue(service.hasPermission(authentication, "/users", "list"));
+        final Object view = service.getUriAuthorityViewCache().get(ROLE);
+        Assertions.assertNotNull(view);
+
+        Assertions.assertTrue(service.hasPermission(authentication, "/users", "list"));
+        Assertions.assertSame(view, service.getUriAuthorityViewCache().get(ROLE));
+    }
+
+    @Test
+    public void recompileWhenMapIsModifiedInPlaceAndCacheCleared() {
+        final TestUriAuthorizeService service = new TestUriAuthorizeService();
+        service.rolesAuthorities = new HashMap<>(rolesAuthorities("/users", "list"));
+
+        Assertions.assertTrue(service.hasPermission(authentication, "/users", "list"));
+
+        // 在原 Map 上修改权限, 需调用 clearAuthoritiesCache()
+        service.rolesAuthorities.put(ROLE, singletonMap("/orders", Collections.singleton("list")));
+        service.clearAuthoritiesCache();
+
+        Assertions.assertFalse(service.hasPermission(authentication, "/users", "list"));
+        Assertions.assertTrue(service.hasPermission(authentication, "/orders", "list"));
+    }
+
+    private static Map<String, Map<String, Set<String>>> rolesAuthorities(String uri, String permission) {
+        final Map<String, Set<String>> uriAuthorities = new HashMap<>(1);
+        uriAuthorities.put(uri, new HashSet<>(Collections.singleton(permission)));
+        return singletonMap(ROLE, uriAuthorities);
+    }
+
+    private static class TestUriAuthorizeService extends AbstractUriAuthorizeService {
+
+        private final AntPathMatcher antPathMatcher = new AntPathMatcher();
+
+        private Map<String, Map<String, Set<String>>> rolesAuthorities;
+
+        @Override
+        public Map<String, Map<String, Set<String>>> getRolesAuthorities() {
+            return rolesAuthorities;
+        }
+
+        @Override
+        public AntPathMatcher getAntPathMatcher() {
+            return antPathMatcher;
+        }
+
+        @Override
+        public void handlerError(int status, HttpServletResponse response) {
+            response.setStatus(status);
+        }
+    }
+
+}
@@ -0,0 +1,185 @@
+/*
+ * MIT License
+ * Copyright (c) 2020-2029 YongWu zheng (dcenter.top and gitee.com/pcore and github.com/ZeroOrInfinity)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package top.dcenter.ums.security.core.api.validate.code.enums;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.ServletWebRequest;
+import top.dcenter.ums.security.core.api.validate.code.ValidateCode;
+import top.dcenter.ums.security.core.api.validate.code.enums.ValidateCodeCacheType.ConsumeResult;
+import top.dcenter.ums.security.core.auth.validate.codes.ValidateCodeRedisCodec;
+import top.dcenter.ums.security.core.util.MvcUtil;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * {@link ValidateCodeCacheType#validateAndConsume(ServletWebRequest, ValidateCodeType, Class, String, StringRedisTemplate)}
+ * 校验并消费验证码测试
+ * @author YongWu zheng
+ * @version V2.0  Created by 2020/12/2 16:40
+ */
+public class ValidateCodeCacheTypeTest {
+
+    private static final ValidateCodeType TYPE = ValidateCodeType.SMS;
+
+    private ServletWebRequest request;
+    private String key;
+
+    @BeforeEach
+    public void setUp() {
+        final MockHttpServletRequest servletRequest = new MockHttpServletRequest();
+        this.request = new ServletWebRequest(servletRequest);
+        this.key = TYPE.getKeyPrefix() + this.request.getSessionId();
+    }
+
+    @Test
+    public void consumeSessionCode() {
+        final ValidateCodeCacheType session = ValidateCodeCacheType.SESSION;
+        Assertions.assertEquals(ConsumeResult.NOT_FOUND, consume(session, "1234"));
+
+        session.save(this.request, new ValidateCode("AbCd", 60), TYPE, null);
+        Assertions.assertEquals(ConsumeResult.SUCCESS, consume(session, " abcd "));
+        // 校验通过后已移除
+        Assertions.assertEquals(ConsumeResult.NOT_FOUND, consume(session, "abcd"));
+
+        session.save(this.request, new ValidateCode("1234", 60), TYPE, null);
+        Assertions.assertEquals(ConsumeResult.EMPTY, consume(session, " "));
+        Assertions.assertEquals(ConsumeResult.NOT_FOUND, consume(session, "1234"));
+
+        final ValidateCode expired = new ValidateCode("1234", 60);
+        expired.setExpireTime(LocalDateTime.now().minusSeconds(1L));
+        session.save(this.request, expired, TYPE, null);
+        Assertions.assertEquals(ConsumeResult.EXPIRED, consume(session, "1234"));
+        Assertions.assertEquals(ConsumeResult.NOT_FOUND, consume(session, "1234"));
+    }
+
+    @Test
+    public void keepReusableSessionCodeOnMismatch() {
+        final ValidateCodeCacheType session = ValidateCodeCacheType.SESSION;
+
+        session.save(this.request, new ValidateCode("1234", 60, true), TYPE, null);
+        Assertions.assertEquals(ConsumeResult.MISMATCH, consume(session, "0000"));
+        Assertions.assertEquals(ConsumeResult.SUCCESS, consume(session, "1234"));
+
+        session.save(this.request, new ValidateCode("1234", 60, false), TYPE, null);
+        Assertions.assertEquals(ConsumeResult.MISMATCH, consume(session, "0000"));
+        Assertions.assertEquals(ConsumeResult.NOT_FOUND, consume(session, "1234"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void consumeRedisCodeInOneScript() {
+        final StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any())).thenReturn(4L, 3L, 0L);
+
+        Assertions.assertEquals(ConsumeResult.SUCCESS,
+                                ValidateCodeCacheType.REDIS.validateAndConsume(this.request, TYPE, ValidateCode.class,
+                                                                               " 1234 ", redisTemplate));
+        Assertions.assertEquals(ConsumeResult.MISMATCH,
+                                ValidateCodeCacheType.REDIS.validateAndConsume(this.request, TYPE, ValidateCode.class,
+                                                                               "0000", redisTemplate));
+        Assertions.assertEquals(ConsumeResult.NOT_FOUND,
+                                ValidateCodeCacheType.REDIS.validateAndConsume(this.request, TYPE, ValidateCode.class,
+                                                                               null, redisTemplate));
+
+        final ArgumentCaptor<Object> args = ArgumentCaptor.forClass(Object.class);
+        verify(redisTemplate, times(3)).execute(any(RedisScript.class),
+                                                eq(Collections.singletonList(this.key)),
+                                                args.capture());
+        final List<Object> values = args.getAllValues();
+        // 每次 2 个参数: 已 trim 的验证码, 当前时间
+        Assertions.assertEquals("1234", values.get(0));
+        Assertions.assertEquals("0000", values.get(2));
+        Assertions.assertEquals("", values.get(4));
+        // 一次往返完成校验与删除
+        verify(redisTemplate, never()).delete(anyString());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void fallBackToJsonCodeSavedBeforeUpgrade() {
+        final StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+        final HashOperations<String, Object, Object> hashOperations = mock(HashOperations.class);
+        final ValueOperations<String, String> valueOperations = mock(ValueOperations.class);
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any())).thenReturn(-1L);
+        when(redisTemplate.<Object, Object>opsForHash()).thenReturn(hashOperations);
+        when(hashOperations.entries(this.key)).thenThrow(new InvalidDataAccessApiUsageException("WRONGTYPE"));
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.get(this.key)).thenReturn(MvcUtil.toJsonString(new ValidateCode("1234", 60)));
+
+        Assertions.assertEquals(ConsumeResult.SUCCESS,
+                                ValidateCodeCacheType.REDIS.validateAndConsume(this.request, TYPE, ValidateCode.class,
+                                                                               "1234", redisTemplate));
+        verify(redisTemplate).delete(this.key);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void saveRedisCodeAsDecodableHash() throws ReflectiveOperationException {
+        final StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+        final ValidateCode validateCode = new ValidateCode("1234", 60, true);
+
+        Assertions.assertTrue(ValidateCodeCacheType.REDIS.save(this.request, validateCode, TYPE, redisTemplate));
+
+        final ArgumentCaptor<Object> args = ArgumentCaptor.forClass(Object.class);
+        verify(redisTemplate).execute(any(RedisScript.class), eq(Collections.singletonList(this.key)), args.capture());
+        // ARGV: expireIn, field1, value1, field2, value2 ...
+        final List<Object> values = args.getAllValues();
+        final Map<String, String> hash = new HashMap<>(values.size());
+        for (int i = 1; i + 1 < values.size(); i += 2) {
+            hash.put((String) values.get(i), (String) values.get(i + 1));
+        }
+        final ValidateCode decoded = ValidateCodeRedisCodec.decode(hash, ValidateCode.class);
+        Assertions.assertEquals("1234", decoded.getCode());
+        Assertions.assertTrue(decoded.getReuse());
+        Assertions.assertFalse(decoded.isExpired());
+    }
+
+    private ConsumeResult consume(ValidateCodeCacheType cacheType, String codeInRequest) {
+        return cacheType.validateAndConsume(this.request, TYPE, ValidateCode.class, codeInRequest, null);
+    }
+
+}
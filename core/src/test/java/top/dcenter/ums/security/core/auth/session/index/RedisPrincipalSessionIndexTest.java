@@ -0,0 +1,175 @@
+/*
+ * MIT License
+ * Copyright (c) 2020-2029 YongWu zheng (dcenter.top and gitee.com/pcore and github.com/ZeroOrInfinity)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package top.dcenter.ums.security.core.auth.session.index;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.core.session.SessionDestroyedEvent;
+import org.springframework.security.web.context.HttpSessionSecurityContextRepository;
+import org.springframework.security.web.session.HttpSessionDestroyedEvent;
+import org.springframework.session.MapSession;
+import org.springframework.session.events.SessionDeletedEvent;
+import org.springframework.session.events.SessionExpiredEvent;
+import top.dcenter.ums.security.core.auth.properties.ClientProperties;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * {@link RedisPrincipalSessionIndex} 准入参数与 session 事件测试
+ * @author YongWu zheng
+ * @version V2.0  Created by 2020/12/6 14:20
+ */
+public class RedisPrincipalSessionIndexTest {
+
+    private static final String USER = "user";
+    private static final String KEY = "ums:session:index:" + USER;
+
+    private RedisConnection connection;
+    private RedisPrincipalSessionIndex sessionIndex;
+    /**
+     * 每次 eval 的 key 与参数
+     */
+    private final List<List<String>> evalArgs = new ArrayList<>();
+    /**
+     * eval 依次返回的结果
+     */
+    private final Queue<Object> evalResults = new LinkedList<>();
+
+    @BeforeEach
+    public void setUp() {
+        this.connection = mock(RedisConnection.class);
+        final RedisConnectionFactory connectionFactory = mock(RedisConnectionFactory.class);
+        when(connectionFactory.getConnection()).thenReturn(this.connection);
+        when(this.connection.eval(any(), any(), anyInt(), any())).thenAnswer(invocation -> {
+            // Mockito 把 varargs 展开为单独的参数
+            final Object[] arguments = invocation.getArguments();
+            final List<String> args = new ArrayList<>(arguments.length - 3);
+            for (int i = 3; i < arguments.length; i++) {
+                args.add(new String((byte[]) arguments[i], StandardCharsets.UTF_8));
+            }
+            this.evalArgs.add(args);
+            return this.evalResults.poll();
+        });
+        this.sessionIndex = new RedisPrincipalSessionIndex(connectionFactory, new ClientProperties());
+    }
+
+    @Test
+    public void admitReturnsEvictedSessions() {
+        this.evalResults.add(Arrays.asList(bytes("1"), bytes("old-1"), bytes("old-2")));
+
+        final long before = System.currentTimeMillis();
+        final List<String> evicted = this.sessionIndex.admit(USER, "sid", 2, false, 1800);
+        final long after = System.currentTimeMillis();
+
+        Assertions.assertEquals(Arrays.asList("old-1", "old-2"), evicted);
+        final List<String> args = this.evalArgs.get(0);
+        Assertions.assertEquals(KEY, args.get(0));
+        Assertions.assertEquals("sid", args.get(1));
+        Assertions.assertEquals("2", args.get(3));
+        Assertions.assertEquals("0", args.get(4));
+        // 最长存活时间 = 最大不活动时间 + 刷新间隔(默认 60 秒)
+        final long lifetimeMillis = (1800L + 60L) * 1000L;
+        final long staleBefore = Long.parseLong(args.get(5));
+        Assertions.assertTrue(staleBefore >= before - lifetimeMillis && staleBefore <= after - lifetimeMillis);
+        Assertions.assertEquals("1860", args.get(6));
+    }
+
+    @Test
+    public void admitReturnsNullWhenLoginIsPrevented() {
+        this.evalResults.add(Collections.singletonList(bytes("0")));
+
+        Assertions.assertNull(this.sessionIndex.admit(USER, "sid", 1, true, 1800));
+        Assertions.assertEquals("1", this.evalArgs.get(0).get(4));
+    }
+
+    @Test
+    public void neverExpiringSessionsAreNeitherCleanedNorExpired() {
+        this.evalResults.add(Collections.singletonList(bytes("1")));
+
+        Assertions.assertEquals(Collections.emptyList(), this.sessionIndex.admit(USER, "sid", 0, false, -1));
+        Assertions.assertEquals("-1", this.evalArgs.get(0).get(5));
+        Assertions.assertEquals("-1", this.evalArgs.get(0).get(6));
+
+        this.sessionIndex.touch(USER, "sid", -1);
+        Assertions.assertEquals(Arrays.asList(KEY, "sid"), this.evalArgs.get(1).subList(0, 2));
+        Assertions.assertEquals("-1", this.evalArgs.get(1).get(3));
+    }
+
+    @Test
+    public void removeSessionOnSessionEvents() {
+        final MockHttpSession httpSession = new MockHttpSession(null, "sid-1");
+        httpSession.setAttribute(HttpSessionSecurityContextRepository.SPRING_SECURITY_CONTEXT_KEY, securityContext());
+        this.sessionIndex.onApplicationEvent(new HttpSessionDestroyedEvent(httpSession));
+        verify(this.connection).zRem(bytes(KEY), bytes("sid-1"));
+
+        final MapSession deleted = new MapSession("sid-2");
+        deleted.setAttribute(HttpSessionSecurityContextRepository.SPRING_SECURITY_CONTEXT_KEY, securityContext());
+        this.sessionIndex.onApplicationEvent(new SessionDeletedEvent(this, deleted));
+        verify(this.connection).zRem(bytes(KEY), bytes("sid-2"));
+
+        final MapSession expired = new MapSession("sid-3");
+        expired.setAttribute(HttpSessionSecurityContextRepository.SPRING_SECURITY_CONTEXT_KEY, securityContext());
+        this.sessionIndex.onApplicationEvent(new SessionExpiredEvent(this, expired));
+        verify(this.connection).zRem(bytes(KEY), bytes("sid-3"));
+    }
+
+    @Test
+    public void removeFailureDoesNotBreakSessionDestroy() {
+        doThrow(new IllegalStateException("redis down")).when(this.connection).zRem(any(), any());
+        final MockHttpSession httpSession = new MockHttpSession(null, "sid");
+        httpSession.setAttribute(HttpSessionSecurityContextRepository.SPRING_SECURITY_CONTEXT_KEY, securityContext());
+
+        Assertions.assertDoesNotThrow(() -> this.sessionIndex.onApplicationEvent(new HttpSessionDestroyedEvent(httpSession)));
+        Assertions.assertTrue(this.sessionIndex.supportsEventType(SessionDestroyedEvent.class));
+        Assertions.assertTrue(this.sessionIndex.supportsEventType(SessionExpiredEvent.class));
+    }
+
+    private static SecurityContextImpl securityContext() {
+        return new SecurityContextImpl(new TestingAuthenticationToken(USER, "", "ROLE_USER"));
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * MIT License
+ * Copyright (c) 2020-2029 YongWu zheng (dcenter.top and gitee.com/pcore and github.com/ZeroOrInfinity)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package top.dcenter.ums.security.core.auth.validate.codes.image;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import top.dcenter.ums.security.core.auth.validate.codes.image.ImageCodePool.PooledImageCode;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * {@link ImageCodePool} 轮换替换与图片数据测试
+ * @author YongWu zheng
+ * @version V2.0  Created by 2020/11/30 17:20
+ */
+public class ImageCodePoolTest {
+
+    @Test
+    public void renderDecodablePngOfConfiguredSize() throws IOException {
+        final ImageCodePool pool = new ImageCodePool(4, 200, 40, 5);
+        final PooledImageCode imageCode = pool.render();
+
+        Assertions.assertEquals(5, imageCode.getCode().length());
+        final BufferedImage image = ImageIO.read(new ByteArrayInputStream(toBytes(imageCode.getImage())));
+        Assertions.assertNotNull(image);
+        Assertions.assertEquals(200, image.getWidth());
+        Assertions.assertEquals(40, image.getHeight());
+    }
+
+    @Test
+    public void imageViewsAreIndependent() throws IOException {
+        final PooledImageCode imageCode = new ImageCodePool(1, 80, 30, 4).render();
+        final ByteBuffer first = imageCode.getImage();
+        final int length = first.remaining();
+
+        // 读取一个视图不影响其他视图
+        first.get(new byte[length]);
+        Assertions.assertEquals(0, first.remaining());
+        Assertions.assertEquals(length, imageCode.getImage().remaining());
+        Assertions.assertTrue(imageCode.getImage().isReadOnly());
+    }
+
+    @Test
+    public void swapReplacesSingleSlot() throws IOException {
+        final ImageCodePool pool = new ImageCodePool(1, 80, 30, 4);
+        Assertions.assertNull(pool.randomImageCode());
+
+        final PooledImageCode first = pool.render();
+        final PooledImageCode second = pool.render();
+        Assertions.assertNull(pool.swap(0, first));
+        Assertions.assertSame(first, pool.randomImageCode());
+        Assertions.assertSame(first, pool.swap(0, second));
+        Assertions.assertSame(second, pool.randomImageCode());
+    }
+
+    @Test
+    public void reserveRefreshRotatesOverWholePool() {
+        final ImageCodePool pool = new ImageCodePool(10, 80, 30, 4);
+        final Set<Integer> refreshed = new HashSet<>();
+        for (int i = 0; i < 4; i++) {
+            final int[] reserved = pool.reserveRefresh(0.3F);
+            Assertions.assertEquals(3, reserved[1]);
+            for (int j = 0; j < reserved[1]; j++) {
+                refreshed.add(pool.index(reserved[0] + j));
+            }
+        }
+        // 4 次 * 3 个, 覆盖全部 10 个位置
+        Assertions.assertEquals(10, refreshed.size());
+
+        Assertions.assertEquals(10, pool.reserveRefresh(2.0F)[1]);
+        Assertions.assertEquals(1, pool.reserveRefresh(0.0001F)[1]);
+        Assertions.assertEquals(9, pool.index(-1));
+    }
+
+    private static byte[] toBytes(ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+}
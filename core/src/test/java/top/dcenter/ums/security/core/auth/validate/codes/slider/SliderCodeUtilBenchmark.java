@@ -0,0 +1,173 @@
+/*
+ * MIT License
+ * Copyright (c) 2020-2029 YongWu zheng (dcenter.top and gitee.com/pcore and github.com/ZeroOrInfinity)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package top.dcenter.ums.security.core.auth.validate.codes.slider;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import top.dcenter.ums.security.core.benchmark.MicroBenchmark;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * {@link SliderCodeUtil#cutImage(BufferedImage, BufferedImage, int)} 直接操作像素数组与原来逐像素 getRGB/setRGB 实现的基准测试. <br>
+ * 运行: {@code mvn test -Dums.benchmark=true -Dtest=SliderCodeUtilBenchmark}
+ * @author YongWu zheng
+ * @version V2.0  Created by 2020/12/7 22:30
+ */
+@EnabledIfSystemProperty(named = MicroBenchmark.ENABLED_PROPERTY, matches = "true")
+public class SliderCodeUtilBenchmark {
+
+    private static final int GRAYSCALE = 6;
+    private static final int OPS_PER_ROUND = 500;
+
+    @Test
+    public void compareWithPerPixelCut() {
+        benchmark(50, 50, 300, 150);
+        benchmark(60, 60, 400, 200);
+    }
+
+    private void benchmark(int width, int height, int srcWidth, int srcHeight) {
+        final BufferedImage template = template(width, height);
+        final BufferedImage target = SliderCodeUtil.toIntImage(target(srcWidth, srcHeight));
+
+        // 两种实现的结果一致
+        final SliderCutResult result = SliderCodeUtil.cutImage(template, target, GRAYSCALE);
+        final BufferedImage expectedMark = copy(template);
+        final BufferedImage expectedSrc = copy(target);
+        perPixelCut(expectedSrc, expectedMark, GRAYSCALE, result.getLocationX(), result.getLocationY());
+        assertSamePixels(expectedMark, result.getMarkImage());
+        assertSamePixels(expectedSrc, result.getSrcImage());
+
+        final String size = String.format(Locale.ROOT, "%dx%d in %dx%d", width, height, srcWidth, srcHeight);
+        final double perPixel = MicroBenchmark.nanosPerOp("per-pixel getRGB/setRGB, " + size, OPS_PER_ROUND, i -> {
+            // 原来的实现直接修改传入的图片, 每次需要新的图片
+            final BufferedImage mark = copy(template);
+            final BufferedImage src = copy(target);
+            perPixelCut(src, mark, GRAYSCALE, 10, 10);
+            return mark;
+        });
+        final double raster = MicroBenchmark.nanosPerOp("raster cutImage, " + size, OPS_PER_ROUND,
+                                                        i -> SliderCodeUtil.cutImage(template, target, GRAYSCALE));
+        MicroBenchmark.print(String.format(Locale.ROOT, "%s, speedup=%.1fx", size, perPixel / raster));
+    }
+
+    /**
+     * 原来的实现: 读取两张图片的 int[][] 矩阵后遍历整张源图片, 逐像素 getRGB/setRGB
+     */
+    private static void perPixelCut(BufferedImage oriImage, BufferedImage templateImage,
+                                    int grayscale, int locationX, int locationY) {
+        int[][] oriImageData = getImageData(oriImage);
+        int[][] templateImageData = getImageData(templateImage);
+        final int width = oriImageData.length;
+        final int height = oriImageData[0].length;
+        final int cutWidth = templateImageData.length;
+        final int cutHeight = templateImageData[0].length;
+
+        for (int i = 0; i < width; i++) {
+            for (int j = 0; j < height; j++) {
+                final boolean isMarkTarget = (i >= locationX && j >= locationY) && (i < locationX + cutWidth && j < locationY + cutHeight);
+                if (isMarkTarget) {
+                    int rgb = oriImage.getRGB(i, j);
+                    int templateRgb = templateImage.getRGB(i - locationX, j - locationY);
+                    //noinspection ConditionCoveredByFurtherCondition
+                    if (templateRgb != 16777215 && templateRgb != -1 && templateRgb <= 0) {
+                        templateImage.setRGB(i - locationX, j - locationY, rgb);
+                        int r = (0xff & rgb);
+                        int g = (0xff & (rgb >> 8));
+                        int b = (0xff & (rgb >> 16));
+                        int gray = (r + g + b) / grayscale;
+                        rgb = 255 << 24 | gray << 16 | gray << 8 | gray;
+                        oriImage.setRGB(i, j, rgb);
+                    }
+                    else {
+                        rgb = rgb & 0x00ffffff;
+                        templateImage.setRGB(i - locationX, j - locationY, rgb);
+                    }
+                }
+            }
+        }
+    }
+
+    private static int[][] getImageData(BufferedImage bufferedImage) {
+        int[][] data = new int[bufferedImage.getWidth()][bufferedImage.getHeight()];
+        for (int i = 0; i < bufferedImage.getWidth(); i++) {
+            for (int j = 0; j < bufferedImage.getHeight(); j++) {
+                data[i][j] = bufferedImage.getRGB(i, j);
+            }
+        }
+        return data;
+    }
+
+    /**
+     * 模板图片: 透明背景上的不透明黑色滑块形状(矩形加右侧的半圆凸起)
+     */
+    private static BufferedImage template(int width, int height) {
+        final BufferedImage template = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        final int body = width * 4 / 5;
+        final int radius = height / 6;
+        final int centerY = height / 2;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                final int dx = x - body;
+                final int dy = y - centerY;
+                final boolean inShape = x < body || dx * dx + dy * dy <= radius * radius;
+                template.setRGB(x, y, inShape ? 0xFF000000 : 0x00FFFFFF);
+            }
+        }
+        return template;
+    }
+
+    private static BufferedImage target(int width, int height) {
+        final BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        final Random random = new Random(width * 31L + height);
+        final int[] data = ((DataBufferInt) target.getRaster().getDataBuffer()).getData();
+        for (int i = 0; i < data.length; i++) {
+            data[i] = random.nextInt(0x01000000);
+        }
+        return target;
+    }
+
+    private static BufferedImage copy(BufferedImage image) {
+        final BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), image.getType());
+        final int[] src = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        final int[] dest = ((DataBufferInt) copy.getRaster().getDataBuffer()).getData();
+        System.arraycopy(src, 0, dest, 0, src.length);
+        return copy;
+    }
+
+    private static void assertSamePixels(BufferedImage expected, BufferedImage actual) {
+        Assertions.assertEquals(expected.getWidth(), actual.getWidth());
+        Assertions.assertEquals(expected.getHeight(), actual.getHeight());
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                Assertions.assertEquals(expected.getRGB(x, y), actual.getRGB(x, y), "x=" + x + ", y=" + y);
+            }
+        }
+    }
+
+}
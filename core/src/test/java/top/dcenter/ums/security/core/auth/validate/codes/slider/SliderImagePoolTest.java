@@ -0,0 +1,85 @@
+/*
+ * MIT License
+ * Copyright (c) 2020-2029 YongWu zheng (dcenter.top and gitee.com/pcore and github.com/ZeroOrInfinity)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package top.dcenter.ums.security.core.auth.validate.codes.slider;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import top.dcenter.ums.security.core.auth.validate.codes.slider.SliderImagePool.SliderImage;
+
+/**
+ * {@link SliderImagePool} 替换与 token 查找测试
+ * @author YongWu zheng
+ * @version V2.0  Created by 2020/12/1 16:45
+ */
+public class SliderImagePoolTest {
+
+    @Test
+    public void replacedImageStaysReachableUntilRemoved() {
+        final SliderImagePool pool = new SliderImagePool(1);
+        Assertions.assertNull(pool.randomImage());
+
+        final SliderImage first = image("token-1");
+        final SliderImage second = image("token-2");
+        Assertions.assertNull(pool.swap(0, first));
+        Assertions.assertSame(first, pool.randomImage());
+        Assertions.assertSame(first, pool.get("token-1"));
+
+        // 被替换的图片仍可以通过 token 获取, 正在加载图片的请求不受影响
+        Assertions.assertSame(first, pool.swap(0, second));
+        Assertions.assertSame(second, pool.randomImage());
+        Assertions.assertSame(first, pool.get("token-1"));
+
+        pool.remove(first);
+        Assertions.assertNull(pool.get("token-1"));
+        Assertions.assertSame(second, pool.get("token-2"));
+    }
+
+    @Test
+    public void removeStaleImageKeepsNewerImageOfSameToken() {
+        final SliderImagePool pool = new SliderImagePool(2);
+        final SliderImage stale = image("token");
+        final SliderImage fresh = image("token");
+        pool.swap(0, stale);
+        pool.swap(1, fresh);
+
+        pool.remove(stale);
+        Assertions.assertSame(fresh, pool.get("token"));
+    }
+
+    @Test
+    public void serveImagesByType() {
+        final SliderImage image = image("token");
+
+        Assertions.assertArrayEquals(new byte[]{1}, image.getImage(SliderImagePool.SRC_IMAGE));
+        Assertions.assertArrayEquals(new byte[]{2}, image.getImage(SliderImagePool.MARK_IMAGE));
+        Assertions.assertNull(image.getImage("other"));
+        Assertions.assertEquals("\"token-src\"", image.getETag(SliderImagePool.SRC_IMAGE));
+        Assertions.assertNotEquals(image.getETag(SliderImagePool.SRC_IMAGE), image.getETag(SliderImagePool.MARK_IMAGE));
+    }
+
+    private static SliderImage image(String token) {
+        return new SliderImage(token, 10, 20, 300, 150, new byte[]{1}, new byte[]{2});
+    }
+
+}
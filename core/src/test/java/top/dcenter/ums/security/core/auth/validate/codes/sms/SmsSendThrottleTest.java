@@ -0,0 +1,158 @@
+/*
+ * MIT License
+ * Copyright (c) 2020-2029 YongWu zheng (dcenter.top and gitee.com/pcore and github.com/ZeroOrInfinity)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package top.dcenter.ums.security.core.auth.validate.codes.sms;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import top.dcenter.ums.security.core.auth.properties.ValidateCodeProperties;
+import top.dcenter.ums.security.core.auth.validate.codes.sms.SmsSendThrottle.ThrottleResult;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * {@link SmsSendThrottle} 滑动窗口限流测试
+ * @author YongWu zheng
+ * @version V2.0  Created by 2020/12/3 15:10
+ */
+public class SmsSendThrottleTest {
+
+    private static final String MOBILE = "13800000000";
+
+    @Test
+    public void rejectSendsWithinMinimumInterval() {
+        final SmsSendThrottle throttle = throttle(Duration.ofHours(1), Duration.ofHours(1), 10, 50, null);
+
+        Assertions.assertEquals(ThrottleResult.PASS, throttle.tryAcquire(MOBILE, "127.0.0.1"));
+        Assertions.assertEquals(ThrottleResult.MOBILE_INTERVAL, throttle.tryAcquire(MOBILE, "127.0.0.1"));
+        // 其他手机号不受影响
+        Assertions.assertEquals(ThrottleResult.PASS, throttle.tryAcquire("13900000000", "127.0.0.1"));
+        Assertions.assertEquals(2L, throttle.getPassCount());
+        Assertions.assertEquals(1L, throttle.getMobileThrottledCount());
+    }
+
+    @Test
+    public void limitSendsPerMobileAndIpWithinWindow() {
+        final SmsSendThrottle throttle = throttle(Duration.ofHours(1), Duration.ZERO, 2, 3, null);
+
+        Assertions.assertEquals(ThrottleResult.PASS, throttle.tryAcquire(MOBILE, "10.0.0.1"));
+        Assertions.assertEquals(ThrottleResult.PASS, throttle.tryAcquire(MOBILE, "10.0.0.1"));
+        Assertions.assertEquals(ThrottleResult.MOBILE_LIMIT, throttle.tryAcquire(MOBILE, "10.0.0.1"));
+        // IP 校验通过后即记录一次 IP 的发送, 第 4 次超过 IP 限制
+        Assertions.assertEquals(ThrottleResult.IP_LIMIT, throttle.tryAcquire("13900000000", "10.0.0.1"));
+        // 没有 IP 时不校验 IP
+        Assertions.assertEquals(ThrottleResult.PASS, throttle.tryAcquire("13900000000", null));
+        Assertions.assertEquals(1L, throttle.getIpThrottledCount());
+    }
+
+    @Test
+    public void allowSendsAgainAfterWindowSlides() throws InterruptedException {
+        final SmsSendThrottle throttle = throttle(Duration.ofMillis(50L), Duration.ZERO, 1, 50, null);
+
+        Assertions.assertEquals(ThrottleResult.PASS, throttle.tryAcquire(MOBILE, null));
+        Assertions.assertEquals(ThrottleResult.MOBILE_LIMIT, throttle.tryAcquire(MOBILE, null));
+        TimeUnit.MILLISECONDS.sleep(80L);
+        Assertions.assertEquals(ThrottleResult.PASS, throttle.tryAcquire(MOBILE, null));
+    }
+
+    @Test
+    public void concurrentSendsNeverExceedLimit() throws Exception {
+        final int maxSends = 7;
+        final SmsSendThrottle throttle = throttle(Duration.ofHours(1), Duration.ZERO, maxSends, 10000, null);
+        final int threads = 8;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger passed = new AtomicInteger(0);
+        try {
+            final List<Future<?>> futures = new ArrayList<>(threads);
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int j = 0; j < 200; j++) {
+                        if (throttle.tryAcquire(MOBILE, null) == ThrottleResult.PASS) {
+                            passed.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(10L, TimeUnit.SECONDS);
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        Assertions.assertEquals(maxSends, passed.get());
+        Assertions.assertEquals(threads * 200L - maxSends, throttle.getMobileThrottledCount());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void mapRedisScriptResults() {
+        final StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any())).thenReturn(0L, 1L, 0L, 2L, 2L);
+        final SmsSendThrottle throttle = throttle(Duration.ofHours(1), Duration.ofSeconds(60), 10, 50, redisTemplate);
+
+        Assertions.assertEquals(ThrottleResult.MOBILE_INTERVAL, throttle.tryAcquire(MOBILE, "10.0.0.1"));
+        Assertions.assertEquals(ThrottleResult.MOBILE_LIMIT, throttle.tryAcquire(MOBILE, "10.0.0.1"));
+        Assertions.assertEquals(ThrottleResult.IP_LIMIT, throttle.tryAcquire(MOBILE, "10.0.0.1"));
+
+        verify(redisTemplate, times(3)).execute(any(RedisScript.class),
+                                      eq(Collections.singletonList(SmsSendThrottle.IP_KEY_PREFIX + "10.0.0.1")),
+                                      any());
+    }
+
+    private static SmsSendThrottle throttle(Duration window, Duration minInterval, int mobileMaxSends, int ipMaxSends,
+                                            StringRedisTemplate redisTemplate) {
+        final ValidateCodeProperties properties = new ValidateCodeProperties();
+        final ValidateCodeProperties.SmsCodeProperties sms = properties.getSms();
+        sms.setThrottleWindow(window);
+        sms.setMobileMinInterval(minInterval);
+        sms.setMobileMaxSendsPerWindow(mobileMaxSends);
+        sms.setIpMaxSendsPerWindow(ipMaxSends);
+        return new SmsSendThrottle(properties, redisTemplate);
+    }
+
+}
@@ -0,0 +1,97 @@
+/*
+ * MIT License
+ * Copyright (c) 2020-2029 YongWu zheng (dcenter.top and gitee.com/pcore and github.com/ZeroOrInfinity)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package top.dcenter.ums.security.core.benchmark;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.function.IntFunction;
+
+/**
+ * 简单的微基准测试工具: 预热后测量多轮, 输出每次操作的平均耗时. <br>
+ * 离线构建环境中没有 JMH, 以 JUnit 测试的方式运行, 默认跳过, 通过 {@code mvn test -Dums.benchmark=true -Dtest=XxxBenchmark} 运行.
+ * 结果只用于同一 JVM 内不同实现的对比, 不作为绝对性能指标.
+ * @author YongWu zheng
+ * @version V2.0  Created by 2020/12/7 20:10
+ */
+public final class MicroBenchmark {
+
+    /**
+     * 开启基准测试的系统属性
+     */
+    public static final String ENABLED_PROPERTY = "ums.benchmark";
+
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURE_ROUNDS = 5;
+
+    /**
+     * 防止 JIT 消除没有使用结果的操作
+     */
+    @SuppressWarnings("unused")
+    private static volatile int blackhole;
+
+    private MicroBenchmark() {}
+
+    /**
+     * 预热后测量 op, 每轮执行 opsPerRound 次, 输出并返回每次操作的平均耗时
+     * @param name          名称
+     * @param opsPerRound   每轮执行次数
+     * @param op            操作, 参数为本轮中的序号, 返回值用于防止 JIT 消除
+     * @return  每次操作的平均耗时(纳秒), 取各轮的中位数
+     */
+    public static double nanosPerOp(String name, int opsPerRound, IntFunction<Object> op) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            round(opsPerRound, op);
+        }
+        final double[] results = new double[MEASURE_ROUNDS];
+        for (int i = 0; i < MEASURE_ROUNDS; i++) {
+            results[i] = (double) round(opsPerRound, op) / opsPerRound;
+        }
+        Arrays.sort(results);
+        final double median = results[MEASURE_ROUNDS / 2];
+        print(String.format(Locale.ROOT, "%-60s %12.1f ns/op (min %.1f, max %.1f)",
+                            name, median, results[0], results[MEASURE_ROUNDS - 1]));
+        return median;
+    }
+
+    /**
+     * 输出基准测试结果
+     * @param line  结果
+     */
+    public static void print(String line) {
+        System.out.println("[benchmark] " + line);
+    }
+
+    private static long round(int opsPerRound, IntFunction<Object> op) {
+        int hash = 0;
+        final long start = System.nanoTime();
+        for (int i = 0; i < opsPerRound; i++) {
+            final Object result = op.apply(i);
+            hash += result == null ? 0 : result.hashCode();
+        }
+        final long elapsed = System.nanoTime() - start;
+        blackhole = hash;
+        return elapsed;
+    }
+
+}
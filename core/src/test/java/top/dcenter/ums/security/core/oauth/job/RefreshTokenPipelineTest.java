@@ -0,0 +1,130 @@
+/*
+ * MIT License
+ * Copyright (c) 2020-2029 YongWu zheng (dcenter.top and gitee.com/pcore and github.com/ZeroOrInfinity)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package top.dcenter.ums.security.core.oauth.job;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import top.dcenter.ums.security.core.oauth.entity.AuthTokenPo;
+import top.dcenter.ums.security.core.oauth.properties.Auth2Properties;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link RefreshTokenPipeline} 重试的指数退避时间与已放弃任务的处理测试
+ * @author YongWu zheng
+ * @version V2.0  Created by 2020/12/7 10:55
+ */
+public class RefreshTokenPipelineTest {
+
+    @Test
+    public void backoffCap() {
+        Assertions.assertEquals(500L, RefreshTokenPipeline.backoffCap(500L, 30000L, 1));
+        Assertions.assertEquals(1000L, RefreshTokenPipeline.backoffCap(500L, 30000L, 2));
+        Assertions.assertEquals(16000L, RefreshTokenPipeline.backoffCap(500L, 30000L, 6));
+        Assertions.assertEquals(30000L, RefreshTokenPipeline.backoffCap(500L, 30000L, 7));
+        Assertions.assertEquals(30000L, RefreshTokenPipeline.backoffCap(500L, 30000L, Integer.MAX_VALUE));
+        // baseDelay 小于 1 时为 1, maxDelay 小于 baseDelay 时为 baseDelay
+        Assertions.assertEquals(1L, RefreshTokenPipeline.backoffCap(0L, 0L, 1));
+        Assertions.assertEquals(500L, RefreshTokenPipeline.backoffCap(500L, 100L, 3));
+        // 不溢出
+        Assertions.assertEquals(Long.MAX_VALUE, RefreshTokenPipeline.backoffCap(3L, Long.MAX_VALUE, 64));
+        Assertions.assertEquals(Long.MAX_VALUE, RefreshTokenPipeline.backoffCap(Long.MAX_VALUE / 2, Long.MAX_VALUE, 3));
+    }
+
+    @Test
+    public void backoffDelay() {
+        for (int attempts = 1; attempts <= 10; attempts++) {
+            final long cap = RefreshTokenPipeline.backoffCap(500L, 30000L, attempts);
+            for (int i = 0; i < 100; i++) {
+                final long delay = RefreshTokenPipeline.backoffDelay(500L, 30000L, attempts);
+                Assertions.assertTrue(delay >= cap / 2 && delay <= cap, "attempts=" + attempts + ", delay=" + delay);
+            }
+        }
+    }
+
+    @Test
+    public void skipTaskWhoseResultIsNoLongerAwaited() throws Exception {
+        final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        final RefreshTokenPipeline pipeline = new RefreshTokenPipeline(tasks::add, new Auth2Properties());
+        try {
+            final AtomicInteger refreshCount = new AtomicInteger(0);
+            final CompletableFuture<AuthTokenPo> future = pipeline.submit(newToken(1L), token -> {
+                refreshCount.incrementAndGet();
+                return token;
+            });
+            // 等待结果超时
+            future.completeExceptionally(new TimeoutException());
+            runAll(tasks);
+            Assertions.assertEquals(0, refreshCount.get());
+            Assertions.assertEquals(1L, pipeline.getMetrics().get(0).getFailureCount());
+            Assertions.assertEquals(0, pipeline.getMetrics().get(0).getInFlight());
+        }
+        finally {
+            pipeline.shutdown();
+        }
+    }
+
+    @Test
+    public void saveResultCompletedAfterTimeout() throws Exception {
+        final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        final List<AuthTokenPo> abandoned = new ArrayList<>();
+        final RefreshTokenPipeline pipeline = new RefreshTokenPipeline(tasks::add, new Auth2Properties(), abandoned::add);
+        try {
+            final List<CompletableFuture<AuthTokenPo>> futures = new ArrayList<>();
+            final AuthTokenPo refreshed = newToken(2L);
+            futures.add(pipeline.submit(newToken(2L), token -> {
+                // 请求第三方的过程中等待结果超时
+                futures.get(0).completeExceptionally(new TimeoutException());
+                return refreshed;
+            }));
+            runAll(tasks);
+            Assertions.assertTrue(futures.get(0).isCompletedExceptionally());
+            Assertions.assertEquals(1, abandoned.size());
+            Assertions.assertSame(refreshed, abandoned.get(0));
+        }
+        finally {
+            pipeline.shutdown();
+        }
+    }
+
+    private static AuthTokenPo newToken(Long id) {
+        final AuthTokenPo token = new AuthTokenPo();
+        token.setId(id);
+        token.setProviderId("test");
+        return token;
+    }
+
+    private static void runAll(Queue<Runnable> tasks) {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+}
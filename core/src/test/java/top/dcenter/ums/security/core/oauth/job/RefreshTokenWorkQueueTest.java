@@ -0,0 +1,152 @@
+/*
+ * MIT License
+ * Copyright (c) 2020-2029 YongWu zheng (dcenter.top and gitee.com/pcore and github.com/ZeroOrInfinity)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package top.dcenter.ums.security.core.oauth.job;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.ClusterSlotHashUtil;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * {@link RefreshTokenWorkQueue} 测试: 所有的 key 位于同一个 redis cluster slot, 多 key 操作通过 lua 脚本执行,
+ * 不使用 MULTI/EXEC, 以及批次租约的续期
+ * @author YongWu zheng
+ * @version V2.0  Created by 2020/12/8 10:15
+ */
+public class RefreshTokenWorkQueueTest {
+
+    private static final String KEY_PREFIX = RefreshTokenJobImpl.REFRESH_TOKEN_JOB_KEY_PREFIX + "{2993}:";
+
+    private RedisConnection connection;
+    private RefreshTokenWorkQueue queue;
+    /**
+     * 每次 eval 的 key
+     */
+    private final List<List<String>> evalKeys = new ArrayList<>();
+    /**
+     * 每次 eval 的参数
+     */
+    private final List<List<String>> evalArgs = new ArrayList<>();
+    /**
+     * eval 依次返回的结果
+     */
+    private final Queue<Object> evalResults = new LinkedList<>();
+
+    @BeforeEach
+    public void setUp() {
+        connection = mock(RedisConnection.class);
+        final RedisConnectionFactory connectionFactory = mock(RedisConnectionFactory.class);
+        when(connectionFactory.getConnection()).thenReturn(connection);
+        when(connection.eval(any(), any(), anyInt(), any())).thenAnswer(invocation -> {
+            // 可变参数展开后: script, returnType, numKeys, keysAndArgs...
+            final Object[] arguments = invocation.getArguments();
+            final int numKeys = (int) arguments[2];
+            final List<String> keys = new ArrayList<>();
+            final List<String> args = new ArrayList<>();
+            for (int i = 3; i < arguments.length; i++) {
+                (i - 3 < numKeys ? keys : args).add(new String((byte[]) arguments[i], StandardCharsets.UTF_8));
+            }
+            evalKeys.add(keys);
+            evalArgs.add(args);
+            return evalResults.poll();
+        });
+        queue = new RefreshTokenWorkQueue(connectionFactory, KEY_PREFIX, "node1",
+                                          Duration.ofHours(6), Duration.ofMinutes(9));
+    }
+
+    @Test
+    public void allKeysShareOneClusterSlotWithoutMultiExec() {
+        final RefreshTokenWorkQueue.TokenIdRange range = new RefreshTokenWorkQueue.TokenIdRange(1L, 100L);
+        evalResults.add("1000".getBytes(StandardCharsets.UTF_8));
+        Assertions.assertEquals(1000L, queue.initRun(2000L));
+        queue.addChunk(range);
+        evalResults.add(range.toString().getBytes(StandardCharsets.UTF_8));
+        Assertions.assertEquals(range.toString(), String.valueOf(queue.claim()));
+        queue.renewLease(range);
+        queue.complete(range, 10L, 9L, 1L);
+        queue.acquirePlanLease();
+
+        final Set<Integer> slots = new HashSet<>();
+        evalKeys.forEach(keys -> keys.forEach(key -> {
+            Assertions.assertTrue(key.startsWith(KEY_PREFIX), key);
+            slots.add(ClusterSlotHashUtil.calculateSlot(key));
+        }));
+        Assertions.assertEquals(6, evalKeys.size());
+        Assertions.assertEquals(1, slots.size());
+        verify(connection, never()).multi();
+        verify(connection, never()).exec();
+    }
+
+    @Test
+    public void initRunFallsBackToLocalExpiredTime() {
+        evalResults.add(null);
+        Assertions.assertEquals(2000L, queue.initRun(2000L));
+        Assertions.assertEquals("2000", evalArgs.get(0).get(0));
+        // key 的有效期(秒)
+        Assertions.assertEquals(Long.toString(Duration.ofHours(6).getSeconds()), evalArgs.get(0).get(2));
+    }
+
+    @Test
+    public void renewLease() {
+        final RefreshTokenWorkQueue.TokenIdRange range = new RefreshTokenWorkQueue.TokenIdRange(101L, 200L);
+        final long before = System.currentTimeMillis();
+        evalResults.add(1L);
+        Assertions.assertTrue(queue.renewLease(range));
+        Assertions.assertEquals(KEY_PREFIX + "inflight", evalKeys.get(0).get(0));
+        Assertions.assertEquals(range.toString(), evalArgs.get(0).get(0));
+        // 新的租约过期时间为当前时间 + 租约时长
+        final long leaseExpireAt = Long.parseLong(evalArgs.get(0).get(1));
+        Assertions.assertTrue(leaseExpireAt >= before + Duration.ofMinutes(9).toMillis());
+        // 批次已完成
+        evalResults.add(0L);
+        Assertions.assertFalse(queue.renewLease(range));
+        Assertions.assertEquals(Duration.ofMinutes(3).toMillis(), queue.getLeaseRenewalPeriodMillis());
+    }
+
+    @Test
+    public void claimReturnsNullWhenNoChunk() {
+        evalResults.add(null);
+        Assertions.assertNull(queue.claim());
+        Assertions.assertEquals(KEY_PREFIX + "pending", evalKeys.get(0).get(0));
+        Assertions.assertEquals(KEY_PREFIX + "inflight", evalKeys.get(0).get(1));
+    }
+}
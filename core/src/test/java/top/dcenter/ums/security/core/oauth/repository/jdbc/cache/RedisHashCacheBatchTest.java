@@ -0,0 +1,155 @@
+/*
+ * MIT License
+ * Copyright (c) 2020-2029 YongWu zheng (dcenter.top and gitee.com/pcore and github.com/ZeroOrInfinity)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package top.dcenter.ums.security.core.oauth.repository.jdbc.cache;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * {@link RedisHashCacheBatch} 批量执行与事务回滚测试
+ * @author YongWu zheng
+ * @version V2.0  Created by 2020/11/29 22:05
+ */
+public class RedisHashCacheBatchTest {
+
+    private RedisHashCacheWriter cacheWriter;
+    private RedisHashCache cache;
+    private final Consumer<RedisConnection> putCommand = connection -> {};
+    private final Consumer<RedisConnection> evictCommand = connection -> {};
+
+    @BeforeEach
+    public void setUp() {
+        this.cacheWriter = mock(RedisHashCacheWriter.class);
+        this.cache = mock(RedisHashCache.class);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive())
+        {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    public void flushAllCommandsInOnePipelineWhenOutermostBatchEnds() {
+        RedisHashCacheBatch.begin();
+        RedisHashCacheBatch.begin();
+        addCommands();
+        RedisHashCacheBatch.end();
+
+        // 内层结束时不执行
+        verify(this.cacheWriter, never()).executePipelined(anyList());
+        Assertions.assertNotNull(RedisHashCacheBatch.current());
+
+        RedisHashCacheBatch.end();
+        Assertions.assertNull(RedisHashCacheBatch.current());
+        Assertions.assertEquals(Arrays.asList(this.putCommand, this.evictCommand), executedCommands());
+
+        final ArgumentCaptor<NearCacheInvalidationMessage> captor =
+                ArgumentCaptor.forClass(NearCacheInvalidationMessage.class);
+        verify(this.cache).invalidateNearCache(captor.capture());
+        Assertions.assertEquals(Arrays.asList("key1", "key2"), captor.getValue().getKeys());
+        Assertions.assertEquals(Arrays.asList("field1", null), captor.getValue().getFields());
+    }
+
+    @Test
+    public void executeOnlyEvictCommandsWhenTransactionRollsBack() {
+        TransactionSynchronizationManager.initSynchronization();
+        RedisHashCacheBatch.begin();
+        addCommands();
+        RedisHashCacheBatch.end();
+
+        verify(this.cacheWriter, never()).executePipelined(anyList());
+        completeTransaction(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        Assertions.assertEquals(Collections.singletonList(this.evictCommand), executedCommands());
+        verify(this.cache).invalidateNearCache(any(NearCacheInvalidationMessage.class));
+    }
+
+    @Test
+    public void executeAllCommandsAfterTransactionCommits() {
+        TransactionSynchronizationManager.initSynchronization();
+        RedisHashCacheBatch.begin();
+        addCommands();
+        RedisHashCacheBatch.end();
+
+        completeTransaction(TransactionSynchronization.STATUS_COMMITTED);
+
+        Assertions.assertEquals(Arrays.asList(this.putCommand, this.evictCommand), executedCommands());
+    }
+
+    @Test
+    public void pipelineFailureDoesNotSkipNearCacheInvalidation() {
+        doThrow(new IllegalStateException("redis down")).when(this.cacheWriter).executePipelined(anyList());
+
+        RedisHashCacheBatch.begin();
+        addCommands();
+        RedisHashCacheBatch.end();
+
+        verify(this.cache).invalidateNearCache(any(NearCacheInvalidationMessage.class));
+        Assertions.assertNull(RedisHashCacheBatch.current());
+    }
+
+    private void addCommands() {
+        final RedisHashCacheBatch batch = RedisHashCacheBatch.current();
+        Assertions.assertNotNull(batch);
+        batch.addCommand(this.cacheWriter, this.putCommand, false);
+        batch.addNearCacheInvalidation(this.cache, "key1", "field1");
+        batch.addCommand(this.cacheWriter, this.evictCommand, true);
+        batch.addNearCacheInvalidation(this.cache, "key2", null);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Consumer<RedisConnection>> executedCommands() {
+        final ArgumentCaptor<List<Consumer<RedisConnection>>> captor = ArgumentCaptor.forClass(List.class);
+        verify(this.cacheWriter).executePipelined(captor.capture());
+        return captor.getValue();
+    }
+
+    private static void completeTransaction(int status) {
+        final List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        Assertions.assertEquals(1, synchronizations.size());
+        synchronizations.forEach(synchronization -> synchronization.afterCompletion(status));
+    }
+
+}
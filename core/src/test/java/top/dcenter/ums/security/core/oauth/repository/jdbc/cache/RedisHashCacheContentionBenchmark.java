@@ -0,0 +1,186 @@
+/*
+ * MIT License
+ * Copyright (c) 2020-2029 YongWu zheng (dcenter.top and gitee.com/pcore and github.com/ZeroOrInfinity)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package top.dcenter.ums.security.core.oauth.repository.jdbc.cache;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import top.dcenter.ums.security.core.benchmark.MicroBenchmark;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * {@link RedisHashCache#get(Object, Callable)} 并发加载的基准测试: 按 key 的 single-flight 与原来整个方法 synchronized 的对比. <br>
+ * 使用内存中的 {@link RedisHashCacheWriter} 模拟 redis 的往返延迟, valueLoader 模拟数据库查询的延迟. <br>
+ * 运行: {@code mvn test -Dums.benchmark=true -Dtest=RedisHashCacheContentionBenchmark}
+ * @author YongWu zheng
+ * @version V2.0  Created by 2020/12/7 21:40
+ */
+@EnabledIfSystemProperty(named = MicroBenchmark.ENABLED_PROPERTY, matches = "true")
+public class RedisHashCacheContentionBenchmark {
+
+    private static final int THREADS = 16;
+    private static final int KEYS = 64;
+    private static final long REDIS_LATENCY_NANOS = TimeUnit.MICROSECONDS.toNanos(100L);
+    private static final long LOAD_LATENCY_NANOS = TimeUnit.MILLISECONDS.toNanos(2L);
+
+    private ExecutorService executor;
+
+    @BeforeEach
+    public void setUp() {
+        this.executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        this.executor.shutdownNow();
+    }
+
+    @Test
+    public void compareWithSynchronizedGet() {
+        final AtomicInteger synchronizedLoads = new AtomicInteger();
+        final double synchronizedNanos = MicroBenchmark.nanosPerOp(
+                "synchronized get, threads=" + THREADS + ", keys=" + KEYS, 1,
+                i -> concurrentRound(new SynchronizedRedisHashCache(new InMemoryCacheWriter()), synchronizedLoads));
+
+        final AtomicInteger singleFlightLoads = new AtomicInteger();
+        final double singleFlightNanos = MicroBenchmark.nanosPerOp(
+                "single-flight get, threads=" + THREADS + ", keys=" + KEYS, 1,
+                i -> concurrentRound(newCache(new InMemoryCacheWriter()), singleFlightLoads));
+
+        MicroBenchmark.print(String.format(Locale.ROOT, "round: synchronized %.1f ms, single-flight %.1f ms, speedup=%.1fx",
+                                           synchronizedNanos / 1_000_000D, singleFlightNanos / 1_000_000D,
+                                           synchronizedNanos / singleFlightNanos));
+
+        // 两种方式每轮每个 key 都只从数据源加载一次
+        Assertions.assertEquals(0, synchronizedLoads.get() % KEYS);
+        Assertions.assertEquals(synchronizedLoads.get(), singleFlightLoads.get());
+    }
+
+    /**
+     * 每个线程以不同的顺序读取所有 key, 缓存开始时为空
+     * @return  本轮从数据源加载的次数
+     */
+    private Integer concurrentRound(RedisHashCache cache, AtomicInteger totalLoads) {
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<?>> futures = new ArrayList<>(THREADS);
+        for (int t = 0; t < THREADS; t++) {
+            final List<String> keys = new ArrayList<>(KEYS);
+            for (int k = 0; k < KEYS; k++) {
+                keys.add("user:" + k);
+            }
+            Collections.rotate(keys, t * KEYS / THREADS);
+            futures.add(this.executor.submit(() -> {
+                start.await();
+                for (String key : keys) {
+                    cache.get(key, () -> {
+                        loads.incrementAndGet();
+                        LockSupport.parkNanos(LOAD_LATENCY_NANOS);
+                        return key;
+                    });
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            }
+            catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        totalLoads.addAndGet(loads.get());
+        return loads.get();
+    }
+
+    private static RedisHashCache newCache(RedisHashCacheWriter cacheWriter) {
+        return new RedisHashCache("benchmark", cacheWriter, RedisCacheConfiguration.defaultCacheConfig());
+    }
+
+    /**
+     * 原来的实现: 整个 get(key, valueLoader) 方法 synchronized, 不同的 key 也互相阻塞
+     */
+    private static class SynchronizedRedisHashCache extends RedisHashCache {
+
+        SynchronizedRedisHashCache(RedisHashCacheWriter cacheWriter) {
+            super("benchmark", cacheWriter, RedisCacheConfiguration.defaultCacheConfig());
+        }
+
+        @Override
+        public synchronized <T> T get(@NonNull Object key, @NonNull Callable<T> valueLoader) {
+            return super.get(key, valueLoader);
+        }
+    }
+
+    /**
+     * 内存中的 cacheWriter, 每次读写模拟一次 redis 往返延迟
+     */
+    private static class InMemoryCacheWriter extends RedisHashCacheWriter {
+
+        private final ConcurrentMap<ByteBuffer, byte[]> store = new ConcurrentHashMap<>();
+
+        InMemoryCacheWriter() {
+            super(mock(RedisConnectionFactory.class));
+        }
+
+        @Override
+        public void put(@NonNull String name, @NonNull byte[] key, @NonNull byte[] value, @Nullable Duration ttl) {
+            LockSupport.parkNanos(REDIS_LATENCY_NANOS);
+            this.store.put(ByteBuffer.wrap(key), value);
+        }
+
+        @Override
+        public byte[] get(@NonNull String name, @NonNull byte[] key) {
+            LockSupport.parkNanos(REDIS_LATENCY_NANOS);
+            return this.store.get(ByteBuffer.wrap(key));
+        }
+    }
+
+}
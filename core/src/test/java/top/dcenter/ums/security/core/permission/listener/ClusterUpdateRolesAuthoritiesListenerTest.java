@@ -0,0 +1,154 @@
+/*
+ * MIT License
+ * Copyright (c) 2020-2029 YongWu zheng (dcenter.top and gitee.com/pcore and github.com/ZeroOrInfinity)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package top.dcenter.ums.security.core.permission.listener;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationContext;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import top.dcenter.ums.security.core.permission.enums.ResourcesType;
+import top.dcenter.ums.security.core.permission.event.UpdateRolesAuthoritiesEvent;
+import top.dcenter.ums.security.core.permission.event.UpdateRolesAuthoritiesMessage;
+import top.dcenter.ums.security.core.permission.properties.PermissionProperties;
+import top.dcenter.ums.security.core.util.MvcUtil;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * {@link ClusterUpdateRolesAuthoritiesListener} 消息版本过滤测试
+ * @author YongWu zheng
+ * @version V2.0  Created by 2020/11/29 14:30
+ */
+public class ClusterUpdateRolesAuthoritiesListenerTest {
+
+    private final PermissionProperties permissionProperties = new PermissionProperties();
+    private StringRedisTemplate stringRedisTemplate;
+    private ApplicationContext applicationContext;
+    private ClusterUpdateRolesAuthoritiesListener listener;
+
+    @BeforeEach
+    public void setUp() {
+        this.stringRedisTemplate = mock(StringRedisTemplate.class);
+        this.applicationContext = mock(ApplicationContext.class);
+        this.listener = new ClusterUpdateRolesAuthoritiesListener(this.stringRedisTemplate, this.permissionProperties);
+        this.listener.setApplicationContext(this.applicationContext);
+    }
+
+    @Test
+    public void dropDuplicateAndOutOfOrderMessages() {
+        receive(1L, null, 5L);
+        receive(1L, null, 5L);
+        receive(1L, null, 3L);
+        // 其他范围的消息不受影响
+        receive(2L, null, 4L);
+        receive(1L, null, 6L);
+
+        final ArgumentCaptor<UpdateRolesAuthoritiesEvent> captor = ArgumentCaptor.forClass(UpdateRolesAuthoritiesEvent.class);
+        verify(this.applicationContext, times(3)).publishEvent(captor.capture());
+        Assertions.assertEquals(Long.valueOf(1L), captor.getAllValues().get(0).getRoleId());
+        Assertions.assertEquals(Long.valueOf(2L), captor.getAllValues().get(1).getRoleId());
+        Assertions.assertEquals(Long.valueOf(1L), captor.getAllValues().get(2).getRoleId());
+        Assertions.assertTrue(captor.getValue().isRemote());
+    }
+
+    @Test
+    public void broadcastLocalEventAndRecordItsVersion() {
+        @SuppressWarnings("unchecked")
+        final ValueOperations<String, String> valueOperations = mock(ValueOperations.class);
+        when(this.stringRedisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.increment(this.permissionProperties.getClusterUpdateVersionKey())).thenReturn(7L);
+
+        this.listener.onApplicationEvent(new UpdateRolesAuthoritiesEvent(true, ResourcesType.TENANT, null, "TENANT_1"));
+
+        final ArgumentCaptor<String> captor = ArgumentCaptor.forClass(String.class);
+        verify(this.stringRedisTemplate).convertAndSend(eq(this.permissionProperties.getClusterUpdateChannel()),
+                                                        captor.capture());
+        final UpdateRolesAuthoritiesMessage message = MvcUtil.json2Object(captor.getValue(),
+                                                                          UpdateRolesAuthoritiesMessage.class);
+        Assertions.assertNotNull(message);
+        Assertions.assertEquals(Long.valueOf(7L), message.getVersion());
+
+        // 本机发布的消息与其他节点的旧版本消息都不会重复更新
+        this.listener.onMessage(new DefaultMessage(new byte[0], captor.getValue().getBytes(StandardCharsets.UTF_8)),
+                                null);
+        receive(ResourcesType.TENANT, null, "TENANT_1", 6L);
+        verify(this.applicationContext, never()).publishEvent(any(UpdateRolesAuthoritiesEvent.class));
+    }
+
+    @Test
+    public void ignoreLocalEventsAndInvalidMessages() {
+        this.listener.onApplicationEvent(new UpdateRolesAuthoritiesEvent(true, ResourcesType.ROLE, 1L, null,
+                                                                         null, true));
+        verify(this.stringRedisTemplate, never()).convertAndSend(anyString(), any());
+
+        this.listener.onMessage(new DefaultMessage(new byte[0], "{}".getBytes(StandardCharsets.UTF_8)), null);
+        verify(this.applicationContext, never()).publishEvent(any(UpdateRolesAuthoritiesEvent.class));
+    }
+
+    @Test
+    public void evictSupersededSlices() {
+        final int total = ClusterUpdateRolesAuthoritiesListener.MAX_SLICE_SIZE * 2;
+        for (long i = 1L; i <= total; i++) {
+            receive(i, null, i);
+        }
+        verify(this.applicationContext, times(total)).publishEvent(any(UpdateRolesAuthoritiesEvent.class));
+
+        // 最近的范围仍然丢弃重复消息
+        receive((long) total, null, (long) total);
+        verify(this.applicationContext, times(total)).publishEvent(any(UpdateRolesAuthoritiesEvent.class));
+
+        // 已淘汰的范围, 重复消息只会多执行一次更新
+        receive(1L, null, 1L);
+        verify(this.applicationContext, times(total + 1)).publishEvent(any(UpdateRolesAuthoritiesEvent.class));
+    }
+
+    private void receive(Long roleId, String authority, long version) {
+        receive(ResourcesType.ROLE, roleId, authority, version);
+    }
+
+    private void receive(ResourcesType type, Long roleId, String authority, long version) {
+        final UpdateRolesAuthoritiesMessage message = new UpdateRolesAuthoritiesMessage();
+        message.setNodeId("other-node");
+        message.setVersion(version);
+        message.setType(type);
+        message.setRoleId(roleId);
+        message.setAuthority(authority);
+        final byte[] body = MvcUtil.toJsonString(message).getBytes(StandardCharsets.UTF_8);
+        this.listener.onMessage(new DefaultMessage(new byte[0], body), null);
+    }
+
+}
@@ -0,0 +1,73 @@
+/*
+ * MIT License
+ * Copyright (c) 2020-2029 YongWu zheng (dcenter.top and gitee.com/pcore and github.com/ZeroOrInfinity)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package top.dcenter.ums.security.core.permission.listener;
+
+import org.junit.jupiter.api.Test;
+import top.dcenter.ums.security.core.api.permission.service.UpdateAndCacheAuthoritiesService;
+import top.dcenter.ums.security.core.api.permission.service.UriAuthorizeService;
+import top.dcenter.ums.security.core.permission.enums.ResourcesType;
+import top.dcenter.ums.security.core.permission.event.UpdateRolesAuthoritiesEvent;
+
+import java.time.Duration;
+
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+/**
+ * {@link UpdateRolesAuthoritiesListener} 合并更新测试
+ * @author YongWu zheng
+ * @version V2.0  Created by 2020/12/7 17:10
+ */
+public class UpdateRolesAuthoritiesListenerTest {
+
+    @Test
+    public void failedUpdateDoesNotSkipOtherUpdates() {
+        final UpdateAndCacheAuthoritiesService updateService = mock(UpdateAndCacheAuthoritiesService.class);
+        final UriAuthorizeService uriAuthorizeService = mock(UriAuthorizeService.class);
+        doThrow(new IllegalStateException("role")).when(updateService).updateAuthoritiesOfRoles(anyMap());
+        doThrow(new IllegalStateException("tenant")).when(updateService).updateAuthoritiesOfTenant("TENANT_1");
+
+        final UpdateRolesAuthoritiesListener listener =
+                new UpdateRolesAuthoritiesListener(updateService, uriAuthorizeService, Duration.ofMillis(200L));
+        try {
+            listener.onApplicationEvent(new UpdateRolesAuthoritiesEvent(true, ResourcesType.ROLE, 1L, null));
+            listener.onApplicationEvent(new UpdateRolesAuthoritiesEvent(true, ResourcesType.TENANT, null, "TENANT_1"));
+            listener.onApplicationEvent(new UpdateRolesAuthoritiesEvent(true, ResourcesType.TENANT, null, "TENANT_2"));
+            listener.onApplicationEvent(new UpdateRolesAuthoritiesEvent(true, ResourcesType.SCOPE, null, "SCOPE_read"));
+
+            verify(updateService, timeout(5000L)).updateAuthoritiesOfRoles(anyMap());
+            verify(updateService, timeout(5000L)).updateAuthoritiesOfTenant("TENANT_1");
+            verify(updateService, timeout(5000L)).updateAuthoritiesOfTenant("TENANT_2");
+            verify(updateService, timeout(5000L)).updateAuthoritiesOfScope("SCOPE_read");
+            verify(uriAuthorizeService, timeout(5000L)).clearAuthoritiesCache();
+        }
+        finally {
+            listener.destroy();
+        }
+    }
+
+}
@@ -0,0 +1,157 @@
+/*
+ * MIT License
+ * Copyright (c) 2020-2029 YongWu zheng (dcenter.top and gitee.com/pcore and github.com/ZeroOrInfinity)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package top.dcenter.ums.security.core.permission.matcher;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.util.AntPathMatcher;
+import top.dcenter.ums.security.core.benchmark.MicroBenchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * {@link UriAuthorityMatcher} 与原来逐个 {@link AntPathMatcher#match(String, String)} 的 stream 匹配方式的基准测试,
+ * 分别测试 100 / 1k / 10k 个 uri 权限. <br>
+ * 运行: {@code mvn test -Dums.benchmark=true -Dtest=UriAuthorityMatcherBenchmark}
+ * @author YongWu zheng
+ * @version V2.0  Created by 2020/12/7 20:30
+ */
+@EnabledIfSystemProperty(named = MicroBenchmark.ENABLED_PROPERTY, matches = "true")
+public class UriAuthorityMatcherBenchmark {
+
+    private static final int ROLE_COUNT = 10;
+    private static final int REQUEST_COUNT = 1024;
+    private static final String PERMISSION = "list";
+
+    private final AntPathMatcher antPathMatcher = new AntPathMatcher();
+
+    @Test
+    public void compareWithStreamMatching() {
+        for (int patternCount : new int[]{100, 1000, 10000}) {
+            benchmark(patternCount);
+        }
+    }
+
+    private void benchmark(int patternCount) {
+        final Map<String, Map<String, Set<String>>> rolesAuthorities = rolesAuthorities(patternCount);
+        final Set<String> userRoleSet = new HashSet<>(Arrays.asList("ROLE_0", "ROLE_1", "ROLE_2"));
+        final String[] requestUris = requestUris(patternCount);
+
+        final UriAuthorityMatcher matcher = UriAuthorityMatcher.compile(rolesAuthorities, 1L, this.antPathMatcher);
+        final BitSet roleMask = matcher.getRoleMask(userRoleSet);
+
+        // 两种方式的匹配结果一致
+        for (String requestUri : requestUris) {
+            Assertions.assertEquals(streamHasPermission(rolesAuthorities, userRoleSet, requestUri),
+                                    matcher.hasPermission(roleMask, requestUri, PERMISSION), requestUri);
+        }
+
+        final int ops = patternCount >= 10000 ? REQUEST_COUNT / 4 : REQUEST_COUNT;
+        final double stream = MicroBenchmark.nanosPerOp(
+                "stream AntPathMatcher, patterns=" + patternCount, ops,
+                i -> streamHasPermission(rolesAuthorities, userRoleSet, requestUris[i % requestUris.length]));
+        final double compiled = MicroBenchmark.nanosPerOp(
+                "compiled UriAuthorityMatcher, patterns=" + patternCount, REQUEST_COUNT * 16,
+                i -> matcher.hasPermission(roleMask, requestUris[i % requestUris.length], PERMISSION));
+        MicroBenchmark.print(String.format("patterns=%d, speedup=%.1fx", patternCount, stream / compiled));
+    }
+
+    /**
+     * 原来的匹配方式: 每次请求合并用户所有角色的权限, 再逐个 uri 通过 antPathMatcher 匹配
+     */
+    private boolean streamHasPermission(Map<String, Map<String, Set<String>>> rolesAuthorities,
+                                        Set<String> userRoleSet, String requestUri) {
+        final Map<String, Set<String>> uriAuthoritiesMap = new HashMap<>(rolesAuthorities.size());
+        rolesAuthorities.entrySet()
+                        .stream()
+                        .filter(entry -> userRoleSet.contains(entry.getKey()))
+                        .map(Map.Entry::getValue)
+                        .forEach(map -> map.forEach((uri, permissions) ->
+                                uriAuthoritiesMap.computeIfAbsent(uri, k -> new HashSet<>()).addAll(permissions)));
+        return uriAuthoritiesMap.entrySet()
+                                .stream()
+                                .filter(entry -> this.antPathMatcher.match(entry.getKey(), requestUri))
+                                .anyMatch(entry -> entry.getValue().contains(PERMISSION));
+    }
+
+    /**
+     * 生成 patternCount 个 uri 权限, 平均分配给 ROLE_COUNT 个角色
+     */
+    private static Map<String, Map<String, Set<String>>> rolesAuthorities(int patternCount) {
+        final Map<String, Map<String, Set<String>>> rolesAuthorities = new HashMap<>(ROLE_COUNT);
+        final Set<String> permissions = new HashSet<>(Arrays.asList(PERMISSION, "add", "edit"));
+        for (int i = 0; i < patternCount; i++) {
+            final String role = "ROLE_" + (i % ROLE_COUNT);
+            rolesAuthorities.computeIfAbsent(role, k -> new HashMap<>()).put(pattern(i), permissions);
+        }
+        return rolesAuthorities;
+    }
+
+    private static String pattern(int i) {
+        final int module = i / 4;
+        switch (i % 4) {
+            case 0:
+                return "/api/m" + module + "/res/**";
+            case 1:
+                return "/api/m" + module + "/items/{id}";
+            case 2:
+                return "/api/m" + module + "/page/*.html";
+            default:
+                return "/api/m" + module + "/list";
+        }
+    }
+
+    private static String[] requestUris(int patternCount) {
+        final Random random = new Random(patternCount);
+        final int modules = patternCount / 4;
+        final List<String> uris = new ArrayList<>(REQUEST_COUNT);
+        for (int i = 0; i < REQUEST_COUNT; i++) {
+            final int module = random.nextInt(modules + modules / 10 + 1);
+            switch (i % 4) {
+                case 0:
+                    uris.add("/api/m" + module + "/res/a/b/c");
+                    break;
+                case 1:
+                    uris.add("/api/m" + module + "/items/" + random.nextInt(100000));
+                    break;
+                case 2:
+                    uris.add("/api/m" + module + "/page/index.html");
+                    break;
+                default:
+                    uris.add("/api/m" + module + "/missing");
+            }
+        }
+        return uris.toArray(new String[0]);
+    }
+
+}
@@ -0,0 +1,142 @@
+/*
+ * MIT License
+ * Copyright (c) 2020-2029 YongWu zheng (dcenter.top and gitee.com/pcore and github.com/ZeroOrInfinity)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package top.dcenter.ums.security.core.permission.matcher;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.AntPathMatcher;
+import top.dcenter.ums.security.core.util.matcher.SegmentTrieMatcher;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link UriAuthorityMatcher} 与 {@link AntPathMatcher#match(String, String)} 的匹配结果一致性测试
+ * @author YongWu zheng
+ * @version V2.0  Created by 2020/12/7 10:12
+ */
+public class UriAuthorityMatcherTest {
+
+    private static final String ROLE = "ROLE_USER";
+
+    private static final List<String> PATTERNS = Arrays.asList(
+            "/", "/**", "/*", "/**/", "*", "**", "user/*",
+            "/user", "/user/", "/user/*", "/user/*/", "/user/**", "/user/**/",
+            "/user/{id}", "/user/{id:\\d+}", "/user/{id}/edit", "/user/{path:a/b}",
+            "/user/*.html", "/**/*.html", "/a/**/b", "/a/**/b/**/c", "/a/*/c", "/a?c/*", "/a/b*",
+            "/a/**/**/b", "/**/b/**");
+
+    private static final List<String> PATHS = Arrays.asList(
+            "", "/", "//", "/user", "/user/", "/user//", "/user/1", "/user/1/", "/user/12a", "/user/1/edit",
+            "/user/a/b", "/user/a.html", "/index.html", "/a/b/index.html", "user/1", "/user//1", "//user",
+            "/a/b", "/a/b/", "/a/b/c", "/a/x/c", "/a/x/y/b", "/a/b/b", "/a/b/x/c", "/abc/d", "/a/bcd",
+            "/USER/1", "/b", "/x/b/y");
+
+    @Test
+    public void matchesLikeAntPathMatcher() {
+        final AntPathMatcher antPathMatcher = new AntPathMatcher();
+        for (String pattern : PATTERNS) {
+            final UriAuthorityMatcher matcher = compile(Collections.singletonList(pattern), antPathMatcher);
+            final BitSet roleMask = matcher.getRoleMask(Collections.singleton(ROLE));
+            for (String path : PATHS) {
+                final boolean expected = antPathMatcher.match(pattern, path);
+                Assertions.assertEquals(expected, matcher.hasPermissionOfMethod(roleMask, path, "GET"),
+                                        "pattern=" + pattern + ", path=" + path);
+                Assertions.assertEquals(expected, matcher.hasPermission(roleMask, path, "list"),
+                                        "pattern=" + pattern + ", path=" + path);
+            }
+        }
+    }
+
+    @Test
+    public void matchesAnyOfAllPatterns() {
+        final AntPathMatcher antPathMatcher = new AntPathMatcher();
+        final UriAuthorityMatcher matcher = compile(PATTERNS, antPathMatcher);
+        final BitSet roleMask = matcher.getRoleMask(Collections.singleton(ROLE));
+        Assertions.assertEquals(PATTERNS.size(), matcher.getPatternCount());
+        for (String path : PATHS) {
+            final boolean expected = PATTERNS.stream().anyMatch(pattern -> antPathMatcher.match(pattern, path));
+            Assertions.assertEquals(expected, matcher.hasPermissionOfMethod(roleMask, path, "GET"), "path=" + path);
+        }
+    }
+
+    @Test
+    public void respectsNonDefaultAntPathMatcher() {
+        final AntPathMatcher caseInsensitive = new AntPathMatcher();
+        caseInsensitive.setCaseSensitive(false);
+        final AntPathMatcher dotSeparator = new AntPathMatcher(".");
+        final AntPathMatcher trimTokens = new AntPathMatcher();
+        trimTokens.setTrimTokens(true);
+
+        Assertions.assertTrue(SegmentTrieMatcher.isSegmentMatchingSupported(new AntPathMatcher()));
+        for (AntPathMatcher antPathMatcher : Arrays.asList(caseInsensitive, dotSeparator, trimTokens)) {
+            Assertions.assertFalse(SegmentTrieMatcher.isSegmentMatchingSupported(antPathMatcher));
+            for (String pattern : PATTERNS) {
+                final UriAuthorityMatcher matcher = compile(Collections.singletonList(pattern), antPathMatcher);
+                final BitSet roleMask = matcher.getRoleMask(Collections.singleton(ROLE));
+                for (String path : PATHS) {
+                    Assertions.assertEquals(antPathMatcher.match(pattern, path),
+                                            matcher.hasPermissionOfMethod(roleMask, path, "GET"),
+                                            "pattern=" + pattern + ", path=" + path);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void checksRolesAndPermissions() {
+        final Map<String, Map<String, Set<String>>> rolesAuthorities = new HashMap<>(2);
+        rolesAuthorities.put("ROLE_USER", Collections.singletonMap("/user/**", Collections.singleton("list")));
+        rolesAuthorities.put("ROLE_ADMIN", Collections.singletonMap("/user/**",
+                                                                    new HashSet<>(Arrays.asList("list", "add"))));
+        final UriAuthorityMatcher matcher = UriAuthorityMatcher.compile(rolesAuthorities, 1L, new AntPathMatcher());
+
+        final BitSet user = matcher.getRoleMask(Collections.singleton("ROLE_USER"));
+        final BitSet admin = matcher.getRoleMask(Collections.singleton("ROLE_ADMIN"));
+        final BitSet unknown = matcher.getRoleMask(Collections.singleton("ROLE_UNKNOWN"));
+
+        Assertions.assertTrue(matcher.hasPermissionOfMethod(user, "/user/1", "GET"));
+        Assertions.assertFalse(matcher.hasPermissionOfMethod(user, "/user/1", "POST"));
+        Assertions.assertTrue(matcher.hasPermissionOfMethod(admin, "/user/1", "POST"));
+        Assertions.assertFalse(matcher.hasPermissionOfMethod(unknown, "/user/1", "GET"));
+        Assertions.assertFalse(matcher.hasPermission(user, "/user/1", "add"));
+        Assertions.assertTrue(matcher.hasPermission(admin, "/user/1", "add"));
+        Assertions.assertFalse(matcher.hasPermissionOfMethod(admin, "/order/1", "GET"));
+
+        Assertions.assertTrue(matcher.isCompiledAt(1L));
+        Assertions.assertFalse(matcher.isCompiledAt(2L));
+    }
+
+    private static UriAuthorityMatcher compile(List<String> patterns, AntPathMatcher antPathMatcher) {
+        final Map<String, Set<String>> uriAuthorities = new HashMap<>(patterns.size());
+        patterns.forEach(pattern -> uriAuthorities.put(pattern, Collections.singleton("list")));
+        return UriAuthorityMatcher.compile(Collections.singletonMap(ROLE, uriAuthorities), 0L, antPathMatcher);
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * MIT License
+ * Copyright (c) 2020-2029 YongWu zheng (dcenter.top and gitee.com/pcore and github.com/ZeroOrInfinity)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package top.dcenter.ums.security.core.permission.matcher;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.AntPathMatcher;
+import top.dcenter.ums.security.core.permission.matcher.UriAuthorityViewCache.UriAuthorityView;
+
+import java.util.Collections;
+
+/**
+ * {@link UriAuthorityViewCache} LRU 淘汰测试
+ * @author YongWu zheng
+ * @version V2.0  Created by 2020/11/28 21:40
+ */
+public class UriAuthorityViewCacheTest {
+
+    private final UriAuthorityMatcher matcher =
+            UriAuthorityMatcher.compile(Collections.emptyMap(), 1L, new AntPathMatcher());
+
+    @Test
+    public void evictLeastRecentlyAccessedView() {
+        final UriAuthorityViewCache cache = new UriAuthorityViewCache(2);
+        final UriAuthorityView a = view();
+        final UriAuthorityView b = view();
+        cache.put("ROLE_A", a);
+        cache.put("ROLE_B", b);
+
+        // 访问 ROLE_A 后, ROLE_B 成为最久未访问的视图
+        Assertions.assertSame(a, cache.get("ROLE_A"));
+        cache.put("ROLE_C", view());
+
+        Assertions.assertEquals(2, cache.size());
+        Assertions.assertSame(a, cache.get("ROLE_A"));
+        Assertions.assertNull(cache.get("ROLE_B"));
+        Assertions.assertNotNull(cache.get("ROLE_C"));
+        Assertions.assertEquals(1L, cache.getEvictionCount());
+        Assertions.assertEquals(3L, cache.getHitCount());
+        Assertions.assertEquals(1L, cache.getMissCount());
+    }
+
+    @Test
+    public void replaceViewWithoutEviction() {
+        final UriAuthorityViewCache cache = new UriAuthorityViewCache(1);
+        final UriAuthorityView b = view();
+        cache.put("ROLE_A", view());
+        cache.put("ROLE_A", b);
+
+        Assertions.assertEquals(1, cache.size());
+        Assertions.assertSame(b, cache.get("ROLE_A"));
+        Assertions.assertEquals(0L, cache.getEvictionCount());
+    }
+
+    @Test
+    public void segmentedCacheNeverExceedsMaximumSize() {
+        final int maximumSize = UriAuthorityViewCache.SEGMENT_COUNT * 16 + 5;
+        final UriAuthorityViewCache cache = new UriAuthorityViewCache(maximumSize);
+        final int total = maximumSize * 4;
+        for (int i = 0; i < total; i++) {
+            cache.put("ROLE_" + i, view());
+        }
+
+        Assertions.assertTrue(cache.size() <= maximumSize);
+        Assertions.assertEquals(total - cache.size(), cache.getEvictionCount());
+        // 最后放入的视图一定未被淘汰
+        Assertions.assertNotNull(cache.get("ROLE_" + (total - 1)));
+    }
+
+    private UriAuthorityView view() {
+        return new UriAuthorityView(this.matcher, Collections.emptySet());
+    }
+
+}
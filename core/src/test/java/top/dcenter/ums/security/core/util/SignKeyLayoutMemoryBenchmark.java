@@ -0,0 +1,122 @@
+/*
+ * MIT License
+ * Copyright (c) 2020-2029 YongWu zheng (dcenter.top and gitee.com/pcore and github.com/ZeroOrInfinity)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package top.dcenter.ums.security.core.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import top.dcenter.ums.security.core.benchmark.MicroBenchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * 签到 key 每月一个 key 与一个 key 存储多个月(windowMonths)的内存占用对比. <br>
+ * 在内存中模拟 redis SETBIT 一年的签到, key 与位偏移量的计算与 UserSignServiceImpl 相同, 统计 key 数量与位图字节数,
+ * 并按 {@link #REDIS_KEY_OVERHEAD_BYTES} 估算 redis 中每个 key 的额外开销. <br>
+ * 运行: {@code mvn test -Dums.benchmark=true -Dtest=SignKeyLayoutMemoryBenchmark}
+ * @author YongWu zheng
+ * @version V2.0  Created by 2020/12/7 23:10
+ */
+@EnabledIfSystemProperty(named = MicroBenchmark.ENABLED_PROPERTY, matches = "true")
+public class SignKeyLayoutMemoryBenchmark {
+
+    /**
+     * redis 中每个 key 除了 key 字符串与位图本身以外的估算开销(64 位, jemalloc):
+     * dictEntry 24 字节 + redisObject 16 字节 + key 与 value 两个 sdshdr8 头及结尾的 '\0' 共 8 字节, 加上分配对齐约 56 字节;
+     * 设置了过期时间时还有 expires 字典的 dictEntry 24 字节.
+     */
+    private static final int REDIS_KEY_OVERHEAD_BYTES = 56;
+    private static final int REDIS_EXPIRES_OVERHEAD_BYTES = 24;
+
+    private static final String SIGN_KEY_PREFIX = "u:sign:";
+    private static final int USERS = 10000;
+    private static final int YEAR = 2020;
+    /**
+     * 用户每天签到的概率, 按用户轮流分配: 活跃, 一般, 偶尔
+     */
+    private static final double[] SIGN_PROBABILITIES = {0.9D, 0.5D, 0.1D};
+
+    @Test
+    public void compareMonthlyAndWindowLayouts() {
+        long signCount = -1L;
+        long monthlyTotal = 0L;
+        for (int windowMonths : new int[]{1, 3, 6, 12}) {
+            final Map<String, BitSet> store = simulateYear(windowMonths);
+
+            long bitmapBytes = 0L;
+            long keyBytes = 0L;
+            long signed = 0L;
+            for (Map.Entry<String, BitSet> entry : store.entrySet()) {
+                // SETBIT 按最大偏移量扩展字符串长度
+                bitmapBytes += (entry.getValue().length() + 7) / 8;
+                keyBytes += entry.getKey().getBytes(StandardCharsets.UTF_8).length;
+                signed += entry.getValue().cardinality();
+            }
+            final long keys = store.size();
+            final long total = bitmapBytes + keyBytes + keys * (REDIS_KEY_OVERHEAD_BYTES + REDIS_EXPIRES_OVERHEAD_BYTES);
+            if (windowMonths == 1) {
+                monthlyTotal = total;
+            }
+            MicroBenchmark.print(String.format(Locale.ROOT,
+                    "windowMonths=%-2d keys=%-7d bitmap=%-9d keyNames=%-9d estimated=%-9d bytes (%.0f%% of monthly)",
+                    windowMonths, keys, bitmapBytes, keyBytes, total, total * 100D / monthlyTotal));
+
+            // 所有布局记录的签到相同
+            if (signCount < 0L) {
+                signCount = signed;
+            }
+            Assertions.assertEquals(signCount, signed);
+            Assertions.assertTrue(keys <= (long) USERS * 12 / windowMonths);
+        }
+    }
+
+    /**
+     * 模拟 USERS 个用户一年的签到, 返回签到 key 与对应的位图
+     */
+    private static Map<String, BitSet> simulateYear(int windowMonths) {
+        final Map<String, BitSet> store = new HashMap<>(USERS * 12 / windowMonths * 2);
+        // 相同的种子, 所有布局模拟相同的签到
+        final Random random = new Random(YEAR);
+        for (int u = 0; u < USERS; u++) {
+            final String uid = String.valueOf(100000 + u);
+            final double probability = SIGN_PROBABILITIES[u % SIGN_PROBABILITIES.length];
+            for (LocalDate date = LocalDate.of(YEAR, 1, 1); date.getYear() == YEAR; date = date.plusDays(1)) {
+                if (random.nextDouble() >= probability) {
+                    continue;
+                }
+                final String key = SIGN_KEY_PREFIX + SignUtil.buildSignKey(uid, date, windowMonths);
+                final int offset = SignUtil.signWindowOffset(date, windowMonths) + date.getDayOfMonth() - 1;
+                store.computeIfAbsent(key, k -> new BitSet()).set(offset);
+            }
+        }
+        return store;
+    }
+
+}
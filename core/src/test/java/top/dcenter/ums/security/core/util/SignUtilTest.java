@@ -0,0 +1,95 @@
+/*
+ * MIT License
+ * Copyright (c) 2020-2029 YongWu zheng (dcenter.top and gitee.com/pcore and github.com/ZeroOrInfinity)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package top.dcenter.ums.security.core.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+/**
+ * {@link SignUtil} 位图与签到 key 计算测试
+ * @author YongWu zheng
+ * @version V2.0  Created by 2020/12/7 10:40
+ */
+public class SignUtilTest {
+
+    @Test
+    public void isSigned() {
+        // 第 1, 3, 31 天签到
+        final long monthBitmap = 1L | (1L << 2) | (1L << 30);
+        Assertions.assertTrue(SignUtil.isSigned(monthBitmap, 1));
+        Assertions.assertFalse(SignUtil.isSigned(monthBitmap, 2));
+        Assertions.assertTrue(SignUtil.isSigned(monthBitmap, 3));
+        Assertions.assertTrue(SignUtil.isSigned(monthBitmap, 31));
+
+        Assertions.assertTrue(SignUtil.isSignedDaysAgo(1L, 0));
+        Assertions.assertFalse(SignUtil.isSignedDaysAgo(1L, 1));
+        Assertions.assertTrue(SignUtil.isSignedDaysAgo(1L << 63, 63));
+    }
+
+    @Test
+    public void continuousSignCount() {
+        // 第 1 - 5 天与第 8 - 10 天签到
+        final long monthBitmap = 0b11_1001_1111L;
+        Assertions.assertEquals(3, SignUtil.continuousSignCount(monthBitmap, 10));
+        // 当天(第 11 天)未签到时从前一天开始计算
+        Assertions.assertEquals(3, SignUtil.continuousSignCount(monthBitmap, 11));
+        Assertions.assertEquals(0, SignUtil.continuousSignCount(monthBitmap, 12));
+        Assertions.assertEquals(5, SignUtil.continuousSignCount(monthBitmap, 5));
+        Assertions.assertEquals(5, SignUtil.continuousSignCount(monthBitmap, 6));
+        Assertions.assertEquals(0, SignUtil.continuousSignCount(0L, 1));
+        Assertions.assertEquals(31, SignUtil.continuousSignCount((1L << 31) - 1, 31));
+    }
+
+    @Test
+    public void reverseBitField() {
+        // BITFIELD GET u4 的第一个 bit 为最高位: 0b1000 表示第一天签到
+        Assertions.assertEquals(0b0001L, SignUtil.reverseBitField(0b1000L, 4));
+        Assertions.assertEquals(0b0110L, SignUtil.reverseBitField(0b0110L, 4));
+        Assertions.assertEquals(1L, SignUtil.reverseBitField(1L << 62, 63));
+    }
+
+    @Test
+    public void buildSignKey() {
+        final LocalDate date = LocalDate.of(2020, 11, 15);
+        Assertions.assertEquals("1:202011", SignUtil.buildSignKey("1", date));
+        Assertions.assertEquals("1:202011", SignUtil.buildSignKey("1", date, 1));
+        Assertions.assertEquals("1:202011+2", SignUtil.buildSignKey("1", date, 2));
+        Assertions.assertEquals("1:202010+3", SignUtil.buildSignKey("1", date, 3));
+        Assertions.assertEquals("1:202007+6", SignUtil.buildSignKey("1", date, 6));
+        Assertions.assertEquals("1:202001+12", SignUtil.buildSignKey("1", date, 12));
+    }
+
+    @Test
+    public void signWindow() {
+        final LocalDate date = LocalDate.of(2020, 3, 20);
+        Assertions.assertEquals(LocalDate.of(2020, 3, 1), SignUtil.signWindowStart(date, 1));
+        Assertions.assertEquals(LocalDate.of(2020, 1, 1), SignUtil.signWindowStart(date, 3));
+        Assertions.assertEquals(0, SignUtil.signWindowOffset(date, 1));
+        // 2020 年 1 月 31 天, 2 月 29 天
+        Assertions.assertEquals(60, SignUtil.signWindowOffset(date, 3));
+        Assertions.assertEquals(0, SignUtil.signWindowOffset(LocalDate.of(2020, 4, 1), 3));
+    }
+}
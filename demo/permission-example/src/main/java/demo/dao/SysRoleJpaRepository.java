@@ -25,9 +25,11 @@ package demo.dao;
 
 import demo.entity.SysRole;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -55,4 +57,17 @@ public interface SysRoleJpaRepository extends CrudRepository<SysRole, Long> {
             "inner join sys_role_resources rs on r.id = rs.role_id " +
             "inner join sys_resources s on s.id = rs.resources_id", nativeQuery = true)
     List<String[]> findAuthoritiesByRoles();
+
+    /**
+     * 查询指定角色的权限
+     * @param roleIds   角色 Id 集合
+     * @return  list
+     */
+    @SuppressWarnings("SpringDataRepositoryMethodReturnTypeInspection")
+    @Query(value = "select r.name, s.url, s.permission " +
+            "from sys_role r " +
+            "inner join sys_role_resources rs on r.id = rs.role_id " +
+            "inner join sys_resources s on s.id = rs.resources_id " +
+            "where r.id in (:roleIds)", nativeQuery = true)
+    List<String[]> findAuthoritiesByRoleIds(@Param("roleIds") Collection<Long> roleIds);
 }
\ No newline at end of file
@@ -23,7 +23,10 @@
 
 package demo.permission.service.impl;
 
+import demo.entity.SysResources;
+import demo.entity.SysRole;
 import demo.entity.UriResourcesDTO;
+import demo.service.SysResourcesService;
 import demo.service.SysRoleService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.InitializingBean;
@@ -33,12 +36,17 @@ import org.springframework.lang.NonNull;
 import org.springframework.stereotype.Service;
 import top.dcenter.ums.security.core.api.permission.service.AbstractUriAuthorizeService;
 import top.dcenter.ums.security.core.api.permission.service.UpdateAndCacheAuthoritiesService;
+import top.dcenter.ums.security.core.permission.service.CopyOnWriteRolesAuthorities;
 import top.dcenter.ums.security.core.util.ConvertUtil;
 
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -49,6 +57,8 @@ import java.util.Set;
  * Map(role, map(uri, Set(permission))) 的更新与缓存本机内存.
  * 2. 基于 SCOPE 的权限控制: 情况复杂一点, 但 SCOPE 类型比较少, 也还可以像 1 的方式实现缓存本机内存与更新.
  * 3. 基于 多租户 的权限控制: 情况比较复杂, 租户很少的情况下, 也还可以全部缓存在本机内存, 通常情况下全部缓存本机内存不现实, 只能借助于类似 redis 等的内存缓存.
+ * 4. 通过 {@link CopyOnWriteRolesAuthorities} 缓存, 实现 {@link UpdateAndCacheAuthoritiesService#updateAuthoritiesOfRoles(Map)}
+ * 只更新变更角色的权限, 角色更名时删除旧角色名称的权限, 有 resourceIds 时只查询 resourceIds 对应的资源.
  * @author YongWu zheng
  * @version V1.0  Created by 2020/9/8 21:54
  */
@@ -60,21 +70,87 @@ public class UriAuthorizeServiceImpl extends AbstractUriAuthorizeService impleme
     @Autowired
     private SysRoleService sysRoleService;
 
+    @SuppressWarnings("SpringJavaAutowiredFieldsWarningInspection")
+    @Autowired
+    private SysResourcesService sysResourcesService;
+
     /**
      * 所有角色 uri(资源) 权限 Map(role, map(uri, Set(permission)))
      */
-    private volatile Map<String, Map<String, Set<String>>> rolesAuthoritiesMap;
+    private final CopyOnWriteRolesAuthorities rolesAuthorities = new CopyOnWriteRolesAuthorities();
+
+    /**
+     * 已缓存权限的角色名称 Map(roleId, roleName), 用于角色更名时删除旧角色名称的权限
+     */
+    private volatile Map<Long, String> roleNames = new HashMap<>(0);
 
-    private final Object lock = new Object();
+    private volatile boolean initialized = false;
 
     @Override
     public void updateAuthoritiesOfAllRoles() {
+        final Map<Long, String> roleNames = new HashMap<>();
+        for (SysRole role : sysRoleService.findAll())
+        {
+            roleNames.put(role.getId(), role.getName());
+        }
+        // 更新并缓存所有角色 uri(资源) 权限 Map<role, Map<uri, Set<permission>>>
+        this.rolesAuthorities.replaceAll(toRolesAuthorities(sysRoleService.getRolesAuthorities()));
+        this.roleNames = roleNames;
+        this.initialized = true;
+    }
+
+    @Override
+    public void updateAuthoritiesOfRoles(Map<Long, Long[]> roleResourceIdsMap) {
+        if (!this.initialized)
+        {
+            updateAuthoritiesOfAllRoles();
+            return;
+        }
+
+        // 变更角色的名称, 已删除的角色无法获取名称, 全量更新
+        final List<SysRole> changedRoles = new ArrayList<>(roleResourceIdsMap.size());
+        for (SysRole role : sysRoleService.findAllById(roleResourceIdsMap.keySet()))
+        {
+            changedRoles.add(role);
+        }
+        if (changedRoles.size() < roleResourceIdsMap.size())
+        {
+            updateAuthoritiesOfAllRoles();
+            return;
+        }
+
+        final Map<Long, String> roleNames = new HashMap<>(this.roleNames);
+        final Map<String, Map<String, Set<String>>> changedRolesAuthorities = new HashMap<>(roleResourceIdsMap.size() * 2);
+        // 角色更名时删除旧角色名称的权限, 先于新角色名称放入, 避免覆盖其他角色更名后的新名称
+        for (SysRole role : changedRoles)
+        {
+            final String oldName = roleNames.put(role.getId(), role.getName());
+            if (oldName != null && !oldName.equals(role.getName()))
+            {
+                changedRolesAuthorities.put(oldName, null);
+            }
+        }
 
-        synchronized (lock) {
-            // 更新并缓存所有角色 uri(资源) 权限 Map<role, Map<uri, Set<permission>>>
-            this.rolesAuthoritiesMap = updateRolesAuthorities();
+        // 有 resourceIds 的角色只查询 resourceIds 对应的资源, 否则查询角色的所有资源; 没有资源的角色保留空权限
+        final Set<Long> roleIdsWithoutResourceIds = new HashSet<>();
+        for (SysRole role : changedRoles)
+        {
+            final Long[] resourceIds = roleResourceIdsMap.get(role.getId());
+            if (resourceIds == null)
+            {
+                roleIdsWithoutResourceIds.add(role.getId());
+                changedRolesAuthorities.put(role.getName(), new HashMap<>(0));
+                continue;
+            }
+            changedRolesAuthorities.put(role.getName(), getUriAuthoritiesOfResources(resourceIds));
+        }
+        if (!roleIdsWithoutResourceIds.isEmpty())
+        {
+            changedRolesAuthorities.putAll(toRolesAuthorities(sysRoleService.getRolesAuthoritiesByRoleIds(roleIdsWithoutResourceIds)));
         }
 
+        this.rolesAuthorities.putRoles(changedRolesAuthorities);
+        this.roleNames = roleNames;
     }
 
     @Override
@@ -94,12 +170,10 @@ public class UriAuthorizeServiceImpl extends AbstractUriAuthorizeService impleme
     @NonNull
     public Map<String, Map<String, Set<String>>> getRolesAuthorities() {
 
-        if (this.rolesAuthoritiesMap != null) {
-            return this.rolesAuthoritiesMap;
-        }
-        else {
-            return updateRolesAuthorities();
+        if (!this.initialized) {
+            updateAuthoritiesOfAllRoles();
         }
+        return this.rolesAuthorities.get();
 
     }
 
@@ -124,14 +198,35 @@ public class UriAuthorizeServiceImpl extends AbstractUriAuthorizeService impleme
     }
 
     /**
-     * 更新并缓存所有角色 uri(资源) 权限 Map<role, Map<uri, Set<permission>>>.<br>
-     * @return 所有角色 uri(资源) 权限 Map<role, Map<uri, Set<permission>>>
+     * 获取资源 Ids 对应的 uri(资源) 权限.<br>
+     * @param resourceIds   资源 Ids
+     * @return uri(资源) 权限 Map<uri, Set<permission>>
+     */
+    @NonNull
+    private Map<String, Set<String>> getUriAuthoritiesOfResources(@NonNull Long[] resourceIds) {
+
+        final Map<String, Set<String>> uriAuthorities = new HashMap<>(resourceIds.length);
+        if (resourceIds.length < 1)
+        {
+            return uriAuthorities;
+        }
+        for (SysResources resources : sysResourcesService.findAllById(Arrays.asList(resourceIds)))
+        {
+            uriAuthorities.put(resources.getUrl(),
+                               ConvertUtil.string2Set(resources.getPermission(), PERMISSION_DELIMITER));
+        }
+
+        return uriAuthorities;
+    }
+
+    /**
+     * 把角色 uri(资源) 权限 Map(role, Map(uri, UriResourcesDTO)) 转换为 Map(role, Map(uri, Set(permission))).<br>
+     * @param rolesAuthoritiesMap   Map(role, Map(uri, UriResourcesDTO))
+     * @return 角色 uri(资源) 权限 Map<role, Map<uri, Set<permission>>>
      */
     @NonNull
-    private Map<String, Map<String, Set<String>>> updateRolesAuthorities() {
+    private Map<String, Map<String, Set<String>>> toRolesAuthorities(@NonNull Map<String, Map<String, UriResourcesDTO>> rolesAuthoritiesMap) {
 
-        // 从数据源获取所有角色的权限
-        final Map<String, Map<String, UriResourcesDTO>> rolesAuthoritiesMap = sysRoleService.getRolesAuthorities();
         final Map<String, Map<String, Set<String>>> rolesAuthorities = new HashMap<>(rolesAuthoritiesMap.size());
         rolesAuthoritiesMap.forEach((key, value) -> rolesAuthorities.compute(key, (k, v) ->
         {
@@ -147,8 +242,6 @@ public class UriAuthorizeServiceImpl extends AbstractUriAuthorizeService impleme
             return v;
         }));
 
-        this.rolesAuthoritiesMap = rolesAuthorities;
-
         return rolesAuthorities;
     }
 
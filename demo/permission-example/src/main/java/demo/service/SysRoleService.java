@@ -27,6 +27,7 @@ import demo.entity.SysRole;
 import demo.entity.UriResourcesDTO;
 import org.springframework.lang.NonNull;
 
+import java.util.Collection;
 import java.util.Map;
 
 /**
@@ -49,4 +50,12 @@ public interface SysRoleService extends BaseService<SysRole, Long> {
      * @return  Map(String, Map(String, String)) 的 key 为必须包含"ROLE_"前缀的角色名称(如: ROLE_ADMIN), value 为 UriResourcesDTO map (key 为 uri, 此 uri 可以为 antPath 通配符路径,如 /user/**; value 为 UriResourcesDTO).
      */
     Map<String, Map<String, UriResourcesDTO>> getRolesAuthorities();
+
+    /**
+     * 获取指定角色的权限
+     * @param roleIds   角色 Id 集合
+     * @return  Map(String, Map(String, String)) 的 key 为必须包含"ROLE_"前缀的角色名称(如: ROLE_ADMIN), value 为 UriResourcesDTO map,
+     * 只包含拥有资源的角色.
+     */
+    Map<String, Map<String, UriResourcesDTO>> getRolesAuthoritiesByRoleIds(@NonNull Collection<Long> roleIds);
 }
\ No newline at end of file
@@ -32,6 +32,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -63,7 +64,26 @@ public class SysRoleServiceImpl extends BaseServiceImpl<SysRole, Long> implement
     @Override
     public Map<String, Map<String, UriResourcesDTO>> getRolesAuthorities() {
         // 获取所有角色的 uri 的权限
-        List<String[]> authoritiesByRoles = repository.findAuthoritiesByRoles();
+        return toRolesAuthorities(repository.findAuthoritiesByRoles());
+    }
+
+    @Transactional(readOnly = true, propagation = Propagation.REQUIRED)
+    @Override
+    public Map<String, Map<String, UriResourcesDTO>> getRolesAuthoritiesByRoleIds(@NonNull Collection<Long> roleIds) {
+        if (roleIds.isEmpty())
+        {
+            return new HashMap<>(0);
+        }
+        // 获取指定角色的 uri 的权限
+        return toRolesAuthorities(repository.findAuthoritiesByRoleIds(roleIds));
+    }
+
+    /**
+     * 把查询结果(r.name, s.url, s.permission)转换为 Map(role, Map(uri, UriResourcesDTO))
+     * @param authoritiesByRoles    查询结果
+     * @return  Map(role, Map(uri, UriResourcesDTO))
+     */
+    private Map<String, Map<String, UriResourcesDTO>> toRolesAuthorities(List<String[]> authoritiesByRoles) {
 
         int size = authoritiesByRoles.size();
 